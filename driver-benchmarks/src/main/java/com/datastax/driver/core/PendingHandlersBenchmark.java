@@ -0,0 +1,116 @@
+/*
+ *      Copyright (C) 2012-2015 DataStax Inc.
+ *
+ *   Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ */
+package com.datastax.driver.core;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.openjdk.jmh.annotations.*;
+
+/**
+ * Compares the registry of in-flight requests used by {@code Connection.Dispatcher} ({@link StreamIdTable})
+ * with the {@code ConcurrentHashMap} it replaced.
+ * <p>
+ * Each operation registers a handler for a stream id and removes it, like a request/response round trip. The
+ * table is pre-filled with {@code inFlight} handlers to simulate a loaded connection, and each thread works on
+ * its own range of ids.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class PendingHandlersBenchmark {
+
+    private static final int MAX_IDS = StreamIdGenerator.MAX_STREAM_PER_CONNECTION_V3;
+    private static final int IDS_PER_THREAD = 1024;
+
+    private static final Object HANDLER = new Object();
+
+    @Param({ "0", "1024", "16384" })
+    int inFlight;
+
+    ConcurrentMap<Integer, Object> map;
+    StreamIdTable<Object> table;
+
+    final AtomicInteger threadCount = new AtomicInteger();
+
+    @Setup
+    public void setup() {
+        map = new ConcurrentHashMap<Integer, Object>();
+        table = new StreamIdTable<Object>(MAX_IDS);
+        // Fill from the top of the range, threads use the bottom
+        for (int i = 0; i < inFlight; i++) {
+            map.put(MAX_IDS - 1 - i, HANDLER);
+            table.put(MAX_IDS - 1 - i, HANDLER);
+        }
+    }
+
+    @State(Scope.Thread)
+    public static class Ids {
+        int first;
+        int next;
+
+        @Setup
+        public void setup(PendingHandlersBenchmark benchmark) {
+            first = benchmark.threadCount.getAndIncrement() * IDS_PER_THREAD;
+            next = first;
+        }
+
+        int next() {
+            int id = next;
+            next = (id + 1 == first + IDS_PER_THREAD) ? first : id + 1;
+            return id;
+        }
+    }
+
+    @Benchmark
+    @Threads(1)
+    public Object concurrentHashMap(Ids ids) {
+        return mapRoundTrip(ids.next());
+    }
+
+    @Benchmark
+    @Threads(1)
+    public Object streamIdTable(Ids ids) {
+        return tableRoundTrip(ids.next());
+    }
+
+    @Benchmark
+    @Threads(4)
+    public Object concurrentHashMap_4threads(Ids ids) {
+        return mapRoundTrip(ids.next());
+    }
+
+    @Benchmark
+    @Threads(4)
+    public Object streamIdTable_4threads(Ids ids) {
+        return tableRoundTrip(ids.next());
+    }
+
+    private Object mapRoundTrip(int id) {
+        map.put(id, HANDLER);
+        return map.remove(id);
+    }
+
+    private Object tableRoundTrip(int id) {
+        table.put(id, HANDLER);
+        return table.remove(id);
+    }
+}
@@ -0,0 +1,70 @@
+/*
+ *      Copyright (C) 2012-2015 DataStax Inc.
+ *
+ *   Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ */
+package com.datastax.driver.core;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.*;
+
+/**
+ * Measures the throughput of {@link StreamIdGenerator} when many threads share a connection: each operation
+ * borrows a stream id and releases it.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class StreamIdGeneratorBenchmark {
+
+    StreamIdGenerator generator;
+
+    @Setup
+    public void setup() {
+        generator = StreamIdGenerator.newInstance(ProtocolVersion.V3);
+    }
+
+    @Benchmark
+    @Threads(1)
+    public int threads_01() throws BusyConnectionException {
+        return nextAndRelease();
+    }
+
+    @Benchmark
+    @Threads(4)
+    public int threads_04() throws BusyConnectionException {
+        return nextAndRelease();
+    }
+
+    @Benchmark
+    @Threads(16)
+    public int threads_16() throws BusyConnectionException {
+        return nextAndRelease();
+    }
+
+    @Benchmark
+    @Threads(64)
+    public int threads_64() throws BusyConnectionException {
+        return nextAndRelease();
+    }
+
+    private int nextAndRelease() throws BusyConnectionException {
+        int id = generator.next();
+        generator.release(id);
+        return id;
+    }
+}
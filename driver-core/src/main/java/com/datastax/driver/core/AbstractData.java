@@ -52,13 +52,30 @@ abstract class AbstractData<T extends SettableData<T>> extends AbstractGettableD
 
     private T setValue(int i, ByteBuffer value) {
         values[i] = value;
+        valueChanged(i);
         return wrapped;
     }
 
+    /**
+     * Called when the {@code i}th value is set.
+     */
+    protected void valueChanged(int i) {
+    }
+
     protected ByteBuffer getValue(int i) {
         return values[i];
     }
 
+    /**
+     * Sets a non-null value that was already checked against the type of the variable.
+     * <p>
+     * This serializes the value right away, but subclasses can defer serialization (see
+     * {@link BoundStatement.DataWrapper}).
+     */
+    protected T setValidated(int i, DataType type, Object v) {
+        return setValue(i, type.codec(protocolVersion).serialize(v));
+    }
+
     protected int getIndexOf(String name) {
         return getAllIndexesOf(name)[0];
     }
@@ -110,16 +127,13 @@ abstract class AbstractData<T extends SettableData<T>> extends AbstractGettableD
 
     public T setDate(int i, Date v) {
         checkType(i, DataType.Name.TIMESTAMP);
-        return setValue(i, v == null ? null : TypeCodec.DateCodec.instance.serialize(v));
+        return v == null ? setValue(i, null) : setValidated(i, DataType.timestamp(), v);
     }
 
     public T setDate(String name, Date v) {
         int[] indexes = getAllIndexesOf(name);
-        ByteBuffer value = v == null ? null : TypeCodec.DateCodec.instance.serialize(v);
-        for (int i = 0; i < indexes.length; i++) {
-            checkType(indexes[i], DataType.Name.TIMESTAMP);
-            setValue(indexes[i], value);
-        }
+        for (int i = 0; i < indexes.length; i++)
+            setDate(indexes[i], v);
         return wrapped;
     }
 
@@ -154,16 +168,8 @@ abstract class AbstractData<T extends SettableData<T>> extends AbstractGettableD
     }
 
     public T setString(int i, String v) {
-        DataType.Name type = checkType(i, DataType.Name.VARCHAR, DataType.Name.TEXT, DataType.Name.ASCII);
-        switch (type) {
-            case ASCII:
-                return setValue(i, v == null ? null : TypeCodec.StringCodec.asciiInstance.serialize(v));
-            case TEXT:
-            case VARCHAR:
-                return setValue(i, v == null ? null : TypeCodec.StringCodec.utf8Instance.serialize(v));
-            default:
-                throw new AssertionError();
-        }
+        checkType(i, DataType.Name.VARCHAR, DataType.Name.TEXT, DataType.Name.ASCII);
+        return v == null ? setValue(i, null) : setValidated(i, getType(i), v);
     }
 
     public T setString(String name, String v) {
@@ -239,20 +245,13 @@ abstract class AbstractData<T extends SettableData<T>> extends AbstractGettableD
         if (type == DataType.Name.TIMEUUID && v.version() != 1)
             throw new InvalidTypeException(String.format("%s is not a Type 1 (time-based) UUID", v));
 
-        return type == DataType.Name.UUID
-             ? setValue(i, TypeCodec.UUIDCodec.instance.serialize(v))
-             : setValue(i, TypeCodec.TimeUUIDCodec.instance.serialize(v));
+        return setValidated(i, getType(i), v);
     }
 
     public T setUUID(String name, UUID v) {
         int[] indexes = getAllIndexesOf(name);
-        ByteBuffer value = v == null ? null : TypeCodec.UUIDCodec.instance.serialize(v);
-        for (int i = 0; i < indexes.length; i++) {
-            DataType.Name type = checkType(indexes[i], DataType.Name.UUID, DataType.Name.TIMEUUID);
-            if (v != null && type == DataType.Name.TIMEUUID && v.version() != 1)
-                throw new InvalidTypeException(String.format("%s is not a Type 1 (time-based) UUID", v));
-            setValue(indexes[i], value);
-        }
+        for (int i = 0; i < indexes.length; i++)
+            setUUID(indexes[i], v);
         return wrapped;
     }
 
@@ -303,7 +302,7 @@ abstract class AbstractData<T extends SettableData<T>> extends AbstractGettableD
             if (!expectedClass.isAssignableFrom(providedClass))
                 throw new InvalidTypeException(String.format("Invalid value for column %s of CQL type %s, expecting list of %s but provided list of %s", getName(i), type, expectedClass, providedClass));
         }
-        return setValue(i, type.codec(protocolVersion).serialize(v));
+        return setValidated(i, type, v);
     }
 
     public <E> T setList(String name, List<E> v) {
@@ -332,7 +331,7 @@ abstract class AbstractData<T extends SettableData<T>> extends AbstractGettableD
             if (!expectedKeysClass.isAssignableFrom(providedKeysClass) || !expectedValuesClass.isAssignableFrom(providedValuesClass))
                 throw new InvalidTypeException(String.format("Invalid value for column %s of CQL type %s, expecting map of %s->%s but provided map of %s->%s", getName(i), type, expectedKeysClass, expectedValuesClass, providedKeysClass, providedValuesClass));
         }
-        return setValue(i, type.codec(protocolVersion).serialize(v));
+        return setValidated(i, type, v);
     }
 
     public <K, V> T setMap(String name, Map<K, V> v) {
@@ -358,7 +357,7 @@ abstract class AbstractData<T extends SettableData<T>> extends AbstractGettableD
             if (!expectedClass.isAssignableFrom(providedClass))
                 throw new InvalidTypeException(String.format("Invalid value for column %s of CQL type %s, expecting set of %s but provided set of %s", getName(i), type, expectedClass, providedClass));
         }
-        return setValue(i, type.codec(protocolVersion).serialize(v));
+        return setValidated(i, type, v);
     }
 
     public <E> T setSet(String name, Set<E> v) {
@@ -73,12 +73,15 @@ abstract class ArrayBackedResultSet implements ResultSet {
                 Token.Factory tokenFactory = (session == null) ? null
                     : session.getCluster().getMetadata().tokenFactory();
 
+                if (session != null && session.configuration().getMetricsOptions() != null)
+                    session.cluster.manager.metrics.getPageBytes().update(r.dataSize);
+
                 // info can be null only for internal calls, but we don't page those. We assert
                 // this explicitly because MultiPage implementation don't support info == null.
                 assert r.metadata.pagingState == null || info != null;
                 return r.metadata.pagingState == null
                     ? new SinglePage(columnDefs, tokenFactory, protocolVersion, r.data, info)
-                    : new MultiPage(columnDefs, tokenFactory, protocolVersion, r.data, info, r.metadata.pagingState, session, statement);
+                    : new MultiPage(columnDefs, tokenFactory, protocolVersion, r.data, r.dataSize, info, r.metadata.pagingState, session, statement);
 
             case SET_KEYSPACE:
             case SCHEMA_CHANGE:
@@ -117,6 +120,23 @@ abstract class ArrayBackedResultSet implements ResultSet {
         return result;
     }
 
+    /**
+     * Removes and returns the rows that remain in the current page, fetching (and waiting for) the next page
+     * if the current one is exhausted.
+     *
+     * @return the rows, or an empty queue if the result set is exhausted.
+     */
+    abstract Queue<List<ByteBuffer>> pollPage();
+
+    /**
+     * Starts fetching the next page in the background if the rows that remain to be consumed are below the
+     * prefetch threshold.
+     *
+     * @param pendingRows the rows returned by {@link #pollPage()} that the caller has not consumed yet.
+     */
+    void prefetchIfNeeded(int pendingRows) {
+    }
+
     @Override
     public Iterator<Row> iterator() {
         return new Iterator<Row>() {
@@ -153,7 +173,7 @@ abstract class ArrayBackedResultSet implements ResultSet {
 
     private static class SinglePage extends ArrayBackedResultSet {
 
-        private final Queue<List<ByteBuffer>> rows;
+        private Queue<List<ByteBuffer>> rows;
         private final ExecutionInfo info;
 
         private SinglePage(ColumnDefinitions metadata,
@@ -178,6 +198,12 @@ abstract class ArrayBackedResultSet implements ResultSet {
             return rows.size();
         }
 
+        Queue<List<ByteBuffer>> pollPage() {
+            Queue<List<ByteBuffer>> page = rows;
+            rows = EMPTY_QUEUE;
+            return page;
+        }
+
         public boolean isFullyFetched() {
             return true;
         }
@@ -198,7 +224,12 @@ abstract class ArrayBackedResultSet implements ResultSet {
     private static class MultiPage extends ArrayBackedResultSet {
 
         private Queue<List<ByteBuffer>> currentPage;
-        private final Queue<Queue<List<ByteBuffer>>> nextPages = new ConcurrentLinkedQueue<Queue<List<ByteBuffer>>>();
+        private int currentPageBytes;
+        private final Queue<Page> nextPages = new ConcurrentLinkedQueue<Page>();
+
+        // Tracks the bytes of currentPage and nextPages, for this result set and the session as a whole
+        // (null if no page budget is configured)
+        private final PageBudget.Account pageBytes;
 
         private final Deque<ExecutionInfo> infos = new LinkedBlockingDeque<ExecutionInfo>();
 
@@ -220,10 +251,17 @@ abstract class ArrayBackedResultSet implements ResultSet {
         private final SessionManager session;
         private final Statement statement;
 
+        // Fetch the next page in the background when less rows than this are available (0 = disabled)
+        private final int prefetchThreshold;
+        private final int maxPrefetchPages;
+        private final long maxBufferedPageBytes;
+        private final long maxSessionBufferedPageBytes;
+
         private MultiPage(ColumnDefinitions metadata,
                           Token.Factory tokenFactory,
                           ProtocolVersion protocolVersion,
                           Queue<List<ByteBuffer>> rows,
+                          int rowsBytes,
                           ExecutionInfo info,
                           ByteBuffer pagingState,
                           SessionManager session,
@@ -234,11 +272,27 @@ abstract class ArrayBackedResultSet implements ResultSet {
             // that this will never change, so apply the generic check by peeking at the first row.
             super(metadata, tokenFactory, rows.peek(), protocolVersion);
             this.currentPage = rows;
+            this.currentPageBytes = rowsBytes;
             this.infos.offer(info.withPagingState(pagingState, protocolVersion).withStatement(statement));
 
             this.fetchState = new FetchingState(pagingState, null);
             this.session = session;
             this.statement = statement;
+
+            QueryOptions queryOptions = session.configuration().getQueryOptions();
+            int threshold = statement == null ? -1 : statement.getPrefetchThreshold();
+            this.prefetchThreshold = threshold < 0 ? queryOptions.getPrefetchThreshold() : threshold;
+            this.maxPrefetchPages = queryOptions.getMaxPrefetchPages();
+            this.maxBufferedPageBytes = queryOptions.getMaxBufferedPageBytes();
+            this.maxSessionBufferedPageBytes = queryOptions.getMaxSessionBufferedPageBytes();
+
+            // Don't keep track of the pages if nothing limits them
+            if (maxBufferedPageBytes > 0 || maxSessionBufferedPageBytes > 0) {
+                this.pageBytes = session.pageBudget.newAccount(this);
+                this.pageBytes.acquire(rowsBytes);
+            } else {
+                this.pageBytes = null;
+            }
         }
 
         public boolean isExhausted() {
@@ -248,13 +302,28 @@ abstract class ArrayBackedResultSet implements ResultSet {
 
         public Row one() {
             prepareNextRow();
-            return ArrayBackedRow.fromData(metadata, tokenFactory, protocolVersion, currentPage.poll());
+            Row row = ArrayBackedRow.fromData(metadata, tokenFactory, protocolVersion, currentPage.poll());
+            maybePrefetch();
+            return row;
+        }
+
+        Queue<List<ByteBuffer>> pollPage() {
+            prepareNextRow();
+            Queue<List<ByteBuffer>> page = currentPage;
+            currentPage = EMPTY_QUEUE;
+            // The page now belongs to the caller
+            if (pageBytes != null)
+                pageBytes.release(currentPageBytes);
+            currentPageBytes = 0;
+            // The rows of the page are still to be consumed, don't prefetch unless they are below the threshold
+            maybePrefetch(page.size());
+            return page;
         }
 
         public int getAvailableWithoutFetching() {
             int available = currentPage.size();
-            for (Queue<List<ByteBuffer>> page : nextPages)
-                available += page.size();
+            for (Page page : nextPages)
+                available += page.rows.size();
             return available;
         }
 
@@ -269,13 +338,20 @@ abstract class ArrayBackedResultSet implements ResultSet {
                 // Grab the current state now to get a consistent view in this iteration.
                 FetchingState fetchingState = this.fetchState;
 
-                Queue<List<ByteBuffer>> nextPage = nextPages.poll();
+                Page nextPage = nextPages.poll();
                 if (nextPage != null) {
-                    currentPage = nextPage;
+                    if (pageBytes != null)
+                        pageBytes.release(currentPageBytes);
+                    currentPage = nextPage.rows;
+                    currentPageBytes = nextPage.bytes;
                     continue;
                 }
-                if (fetchingState == null)
+                if (fetchingState == null) {
+                    currentPageBytes = 0;
+                    if (pageBytes != null)
+                        pageBytes.close();
                     return;
+                }
 
                 // We need to know if there is more result, so fetch the next page and
                 // wait on it.
@@ -287,6 +363,38 @@ abstract class ArrayBackedResultSet implements ResultSet {
             }
         }
 
+        @Override
+        void prefetchIfNeeded(int pendingRows) {
+            maybePrefetch(pendingRows);
+        }
+
+        private void maybePrefetch() {
+            maybePrefetch(0);
+        }
+
+        // Start fetching the next page in the background if we're running low on rows
+        private void maybePrefetch(int pendingRows) {
+            // Checking the current page first avoids computing getAvailableWithoutFetching() for each row
+            if (prefetchThreshold <= 0 || pendingRows + currentPage.size() >= prefetchThreshold)
+                return;
+
+            FetchingState fetchingState = this.fetchState;
+            if (fetchingState == null || fetchingState.inProgress != null)
+                return;
+
+            if (nextPages.size() < maxPrefetchPages
+                && pendingRows + getAvailableWithoutFetching() < prefetchThreshold
+                && hasPageBudget())
+                // If this fails, the error will be surfaced by prepareNextRow(), that will wait on the same future
+                fetchMoreResults(fetchingState);
+        }
+
+        // Note that we can't know the size of a page before receiving it, so the budgets can be exceeded by one page
+        private boolean hasPageBudget() {
+            return (maxBufferedPageBytes <= 0 || pageBytes.heldBytes() < maxBufferedPageBytes)
+                && (maxSessionBufferedPageBytes <= 0 || session.pageBudget.bufferedBytes() < maxSessionBufferedPageBytes);
+        }
+
         public ListenableFuture<Void> fetchMoreResults() {
             return fetchMoreResults(this.fetchState);
         }
@@ -332,7 +440,11 @@ abstract class ArrayBackedResultSet implements ResultSet {
                                     Responses.Result.Rows rows = (Responses.Result.Rows)rm;
                                     if (rows.metadata.pagingState != null)
                                         info = info.withPagingState(rows.metadata.pagingState, protocolVersion).withStatement(statement);
-                                    MultiPage.this.nextPages.offer(rows.data);
+                                    if (MultiPage.this.pageBytes != null)
+                                        MultiPage.this.pageBytes.acquire(rows.dataSize);
+                                    MultiPage.this.nextPages.offer(new Page(rows.data, rows.dataSize));
+                                    if (MultiPage.this.session.configuration().getMetricsOptions() != null)
+                                        MultiPage.this.session.cluster.manager.metrics.getPageBytes().update(rows.dataSize);
                                     MultiPage.this.fetchState = rows.metadata.pagingState == null ? null : new FetchingState(rows.metadata.pagingState, null);
                                 } else if (rm.kind == Responses.Result.Kind.VOID) {
                                     // We shouldn't really get a VOID message here but well, no harm in handling it I suppose
@@ -399,6 +511,16 @@ abstract class ArrayBackedResultSet implements ResultSet {
             return new ArrayList<ExecutionInfo>(infos);
         }
 
+        private static class Page {
+            final Queue<List<ByteBuffer>> rows;
+            final int bytes;
+
+            Page(Queue<List<ByteBuffer>> rows, int bytes) {
+                this.rows = rows;
+                this.bytes = bytes;
+            }
+        }
+
         private static class FetchingState {
             public final ByteBuffer nextStart;
             public final ListenableFuture<Void> inProgress;
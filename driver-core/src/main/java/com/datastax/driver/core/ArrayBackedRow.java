@@ -27,9 +27,10 @@ class ArrayBackedRow extends AbstractGettableData implements Row {
 
     private final ColumnDefinitions metadata;
     private final Token.Factory tokenFactory;
-    private final List<ByteBuffer> data;
+    // Not final so that RowCursor can reuse an instance across rows
+    private List<ByteBuffer> data;
 
-    private ArrayBackedRow(ColumnDefinitions metadata, Token.Factory tokenFactory, ProtocolVersion protocolVersion, List<ByteBuffer> data) {
+    ArrayBackedRow(ColumnDefinitions metadata, Token.Factory tokenFactory, ProtocolVersion protocolVersion, List<ByteBuffer> data) {
         super(protocolVersion);
         this.metadata = metadata;
         this.tokenFactory = tokenFactory;
@@ -43,6 +44,10 @@ class ArrayBackedRow extends AbstractGettableData implements Row {
         return new ArrayBackedRow(metadata, tokenFactory, protocolVersion, data);
     }
 
+    void setData(List<ByteBuffer> data) {
+        this.data = data;
+    }
+
     @Override
     public ColumnDefinitions getColumnDefinitions() {
         return metadata;
@@ -0,0 +1,95 @@
+/*
+ *      Copyright (C) 2012-2015 DataStax Inc.
+ *
+ *   Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ */
+package com.datastax.driver.core;
+
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import com.google.common.cache.CacheBuilder;
+import com.google.common.util.concurrent.FutureCallback;
+import com.google.common.util.concurrent.Futures;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Keeps track of the query strings of the query builder statements executed by a session, and prepares the
+ * ones that are executed often.
+ * <p>
+ * The query builder extracts most values from the query string (replacing them by bind markers), so the same
+ * query string (the "shape" of the statement) is usually produced over and over with different values. Once a
+ * shape has been executed {@code threshold} times, it is prepared in the background; from then on, statements
+ * with that shape are sent as EXECUTE requests with the same values, which saves Cassandra from parsing the
+ * query each time. Shapes that fail to prepare are executed as regular queries.
+ */
+class AutoPreparer {
+
+    private static final Logger logger = LoggerFactory.getLogger(AutoPreparer.class);
+
+    private final SessionManager session;
+    private final int threshold;
+    private final ConcurrentMap<PreparedStatementCache.Key, Shape> shapes;
+
+    AutoPreparer(SessionManager session, int threshold, int maxShapes) {
+        this.session = session;
+        this.threshold = threshold;
+        this.shapes = CacheBuilder.newBuilder()
+            .maximumSize(maxShapes)
+            .<PreparedStatementCache.Key, Shape>build()
+            .asMap();
+    }
+
+    /**
+     * Records an execution of a query string.
+     *
+     * @return the prepared statement to execute instead, or {@code null} if the query string is not prepared
+     * (yet).
+     */
+    PreparedStatement onExecute(String query, String keyspace) {
+        PreparedStatementCache.Key key = new PreparedStatementCache.Key(query, keyspace);
+        Shape shape = shapes.get(key);
+        if (shape == null) {
+            Shape newShape = new Shape();
+            shape = shapes.putIfAbsent(key, newShape);
+            if (shape == null)
+                shape = newShape;
+        }
+
+        PreparedStatement prepared = shape.prepared;
+        // Stop counting once the threshold is reached, so that shapes that failed to prepare are not retried
+        if (prepared == null && shape.executions.get() < threshold && shape.executions.incrementAndGet() == threshold)
+            prepare(query, shape);
+        return prepared;
+    }
+
+    private void prepare(final String query, final Shape shape) {
+        Futures.addCallback(session.prepareAsync(query), new FutureCallback<PreparedStatement>() {
+            @Override
+            public void onSuccess(PreparedStatement result) {
+                shape.prepared = result;
+            }
+
+            @Override
+            public void onFailure(Throwable t) {
+                logger.debug("Error while auto-preparing {}, it will be executed as a regular query", query, t);
+            }
+        });
+    }
+
+    private static class Shape {
+        final AtomicInteger executions = new AtomicInteger();
+        volatile PreparedStatement prepared;
+    }
+}
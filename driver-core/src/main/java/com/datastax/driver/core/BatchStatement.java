@@ -97,8 +97,10 @@ public class BatchStatement extends Statement {
                 // We handle BatchStatement in add() so ...
                 assert statement instanceof BoundStatement;
                 BoundStatement st = (BoundStatement)statement;
+                if (st.statement instanceof DefaultPreparedStatement)
+                    ((DefaultPreparedStatement)st.statement).markUsed();
                 idAndVals.ids.add(st.statement.getPreparedId().id);
-                idAndVals.values.add(Arrays.asList(st.wrapper.values));
+                idAndVals.values.add(st.wrapper.valueList());
             }
         }
         return idAndVals;
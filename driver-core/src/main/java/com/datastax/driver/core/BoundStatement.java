@@ -22,6 +22,8 @@ import java.nio.ByteBuffer;
 import java.util.*;
 
 import com.google.common.reflect.TypeToken;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
 
 import com.datastax.driver.core.exceptions.InvalidTypeException;
 
@@ -45,6 +47,8 @@ import com.datastax.driver.core.exceptions.InvalidTypeException;
  */
 public class BoundStatement extends Statement implements SettableData<BoundStatement>, GettableData {
     private static final ByteBuffer UNSET = ByteBuffer.allocate(0);
+    // Marks the values that are serialized when the request is written (see DataWrapper)
+    private static final ByteBuffer DIRECT = ByteBuffer.allocate(0);
 
     final PreparedStatement statement;
 
@@ -54,6 +58,18 @@ public class BoundStatement extends Statement implements SettableData<BoundState
 
     private ByteBuffer routingKey;
 
+    // The value of the Murmur3 token of the routing key computed from the bound values, or NO_ROUTING_TOKEN if it
+    // hasn't been computed since the last time a value changed. Volatile so that the long is never read torn.
+    private volatile long routingToken = NO_ROUTING_TOKEN;
+
+    // Used to build composite routing keys when computing their token
+    private static final ThreadLocal<ByteBuffer> compositeBuffer = new ThreadLocal<ByteBuffer>() {
+        @Override
+        protected ByteBuffer initialValue() {
+            return ByteBuffer.allocate(64);
+        }
+    };
+
     /**
      * Creates a new {@code BoundStatement} from the provided prepared
      * statement.
@@ -94,7 +110,7 @@ public class BoundStatement extends Statement implements SettableData<BoundState
      * @throws IndexOutOfBoundsException if {@code i < 0 || i >= this.preparedStatement().variables().size()}.
      */
     public boolean isSet(int i) {
-        return wrapper.getValue(i) != UNSET;
+        return wrapper.values[i] != UNSET;
     }
 
     /**
@@ -109,7 +125,7 @@ public class BoundStatement extends Statement implements SettableData<BoundState
      * variable, that is if {@code !this.preparedStatement().variables().names().contains(name)}.
      */
     public boolean isSet(String name) {
-        return wrapper.getValue(wrapper.getIndexOf(name)) != UNSET;
+        return wrapper.values[wrapper.getIndexOf(name)] != UNSET;
     }
 
     /**
@@ -145,6 +161,7 @@ public class BoundStatement extends Statement implements SettableData<BoundState
 
             if (toSet == null) {
                 wrapper.values[i] = null;
+                resetRoutingToken();
                 continue;
             }
 
@@ -206,7 +223,7 @@ public class BoundStatement extends Statement implements SettableData<BoundState
                         throw new InvalidTypeException(String.format("Invalid type for value %d of CQL type %s, expecting %s but %s provided", i, columnType, expectedClass, providedClass));
                     break;
             }
-            wrapper.values[i] = columnType.codec(statement.getPreparedId().protocolVersion).serialize(toSet);
+            wrapper.setValidated(i, columnType, toSet);
         }
         return this;
     }
@@ -228,6 +245,98 @@ public class BoundStatement extends Statement implements SettableData<BoundState
         return this;
     }
 
+    @Override
+    Token getRoutingToken(Token.Factory factory) {
+        if (!computesRoutingKey())
+            return super.getRoutingToken(factory);
+
+        if (factory == Token.M3PToken.FACTORY) {
+            long token = getMurmur3RoutingToken();
+            return token == NO_ROUTING_TOKEN ? null : Token.M3PToken.fromLong(token);
+        }
+
+        // Ordered tokens may keep the key's bytes as is, don't let them point to the reusable buffer
+        ByteBuffer key = routingKeyFromValues(factory == Token.OPPToken.FACTORY);
+        return key == null ? null : factory.hash(key);
+    }
+
+    @Override
+    long getMurmur3RoutingToken() {
+        if (!computesRoutingKey())
+            return super.getMurmur3RoutingToken();
+
+        long token = routingToken;
+        if (token != NO_ROUTING_TOKEN)
+            return token;
+
+        ByteBuffer key = routingKeyFromValues(false);
+        if (key == null)
+            return NO_ROUTING_TOKEN;
+        token = Token.M3PToken.hashToLong(key);
+        routingToken = token;
+        return token;
+    }
+
+    // Only cache the token computed from the values, and if getRoutingKey is not overridden
+    private boolean computesRoutingKey() {
+        return routingKey == null && statement.getRoutingKey() == null && getClass() == BoundStatement.class;
+    }
+
+    private void resetRoutingToken() {
+        // Avoid a volatile write for each value when there is nothing to reset
+        if (routingToken != NO_ROUTING_TOKEN)
+            routingToken = NO_ROUTING_TOKEN;
+    }
+
+    private ByteBuffer routingKeyFromValues(boolean copyComposite) {
+        int[] rkIndexes = statement.getPreparedId().routingKeyIndexes;
+        if (rkIndexes == null)
+            return null;
+        if (rkIndexes.length == 1)
+            return wrapper.getValue(rkIndexes[0]);
+
+        ByteBuffer key = composeRoutingKey(rkIndexes);
+        if (key != null && copyComposite) {
+            ByteBuffer copy = ByteBuffer.allocate(key.remaining());
+            copy.put(key.duplicate()).flip();
+            key = copy;
+        }
+        return key;
+    }
+
+    // Same as SimpleStatement.compose, but into a reusable buffer: the result is only valid until the next call
+    private ByteBuffer composeRoutingKey(int[] rkIndexes) {
+        int totalLength = 0;
+        for (int index : rkIndexes) {
+            ByteBuffer value = wrapper.getValue(index);
+            if (value == null)
+                return null;
+            totalLength += 2 + value.remaining() + 1;
+        }
+
+        ByteBuffer out = compositeBuffer.get();
+        if (out.capacity() < totalLength) {
+            out = ByteBuffer.allocate(Math.max(totalLength, out.capacity() * 2));
+            compositeBuffer.set(out);
+        }
+        out.clear();
+        for (int index : rkIndexes) {
+            ByteBuffer value = wrapper.values[index];
+            int length = value.remaining();
+            out.put((byte)((length >> 8) & 0xFF));
+            out.put((byte)(length & 0xFF));
+            if (value.hasArray()) {
+                out.put(value.array(), value.arrayOffset() + value.position(), length);
+            } else {
+                for (int i = value.position(); i < value.limit(); i++)
+                    out.put(value.get(i));
+            }
+            out.put((byte)0);
+        }
+        out.flip();
+        return out;
+    }
+
     /**
      * The routing key for this bound query.
      * <p>
@@ -261,11 +370,11 @@ public class BoundStatement extends Statement implements SettableData<BoundState
         int[] rkIndexes = statement.getPreparedId().routingKeyIndexes;
         if (rkIndexes != null) {
             if (rkIndexes.length == 1) {
-                return wrapper.values[rkIndexes[0]];
+                return wrapper.getValue(rkIndexes[0]);
             } else {
                 ByteBuffer[] components = new ByteBuffer[rkIndexes.length];
                 for (int i = 0; i < components.length; ++i) {
-                    ByteBuffer value = wrapper.values[rkIndexes[i]];
+                    ByteBuffer value = wrapper.getValue(rkIndexes[i]);
                     if (value == null)
                         return null;
                     components[i] = value;
@@ -1376,6 +1485,205 @@ public class BoundStatement extends Statement implements SettableData<BoundState
         protected String getName(int i) {
             return wrapped.statement.getVariables().getName(i);
         }
+
+        // Values of the types supported by ValueWriter are serialized when the request is written: values[i] is
+        // DIRECT, and the value is in objects[i] (strings, UUIDs and collection snapshots) or bits[i] (fixed-size types).
+        private long[] bits;
+        private Object[] objects;
+
+        @Override
+        protected void valueChanged(int i) {
+            wrapped.resetRoutingToken();
+        }
+
+        @Override
+        protected BoundStatement setValidated(int i, DataType type, Object v) {
+            if (!ValueWriter.supports(type))
+                return super.setValidated(i, type, v);
+
+            DataType.Name name = type.getName();
+            if (ValueWriter.isFixedSize(name))
+                return setBits(i, ValueWriter.toBits(name, v));
+
+            if (objects == null)
+                objects = new Object[values.length];
+            objects[i] = name.isCollection() ? ValueWriter.snapshot(type, v, protocolVersion) : v;
+            values[i] = DIRECT;
+            valueChanged(i);
+            return wrapped;
+        }
+
+        private BoundStatement setBits(int i, long v) {
+            if (bits == null)
+                bits = new long[values.length];
+            bits[i] = v;
+            if (objects != null)
+                objects[i] = null;
+            values[i] = DIRECT;
+            valueChanged(i);
+            return wrapped;
+        }
+
+        @Override
+        public BoundStatement setBool(int i, boolean v) {
+            checkType(i, DataType.Name.BOOLEAN);
+            return setBits(i, v ? 1 : 0);
+        }
+
+        @Override
+        public BoundStatement setBool(String name, boolean v) {
+            for (int i : getAllIndexesOf(name))
+                setBool(i, v);
+            return wrapped;
+        }
+
+        @Override
+        public BoundStatement setInt(int i, int v) {
+            checkType(i, DataType.Name.INT);
+            return setBits(i, v);
+        }
+
+        @Override
+        public BoundStatement setInt(String name, int v) {
+            for (int i : getAllIndexesOf(name))
+                setInt(i, v);
+            return wrapped;
+        }
+
+        @Override
+        public BoundStatement setLong(int i, long v) {
+            checkType(i, DataType.Name.BIGINT, DataType.Name.COUNTER);
+            return setBits(i, v);
+        }
+
+        @Override
+        public BoundStatement setLong(String name, long v) {
+            for (int i : getAllIndexesOf(name))
+                setLong(i, v);
+            return wrapped;
+        }
+
+        @Override
+        public BoundStatement setFloat(int i, float v) {
+            checkType(i, DataType.Name.FLOAT);
+            return setBits(i, Float.floatToRawIntBits(v));
+        }
+
+        @Override
+        public BoundStatement setFloat(String name, float v) {
+            for (int i : getAllIndexesOf(name))
+                setFloat(i, v);
+            return wrapped;
+        }
+
+        @Override
+        public BoundStatement setDouble(int i, double v) {
+            checkType(i, DataType.Name.DOUBLE);
+            return setBits(i, Double.doubleToRawLongBits(v));
+        }
+
+        @Override
+        public BoundStatement setDouble(String name, double v) {
+            for (int i : getAllIndexesOf(name))
+                setDouble(i, v);
+            return wrapped;
+        }
+
+        @Override
+        protected ByteBuffer getValue(int i) {
+            ByteBuffer value = values[i];
+            if (value == DIRECT) {
+                // Someone needs the serialized form (routing key, getters, logging...), keep it
+                byte[] bytes = new byte[sizeOfDirect(i)];
+                ByteBuf dest = Unpooled.wrappedBuffer(bytes);
+                dest.writerIndex(0);
+                writeDirect(i, dest);
+                value = ByteBuffer.wrap(bytes);
+                values[i] = value;
+            }
+            return value;
+        }
+
+        /**
+         * @return the serialized values (this serializes the values that were not yet).
+         */
+        ByteBuffer[] serializedValues() {
+            for (int i = 0; i < values.length; i++)
+                getValue(i);
+            return values;
+        }
+
+        /**
+         * @return the values, as a list that the request encoder writes without intermediate buffers.
+         */
+        List<ByteBuffer> valueList() {
+            return new BoundValues(this);
+        }
+
+        private int sizeOfDirect(int i) {
+            DataType type = getType(i);
+            DataType.Name name = type.getName();
+            if (ValueWriter.isFixedSize(name))
+                return ValueWriter.sizeOfBits(name);
+            return name.isCollection()
+                ? ValueWriter.sizeOfCollection(type, (Object[])objects[i], protocolVersion)
+                : ValueWriter.sizeOf(name, objects[i]);
+        }
+
+        private void writeDirect(int i, ByteBuf dest) {
+            DataType type = getType(i);
+            DataType.Name name = type.getName();
+            if (ValueWriter.isFixedSize(name))
+                ValueWriter.writeBits(name, bits[i], dest);
+            else if (name.isCollection())
+                ValueWriter.writeCollection(type, (Object[])objects[i], protocolVersion, dest);
+            else
+                ValueWriter.write(name, objects[i], dest);
+        }
+    }
+
+    /**
+     * The values of a statement, as seen by {@link CBUtil#writeValueList(List, ByteBuf)}: values that were set
+     * through {@link ValueWriter} are written directly in the request buffer.
+     */
+    static class BoundValues extends AbstractList<ByteBuffer> {
+        private final DataWrapper wrapper;
+
+        BoundValues(DataWrapper wrapper) {
+            this.wrapper = wrapper;
+        }
+
+        @Override
+        public ByteBuffer get(int i) {
+            return wrapper.getValue(i);
+        }
+
+        @Override
+        public int size() {
+            return wrapper.values.length;
+        }
+
+        int encodedSize() {
+            int size = 2;
+            for (int i = 0; i < wrapper.values.length; i++) {
+                ByteBuffer value = wrapper.values[i];
+                size += (value == DIRECT) ? 4 + wrapper.sizeOfDirect(i) : CBUtil.sizeOfValue(value);
+            }
+            return size;
+        }
+
+        void encode(ByteBuf dest) {
+            dest.writeShort(wrapper.values.length);
+            for (int i = 0; i < wrapper.values.length; i++) {
+                ByteBuffer value = wrapper.values[i];
+                if (value == DIRECT) {
+                    dest.writeInt(wrapper.sizeOfDirect(i));
+                    wrapper.writeDirect(i, dest);
+                } else {
+                    CBUtil.writeValue(value, dest);
+                }
+            }
+        }
     }
 
     void ensureAllSet() {
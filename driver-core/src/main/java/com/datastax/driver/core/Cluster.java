@@ -579,6 +579,7 @@ public class Cluster implements Closeable {
         private SpeculativeExecutionPolicy speculativeExecutionPolicy;
 
         private ProtocolOptions.Compression compression = ProtocolOptions.Compression.NONE;
+        private boolean sharedPageBuffers = false;
         private SSLOptions sslOptions = null;
         private boolean metricsEnabled = true;
         private boolean jmxEnabled = true;
@@ -1021,6 +1022,18 @@ public class Cluster implements Closeable {
             return this;
         }
 
+        /**
+         * Enables shared page buffers for the decoding of query results.
+         *
+         * @return this Builder.
+         *
+         * @see ProtocolOptions#setSharedPageBuffers(boolean)
+         */
+        public Builder withSharedPageBuffers() {
+            this.sharedPageBuffers = true;
+            return this;
+        }
+
         /**
          * Disables metrics collection for the created cluster (metrics are
          * enabled by default otherwise).
@@ -1165,7 +1178,7 @@ public class Cluster implements Closeable {
                 .withSpeculativeExecutionPolicy(speculativeExecutionPolicy)
                 .build();
             return new Configuration(policies,
-                                     new ProtocolOptions(port, protocolVersion, maxSchemaAgreementWaitSeconds, sslOptions, authProvider).setCompression(compression),
+                                     new ProtocolOptions(port, protocolVersion, maxSchemaAgreementWaitSeconds, sslOptions, authProvider).setCompression(compression).setSharedPageBuffers(sharedPageBuffers),
                                      poolingOptions == null ? new PoolingOptions() : poolingOptions,
                                      socketOptions == null ? new SocketOptions() : socketOptions,
                                      metricsEnabled ? new MetricsOptions(jmxEnabled) : null,
@@ -1417,6 +1430,16 @@ public class Cluster implements Closeable {
             return sessions.remove(session);
         }
 
+        int inFlightQueries(Host host) {
+            int inFlight = 0;
+            for (SessionManager session : sessions) {
+                HostConnectionPool pool = session.pools.get(host);
+                if (pool != null)
+                    inFlight += pool.totalInFlight.get();
+            }
+            return inFlight;
+        }
+
         void reportLatency(Host host, Statement statement, Exception exception, long latencyNanos) {
             for (LatencyTracker tracker : trackers) {
                 tracker.update(host, statement, exception, latencyNanos);
@@ -1974,8 +1997,10 @@ public class Cluster implements Closeable {
             if (preparedQueries.isEmpty())
                 return reusedConnection;
 
-            logger.debug("Preparing {} prepared queries on newly up node {}", preparedQueries.size(), host);
+            List<PreparedStatement> statements = new ArrayList<PreparedStatement>(preparedQueries.values());
+            logger.debug("Preparing {} prepared queries on newly up node {}", statements.size(), host);
             Connection connection = null;
+            List<Connection> extraConnections = new ArrayList<Connection>();
             try {
                 connection = (reusedConnection == null)
                     ? connectionFactory.open(host)
@@ -1987,42 +2012,36 @@ public class Cluster implements Closeable {
                     // As below, just move on
                 }
 
-                // Furthermore, along with each prepared query we keep the current keyspace at the time of preparation
-                // as we need to make it is the same when we re-prepare on new/restarted nodes. Most query will use the
-                // same keyspace so keeping it each time is slightly wasteful, but this doesn't really matter and is
-                // simpler. Besides, we do avoid in prepareAllQueries to not set the current keyspace more than needed.
-
-                // We need to make sure we prepared every query with the right current keyspace, i.e. the one originally
-                // used for preparing it. However, since we are likely that all prepared query belong to only a handful
-                // of different keyspace (possibly only one), and to avoid setting the current keyspace more than needed,
-                // we first sort the query per keyspace.
-                SetMultimap<String, String> perKeyspace = HashMultimap.create();
-                for (PreparedStatement ps : preparedQueries.values()) {
-                    // It's possible for a query to not have a current keyspace. But since null doesn't work well as
-                    // map keys, we use the empty string instead (that is not a valid keyspace name).
-                    String keyspace = ps.getQueryKeyspace() == null ? "" : ps.getQueryKeyspace();
-                    perKeyspace.put(keyspace, ps.getQueryString());
+                // Along with each prepared query we keep the current keyspace at the time of preparation, as we need
+                // to make sure it is the same when we re-prepare on new/restarted nodes. StatementRepreparer groups
+                // queries per keyspace to avoid setting the current keyspace more than needed.
+                QueryOptions queryOptions = configuration.getQueryOptions();
+                int maxInFlight = queryOptions.getMaxInFlightReprepares();
+                int connectionCount = Math.min(queryOptions.getMaxReprepareConnections(),
+                                               (statements.size() + maxInFlight - 1) / maxInFlight);
+                for (int i = 1; i < connectionCount; i++) {
+                    try {
+                        extraConnections.add(connectionFactory.open(host));
+                    } catch (ConnectionException e) {
+                        // Use the connections we have
+                        logger.debug("Error opening additional connection to prepare queries on " + host, e);
+                        break;
+                    }
                 }
 
-                for (String keyspace : perKeyspace.keySet()) {
-                    // Empty string mean no particular keyspace to set
-                    if (!keyspace.isEmpty())
-                        connection.setKeyspace(keyspace);
-
-                    List<Connection.Future> futures = new ArrayList<Connection.Future>(preparedQueries.size());
-                    for (String query : perKeyspace.get(keyspace)) {
-                        futures.add(connection.write(new Requests.Prepare(query)));
-                    }
-                    for (Connection.Future future : futures) {
-                        try {
-                            future.get();
-                        } catch (ExecutionException e) {
-                            // This "might" happen if we drop a CF but haven't removed it's prepared queries (which we don't do
-                            // currently). It's not a big deal however as if it's a more serious problem it'll show up later when
-                            // the query is tried for execution.
-                            logger.debug("Unexpected error while preparing queries on new/newly up host", e);
-                        }
-                    }
+                List<Connection> connections = new ArrayList<Connection>(extraConnections.size() + 1);
+                connections.add(connection);
+                connections.addAll(extraConnections);
+                Set<Connection> failed;
+                try {
+                    failed = new StatementRepreparer(statements, maxInFlight).start(connections).get();
+                } catch (ExecutionException e) {
+                    // Can't happen, the future never fails
+                    throw new DriverInternalError(e.getCause());
+                }
+                if (failed.contains(connection)) {
+                    connection.closeAsync();
+                    return null;
                 }
 
                 return connection;
@@ -2043,6 +2062,9 @@ public class Cluster implements Closeable {
                 if (connection != null)
                     connection.closeAsync();
                 return null;
+            } finally {
+                for (Connection extraConnection : extraConnections)
+                    extraConnection.closeAsync();
             }
         }
 
@@ -0,0 +1,388 @@
+/*
+ *      Copyright (C) 2012-2015 DataStax Inc.
+ *
+ *   Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ */
+package com.datastax.driver.core;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Queue;
+
+import com.datastax.driver.core.exceptions.InvalidTypeException;
+
+/**
+ * A column-oriented view of a page of results.
+ * <p>
+ * Instead of creating a {@link Row} per row, this decodes each column of the page into a single array:
+ * <ul>
+ *     <li>{@code int} columns into an {@code int[]} ({@link #getInts(int)});</li>
+ *     <li>{@code bigint}, {@code counter} and {@code timestamp} columns into a {@code long[]}
+ *     ({@link #getLongs(int)}), timestamps being expressed in milliseconds since the epoch;</li>
+ *     <li>{@code double} columns into a {@code double[]} ({@link #getDoubles(int)});</li>
+ *     <li>{@code float} columns into a {@code float[]} ({@link #getFloats(int)});</li>
+ *     <li>{@code boolean} columns into a {@code boolean[]} ({@link #getBooleans(int)});</li>
+ *     <li>columns of any type into an array of their serialized values ({@link #getBytesUnsafe(int)}).</li>
+ * </ul>
+ * Null values are reported by a bitmap ({@link #getNulls(int)}); the corresponding entry of a primitive
+ * array is the same default value as with the {@link Row} getters ({@code 0}, {@code 0.0}, {@code false}).
+ * <p>
+ * Primitive columns are decoded the first time they are accessed, and the arrays are then cached: they must
+ * not be modified.
+ * <p>
+ * Pages are obtained from a result set with {@link #next(ResultSet)}, which consumes the rows that remain in
+ * the current page:
+ * <pre>
+ * {@code
+ * ResultSet rs = session.execute("SELECT value FROM measures WHERE sensor = 1");
+ * double sum = 0;
+ * ColumnarPage page;
+ * while ((page = ColumnarPage.next(rs)) != null) {
+ *     double[] values = page.getDoubles(0);
+ *     for (int i = 0; i < page.size(); i++)
+ *         sum += values[i];
+ * }
+ * }
+ * </pre>
+ * This class is not thread-safe.
+ */
+public class ColumnarPage {
+
+    private final ColumnDefinitions metadata;
+    private final List<List<ByteBuffer>> rows;
+    // Decoded arrays, indexed by column
+    private final Object[] values;
+    private final long[][] nulls;
+
+    private ColumnarPage(ColumnDefinitions metadata, Queue<List<ByteBuffer>> rows) {
+        this.metadata = metadata;
+        this.rows = new ArrayList<List<ByteBuffer>>(rows);
+        this.values = new Object[metadata.size()];
+        this.nulls = new long[metadata.size()][];
+    }
+
+    /**
+     * Consumes the rows that remain in the current page of a result set, and returns them as a columnar page.
+     * <p>
+     * If the current page has already been fully consumed, the next page is fetched (this method blocks
+     * until it is available). Rows can still be consumed from the result set with the regular API after this
+     * method returns; they will start with the following page.
+     * <p>
+     * If prefetching is enabled (see {@link QueryOptions#setPrefetchThreshold(int)}), the next page is fetched
+     * in the background if the returned page has fewer rows than the threshold.
+     *
+     * @param rs the result set.
+     * @return the page, or {@code null} if the result set is exhausted.
+     *
+     * @throws IllegalArgumentException if {@code rs} was not returned by the driver.
+     */
+    public static ColumnarPage next(ResultSet rs) {
+        if (!(rs instanceof ArrayBackedResultSet))
+            throw new IllegalArgumentException("Unsupported result set implementation " + rs.getClass().getName());
+
+        ArrayBackedResultSet abrs = (ArrayBackedResultSet)rs;
+        Queue<List<ByteBuffer>> page = abrs.pollPage();
+        return page.isEmpty() ? null : new ColumnarPage(abrs.getColumnDefinitions(), page);
+    }
+
+    /**
+     * Returns the columns contained in this page.
+     *
+     * @return the column definitions.
+     */
+    public ColumnDefinitions getColumnDefinitions() {
+        return metadata;
+    }
+
+    /**
+     * Returns the number of rows in this page.
+     *
+     * @return the number of rows.
+     */
+    public int size() {
+        return rows.size();
+    }
+
+    /**
+     * Returns the null bitmap of a column.
+     * <p>
+     * The value of row {@code r} is null if {@code (bitmap[r >>> 6] & (1L << r)) != 0}, which is what
+     * {@link #isNull(int, int)} checks.
+     *
+     * @param i the index of the column.
+     * @return the bitmap.
+     *
+     * @throws IndexOutOfBoundsException if {@code i} is not a valid column index.
+     */
+    public long[] getNulls(int i) {
+        metadata.checkBounds(i);
+        long[] bitmap = nulls[i];
+        if (bitmap == null) {
+            bitmap = new long[(rows.size() + 63) >>> 6];
+            for (int r = 0; r < rows.size(); r++) {
+                if (rows.get(r).get(i) == null)
+                    bitmap[r >>> 6] |= 1L << r;
+            }
+            nulls[i] = bitmap;
+        }
+        return bitmap;
+    }
+
+    /**
+     * Returns whether the value of a column is null for a given row.
+     *
+     * @param i the index of the column.
+     * @param row the index of the row.
+     * @return whether the value is null.
+     *
+     * @throws IndexOutOfBoundsException if {@code i} is not a valid column index, or {@code row} is not a valid
+     * row index.
+     */
+    public boolean isNull(int i, int row) {
+        if (row < 0 || row >= rows.size())
+            throw new ArrayIndexOutOfBoundsException(row);
+        return (getNulls(i)[row >>> 6] & (1L << row)) != 0;
+    }
+
+    /**
+     * Returns the values of an {@code int} column.
+     *
+     * @param i the index of the column.
+     * @return the values, in row order.
+     *
+     * @throws IndexOutOfBoundsException if {@code i} is not a valid column index.
+     * @throws InvalidTypeException if column {@code i} is not of type INT.
+     */
+    public int[] getInts(int i) {
+        metadata.checkBounds(i);
+        metadata.checkType(i, DataType.Name.INT);
+
+        int[] result = (int[])values[i];
+        if (result == null) {
+            result = new int[rows.size()];
+            for (int r = 0; r < rows.size(); r++) {
+                ByteBuffer value = rows.get(r).get(i);
+                if (value != null && value.remaining() != 0)
+                    result[r] = TypeCodec.IntCodec.instance.deserializeNoBoxing(value);
+            }
+            values[i] = result;
+        }
+        return result;
+    }
+
+    /**
+     * Returns the values of an {@code int} column.
+     *
+     * @param name the name of the column.
+     * @return the values, in row order.
+     *
+     * @throws IllegalArgumentException if {@code name} is not a column of this page.
+     * @throws InvalidTypeException if column {@code name} is not of type INT.
+     */
+    public int[] getInts(String name) {
+        return getInts(metadata.getFirstIdx(name));
+    }
+
+    /**
+     * Returns the values of a {@code bigint}, {@code counter} or {@code timestamp} column.
+     *
+     * @param i the index of the column.
+     * @return the values, in row order (milliseconds since the epoch for timestamps).
+     *
+     * @throws IndexOutOfBoundsException if {@code i} is not a valid column index.
+     * @throws InvalidTypeException if column {@code i} is not of type BIGINT, COUNTER or TIMESTAMP.
+     */
+    public long[] getLongs(int i) {
+        metadata.checkBounds(i);
+        metadata.checkType(i, DataType.Name.BIGINT, DataType.Name.COUNTER, DataType.Name.TIMESTAMP);
+
+        long[] result = (long[])values[i];
+        if (result == null) {
+            result = new long[rows.size()];
+            for (int r = 0; r < rows.size(); r++) {
+                ByteBuffer value = rows.get(r).get(i);
+                if (value != null && value.remaining() != 0)
+                    result[r] = TypeCodec.LongCodec.instance.deserializeNoBoxing(value);
+            }
+            values[i] = result;
+        }
+        return result;
+    }
+
+    /**
+     * Returns the values of a {@code bigint}, {@code counter} or {@code timestamp} column.
+     *
+     * @param name the name of the column.
+     * @return the values, in row order (milliseconds since the epoch for timestamps).
+     *
+     * @throws IllegalArgumentException if {@code name} is not a column of this page.
+     * @throws InvalidTypeException if column {@code name} is not of type BIGINT, COUNTER or TIMESTAMP.
+     */
+    public long[] getLongs(String name) {
+        return getLongs(metadata.getFirstIdx(name));
+    }
+
+    /**
+     * Returns the values of a {@code double} column.
+     *
+     * @param i the index of the column.
+     * @return the values, in row order.
+     *
+     * @throws IndexOutOfBoundsException if {@code i} is not a valid column index.
+     * @throws InvalidTypeException if column {@code i} is not of type DOUBLE.
+     */
+    public double[] getDoubles(int i) {
+        metadata.checkBounds(i);
+        metadata.checkType(i, DataType.Name.DOUBLE);
+
+        double[] result = (double[])values[i];
+        if (result == null) {
+            result = new double[rows.size()];
+            for (int r = 0; r < rows.size(); r++) {
+                ByteBuffer value = rows.get(r).get(i);
+                if (value != null && value.remaining() != 0)
+                    result[r] = TypeCodec.DoubleCodec.instance.deserializeNoBoxing(value);
+            }
+            values[i] = result;
+        }
+        return result;
+    }
+
+    /**
+     * Returns the values of a {@code double} column.
+     *
+     * @param name the name of the column.
+     * @return the values, in row order.
+     *
+     * @throws IllegalArgumentException if {@code name} is not a column of this page.
+     * @throws InvalidTypeException if column {@code name} is not of type DOUBLE.
+     */
+    public double[] getDoubles(String name) {
+        return getDoubles(metadata.getFirstIdx(name));
+    }
+
+    /**
+     * Returns the values of a {@code float} column.
+     *
+     * @param i the index of the column.
+     * @return the values, in row order.
+     *
+     * @throws IndexOutOfBoundsException if {@code i} is not a valid column index.
+     * @throws InvalidTypeException if column {@code i} is not of type FLOAT.
+     */
+    public float[] getFloats(int i) {
+        metadata.checkBounds(i);
+        metadata.checkType(i, DataType.Name.FLOAT);
+
+        float[] result = (float[])values[i];
+        if (result == null) {
+            result = new float[rows.size()];
+            for (int r = 0; r < rows.size(); r++) {
+                ByteBuffer value = rows.get(r).get(i);
+                if (value != null && value.remaining() != 0)
+                    result[r] = TypeCodec.FloatCodec.instance.deserializeNoBoxing(value);
+            }
+            values[i] = result;
+        }
+        return result;
+    }
+
+    /**
+     * Returns the values of a {@code float} column.
+     *
+     * @param name the name of the column.
+     * @return the values, in row order.
+     *
+     * @throws IllegalArgumentException if {@code name} is not a column of this page.
+     * @throws InvalidTypeException if column {@code name} is not of type FLOAT.
+     */
+    public float[] getFloats(String name) {
+        return getFloats(metadata.getFirstIdx(name));
+    }
+
+    /**
+     * Returns the values of a {@code boolean} column.
+     *
+     * @param i the index of the column.
+     * @return the values, in row order.
+     *
+     * @throws IndexOutOfBoundsException if {@code i} is not a valid column index.
+     * @throws InvalidTypeException if column {@code i} is not of type BOOLEAN.
+     */
+    public boolean[] getBooleans(int i) {
+        metadata.checkBounds(i);
+        metadata.checkType(i, DataType.Name.BOOLEAN);
+
+        boolean[] result = (boolean[])values[i];
+        if (result == null) {
+            result = new boolean[rows.size()];
+            for (int r = 0; r < rows.size(); r++) {
+                ByteBuffer value = rows.get(r).get(i);
+                if (value != null && value.remaining() != 0)
+                    result[r] = TypeCodec.BooleanCodec.instance.deserializeNoBoxing(value);
+            }
+            values[i] = result;
+        }
+        return result;
+    }
+
+    /**
+     * Returns the values of a {@code boolean} column.
+     *
+     * @param name the name of the column.
+     * @return the values, in row order.
+     *
+     * @throws IllegalArgumentException if {@code name} is not a column of this page.
+     * @throws InvalidTypeException if column {@code name} is not of type BOOLEAN.
+     */
+    public boolean[] getBooleans(String name) {
+        return getBooleans(metadata.getFirstIdx(name));
+    }
+
+    /**
+     * Returns the serialized values of a column.
+     * <p>
+     * This works for columns of any type. The buffers are views over the data received from Cassandra (no copy
+     * is made), in the same format as {@link Row#getBytesUnsafe(int)}; null values are {@code null}.
+     *
+     * @param i the index of the column.
+     * @return the values, in row order.
+     *
+     * @throws IndexOutOfBoundsException if {@code i} is not a valid column index.
+     */
+    public ByteBuffer[] getBytesUnsafe(int i) {
+        metadata.checkBounds(i);
+
+        ByteBuffer[] result = new ByteBuffer[rows.size()];
+        for (int r = 0; r < rows.size(); r++) {
+            ByteBuffer value = rows.get(r).get(i);
+            if (value != null)
+                result[r] = value.duplicate();
+        }
+        return result;
+    }
+
+    /**
+     * Returns the serialized values of a column.
+     *
+     * @param name the name of the column.
+     * @return the values, in row order.
+     *
+     * @throws IllegalArgumentException if {@code name} is not a column of this page.
+     * @see #getBytesUnsafe(int)
+     */
+    public ByteBuffer[] getBytesUnsafe(String name) {
+        return getBytesUnsafe(metadata.getFirstIdx(name));
+    }
+}
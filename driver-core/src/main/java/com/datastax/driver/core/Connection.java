@@ -17,15 +17,17 @@ package com.datastax.driver.core;
 
 import java.lang.ref.WeakReference;
 import java.net.InetSocketAddress;
-import java.util.HashSet;
+import java.util.HashMap;
 import java.util.Iterator;
 import java.util.List;
+import java.util.Map;
 import java.util.Queue;
 import java.util.concurrent.*;
 import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.atomic.AtomicInteger;
 import java.util.concurrent.atomic.AtomicReference;
 
+import com.codahale.metrics.Histogram;
 import com.google.common.collect.Lists;
 import com.google.common.collect.MapMaker;
 import com.google.common.util.concurrent.*;
@@ -76,6 +78,8 @@ class Connection {
     private final String name;
 
     private volatile Channel channel;
+    // Only used if read timeouts are tracked on the event loop (see SocketOptions#setReadTimeoutTickMillis)
+    private volatile ScheduledFuture<?> timeoutSweep;
     private final Factory factory;
 
     private final Dispatcher dispatcher;
@@ -129,7 +133,7 @@ class Connection {
             Bootstrap bootstrap = factory.newBootstrap();
             ProtocolOptions protocolOptions = factory.configuration.getProtocolOptions();
             bootstrap.handler(
-                new Initializer(this, protocolVersion, protocolOptions.getCompression().compressor(), protocolOptions.getSSLOptions(),
+                new Initializer(this, protocolVersion, protocolOptions.getCompression().compressor(), protocolOptions.getSharedPageBuffers(), protocolOptions.getSSLOptions(),
                     factory.configuration.getPoolingOptions().getHeartbeatIntervalSeconds(),
                     factory.configuration.getNettyOptions()));
 
@@ -157,6 +161,10 @@ class Connection {
                         } else {
                             logger.debug("{} Connection opened successfully", Connection.this);
                             channel.closeFuture().addListener(new ChannelCloseListener());
+                            int timeoutTickMillis = factory.configuration.getSocketOptions().getReadTimeoutTickMillis();
+                            if (timeoutTickMillis > 0)
+                                timeoutSweep = channel.eventLoop().scheduleAtFixedRate(new TimeoutSweeper(),
+                                    timeoutTickMillis, timeoutTickMillis, TimeUnit.MILLISECONDS);
                             channelReadyFuture.set(null);
                         }
                     }
@@ -478,6 +486,43 @@ class Connection {
         }
     }
 
+    /**
+     * Sets the keyspace of this connection without blocking.
+     * <p>
+     * Contrary to {@link #setKeyspace(String)}, the caller must make sure that no other request
+     * depending on the current keyspace is in flight.
+     *
+     * @return a future that completes when the keyspace is set, or fails with a
+     * {@link ConnectionException} (the connection is defuncted if Cassandra rejected the keyspace).
+     */
+    ListenableFuture<Void> setKeyspaceAsync(final String keyspace) {
+        if (keyspace == null || keyspace.equals(this.keyspace))
+            return Futures.immediateFuture(null);
+
+        logger.trace("{} Setting keyspace {}", this, keyspace);
+        Future future;
+        try {
+            // Note: we quote the keyspace below, because the name is the one coming from Cassandra, so it's in the right case already
+            future = write(new Requests.Query("USE \"" + keyspace + '"'));
+        } catch (ConnectionException e) {
+            return Futures.immediateFailedFuture(defunct(e));
+        } catch (BusyConnectionException e) {
+            return Futures.immediateFailedFuture(new ConnectionException(address, "Tried to set the keyspace on busy connection"));
+        }
+        return Futures.transform(future, new AsyncFunction<Message.Response, Void>() {
+            @Override
+            public ListenableFuture<Void> apply(Message.Response response) {
+                if (response.type == Message.Response.Type.RESULT) {
+                    Connection.this.keyspace = keyspace;
+                    return Futures.immediateFuture(null);
+                }
+                String message = String.format("Problem while setting keyspace, got %s as response", response);
+                logger.warn("{} {}", Connection.this, message);
+                return Futures.immediateFailedFuture(defunct(new ConnectionException(address, message)));
+            }
+        });
+    }
+
     /**
      * Write a request on this connection.
      *
@@ -524,7 +569,7 @@ class Connection {
         logger.trace("{} writing request {}", this, request);
         writer.incrementAndGet();
 
-        if (DISABLE_COALESCING) {
+        if (DISABLE_COALESCING || factory.configuration.getSocketOptions().getWriteCoalescing() == SocketOptions.WriteCoalescing.DISABLED) {
             channel.writeAndFlush(request).addListener(writeHandler(request, handler));
         } else {
             flush(new FlushItem(channel, request, writeHandler(request, handler)));
@@ -673,6 +718,10 @@ class Connection {
         private final ChannelGroup allChannels = new DefaultChannelGroup(GlobalEventExecutor.INSTANCE);
 
         private final ConcurrentMap<Host, AtomicInteger> idGenerators = new ConcurrentHashMap<Host, AtomicInteger>();
+        private final ConcurrentMap<EventLoop, Flusher> flusherLookup = new MapMaker()
+            .concurrencyLevel(16)
+            .weakKeys()
+            .makeMap();
         public final DefaultResponseHandler defaultHandler;
         final Cluster.Manager manager;
         final Cluster.ConnectionReaper reaper;
@@ -828,14 +877,24 @@ class Connection {
     }
 
     private static final class Flusher implements Runnable {
+        // Lower bound of the interval between runs with adaptive coalescing
+        private static final long MIN_DELAY_NANOS = 1000;
+
         final WeakReference<EventLoop> eventLoopRef;
+        final SocketOptions options;
+        final Histogram writesPerFlush; // null if metrics are disabled
         final Queue<FlushItem> queued = new ConcurrentLinkedQueue<FlushItem>();
         final AtomicBoolean running = new AtomicBoolean(false);
-        final HashSet<Channel> channels = new HashSet<Channel>();
+        // Number of requests written to each channel since its last flush. Only accessed from the event loop.
+        final HashMap<Channel, int[]> pendingWrites = new HashMap<Channel, int[]>();
         int runsWithNoWork = 0;
+        long delayNanos;
 
-        private Flusher(EventLoop eventLoop) {
+        private Flusher(EventLoop eventLoop, SocketOptions options, Histogram writesPerFlush) {
             this.eventLoopRef = new WeakReference<EventLoop>(eventLoop);
+            this.options = options;
+            this.writesPerFlush = writesPerFlush;
+            this.delayNanos = TimeUnit.MICROSECONDS.toNanos(options.getWriteCoalescingMaxDelayMicros());
         }
 
         void start() {
@@ -848,21 +907,40 @@ class Connection {
 
         @Override
         public void run() {
+            int maxBatchSize = options.getWriteCoalescingMaxBatchSize();
+            int written = 0;
+            int flushes = 0;
 
-            boolean doneWork = false;
             FlushItem flush;
             while (null != (flush = queued.poll())) {
-                channels.add(flush.channel);
-                flush.channel.write(flush.request).addListener(flush.listener);
-                doneWork = true;
+                Channel channel = flush.channel;
+                channel.write(flush.request).addListener(flush.listener);
+                written++;
+
+                int[] count = pendingWrites.get(channel);
+                if (count == null)
+                    pendingWrites.put(channel, count = new int[1]);
+                if (++count[0] >= maxBatchSize) {
+                    flush(channel, count);
+                    flushes++;
+                }
             }
 
             // Always flush what we have (don't artificially delay to try to coalesce more messages)
-            for (Channel channel : channels)
-                channel.flush();
-            channels.clear();
+            for (Iterator<Map.Entry<Channel, int[]>> it = pendingWrites.entrySet().iterator(); it.hasNext(); ) {
+                Map.Entry<Channel, int[]> entry = it.next();
+                if (entry.getValue()[0] == 0) {
+                    // Nothing written since the previous run, don't keep a reference to the channel
+                    it.remove();
+                } else {
+                    flush(entry.getKey(), entry.getValue());
+                    flushes++;
+                }
+            }
+
+            updateDelay(written, flushes);
 
-            if (doneWork) {
+            if (written > 0) {
                 runsWithNoWork = 0;
             } else {
                 // either reschedule or cancel
@@ -875,15 +953,32 @@ class Connection {
 
             EventLoop eventLoop = eventLoopRef.get();
             if(eventLoop != null) {
-                eventLoop.schedule(this, 10000, TimeUnit.NANOSECONDS);
+                eventLoop.schedule(this, delayNanos, TimeUnit.NANOSECONDS);
             }
         }
-    }
 
-    private static final ConcurrentMap<EventLoop, Flusher> flusherLookup = new MapMaker()
-        .concurrencyLevel(16)
-            .weakKeys()
-            .makeMap();
+        private void flush(Channel channel, int[] count) {
+            channel.flush();
+            if (writesPerFlush != null)
+                writesPerFlush.update(count[0]);
+            count[0] = 0;
+        }
+
+        private void updateDelay(int written, int flushes) {
+            long maxDelayNanos = TimeUnit.MICROSECONDS.toNanos(options.getWriteCoalescingMaxDelayMicros());
+            if (options.getWriteCoalescing() == SocketOptions.WriteCoalescing.ADAPTIVE) {
+                // Widen the window while it allows several requests per flush, narrow it otherwise (including
+                // when idle) so that requests coming in one at a time are not delayed for nothing.
+                if (flushes > 0 && written > flushes)
+                    delayNanos = Math.min(delayNanos * 2, maxDelayNanos);
+                else
+                    delayNanos = Math.max(delayNanos / 2, MIN_DELAY_NANOS);
+                delayNanos = Math.min(delayNanos, maxDelayNanos);
+            } else {
+                delayNanos = maxDelayNanos;
+            }
+        }
+    }
 
     private static class FlushItem {
         final Channel channel;
@@ -899,9 +994,13 @@ class Connection {
 
     private void flush(FlushItem item) {
         EventLoop loop = item.channel.eventLoop();
+        ConcurrentMap<EventLoop, Flusher> flusherLookup = factory.flusherLookup;
         Flusher flusher = flusherLookup.get(loop);
         if (flusher == null) {
-            Flusher alt = flusherLookup.putIfAbsent(loop, flusher = new Flusher(loop));
+            Metrics metrics = factory.manager.metrics;
+            Flusher alt = flusherLookup.putIfAbsent(loop, flusher = new Flusher(loop,
+                                                                               factory.configuration.getSocketOptions(),
+                                                                               metrics == null ? null : metrics.getWritesPerFlush()));
             if (alt != null)
                 flusher = alt;
         }
@@ -913,7 +1012,7 @@ class Connection {
     private class Dispatcher extends SimpleChannelInboundHandler<Message.Response> {
 
         public final StreamIdGenerator streamIdHandler;
-        private final ConcurrentMap<Integer, ResponseHandler> pending = new ConcurrentHashMap<Integer, ResponseHandler>();
+        private final StreamIdTable<ResponseHandler> pending;
 
         Dispatcher() {
             ProtocolVersion protocolVersion = factory.protocolVersion;
@@ -924,6 +1023,7 @@ class Connection {
                 protocolVersion = ProtocolVersion.V2;
             }
             streamIdHandler = StreamIdGenerator.newInstance(protocolVersion);
+            pending = new StreamIdTable<ResponseHandler>(streamIdHandler.maxIds());
         }
 
         public void add(ResponseHandler handler) {
@@ -1029,13 +1129,63 @@ class Connection {
         }
 
         public void errorOutAllHandler(ConnectionException ce) {
-            Iterator<ResponseHandler> iter = pending.values().iterator();
-            while (iter.hasNext())
-            {
-                ResponseHandler handler = iter.next();
+            for (ResponseHandler handler : pending.removeAll()) {
                 handler.cancelTimeout();
                 handler.callback.onException(Connection.this, ce, System.nanoTime() - handler.startTime, handler.retryCount);
-                iter.remove();
+            }
+        }
+    }
+
+    /**
+     * Checks the deadlines of the pending requests of this connection, as an alternative to scheduling a timeout on
+     * the factory's timer for each request. This runs periodically on the channel's event loop, and hands the
+     * requests that have timed out to the executor as a batch (timeout callbacks might retry on another host, so
+     * they should not run on an I/O thread).
+     */
+    private class TimeoutSweeper implements Runnable, StreamIdTable.Visitor<ResponseHandler> {
+        // Only accessed from the event loop
+        private long now;
+        private List<ResponseHandler> expired;
+
+        @Override
+        public void run() {
+            now = System.nanoTime();
+            dispatcher.pending.forEach(this);
+
+            if (expired != null) {
+                final List<ResponseHandler> batch = expired;
+                expired = null;
+                Runnable expire = new Runnable() {
+                    @Override
+                    public void run() {
+                        for (ResponseHandler handler : batch) {
+                            try {
+                                handler.onTimeout();
+                            } catch (RuntimeException e) {
+                                logger.warn(String.format("%s Unexpected error while expiring request", Connection.this), e);
+                            }
+                        }
+                    }
+                };
+                try {
+                    factory.manager.executor.execute(expire);
+                } catch (RejectedExecutionException e) {
+                    // The executor is shutting down, expire the handlers ourselves. Letting the exception
+                    // escape would cancel this task and no request on this connection would ever time out.
+                    expire.run();
+                }
+            }
+        }
+
+        @Override
+        public void visit(int streamId, ResponseHandler handler) {
+            long deadline = handler.deadline;
+            if (deadline != 0 && now - deadline >= 0) {
+                // Make sure it only fires once
+                handler.deadline = 0;
+                if (expired == null)
+                    expired = Lists.newArrayList();
+                expired.add(handler);
             }
         }
     }
@@ -1043,6 +1193,9 @@ class Connection {
     private class ChannelCloseListener implements ChannelFutureListener {
         @Override
         public void operationComplete(ChannelFuture future) throws Exception {
+            ScheduledFuture<?> sweep = timeoutSweep;
+            if (sweep != null)
+                sweep.cancel(false);
             // If we've closed the channel client side then we don't really want to defunct the connection, but
             // if there is remaining thread waiting on us, we still want to wake them up
             if (!isInitialized || isClosed()) {
@@ -1199,6 +1352,9 @@ class Connection {
 
         private final long startTime;
         private volatile Timeout timeout;
+        // When read timeouts are tracked on the event loop: the System.nanoTime() at which this request times out,
+        // or 0 if no timeout is pending
+        volatile long deadline;
 
         private final AtomicBoolean isCancelled = new AtomicBoolean();
 
@@ -1213,10 +1369,19 @@ class Connection {
 
         void startTimeout() {
             long timeoutMs = connection.factory.getReadTimeoutMillis();
-            this.timeout = timeoutMs <= 0 ? null : connection.factory.timer.newTimeout(onTimeoutTask(), timeoutMs, TimeUnit.MILLISECONDS);
+            if (timeoutMs <= 0) {
+                this.timeout = null;
+            } else if (connection.timeoutSweep != null) {
+                // 0 means no deadline, so avoid it in the (unlikely) case where nanoTime() wraps around to it
+                long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(timeoutMs);
+                this.deadline = (deadline == 0) ? 1 : deadline;
+            } else {
+                this.timeout = connection.factory.timer.newTimeout(onTimeoutTask(), timeoutMs, TimeUnit.MILLISECONDS);
+            }
         }
 
         void cancelTimeout() {
+            deadline = 0;
             if (timeout != null)
                 timeout.cancel();
         }
@@ -1233,12 +1398,16 @@ class Connection {
             connection.release();
         }
 
+        void onTimeout() {
+            if (callback.onTimeout(connection, System.nanoTime() - startTime, retryCount))
+                cancelHandler();
+        }
+
         private TimerTask onTimeoutTask() {
             return new TimerTask() {
                 @Override
                 public void run(Timeout timeout) {
-                    if (callback.onTimeout(connection, System.nanoTime() - startTime, retryCount))
-                        cancelHandler();
+                    onTimeout();
                 }
             };
         }
@@ -1251,6 +1420,7 @@ class Connection {
     private static class Initializer extends ChannelInitializer<SocketChannel> {
         // Stateless handlers
         private static final Message.ProtocolDecoder messageDecoder = new Message.ProtocolDecoder();
+        private static final Message.ProtocolDecoder pageBufferMessageDecoder = new Message.ProtocolDecoder(true);
         private static final Message.ProtocolEncoder messageEncoderV1 = new Message.ProtocolEncoder(ProtocolVersion.V1);
         private static final Message.ProtocolEncoder messageEncoderV2 = new Message.ProtocolEncoder(ProtocolVersion.V2);
         private static final Message.ProtocolEncoder messageEncoderV3 = new Message.ProtocolEncoder(ProtocolVersion.V3);
@@ -1259,14 +1429,16 @@ class Connection {
         private final ProtocolVersion protocolVersion;
         private final Connection connection;
         private final FrameCompressor compressor;
+        private final boolean sharedPageBuffers;
         private final SSLOptions sslOptions;
         private final NettyOptions nettyOptions;
         private final ChannelHandler idleStateHandler;
 
-        public Initializer(Connection connection, ProtocolVersion protocolVersion, FrameCompressor compressor, SSLOptions sslOptions, int heartBeatIntervalSeconds, NettyOptions nettyOptions) {
+        public Initializer(Connection connection, ProtocolVersion protocolVersion, FrameCompressor compressor, boolean sharedPageBuffers, SSLOptions sslOptions, int heartBeatIntervalSeconds, NettyOptions nettyOptions) {
             this.connection = connection;
             this.protocolVersion = protocolVersion;
             this.compressor = compressor;
+            this.sharedPageBuffers = sharedPageBuffers;
             this.sslOptions = sslOptions;
             this.nettyOptions = nettyOptions;
             this.idleStateHandler = new IdleStateHandler(0, 0, heartBeatIntervalSeconds);
@@ -1294,7 +1466,7 @@ class Connection {
                 pipeline.addLast("frameCompressor", new Frame.Compressor(compressor));
             }
 
-            pipeline.addLast("messageDecoder", messageDecoder);
+            pipeline.addLast("messageDecoder", sharedPageBuffers ? pageBufferMessageDecoder : messageDecoder);
             pipeline.addLast("messageEncoder", messageEncoderFor(protocolVersion));
 
             pipeline.addLast("idleStateHandler", idleStateHandler);
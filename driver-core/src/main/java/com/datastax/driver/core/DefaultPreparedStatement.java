@@ -34,6 +34,9 @@ public class DefaultPreparedStatement implements PreparedStatement{
     volatile boolean traceQuery;
     volatile RetryPolicy retryPolicy;
 
+    // Approximate (see markUsed), used to re-prepare the most recently used statements first on new nodes
+    private volatile long lastUsedMillis = System.currentTimeMillis();
+
     private DefaultPreparedStatement(PreparedId id, String query, String queryKeyspace) {
         this.preparedId = id;
         this.query = query;
@@ -98,6 +101,17 @@ public class DefaultPreparedStatement implements PreparedStatement{
         return preparedId.metadata;
     }
 
+    void markUsed() {
+        long now = System.currentTimeMillis();
+        // Only write once per second at most, to avoid contention on hot statements
+        if (now - lastUsedMillis >= 1000)
+            lastUsedMillis = now;
+    }
+
+    long lastUsedMillis() {
+        return lastUsedMillis;
+    }
+
     public BoundStatement bind(Object... values) {
         BoundStatement bs = new BoundStatement(this);
         return bs.bind(values);
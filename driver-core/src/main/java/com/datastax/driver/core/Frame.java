@@ -212,16 +212,34 @@ class Frame {
         @Override
         protected void encode(ChannelHandlerContext ctx, Frame frame, List<Object> out) throws Exception {
             ProtocolVersion protocolVersion = frame.header.version;
-            ByteBuf header = ctx.alloc().ioBuffer(Frame.Header.lengthFor(protocolVersion));
+            int headerLength = Frame.Header.lengthFor(protocolVersion);
+            ByteBuf body = frame.body;
+            int bodyLength = body.readableBytes();
+
+            if (body.readerIndex() >= headerLength) {
+                // Room was reserved for the header in front of the body (see Message.ProtocolEncoder and
+                // FrameCompressor): write it there and send a single buffer.
+                int frameStart = body.readerIndex() - headerLength;
+                int writerIndex = body.writerIndex();
+                body.setIndex(frameStart, frameStart);
+                writeHeader(frame.header, bodyLength, body, protocolVersion);
+                body.writerIndex(writerIndex);
+                out.add(body);
+            } else {
+                ByteBuf header = ctx.alloc().ioBuffer(headerLength);
+                writeHeader(frame.header, bodyLength, header, protocolVersion);
+                out.add(header);
+                out.add(body);
+            }
+        }
+
+        private void writeHeader(Header frameHeader, int bodyLength, ByteBuf header, ProtocolVersion protocolVersion) {
             // We don't bother with the direction, we only send requests.
-            header.writeByte(frame.header.version.toInt());
-            header.writeByte(Header.Flag.serialize(frame.header.flags));
-            writeStreamId(frame.header.streamId, header, protocolVersion);
-            header.writeByte(frame.header.opcode);
-            header.writeInt(frame.body.readableBytes());
-
-            out.add(header);
-            out.add(frame.body);
+            header.writeByte(frameHeader.version.toInt());
+            header.writeByte(Header.Flag.serialize(frameHeader.flags));
+            writeStreamId(frameHeader.streamId, header, protocolVersion);
+            header.writeByte(frameHeader.opcode);
+            header.writeInt(bodyLength);
         }
 
         private void writeStreamId(int streamId, ByteBuf header, ProtocolVersion protocolVersion) {
@@ -251,11 +269,12 @@ class Frame {
         @Override
         protected void decode(ChannelHandlerContext ctx, Frame frame, List<Object> out) throws Exception {
             if (frame.header.flags.contains(Header.Flag.COMPRESSED)) {
-                // All decompressors allocate a new buffer for the decompressed data, so this is the last time
-                // we have a reference to the compressed body (and therefore a chance to release it).
+                // All decompressors allocate a new buffer (from the channel's allocator) for the decompressed data,
+                // so this is the last time we have a reference to the compressed body (and therefore a chance to
+                // release it).
                 ByteBuf compressedBody = frame.body;
                 try {
-                    out.add(compressor.decompress(frame));
+                    out.add(compressor.decompress(frame, ctx.alloc()));
                 } finally {
                     compressedBody.release();
                 }
@@ -276,15 +295,18 @@ class Frame {
 
         @Override
         protected void encode(ChannelHandlerContext ctx, Frame frame, List<Object> out) throws Exception {
-            // Never compress STARTUP messages
-            if (frame.header.opcode == Message.Request.Type.STARTUP.opcode) {
+            // Never compress STARTUP messages, and don't bother with small frames (the compression flag is per
+            // frame, so the server will handle uncompressed frames fine)
+            if (frame.header.opcode == Message.Request.Type.STARTUP.opcode
+                || frame.body.readableBytes() < FrameCompressor.MIN_COMPRESSED_BODY_SIZE) {
                 out.add(frame);
             } else {
                 frame.header.flags.add(Header.Flag.COMPRESSED);
-                // See comment in decode()
+                // The compressors allocate a new buffer for the compressed data (with room for the header, like the
+                // uncompressed body), so release the uncompressed one
                 ByteBuf uncompressedBody = frame.body;
                 try {
-                    out.add(compressor.compress(frame));
+                    out.add(compressor.compress(frame, ctx.alloc()));
                 } finally {
                     uncompressedBody.release();
                 }
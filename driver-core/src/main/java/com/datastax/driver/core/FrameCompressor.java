@@ -16,8 +16,10 @@
 package com.datastax.driver.core;
 
 import java.io.IOException;
+import java.nio.ByteBuffer;
 
-import io.netty.buffer.Unpooled;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufAllocator;
 import net.jpountz.lz4.LZ4Factory;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -29,8 +31,46 @@ abstract class FrameCompressor {
 
     private static final Logger logger = LoggerFactory.getLogger(FrameCompressor.class);
 
-    public abstract Frame compress(Frame frame) throws IOException;
-    public abstract Frame decompress(Frame frame) throws IOException;
+    /**
+     * Frames with a body smaller than this are sent uncompressed: the compression overhead (CPU and the
+     * compressor's own headers) outweighs the gains on such small payloads.
+     */
+    static final int MIN_COMPRESSED_BODY_SIZE = 64;
+
+    /**
+     * Compresses the body of a frame. The returned frame has a new body, allocated with {@code alloc} and with
+     * room reserved for the frame header in front of it; the body of {@code frame} is left untouched and must be
+     * released by the caller.
+     */
+    public abstract Frame compress(Frame frame, ByteBufAllocator alloc) throws IOException;
+
+    /**
+     * Decompresses the body of a frame. The returned frame has a new body, allocated with {@code alloc};
+     * the body of {@code frame} is left untouched and must be released by the caller.
+     */
+    public abstract Frame decompress(Frame frame, ByteBufAllocator alloc) throws IOException;
+
+    // Whether the readable bytes of a buffer can be passed as-is to the ByteBuffer-based native methods
+    private static boolean isSingleDirectBuffer(ByteBuf buf) {
+        return buf.isDirect() && buf.nioBufferCount() == 1;
+    }
+
+    /**
+     * Leaves room for the frame header in front of a compressed body, so that {@link Frame.Encoder} can write the
+     * header in place.
+     */
+    private static ByteBuf reserveHeader(ByteBuf output, int headerLength) {
+        output.writerIndex(headerLength).readerIndex(headerLength);
+        return output;
+    }
+
+    private static ByteBuffer inputNioBuffer(ByteBuf buf) {
+        return buf.nioBuffer(buf.readerIndex(), buf.readableBytes());
+    }
+
+    private static ByteBuffer outputNioBuffer(ByteBuf buf) {
+        return buf.nioBuffer(buf.writerIndex(), buf.writableBytes());
+    }
 
     public static class SnappyCompressor extends FrameCompressor {
 
@@ -55,23 +95,99 @@ abstract class FrameCompressor {
             Snappy.getNativeLibraryVersion();
         }
 
-        public Frame compress(Frame frame) throws IOException {
-            byte[] input = CBUtil.readRawBytes(frame.body);
-            byte[] output = new byte[Snappy.maxCompressedLength(input.length)];
+        public Frame compress(Frame frame, ByteBufAllocator alloc) throws IOException {
+            ByteBuf input = frame.body;
+            int headerLength = Frame.Header.lengthFor(frame.header.version);
+            int maxCompressedLength = Snappy.maxCompressedLength(input.readableBytes());
+
+            if (isSingleDirectBuffer(input)) {
+                // Compress straight from the direct buffer into another one, no copy through the heap
+                ByteBuf output = reserveHeader(alloc.directBuffer(headerLength + maxCompressedLength), headerLength);
+                try {
+                    int written = Snappy.compress(inputNioBuffer(input), outputNioBuffer(output));
+                    output.writerIndex(output.writerIndex() + written);
+                    return frame.with(output);
+                } catch (IOException e) {
+                    output.release();
+                    throw e;
+                } catch (RuntimeException e) {
+                    output.release();
+                    throw e;
+                }
+            }
+
+            int inputLength = input.readableBytes();
+            byte[] in;
+            int inOffset;
+            if (input.hasArray()) {
+                in = input.array();
+                inOffset = input.arrayOffset() + input.readerIndex();
+            } else {
+                in = CBUtil.readRawBytes(input.duplicate());
+                inOffset = 0;
+            }
 
-            int written = Snappy.compress(input, 0, input.length, output, 0);
-            return frame.with(Unpooled.wrappedBuffer(output, 0, written));
+            ByteBuf output = reserveHeader(alloc.heapBuffer(headerLength + maxCompressedLength), headerLength);
+            try {
+                int written = Snappy.compress(in, inOffset, inputLength, output.array(), output.arrayOffset() + output.writerIndex());
+                output.writerIndex(output.writerIndex() + written);
+                return frame.with(output);
+            } catch (IOException e) {
+                output.release();
+                throw e;
+            } catch (RuntimeException e) {
+                output.release();
+                throw e;
+            }
         }
 
-        public Frame decompress(Frame frame) throws IOException {
-            byte[] input = CBUtil.readRawBytes(frame.body);
+        public Frame decompress(Frame frame, ByteBufAllocator alloc) throws IOException {
+            ByteBuf input = frame.body;
+
+            if (isSingleDirectBuffer(input)) {
+                ByteBuffer in = inputNioBuffer(input);
+                if (!Snappy.isValidCompressedBuffer(in))
+                    throw new DriverInternalError("Provided frame does not appear to be Snappy compressed");
 
-            if (!Snappy.isValidCompressedBuffer(input, 0, input.length))
+                ByteBuf output = alloc.directBuffer(Snappy.uncompressedLength(in));
+                try {
+                    int size = Snappy.uncompress(in, outputNioBuffer(output));
+                    output.writerIndex(output.writerIndex() + size);
+                    return frame.with(output);
+                } catch (IOException e) {
+                    output.release();
+                    throw e;
+                } catch (RuntimeException e) {
+                    output.release();
+                    throw e;
+                }
+            }
+
+            int inputLength = input.readableBytes();
+            byte[] in;
+            int inOffset;
+            if (input.hasArray()) {
+                in = input.array();
+                inOffset = input.arrayOffset() + input.readerIndex();
+            } else {
+                in = CBUtil.readRawBytes(input.duplicate());
+                inOffset = 0;
+            }
+            if (!Snappy.isValidCompressedBuffer(in, inOffset, inputLength))
                 throw new DriverInternalError("Provided frame does not appear to be Snappy compressed");
 
-            byte[] output = new byte[Snappy.uncompressedLength(input)];
-            int size = Snappy.uncompress(input, 0, input.length, output, 0);
-            return frame.with(Unpooled.wrappedBuffer(output, 0, size));
+            ByteBuf output = alloc.heapBuffer(Snappy.uncompressedLength(in, inOffset, inputLength));
+            try {
+                int size = Snappy.uncompress(in, inOffset, inputLength, output.array(), output.arrayOffset() + output.writerIndex());
+                output.writerIndex(output.writerIndex() + size);
+                return frame.with(output);
+            } catch (IOException e) {
+                output.release();
+                throw e;
+            } catch (RuntimeException e) {
+                output.release();
+                throw e;
+            }
         }
     }
 
@@ -103,43 +219,65 @@ abstract class FrameCompressor {
             decompressor = lz4Factory.fastDecompressor();
         }
 
-        public Frame compress(Frame frame) throws IOException {
-            byte[] input = CBUtil.readRawBytes(frame.body);
+        // The LZ4 version we depend on only works with arrays, so the best we can do is to avoid copies when the
+        // buffers are heap-based, and to allocate the output from the (pooled) allocator.
 
-            int maxCompressedLength = compressor.maxCompressedLength(input.length);
-            byte[] output = new byte[INTEGER_BYTES + maxCompressedLength];
+        public Frame compress(Frame frame, ByteBufAllocator alloc) throws IOException {
+            ByteBuf input = frame.body;
+            int inputLength = input.readableBytes();
 
-            output[0] = (byte) (input.length >>> 24);
-            output[1] = (byte) (input.length >>> 16);
-            output[2] = (byte) (input.length >>>  8);
-            output[3] = (byte) (input.length);
+            byte[] in;
+            int inOffset;
+            if (input.hasArray()) {
+                in = input.array();
+                inOffset = input.arrayOffset() + input.readerIndex();
+            } else {
+                in = CBUtil.readRawBytes(input.duplicate());
+                inOffset = 0;
+            }
 
+            int headerLength = Frame.Header.lengthFor(frame.header.version);
+            int maxCompressedLength = compressor.maxCompressedLength(inputLength);
+            ByteBuf output = reserveHeader(alloc.heapBuffer(headerLength + INTEGER_BYTES + maxCompressedLength), headerLength);
             try {
-                int written = compressor.compress(input, 0, input.length, output, INTEGER_BYTES, maxCompressedLength);
-                return frame.with(Unpooled.wrappedBuffer(output, 0, INTEGER_BYTES + written));
+                output.writeInt(inputLength);
+                int written = compressor.compress(in, inOffset, inputLength,
+                                                  output.array(), output.arrayOffset() + output.writerIndex(), maxCompressedLength);
+                output.writerIndex(output.writerIndex() + written);
+                return frame.with(output);
             } catch (Exception e) {
+                output.release();
                 throw new IOException(e);
             }
         }
 
-        public Frame decompress(Frame frame) throws IOException {
-            byte[] input = CBUtil.readRawBytes(frame.body);
+        public Frame decompress(Frame frame, ByteBufAllocator alloc) throws IOException {
+            ByteBuf input = frame.body;
+            int inputLength = input.readableBytes();
+            int uncompressedLength = input.getInt(input.readerIndex());
 
-            int uncompressedLength = ((input[0] & 0xFF) << 24)
-                                   | ((input[1] & 0xFF) << 16)
-                                   | ((input[2] & 0xFF) <<  8)
-                                   | ((input[3] & 0xFF));
-
-            byte[] output = new byte[uncompressedLength];
+            byte[] in;
+            int inOffset;
+            if (input.hasArray()) {
+                in = input.array();
+                inOffset = input.arrayOffset() + input.readerIndex();
+            } else {
+                in = CBUtil.readRawBytes(input.duplicate());
+                inOffset = 0;
+            }
 
+            ByteBuf output = alloc.heapBuffer(uncompressedLength);
             try {
-                int read = decompressor.decompress(input, INTEGER_BYTES, output, 0, uncompressedLength);
-                if (read != input.length - INTEGER_BYTES)
+                int read = decompressor.decompress(in, inOffset + INTEGER_BYTES,
+                                                   output.array(), output.arrayOffset() + output.writerIndex(), uncompressedLength);
+                if (read != inputLength - INTEGER_BYTES)
                     throw new IOException("Compressed lengths mismatch");
 
-                return frame.with(Unpooled.wrappedBuffer(output));
+                output.writerIndex(output.writerIndex() + uncompressedLength);
+                return frame.with(output);
             } catch (Exception e) {
-                throw new IOException(e);
+                output.release();
+                throw e instanceof IOException ? (IOException)e : new IOException(e);
             }
         }
     }
@@ -249,6 +249,19 @@ public class Host {
         this.manager.startSingleReconnectionAttempt(this);
     }
 
+    /**
+     * Returns the number of requests currently in flight to this host, across all the sessions of the cluster.
+     * <p>
+     * This is intended for load balancing policies that take the current load of each host into account. Unlike
+     * {@link Session.State#getInFlightQueries(Host)}, it reads the live counters of the connection pools without
+     * building a snapshot, so it is cheap enough to be called for each query.
+     *
+     * @return the number of requests in flight to this host.
+     */
+    public int getInFlightQueries() {
+        return manager == null ? 0 : manager.inFlightQueries(this);
+    }
+
     @Override
     public boolean equals(Object other) {
         if (other instanceof Host) {
@@ -17,17 +17,18 @@ package com.datastax.driver.core;
 
 import java.util.ArrayList;
 import java.util.List;
+import java.util.Queue;
 import java.util.Set;
 import java.util.concurrent.*;
 import java.util.concurrent.atomic.AtomicInteger;
 import java.util.concurrent.atomic.AtomicReference;
-import java.util.concurrent.locks.Condition;
-import java.util.concurrent.locks.Lock;
-import java.util.concurrent.locks.ReentrantLock;
 
 import com.google.common.annotations.VisibleForTesting;
+import com.google.common.base.Throwables;
 import com.google.common.collect.Lists;
 import com.google.common.util.concurrent.*;
+import io.netty.util.Timeout;
+import io.netty.util.TimerTask;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -58,9 +59,10 @@ class HostConnectionPool {
     @VisibleForTesting
     final Set<Connection> trash = new CopyOnWriteArraySet<Connection>();
 
-    private volatile int waiter = 0;
-    private final Lock waitLock = new ReentrantLock(true);
-    private final Condition hasAvailableConnection = waitLock.newCondition();
+    // Borrows waiting for a connection to be returned to the pool. The queue is unbounded but we bound it through
+    // pendingBorrowCount (ConcurrentLinkedQueue.size() is not constant-time).
+    private final Queue<PendingBorrow> pendingBorrows = new ConcurrentLinkedQueue<PendingBorrow>();
+    private final AtomicInteger pendingBorrowCount = new AtomicInteger();
 
     private final Runnable newConnectionTask;
 
@@ -165,12 +167,42 @@ class HostConnectionPool {
         return manager.configuration().getPoolingOptions();
     }
 
+    /**
+     * Borrows a connection from the pool, blocking until one is available.
+     * <p>
+     * This is a convenience for internal callers that are already on a blocking thread; requests
+     * should use {@link #borrowConnectionAsync(long, TimeUnit)}.
+     */
     public Connection borrowConnection(long timeout, TimeUnit unit) throws ConnectionException, TimeoutException {
+        try {
+            return Uninterruptibles.getUninterruptibly(borrowConnectionAsync(timeout, unit));
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof ConnectionException)
+                throw (ConnectionException)cause;
+            if (cause instanceof TimeoutException)
+                throw (TimeoutException)cause;
+            if (cause instanceof BusyPoolException)
+                throw new TimeoutException(cause.getMessage());
+            throw Throwables.propagate(cause);
+        }
+    }
+
+    /**
+     * Borrows a connection from the pool.
+     * <p>
+     * If a connection is available, the returned future is already completed. Otherwise, the borrow is
+     * put in a wait queue and completed by {@link #returnConnection(Connection)} as soon as a connection
+     * frees up; the calling thread is never blocked. If that does not happen within {@code timeout}, the
+     * future fails with a {@code TimeoutException}. If the queue is full, it fails immediately with a
+     * {@code BusyPoolException}.
+     */
+    ListenableFuture<Connection> borrowConnectionAsync(long timeout, TimeUnit unit) {
         Phase phase = this.phase.get();
         if (phase != Phase.READY)
-            // Note: throwing a ConnectionException is probably fine in practice as it will trigger the creation of a new host.
+            // Note: failing with a ConnectionException is probably fine in practice as it will trigger the creation of a new host.
             // That being said, maybe having a specific exception could be cleaner.
-            throw new ConnectionException(host.getSocketAddress(), "Pool is " + phase);
+            return Futures.immediateFailedFuture(new ConnectionException(host.getSocketAddress(), "Pool is " + phase));
 
         if (connections.isEmpty()) {
             for (int i = 0; i < options().getCoreConnectionsPerHost(hostDistance); i++) {
@@ -179,10 +211,7 @@ class HostConnectionPool {
                 scheduledForCreation.incrementAndGet();
                 manager.blockingExecutor().submit(newConnectionTask);
             }
-            Connection c = waitForConnection(timeout, unit);
-            totalInFlight.incrementAndGet();
-            c.setKeyspace(manager.poolsState.keyspace);
-            return c;
+            return enqueue(timeout, unit);
         }
 
         int minInFlight = Integer.MAX_VALUE;
@@ -198,19 +227,17 @@ class HostConnectionPool {
         if (leastBusy == null) {
             // We could have raced with a shutdown since the last check
             if (isClosed())
-                throw new ConnectionException(host.getSocketAddress(), "Pool is shutdown");
+                return Futures.immediateFailedFuture(new ConnectionException(host.getSocketAddress(), "Pool is shutdown"));
             // This might maybe happen if the number of core connections per host is 0 and a connection was trashed between
             // the previous check to connections and now. But in that case, the line above will have trigger the creation of
             // a new connection, so just wait that connection and move on
-            leastBusy = waitForConnection(timeout, unit);
+            return enqueue(timeout, unit);
         } else {
             while (true) {
                 int inFlight = leastBusy.inFlight.get();
 
-                if (inFlight >= Math.min(leastBusy.maxAvailableStreams(), options().getMaxRequestsPerConnection(hostDistance))) {
-                    leastBusy = waitForConnection(timeout, unit);
-                    break;
-                }
+                if (inFlight >= Math.min(leastBusy.maxAvailableStreams(), options().getMaxRequestsPerConnection(hostDistance)))
+                    return enqueue(timeout, unit);
 
                 if (leastBusy.inFlight.compareAndSet(inFlight, inFlight + 1))
                     break;
@@ -234,93 +261,99 @@ class HostConnectionPool {
                 maybeSpawnNewConnection();
         }
 
-        leastBusy.setKeyspace(manager.poolsState.keyspace);
-        return leastBusy;
-    }
-
-    private void awaitAvailableConnection(long timeout, TimeUnit unit) throws InterruptedException {
-        waitLock.lock();
-        waiter++;
         try {
-            hasAvailableConnection.await(timeout, unit);
-        } finally {
-            waiter--;
-            waitLock.unlock();
+            leastBusy.setKeyspace(manager.poolsState.keyspace);
+        } catch (ConnectionException e) {
+            returnConnection(leastBusy);
+            return Futures.immediateFailedFuture(e);
         }
+        return Futures.immediateFuture(leastBusy);
     }
 
-    private void signalAvailableConnection() {
-        // Quick check if it's worth signaling to avoid locking
-        if (waiter == 0)
-            return;
+    private ListenableFuture<Connection> enqueue(long timeout, TimeUnit unit) {
+        if (timeout == 0)
+            return Futures.immediateFailedFuture(new TimeoutException());
 
-        waitLock.lock();
-        try {
-            hasAvailableConnection.signal();
-        } finally {
-            waitLock.unlock();
+        int maxQueueSize = options().getMaxQueueSize();
+        while (true) {
+            int count = pendingBorrowCount.get();
+            if (count >= maxQueueSize)
+                return Futures.immediateFailedFuture(new BusyPoolException(count));
+            if (pendingBorrowCount.compareAndSet(count, count + 1))
+                break;
         }
-    }
 
-    private void signalAllAvailableConnection() {
-        // Quick check if it's worth signaling to avoid locking
-        if (waiter == 0)
-            return;
+        // All connections are busy, so this is a good time to grow the pool if we're allowed to
+        if (open.get() + scheduledForCreation.get() < options().getMaxConnectionsPerHost(hostDistance))
+            maybeSpawnNewConnection();
 
-        waitLock.lock();
-        try {
-            hasAvailableConnection.signalAll();
-        } finally {
-            waitLock.unlock();
+        PendingBorrow pendingBorrow = new PendingBorrow(timeout, unit);
+        pendingBorrows.add(pendingBorrow);
+
+        // A connection might have been returned between our initial check and the enqueue, in which case nobody
+        // would dequeue us until the next return.
+        for (Connection connection : connections)
+            dequeue(connection);
+
+        // If we raced with shutdown, make sure the borrow gets completed (closeAsync might have drained the queue
+        // before we added to it).
+        if (isClosed() && pendingBorrows.remove(pendingBorrow)) {
+            pendingBorrowCount.decrementAndGet();
+            pendingBorrow.setException(new ConnectionException(host.getSocketAddress(), "Pool is shutdown"));
         }
+        return pendingBorrow.future;
     }
 
-    private Connection waitForConnection(long timeout, TimeUnit unit) throws ConnectionException, TimeoutException {
-        if (timeout == 0)
-            throw new TimeoutException();
-
-        long start = System.nanoTime();
-        long remaining = timeout;
-        do {
-            try {
-                awaitAvailableConnection(remaining, unit);
-            } catch (InterruptedException e) {
-                Thread.currentThread().interrupt();
-                // If we're interrupted fine, check if there is a connection available but stop waiting otherwise
-                timeout = 0; // this will make us stop the loop if we don't get a connection right away
-            }
-
-            if (isClosed())
-                throw new ConnectionException(host.getSocketAddress(), "Pool is shutdown");
+    /**
+     * Hands {@code connection} to waiting borrowers, for as long as it has available slots.
+     */
+    private void dequeue(final Connection connection) {
+        while (!pendingBorrows.isEmpty()) {
 
-            int minInFlight = Integer.MAX_VALUE;
-            Connection leastBusy = null;
-            for (Connection connection : connections) {
+            // Reserve a slot on the connection first, we might be competing with borrowConnectionAsync or other dequeue calls.
+            while (true) {
                 int inFlight = connection.inFlight.get();
-                if (inFlight < minInFlight) {
-                    minInFlight = inFlight;
-                    leastBusy = connection;
-                }
+                if (inFlight >= Math.min(connection.maxAvailableStreams(), options().getMaxRequestsPerConnection(hostDistance)))
+                    return;
+                if (connection.inFlight.compareAndSet(inFlight, inFlight + 1))
+                    break;
             }
+            totalInFlight.incrementAndGet();
 
-            // If we race with shutdown, leastBusy could be null. In that case we just loop and we'll throw on the next
-            // iteration anyway
-            if (leastBusy != null) {
-                while (true) {
-                    int inFlight = leastBusy.inFlight.get();
-
-                    if (inFlight >= Math.min(leastBusy.maxAvailableStreams(), options().getMaxRequestsPerConnection(hostDistance)))
-                        break;
-
-                    if (leastBusy.inFlight.compareAndSet(inFlight, inFlight + 1))
-                        return leastBusy;
+            final PendingBorrow pendingBorrow = pendingBorrows.poll();
+            if (pendingBorrow == null) {
+                // Another thread emptied the queue since our last check
+                connection.inFlight.decrementAndGet();
+                totalInFlight.decrementAndGet();
+                return;
+            }
+            pendingBorrowCount.decrementAndGet();
+
+            final String keyspace = manager.poolsState.keyspace;
+            if (keyspace == null || keyspace.equals(connection.keyspace())) {
+                if (!pendingBorrow.set(connection)) {
+                    // The borrow timed out concurrently, give the slot to the next one
+                    connection.inFlight.decrementAndGet();
+                    totalInFlight.decrementAndGet();
                 }
+            } else {
+                // Switching the keyspace blocks, and we're probably on an I/O thread here
+                manager.blockingExecutor().submit(new Runnable() {
+                    @Override
+                    public void run() {
+                        try {
+                            connection.setKeyspace(keyspace);
+                        } catch (ConnectionException e) {
+                            pendingBorrow.setException(e);
+                            returnConnection(connection);
+                            return;
+                        }
+                        if (!pendingBorrow.set(connection))
+                            returnConnection(connection);
+                    }
+                });
             }
-
-            remaining = timeout - Cluster.timeSince(start, unit);
-        } while (remaining > 0);
-
-        throw new TimeoutException();
+        }
     }
 
     public void returnConnection(Connection connection) {
@@ -342,7 +375,7 @@ class HostConnectionPool {
             if (connection.maxAvailableStreams() < minAllowedStreams) {
                 replaceConnection(connection);
             } else {
-                signalAvailableConnection();
+                dequeue(connection);
             }
         }
     }
@@ -419,7 +452,7 @@ class HostConnectionPool {
                 return false;
             }
 
-            signalAvailableConnection();
+            dequeue(newConnection);
             return true;
         } catch (InterruptedException e) {
             Thread.currentThread().interrupt();
@@ -560,8 +593,12 @@ class HostConnectionPool {
 
         phase.set(Phase.CLOSING);
 
-        // Wake up all threads that wait
-        signalAllAvailableConnection();
+        // Fail all borrows that are waiting for a connection
+        PendingBorrow pendingBorrow;
+        while ((pendingBorrow = pendingBorrows.poll()) != null) {
+            pendingBorrowCount.decrementAndGet();
+            pendingBorrow.setException(new ConnectionException(host.getSocketAddress(), "Pool is shutdown"));
+        }
 
         future = new CloseFuture.Forwarding(discardAvailableConnections());
 
@@ -578,6 +615,10 @@ class HostConnectionPool {
         return trash.size();
     }
 
+    int pendingBorrowCount() {
+        return pendingBorrowCount.get();
+    }
+
     private List<CloseFuture> discardAvailableConnections() {
         // Note: if this gets called before initialization has completed, both connections and trash will be empty,
         // so this will return an empty list
@@ -620,6 +661,39 @@ class HostConnectionPool {
         }
     }
 
+    private class PendingBorrow {
+        final SettableFuture<Connection> future = SettableFuture.create();
+        final long startTime = System.nanoTime();
+        final Timeout timeout;
+
+        PendingBorrow(long timeout, TimeUnit unit) {
+            this.timeout = manager.connectionFactory().timer.newTimeout(new TimerTask() {
+                @Override
+                public void run(Timeout t) {
+                    // If we can't remove ourselves, dequeue() has already polled us and will deal with the failed set()
+                    if (pendingBorrows.remove(PendingBorrow.this))
+                        pendingBorrowCount.decrementAndGet();
+                    future.setException(new TimeoutException());
+                }
+            }, timeout, unit);
+        }
+
+        boolean set(Connection connection) {
+            if (!future.set(connection))
+                return false;
+            timeout.cancel();
+            Metrics metrics = manager.cluster.manager.metrics;
+            if (metrics != null)
+                metrics.getConnectionAcquireWaitTimer().update(System.nanoTime() - startTime, TimeUnit.NANOSECONDS);
+            return true;
+        }
+
+        void setException(Throwable t) {
+            future.setException(t);
+            timeout.cancel();
+        }
+    }
+
     static class PoolState {
         volatile String keyspace;
 
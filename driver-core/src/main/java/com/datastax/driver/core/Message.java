@@ -204,13 +204,30 @@ abstract class Message {
     @ChannelHandler.Sharable
     public static class ProtocolDecoder extends MessageToMessageDecoder<Frame> {
 
+        private final boolean sharedPageBuffers;
+
+        public ProtocolDecoder() {
+            this(false);
+        }
+
+        /**
+         * @param sharedPageBuffers whether to decode rows with {@link Responses.Result.Rows#pageBufferSubcodec}.
+         */
+        public ProtocolDecoder(boolean sharedPageBuffers) {
+            this.sharedPageBuffers = sharedPageBuffers;
+        }
+
         @Override
         protected void decode(ChannelHandlerContext ctx, Frame frame, List<Object> out) throws Exception {
             boolean isTracing = frame.header.flags.contains(Frame.Header.Flag.TRACING);
             UUID tracingId = isTracing ? CBUtil.readUUID(frame.body) : null;
 
             try {
-                Response response = Response.Type.fromOpcode(frame.header.opcode).decoder.decode(frame.body, frame.header.version);
+                Response.Type type = Response.Type.fromOpcode(frame.header.opcode);
+                Decoder<?> decoder = (sharedPageBuffers && type == Response.Type.RESULT)
+                    ? Responses.Result.pageBufferDecoder
+                    : type.decoder;
+                Response response = decoder.decode(frame.body, frame.header.version);
                 response.setTracingId(tracingId).setStreamId(frame.header.streamId);
                 out.add(response);
             } finally {
@@ -236,7 +253,11 @@ abstract class Message {
 
             @SuppressWarnings("unchecked")
             Coder<Request> coder = (Coder<Request>)request.type.coder;
-            ByteBuf body = ctx.alloc().buffer(coder.encodedSize(request, protocolVersion));
+            // Reserve room for the header in front of the body, Frame.Encoder will fill it and send everything
+            // as a single buffer.
+            int headerLength = Frame.Header.lengthFor(protocolVersion);
+            ByteBuf body = ctx.alloc().ioBuffer(headerLength + coder.encodedSize(request, protocolVersion));
+            body.writerIndex(headerLength).readerIndex(headerLength);
             coder.encode(request, body, protocolVersion);
 
             out.add(Frame.create(protocolVersion, request.type.opcode, request.getStreamId(), flags, body));
@@ -18,13 +18,16 @@ package com.datastax.driver.core;
 import java.net.InetSocketAddress;
 import java.nio.ByteBuffer;
 import java.util.*;
-import java.util.concurrent.ConcurrentHashMap;
-import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
 import java.util.regex.Pattern;
 
+import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ImmutableMap;
 import com.google.common.collect.ImmutableSet;
 import com.google.common.collect.Maps;
+import com.google.common.util.concurrent.Uninterruptibles;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -204,7 +207,7 @@ public class Metadata {
         if (factory == null)
             return;
 
-        this.tokenMap = TokenMap.build(factory, allTokens, keyspaces.values());
+        this.tokenMap = TokenMap.build(factory, allTokens, keyspaces.values(), tokenMap, cluster.executor);
     }
 
     Host add(InetSocketAddress address) {
@@ -304,7 +307,8 @@ public class Metadata {
         if (current == null) {
             return Collections.emptySet();
         } else {
-            Map<Host, Set<TokenRange>> dcRanges = current.hostsToRanges.get(keyspace);
+            TokenMap.KeyspaceReplicas keyspaceReplicas = current.replicas.get(keyspace);
+            Map<Host, Set<TokenRange>> dcRanges = (keyspaceReplicas == null) ? null : keyspaceReplicas.hostsToRanges;
             if (dcRanges == null) {
                 return Collections.emptySet();
             } else {
@@ -333,11 +337,49 @@ public class Metadata {
         if (current == null) {
             return Collections.emptySet();
         } else {
-            Set<Host> hosts = current.getReplicas(keyspace, current.factory.hash(partitionKey));
+            Set<Host> hosts = current.getReplicas(keyspace, partitionKey);
             return hosts == null ? Collections.<Host>emptySet() : hosts;
         }
     }
 
+    /**
+     * Returns the set of hosts that are replica for the routing key of a statement.
+     * <p>
+     * This is equivalent to {@code getReplicas(keyspace, statement.getRoutingKey())}, except that with the
+     * Murmur3 partitioner, the token of the routing key of a {@link BoundStatement} is computed only once (until
+     * one of its values changes).
+     * <p>
+     * Note that this information is refreshed asynchronously by the control
+     * connection, when schema or ring topology changes. It might occasionally
+     * be stale (or even empty).
+     *
+     * @param keyspace the name of the keyspace to get replicas for.
+     * @param statement the statement.
+     * @return the (immutable) set of replicas for the routing key of {@code statement} as known by the driver,
+     * or {@code null} if the statement has no routing key.
+     */
+    public Set<Host> getReplicas(String keyspace, Statement statement) {
+        keyspace = handleId(keyspace);
+        TokenMap current = tokenMap;
+        if (current == null)
+            return statement.getRoutingKey() == null ? null : Collections.<Host>emptySet();
+
+        Set<Host> hosts;
+        if (current.m3pRing != null) {
+            // Murmur3 fast path: search the value of the token, don't allocate one
+            long token = statement.getMurmur3RoutingToken();
+            if (token == Statement.NO_ROUTING_TOKEN)
+                return null;
+            hosts = current.getReplicas(keyspace, token);
+        } else {
+            Token token = statement.getRoutingToken(current.factory);
+            if (token == null)
+                return null;
+            hosts = current.getReplicas(keyspace, token);
+        }
+        return hosts == null ? Collections.<Host>emptySet() : hosts;
+    }
+
     /**
      * Returns the set of hosts that are replica for a given token range.
      * <p>
@@ -423,7 +465,7 @@ public class Metadata {
     void removeKeyspace(String keyspace) {
         keyspaces.remove(keyspace);
         if (tokenMap != null)
-            tokenMap.tokenToHosts.remove(keyspace);
+            tokenMap.replicas.remove(keyspace);
     }
 
     /**
@@ -495,104 +537,301 @@ public class Metadata {
     static class TokenMap {
 
         private final Token.Factory factory;
-        private final Map<String, Map<Token, Set<Host>>> tokenToHosts;
-        private final Map<String, Map<Host, Set<TokenRange>>> hostsToRanges;
+        // The tokens and locations of the hosts the ring was built from, to detect when it can be reused
+        private final Map<Host, Set<String>> tokensByHost;
+        private final Map<Host, List<String>> locations;
+        private final Map<Token, Host> tokenToPrimary;
         private final List<Token> ring;
+        // The values of the tokens of the ring if the partitioner is Murmur3, null otherwise
+        private final long[] m3pRing;
         private final Set<TokenRange> tokenRanges;
         final Set<Host> hosts;
+        // Keyspaces with the same replication settings share the same instance. The null key is used for
+        // keyspaces without a (supported) replication strategy.
+        private final Map<ReplicationStrategy, KeyspaceReplicas> replicasByStrategy;
+        final Map<String, KeyspaceReplicas> replicas;
 
         private TokenMap(Token.Factory factory,
-                         Map<Host, Set<Token>> primaryToTokens,
-                         Map<String, Map<Token, Set<Host>>> tokenToHosts,
-                         Map<String, Map<Host, Set<TokenRange>>> hostsToRanges,
-                         List<Token> ring, Set<TokenRange> tokenRanges, Set<Host> hosts) {
+                         Map<Host, Set<String>> tokensByHost,
+                         Map<Host, List<String>> locations,
+                         Map<Token, Host> tokenToPrimary,
+                         List<Token> ring, long[] m3pRing, Set<TokenRange> tokenRanges,
+                         Map<ReplicationStrategy, KeyspaceReplicas> replicasByStrategy,
+                         Map<String, KeyspaceReplicas> replicas) {
             this.factory = factory;
-            this.tokenToHosts = tokenToHosts;
-            this.hostsToRanges = hostsToRanges;
+            this.tokensByHost = tokensByHost;
+            this.locations = locations;
+            this.tokenToPrimary = tokenToPrimary;
             this.ring = ring;
+            this.m3pRing = m3pRing;
             this.tokenRanges = tokenRanges;
-            this.hosts = hosts;
-            for (Map.Entry<Host, Set<Token>> entry : primaryToTokens.entrySet()) {
-                Host host = entry.getKey();
-                host.setTokens(ImmutableSet.copyOf(entry.getValue()));
-            }
+            this.hosts = tokensByHost.keySet();
+            this.replicasByStrategy = replicasByStrategy;
+            this.replicas = replicas;
         }
 
         public static TokenMap build(Token.Factory factory, Map<Host, Collection<String>> allTokens, Collection<KeyspaceMetadata> keyspaces) {
+            return build(factory, allTokens, keyspaces, null, null);
+        }
 
-            Set<Host> hosts = allTokens.keySet();
-            Map<Token, Host> tokenToPrimary = new HashMap<Token, Host>();
-            Map<Host, Set<Token>> primaryToTokens = new HashMap<Host, Set<Token>>();
-            Set<Token> allSorted = new TreeSet<Token>();
-
+        /**
+         * Builds a new token map.
+         *
+         * @param previous the current token map, if any. If the tokens and locations of the hosts have not changed
+         * since it was built, its ring and the replicas it computed are reused, so only the replication
+         * strategies that it did not know are computed.
+         * @param executor if not null, distinct replication strategies are computed in parallel with the help
+         * of this executor.
+         */
+        static TokenMap build(Token.Factory factory, Map<Host, Collection<String>> allTokens, Collection<KeyspaceMetadata> keyspaces,
+                              TokenMap previous, Executor executor) {
+
+            Map<Host, Set<String>> tokensByHost = new HashMap<Host, Set<String>>(allTokens.size());
+            Map<Host, List<String>> locations = new HashMap<Host, List<String>>(allTokens.size());
             for (Map.Entry<Host, Collection<String>> entry : allTokens.entrySet()) {
                 Host host = entry.getKey();
-                for (String tokenStr : entry.getValue()) {
-                    try {
-                        Token t = factory.fromString(tokenStr);
-                        allSorted.add(t);
-                        tokenToPrimary.put(t, host);
-                        Set<Token> hostTokens = primaryToTokens.get(host);
-                        if (hostTokens == null) {
-                            hostTokens = new HashSet<Token>();
-                            primaryToTokens.put(host, hostTokens);
+                tokensByHost.put(host, ImmutableSet.copyOf(entry.getValue()));
+                locations.put(host, Arrays.asList(host.getDatacenter(), host.getRack()));
+            }
+
+            Map<Token, Host> tokenToPrimary;
+            List<Token> ring;
+            long[] m3pRing;
+            Set<TokenRange> tokenRanges;
+            Map<ReplicationStrategy, KeyspaceReplicas> reusable;
+            if (previous != null && previous.factory == factory
+                && previous.tokensByHost.equals(tokensByHost) && previous.locations.equals(locations)
+                && sameInstances(previous.hosts, tokensByHost.keySet())) {
+                tokenToPrimary = previous.tokenToPrimary;
+                ring = previous.ring;
+                m3pRing = previous.m3pRing;
+                tokenRanges = previous.tokenRanges;
+                reusable = previous.replicasByStrategy;
+            } else {
+                tokenToPrimary = new HashMap<Token, Host>();
+                Map<Host, Set<Token>> primaryToTokens = new HashMap<Host, Set<Token>>();
+                Set<Token> allSorted = new TreeSet<Token>();
+
+                for (Map.Entry<Host, Set<String>> entry : tokensByHost.entrySet()) {
+                    Host host = entry.getKey();
+                    for (String tokenStr : entry.getValue()) {
+                        try {
+                            Token t = factory.fromString(tokenStr);
+                            allSorted.add(t);
+                            tokenToPrimary.put(t, host);
+                            Set<Token> hostTokens = primaryToTokens.get(host);
+                            if (hostTokens == null) {
+                                hostTokens = new HashSet<Token>();
+                                primaryToTokens.put(host, hostTokens);
+                            }
+                            hostTokens.add(t);
+                        } catch (IllegalArgumentException e) {
+                            // If we failed parsing that token, skip it
                         }
-                        hostTokens.add(t);
-                    } catch (IllegalArgumentException e) {
-                        // If we failed parsing that token, skip it
                     }
                 }
+                for (Map.Entry<Host, Set<Token>> entry : primaryToTokens.entrySet())
+                    entry.getKey().setTokens(ImmutableSet.copyOf(entry.getValue()));
+
+                ring = new ArrayList<Token>(allSorted);
+                if (factory == Token.M3PToken.FACTORY) {
+                    m3pRing = new long[ring.size()];
+                    for (int i = 0; i < ring.size(); i++)
+                        m3pRing[i] = ((Token.M3PToken)ring.get(i)).longValue();
+                } else {
+                    m3pRing = null;
+                }
+                tokenRanges = makeTokenRanges(ring, factory);
+                reusable = Collections.emptyMap();
             }
 
-            List<Token> ring = new ArrayList<Token>(allSorted);
-            Set<TokenRange> tokenRanges = makeTokenRanges(ring, factory);
+            // Only compute each distinct strategy once
+            Map<ReplicationStrategy, KeyspaceReplicas> replicasByStrategy = new HashMap<ReplicationStrategy, KeyspaceReplicas>();
+            List<ReplicationStrategy> toCompute = new ArrayList<ReplicationStrategy>();
+            for (KeyspaceMetadata keyspace : keyspaces) {
+                ReplicationStrategy strategy = keyspace.replicationStrategy();
+                if (replicasByStrategy.containsKey(strategy) || toCompute.contains(strategy))
+                    continue;
+                KeyspaceReplicas existing = reusable.get(strategy);
+                if (existing != null)
+                    replicasByStrategy.put(strategy, existing);
+                else
+                    toCompute.add(strategy);
+            }
+            replicasByStrategy.putAll(computeReplicas(toCompute, tokenToPrimary, ring, tokenRanges, tokensByHost.keySet(), executor));
 
-            Map<String, Map<Token, Set<Host>>> tokenToHosts = new HashMap<String, Map<Token, Set<Host>>>();
-            Map<String, Map<Host, Set<TokenRange>>> hostsToRanges = new HashMap<String, Map<Host, Set<TokenRange>>>();
+            Map<String, KeyspaceReplicas> replicas = new HashMap<String, KeyspaceReplicas>();
             for (KeyspaceMetadata keyspace : keyspaces)
-            {
-                ReplicationStrategy strategy = keyspace.replicationStrategy();
-                Map<Token, Set<Host>> ksTokens = (strategy == null)
-                    ? makeNonReplicatedMap(tokenToPrimary)
-                    : strategy.computeTokenToReplicaMap(tokenToPrimary, ring);
-
-                tokenToHosts.put(keyspace.getName(), ksTokens);
-
-                Map<Host, Set<TokenRange>> ksRanges;
-                if (ring.size() == 1) {
-                    // We forced the single range to ]minToken,minToken], make sure to use that instead of relying on the host's token
-                    ImmutableMap.Builder<Host, Set<TokenRange>> builder = ImmutableMap.builder();
-                    for (Host host : allTokens.keySet())
-                        builder.put(host, tokenRanges);
-                    ksRanges = builder.build();
-                } else {
-                    ksRanges = computeHostsToRangesMap(tokenRanges, ksTokens, hosts.size());
+                replicas.put(keyspace.getName(), replicasByStrategy.get(keyspace.replicationStrategy()));
+
+            return new TokenMap(factory, tokensByHost, locations, tokenToPrimary, ring, m3pRing, tokenRanges,
+                replicasByStrategy, replicas);
+        }
+
+        // Host equality is based on the address, but a host that was removed and added back is a new instance
+        private static boolean sameInstances(Set<Host> previousHosts, Set<Host> hosts) {
+            Set<Host> previous = Collections.newSetFromMap(new IdentityHashMap<Host, Boolean>());
+            previous.addAll(previousHosts);
+            for (Host host : hosts)
+                if (!previous.contains(host))
+                    return false;
+            return true;
+        }
+
+        /**
+         * Computes the replicas of several strategies. If an executor is provided, its threads help the current
+         * thread: each strategy is computed by whichever thread picks it first, so this never waits for a task
+         * that has not started (which could deadlock if this runs on the executor itself).
+         */
+        private static Map<ReplicationStrategy, KeyspaceReplicas> computeReplicas(final List<ReplicationStrategy> strategies,
+                                                                                  final Map<Token, Host> tokenToPrimary,
+                                                                                  final List<Token> ring,
+                                                                                  final Set<TokenRange> tokenRanges,
+                                                                                  final Set<Host> hosts,
+                                                                                  Executor executor) {
+            final KeyspaceReplicas[] results = new KeyspaceReplicas[strategies.size()];
+            final AtomicInteger next = new AtomicInteger();
+            final AtomicInteger remaining = new AtomicInteger(strategies.size());
+            final AtomicReference<RuntimeException> error = new AtomicReference<RuntimeException>();
+            final CountDownLatch done = new CountDownLatch(1);
+
+            Runnable worker = new Runnable() {
+                @Override
+                public void run() {
+                    int i;
+                    while ((i = next.getAndIncrement()) < strategies.size()) {
+                        try {
+                            ReplicationStrategy strategy = strategies.get(i);
+                            Map<Token, Set<Host>> ksTokens = (strategy == null)
+                                ? makeNonReplicatedMap(tokenToPrimary)
+                                : strategy.computeTokenToReplicaMap(tokenToPrimary, ring);
+                            results[i] = new KeyspaceReplicas(ReplicaIndex.build(ring, ksTokens),
+                                computeHostsToRangesMap(ring, tokenRanges, ksTokens, hosts));
+                        } catch (RuntimeException e) {
+                            error.compareAndSet(null, e);
+                        } finally {
+                            if (remaining.decrementAndGet() == 0)
+                                done.countDown();
+                        }
+                    }
+                }
+            };
+
+            if (executor != null) {
+                for (int i = 1; i < strategies.size(); i++) {
+                    try {
+                        executor.execute(worker);
+                    } catch (RejectedExecutionException e) {
+                        // The executor is shutting down, we'll do the work ourselves
+                        break;
+                    }
                 }
-                hostsToRanges.put(keyspace.getName(), ksRanges);
             }
-            return new TokenMap(factory, primaryToTokens, tokenToHosts, hostsToRanges, ring, tokenRanges, hosts);
+            worker.run();
+            if (!strategies.isEmpty())
+                Uninterruptibles.awaitUninterruptibly(done);
+            if (error.get() != null)
+                throw error.get();
+
+            Map<ReplicationStrategy, KeyspaceReplicas> computed = new HashMap<ReplicationStrategy, KeyspaceReplicas>(strategies.size());
+            for (int i = 0; i < strategies.size(); i++)
+                computed.put(strategies.get(i), results[i]);
+            return computed;
+        }
+
+        Set<Host> getReplicas(String keyspace, Token token) {
+            KeyspaceReplicas keyspaceReplicas = replicas.get(keyspace);
+            if (keyspaceReplicas == null || ring.isEmpty())
+                return Collections.emptySet();
+
+            int i = (m3pRing == null)
+                ? Collections.binarySearch(ring, token)
+                : Arrays.binarySearch(m3pRing, ((Token.M3PToken)token).longValue());
+            return keyspaceReplicas.index.get(ringIndex(i));
         }
 
-        private Set<Host> getReplicas(String keyspace, Token token) {
+        Set<Host> getReplicas(String keyspace, ByteBuffer partitionKey) {
+            if (m3pRing == null)
+                return getReplicas(keyspace, factory.hash(partitionKey));
+
+            // Murmur3 fast path: hash straight to the token value
+            return getReplicas(keyspace, Token.M3PToken.hashToLong(partitionKey));
+        }
 
-            Map<Token, Set<Host>> keyspaceHosts = tokenToHosts.get(keyspace);
-            if (keyspaceHosts == null)
+        // Only valid with a Murmur3 ring
+        Set<Host> getReplicas(String keyspace, long m3pToken) {
+            KeyspaceReplicas keyspaceReplicas = replicas.get(keyspace);
+            if (keyspaceReplicas == null || m3pRing.length == 0)
                 return Collections.emptySet();
+            int i = Arrays.binarySearch(m3pRing, m3pToken);
+            return keyspaceReplicas.index.get(ringIndex(i));
+        }
+
+        /**
+         * Converts the result of a binary search in the ring into the index of the token that owns the searched
+         * token, i.e. the closest token that is greater or equal.
+         */
+        private int ringIndex(int searchResult) {
+            if (searchResult >= 0)
+                return searchResult;
+            int i = -searchResult - 1;
+            return (i >= ring.size()) ? 0 : i;
+        }
+
+        /**
+         * The replicas of the keyspaces that use a given replication strategy.
+         */
+        static class KeyspaceReplicas {
+            final ReplicaIndex index;
+            final Map<Host, Set<TokenRange>> hostsToRanges;
 
-            // If the token happens to be one of the "primary" tokens, get result directly
-            Set<Host> hosts = keyspaceHosts.get(token);
-            if (hosts != null)
-                return hosts;
-
-            // Otherwise, find closest "primary" token on the ring
-            int i = Collections.binarySearch(ring, token);
-            if (i < 0) {
-                i = -i - 1;
-                if (i >= ring.size())
-                    i = 0;
+            KeyspaceReplicas(ReplicaIndex index, Map<Host, Set<TokenRange>> hostsToRanges) {
+                this.index = index;
+                this.hostsToRanges = hostsToRanges;
+            }
+        }
+
+        /**
+         * The replicas of a keyspace for each token of the ring.
+         * <p>
+         * Many ring positions have the same replicas, so the distinct replica sets are stored once, and each
+         * position only holds the index of its set.
+         */
+        static class ReplicaIndex {
+            private final List<Set<Host>> replicaSets;
+            private final int[] setIndexes;
+
+            private ReplicaIndex(List<Set<Host>> replicaSets, int[] setIndexes) {
+                this.replicaSets = replicaSets;
+                this.setIndexes = setIndexes;
             }
 
-            return keyspaceHosts.get(ring.get(i));
+            static ReplicaIndex build(List<Token> ring, Map<Token, Set<Host>> tokenToReplicas) {
+                // Sets are merged on their iteration order, not on Set.equals: the strategies put the primary
+                // replica first, and sets holding the same hosts in a different order must stay distinct
+                Map<List<Host>, Integer> indexes = new HashMap<List<Host>, Integer>();
+                ImmutableList.Builder<Set<Host>> sets = ImmutableList.builder();
+                int setCount = 0;
+                int[] setIndexes = new int[ring.size()];
+                for (int i = 0; i < ring.size(); i++) {
+                    Set<Host> replicas = tokenToReplicas.get(ring.get(i));
+                    if (replicas == null)
+                        replicas = Collections.emptySet();
+                    List<Host> key = ImmutableList.copyOf(replicas);
+                    Integer index = indexes.get(key);
+                    if (index == null) {
+                        index = setCount++;
+                        indexes.put(key, index);
+                        sets.add(replicas);
+                    }
+                    setIndexes[i] = index;
+                }
+                return new ReplicaIndex(sets.build(), setIndexes);
+            }
+
+            Set<Host> get(int ringIndex) {
+                return replicaSets.get(setIndexes[ringIndex]);
+            }
         }
 
         private static Map<Token, Set<Host>> makeNonReplicatedMap(Map<Token, Host> input) {
@@ -617,7 +856,16 @@ public class Metadata {
             return builder.build();
         }
 
-        private static Map<Host, Set<TokenRange>> computeHostsToRangesMap(Set<TokenRange> tokenRanges, Map<Token, Set<Host>> ksTokens, int hostCount) {
+        private static Map<Host, Set<TokenRange>> computeHostsToRangesMap(List<Token> ring, Set<TokenRange> tokenRanges, Map<Token, Set<Host>> ksTokens, Set<Host> hosts) {
+            if (ring.size() == 1) {
+                // We forced the single range to ]minToken,minToken], make sure to use that instead of relying on the host's token
+                ImmutableMap.Builder<Host, Set<TokenRange>> builder = ImmutableMap.builder();
+                for (Host host : hosts)
+                    builder.put(host, tokenRanges);
+                return builder.build();
+            }
+
+            int hostCount = hosts.size();
             Map<Host, ImmutableSet.Builder<TokenRange>> builders = Maps.newHashMapWithExpectedSize(hostCount);
             for (TokenRange range : tokenRanges) {
                 Set<Host> replicas = ksTokens.get(range.getEnd());
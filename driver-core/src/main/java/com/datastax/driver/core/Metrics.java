@@ -79,6 +79,36 @@ public class Metrics {
         }
     });
 
+    private final Gauge<Integer> connectionPoolQueueDepth = registry.register("connection-pool-queue-depth", new Gauge<Integer>() {
+        @Override
+        public Integer getValue() {
+            int value = 0;
+            for (SessionManager session : manager.sessions)
+                for (HostConnectionPool pool : session.pools.values())
+                    value += pool.pendingBorrowCount();
+            return value;
+        }
+    });
+
+    private final Timer connectionAcquireWait = registry.timer("connection-acquire-wait");
+
+    private final Histogram writesPerFlush = registry.histogram("writes-per-flush");
+
+    private final Histogram pageBytes = registry.histogram("page-bytes");
+
+    private final Counter preparedStatementCacheHits = registry.counter("prepared-statement-cache-hits");
+    private final Counter preparedStatementCacheMisses = registry.counter("prepared-statement-cache-misses");
+
+    private final Gauge<Long> bufferedPageBytes = registry.register("buffered-page-bytes", new Gauge<Long>() {
+        @Override
+        public Long getValue() {
+            long value = 0;
+            for (SessionManager session : manager.sessions)
+                value += session.pageBudget.bufferedBytes();
+            return value;
+        }
+    });
+
     private final Gauge<Integer> executorQueueDepth = registry.register("executor-queue-depth", new Gauge<Integer>() {
         @Override
         public Integer getValue() {
@@ -228,6 +258,87 @@ public class Metrics {
         return trashedConnections;
     }
 
+    /**
+     * Returns the total number of requests waiting for a connection in the connection pools.
+     * <p>
+     * Requests wait when all the connections to a host have reached
+     * {@link PoolingOptions#getMaxRequestsPerConnection(HostDistance)}, up to
+     * {@link PoolingOptions#getMaxQueueSize()} per host. A non-zero value that keeps growing means
+     * that the pools are undersized for the current load.
+     *
+     * @return The total number of requests waiting for a connection.
+     */
+    public Gauge<Integer> getConnectionPoolQueueDepth() {
+        return connectionPoolQueueDepth;
+    }
+
+    /**
+     * Returns metrics on the time requests spent waiting for a connection in the connection pools.
+     * <p>
+     * Only requests that had to wait are recorded: when a connection is available immediately,
+     * nothing is recorded.
+     *
+     * @return a {@code Timer} metric object exposing the time spent waiting for a connection.
+     */
+    public Timer getConnectionAcquireWaitTimer() {
+        return connectionAcquireWait;
+    }
+
+    /**
+     * Returns metrics on the number of requests written to a connection between two flushes.
+     * <p>
+     * This shows how effective write coalescing is (see {@link SocketOptions#setWriteCoalescing}); nothing is
+     * recorded if it is disabled.
+     *
+     * @return a {@code Histogram} metric object exposing the number of requests per flush.
+     */
+    public Histogram getWritesPerFlush() {
+        return writesPerFlush;
+    }
+
+    /**
+     * Returns metrics on the size of the pages of rows received from Cassandra.
+     *
+     * @return a {@code Histogram} metric object exposing the size of each page, in bytes.
+     */
+    public Histogram getPageBytes() {
+        return pageBytes;
+    }
+
+    /**
+     * Returns the number of bytes of rows currently buffered by the paged result sets of all sessions.
+     * <p>
+     * This is what {@link QueryOptions#setMaxSessionBufferedPageBytes(long)} limits (per session). Result sets
+     * are only accounted for when one of the buffered page byte limits of {@link QueryOptions} is set.
+     *
+     * @return the number of bytes.
+     */
+    public Gauge<Long> getBufferedPageBytes() {
+        return bufferedPageBytes;
+    }
+
+    /**
+     * Returns the number of times a statement was found in the prepared statement cache of a session (see
+     * {@link QueryOptions#setPreparedStatementCacheSize(int)}).
+     * <p>
+     * This includes preparations that were already in progress when the statement was requested again.
+     *
+     * @return the number of cache hits.
+     */
+    public Counter getPreparedStatementCacheHits() {
+        return preparedStatementCacheHits;
+    }
+
+    /**
+     * Returns the number of times a statement was not found in the prepared statement cache of a session (see
+     * {@link QueryOptions#setPreparedStatementCacheSize(int)}), and had to be prepared.
+     *
+     * @return the number of cache misses.
+     */
+    public Counter getPreparedStatementCacheMisses() {
+        return preparedStatementCacheMisses;
+    }
+
     /**
      * @return The number of queued up tasks in the non-blocking executor (Cassandra Java Driver workers).
      */
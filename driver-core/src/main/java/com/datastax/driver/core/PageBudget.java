@@ -0,0 +1,93 @@
+/*
+ *      Copyright (C) 2012-2015 DataStax Inc.
+ *
+ *   Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ */
+package com.datastax.driver.core;
+
+import java.lang.ref.Reference;
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.WeakReference;
+import java.util.Collections;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Keeps track of the bytes of result pages buffered by the result sets of a session.
+ * <p>
+ * Each result set gets an {@link Account}. A result set that is dropped before being fully consumed never
+ * releases its bytes explicitly, so accounts are weakly tied to their owner and the bytes they hold are
+ * returned to the budget once the owner has been garbage collected.
+ */
+class PageBudget {
+
+    private final AtomicLong bufferedBytes = new AtomicLong();
+    private final ReferenceQueue<Object> collected = new ReferenceQueue<Object>();
+    // Keeps the accounts (not their owners) reachable until they are closed
+    private final Set<Account> accounts = Collections.newSetFromMap(new ConcurrentHashMap<Account, Boolean>());
+
+    Account newAccount(Object owner) {
+        releaseCollected();
+        Account account = new Account(owner);
+        accounts.add(account);
+        return account;
+    }
+
+    /**
+     * @return the bytes currently buffered by all the accounts.
+     */
+    long bufferedBytes() {
+        releaseCollected();
+        return bufferedBytes.get();
+    }
+
+    private void releaseCollected() {
+        Reference<?> ref;
+        while ((ref = collected.poll()) != null)
+            ((Account)ref).close();
+    }
+
+    class Account extends WeakReference<Object> {
+        private final AtomicLong held = new AtomicLong();
+
+        private Account(Object owner) {
+            super(owner, collected);
+        }
+
+        void acquire(long bytes) {
+            held.addAndGet(bytes);
+            bufferedBytes.addAndGet(bytes);
+        }
+
+        void release(long bytes) {
+            held.addAndGet(-bytes);
+            bufferedBytes.addAndGet(-bytes);
+        }
+
+        /**
+         * @return the bytes held by this account.
+         */
+        long heldBytes() {
+            return held.get();
+        }
+
+        /**
+         * Releases everything this account holds. It must not be used after this call.
+         */
+        void close() {
+            if (accounts.remove(this))
+                bufferedBytes.addAndGet(-held.getAndSet(0));
+        }
+    }
+}
@@ -0,0 +1,471 @@
+/*
+ *      Copyright (C) 2012-2015 DataStax Inc.
+ *
+ *   Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ */
+package com.datastax.driver.core;
+
+import java.nio.ByteBuffer;
+import java.util.*;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.util.concurrent.*;
+
+import com.datastax.driver.core.policies.LoadBalancingPolicy;
+
+/**
+ * Splits a large number of statements into small batches that only target a single partition (or a single set
+ * of replicas), and executes them in parallel.
+ * <p>
+ * Putting many unrelated statements in a single {@link BatchStatement} is a common anti-pattern: the batch is
+ * routed according to its first statement only, and its coordinator then has to forward every other statement
+ * to its own replicas, holding the whole batch in memory in the meantime. This class instead groups the
+ * statements using the token map of the cluster's {@link Metadata}, either:
+ * <ul>
+ * <li>by partition ({@link Grouping#PARTITION}, the default): each batch only contains statements with the
+ * same routing token, so it is applied as a single mutation by its replicas;</li>
+ * <li>or by replica set ({@link Grouping#REPLICA_SET}): each batch contains statements of different partitions
+ * that are owned by the same replicas, which produces fewer, bigger batches.</li>
+ * </ul>
+ * Each group is then split into batches of at most {@link Builder#withMaxStatementsPerBatch(int)
+ * maxStatementsPerBatch} statements and (approximately) {@link Builder#withMaxBatchBytes(int) maxBatchBytes}
+ * serialized bytes. Statements that have no routing key (or whose replicas are unknown) can't be grouped and
+ * each end up in a batch of their own.
+ * <p>
+ * {@link #executeAsync(Iterable)} sends each batch directly to one of its replicas (regardless of the
+ * {@link LoadBalancingPolicy} in use), with at most {@link Builder#withMaxConcurrentBatches(int)
+ * maxConcurrentBatches} batches in flight:
+ * <pre>
+ * {@code
+ * PartitionBatcher batcher = PartitionBatcher.builder(session)
+ *                                            .withMaxStatementsPerBatch(50)
+ *                                            .withMaxConcurrentBatches(16)
+ *                                            .build();
+ * List<Statement> inserts = ...;
+ * ListenableFuture<Void> done = batcher.executeAsync(inserts);
+ * }
+ * </pre>
+ * The statements are grouped when the method is called, based on the token map known by the driver at that
+ * time. Statements are never reordered within a group, but there is no ordering guarantee across groups.
+ */
+public class PartitionBatcher {
+
+    /** The default maximum number of statements per batch. */
+    public static final int DEFAULT_MAX_STATEMENTS_PER_BATCH = 100;
+
+    /** The default maximum serialized size of a batch, which matches Cassandra's default batch size warning threshold. */
+    public static final int DEFAULT_MAX_BATCH_BYTES = 5 * 1024;
+
+    /** The default number of batches that are executed concurrently. */
+    public static final int DEFAULT_MAX_CONCURRENT_BATCHES = 8;
+
+    /**
+     * How statements are grouped into batches.
+     */
+    public enum Grouping {
+        /** Only statements with the same routing token (and keyspace) are batched together. */
+        PARTITION,
+        /** Statements whose routing tokens are owned by the same replicas are batched together. */
+        REPLICA_SET
+    }
+
+    private final Session session;
+    private final Grouping grouping;
+    private final BatchStatement.Type batchType;
+    private final int maxStatementsPerBatch;
+    private final int maxBatchBytes;
+    private final int maxConcurrentBatches;
+    private final ConsistencyLevel consistencyLevel;
+
+    private PartitionBatcher(Builder builder) {
+        this.session = builder.session;
+        this.grouping = builder.grouping;
+        this.batchType = builder.batchType;
+        this.maxStatementsPerBatch = builder.maxStatementsPerBatch;
+        this.maxBatchBytes = builder.maxBatchBytes;
+        this.maxConcurrentBatches = builder.maxConcurrentBatches;
+        this.consistencyLevel = builder.consistencyLevel;
+    }
+
+    /**
+     * Creates a new builder.
+     *
+     * @param session the session that will be used to execute the batches.
+     * @return the builder.
+     */
+    public static Builder builder(Session session) {
+        return new Builder(session);
+    }
+
+    /**
+     * Groups statements into batches, without executing them.
+     * <p>
+     * The batches can be executed with any session of the same cluster; since the routing key of a batch is the
+     * one of its first statement, a token-aware load balancing policy will send them to one of their replicas.
+     *
+     * @param statements the statements. {@code BatchStatement} instances are split into their children.
+     * @return the batches.
+     *
+     * @throws IllegalArgumentException if one of the statements is neither a {@link RegularStatement} nor a
+     * {@link BoundStatement}.
+     */
+    public List<BatchStatement> split(Iterable<? extends Statement> statements) {
+        List<Batch> batches = group(statements);
+        List<BatchStatement> result = new ArrayList<BatchStatement>(batches.size());
+        for (Batch batch : batches)
+            result.add(batch.statement);
+        return result;
+    }
+
+    /**
+     * Groups statements into batches, and executes them.
+     *
+     * @param statements the statements. {@code BatchStatement} instances are split into their children.
+     * @return a future that completes when all the batches have been executed, or fails with the error of the
+     * first batch that failed. Cancelling this future stops the execution (batches that are already in flight
+     * will still be applied).
+     *
+     * @throws IllegalArgumentException if one of the statements is neither a {@link RegularStatement} nor a
+     * {@link BoundStatement}.
+     */
+    public ListenableFuture<Void> executeAsync(Iterable<? extends Statement> statements) {
+        Execution execution = new Execution(group(statements), session.getCluster().manager.executor);
+        execution.start();
+        return execution.future;
+    }
+
+    private List<Batch> group(Iterable<? extends Statement> statements) {
+        Cluster cluster = session.getCluster();
+        return group(statements, cluster.getMetadata(), cluster.manager.protocolVersion());
+    }
+
+    // Visible for testing
+    List<Batch> group(Iterable<? extends Statement> statements, Metadata metadata, ProtocolVersion protocolVersion) {
+        Grouper grouper = new Grouper(metadata, protocolVersion);
+        grouper.addAll(statements);
+        return grouper.finish();
+    }
+
+    /**
+     * A batch and the replicas it should be sent to.
+     */
+    static class Batch {
+        final BatchStatement statement;
+        final List<Host> replicas;
+        int bytes;
+
+        private Batch(BatchStatement statement, List<Host> replicas) {
+            this.statement = statement;
+            this.replicas = replicas;
+        }
+    }
+
+    /**
+     * The partition of a statement, used to group statements by partition.
+     */
+    private static class PartitionKey {
+        final String keyspace;
+        final Token token;
+
+        PartitionKey(String keyspace, Token token) {
+            this.keyspace = keyspace;
+            this.token = token;
+        }
+
+        @Override
+        public boolean equals(Object other) {
+            if (other == this)
+                return true;
+            if (!(other instanceof PartitionKey))
+                return false;
+            PartitionKey that = (PartitionKey)other;
+            return this.keyspace.equals(that.keyspace) && this.token.equals(that.token);
+        }
+
+        @Override
+        public int hashCode() {
+            return 31 * keyspace.hashCode() + token.hashCode();
+        }
+    }
+
+    private class Grouper {
+        private final Metadata metadata;
+        private final Token.Factory factory;
+        private final ProtocolVersion protocolVersion;
+        private final String loggedKeyspace;
+        // Insertion-ordered so that the output follows the order of the input as much as possible
+        private final Map<Object, Batch> open = new LinkedHashMap<Object, Batch>();
+        private final List<Batch> closed = new ArrayList<Batch>();
+
+        Grouper(Metadata metadata, ProtocolVersion protocolVersion) {
+            this.metadata = metadata;
+            this.factory = metadata.tokenFactory();
+            this.protocolVersion = protocolVersion;
+            this.loggedKeyspace = session.getLoggedKeyspace();
+        }
+
+        void addAll(Iterable<? extends Statement> statements) {
+            for (Statement statement : statements) {
+                if (statement instanceof BatchStatement)
+                    addAll(((BatchStatement)statement).getStatements());
+                else
+                    add(statement);
+            }
+        }
+
+        private void add(Statement statement) {
+            int size = sizeOf(statement, protocolVersion);
+            String keyspace = statement.getKeyspace() == null ? loggedKeyspace : statement.getKeyspace();
+
+            Object key = null;
+            Set<Host> replicas = null;
+            if (keyspace != null) {
+                if (grouping == Grouping.PARTITION) {
+                    Token token = (factory == null) ? null : statement.getRoutingToken(factory);
+                    if (token != null)
+                        key = new PartitionKey(keyspace, token);
+                } else {
+                    replicas = metadata.getReplicas(Metadata.quote(keyspace), statement);
+                    if (replicas != null && !replicas.isEmpty())
+                        key = replicas;
+                }
+            }
+
+            if (key == null) {
+                closed.add(newBatch(statement, size, Collections.<Host>emptyList()));
+                return;
+            }
+
+            Batch batch = open.get(key);
+            if (batch != null
+                && (batch.statement.size() >= maxStatementsPerBatch || batch.bytes + size > maxBatchBytes)) {
+                closed.add(batch);
+                batch = null;
+            }
+            if (batch == null) {
+                if (replicas == null)
+                    replicas = metadata.getReplicas(Metadata.quote(keyspace), statement);
+                batch = newBatch(statement, size, replicas == null
+                    ? Collections.<Host>emptyList()
+                    : ImmutableList.copyOf(replicas));
+                open.put(key, batch);
+            } else {
+                batch.statement.add(statement);
+                batch.bytes += size;
+            }
+        }
+
+        private Batch newBatch(Statement statement, int size, List<Host> replicas) {
+            BatchStatement batchStatement = new BatchStatement(batchType);
+            if (consistencyLevel != null)
+                batchStatement.setConsistencyLevel(consistencyLevel);
+            batchStatement.add(statement);
+            Batch batch = new Batch(batchStatement, replicas);
+            batch.bytes = size;
+            return batch;
+        }
+
+        List<Batch> finish() {
+            closed.addAll(open.values());
+            open.clear();
+            return closed;
+        }
+    }
+
+    /**
+     * Returns the number of bytes a statement adds to the body of a BATCH request.
+     */
+    static int sizeOf(Statement statement, ProtocolVersion protocolVersion) {
+        if (statement instanceof RegularStatement) {
+            RegularStatement st = (RegularStatement)statement;
+            ByteBuffer[] values = st.getValues(protocolVersion);
+            return 1 + CBUtil.sizeOfLongString(st.getQueryString())
+                + CBUtil.sizeOfValueList(values == null ? Collections.<ByteBuffer>emptyList() : Arrays.asList(values));
+        } else if (statement instanceof BoundStatement) {
+            BoundStatement st = (BoundStatement)statement;
+            return 1 + 2 + st.statement.getPreparedId().id.bytes.length
+                + CBUtil.sizeOfValueList(st.wrapper.valueList());
+        } else {
+            throw new IllegalArgumentException("Unsupported statement type " + statement.getClass().getName()
+                + ", only RegularStatement and BoundStatement instances can be batched");
+        }
+    }
+
+    /**
+     * A running execution of a list of batches.
+     */
+    private class Execution {
+        final SettableFuture<Void> future = SettableFuture.create();
+        private final Queue<Batch> waiting;
+        private final AtomicInteger remaining;
+        private final Executor executor;
+
+        Execution(List<Batch> batches, Executor executor) {
+            this.waiting = new ConcurrentLinkedQueue<Batch>(batches);
+            this.remaining = new AtomicInteger(batches.size());
+            this.executor = executor;
+        }
+
+        void start() {
+            if (waiting.isEmpty()) {
+                future.set(null);
+                return;
+            }
+            for (int i = 0; i < maxConcurrentBatches; i++)
+                executeNext();
+        }
+
+        private void executeNext() {
+            if (future.isDone())
+                return;
+            Batch batch = waiting.poll();
+            if (batch == null)
+                return;
+
+            ResultSetFuture result = session.executeAsync(new ReplicaStatement(batch.statement, batch.replicas));
+            Futures.addCallback(result, new FutureCallback<ResultSet>() {
+                @Override
+                public void onSuccess(ResultSet rs) {
+                    if (remaining.decrementAndGet() == 0)
+                        future.set(null);
+                    else
+                        executeNext();
+                }
+
+                @Override
+                public void onFailure(Throwable t) {
+                    future.setException(t);
+                }
+            }, executor);
+        }
+    }
+
+    /**
+     * Helper class to build {@link PartitionBatcher} instances.
+     */
+    public static class Builder {
+        private final Session session;
+        private Grouping grouping = Grouping.PARTITION;
+        private BatchStatement.Type batchType = BatchStatement.Type.UNLOGGED;
+        private int maxStatementsPerBatch = DEFAULT_MAX_STATEMENTS_PER_BATCH;
+        private int maxBatchBytes = DEFAULT_MAX_BATCH_BYTES;
+        private int maxConcurrentBatches = DEFAULT_MAX_CONCURRENT_BATCHES;
+        private ConsistencyLevel consistencyLevel;
+
+        private Builder(Session session) {
+            this.session = session;
+        }
+
+        /**
+         * Sets how statements are grouped.
+         * <p>
+         * The default is {@link Grouping#PARTITION}.
+         *
+         * @param grouping the grouping.
+         * @return this builder (for method chaining).
+         */
+        public Builder withGrouping(Grouping grouping) {
+            if (grouping == null)
+                throw new NullPointerException("grouping can't be null");
+            this.grouping = grouping;
+            return this;
+        }
+
+        /**
+         * Sets the type of the batches.
+         * <p>
+         * The default is {@link BatchStatement.Type#UNLOGGED}: batches only contain statements of a single
+         * partition or replica set, so the batch log is usually not needed.
+         *
+         * @param batchType the type.
+         * @return this builder (for method chaining).
+         */
+        public Builder withBatchType(BatchStatement.Type batchType) {
+            if (batchType == null)
+                throw new NullPointerException("batchType can't be null");
+            this.batchType = batchType;
+            return this;
+        }
+
+        /**
+         * Sets the maximum number of statements in a batch.
+         * <p>
+         * The default is {@value #DEFAULT_MAX_STATEMENTS_PER_BATCH}.
+         *
+         * @param maxStatementsPerBatch the maximum, must be strictly positive and at most 65535.
+         * @return this builder (for method chaining).
+         */
+        public Builder withMaxStatementsPerBatch(int maxStatementsPerBatch) {
+            if (maxStatementsPerBatch < 1 || maxStatementsPerBatch > 0xFFFF)
+                throw new IllegalArgumentException("Invalid maxStatementsPerBatch, should be between 1 and 65535, got " + maxStatementsPerBatch);
+            this.maxStatementsPerBatch = maxStatementsPerBatch;
+            return this;
+        }
+
+        /**
+         * Sets the maximum serialized size of a batch, in bytes.
+         * <p>
+         * This is the size of the statements and their values in the request; a statement that is bigger than
+         * the maximum on its own ends up alone in its batch. The default is {@value #DEFAULT_MAX_BATCH_BYTES}.
+         *
+         * @param maxBatchBytes the maximum, must be strictly positive.
+         * @return this builder (for method chaining).
+         */
+        public Builder withMaxBatchBytes(int maxBatchBytes) {
+            if (maxBatchBytes < 1)
+                throw new IllegalArgumentException("Invalid maxBatchBytes, should be strictly positive, got " + maxBatchBytes);
+            this.maxBatchBytes = maxBatchBytes;
+            return this;
+        }
+
+        /**
+         * Sets the maximum number of batches that are executed concurrently by {@link #executeAsync(Iterable)}.
+         * <p>
+         * The default is {@value #DEFAULT_MAX_CONCURRENT_BATCHES}.
+         *
+         * @param maxConcurrentBatches the maximum, must be strictly positive.
+         * @return this builder (for method chaining).
+         */
+        public Builder withMaxConcurrentBatches(int maxConcurrentBatches) {
+            if (maxConcurrentBatches < 1)
+                throw new IllegalArgumentException("Invalid maxConcurrentBatches, should be strictly positive, got " + maxConcurrentBatches);
+            this.maxConcurrentBatches = maxConcurrentBatches;
+            return this;
+        }
+
+        /**
+         * Sets the consistency level of the batches.
+         * <p>
+         * If this method is not called, {@link QueryOptions#getConsistencyLevel()} is used.
+         *
+         * @param consistencyLevel the consistency level.
+         * @return this builder (for method chaining).
+         */
+        public Builder withConsistencyLevel(ConsistencyLevel consistencyLevel) {
+            this.consistencyLevel = consistencyLevel;
+            return this;
+        }
+
+        /**
+         * Builds the batcher.
+         *
+         * @return the batcher.
+         */
+        public PartitionBatcher build() {
+            return new PartitionBatcher(this);
+        }
+    }
+}
@@ -78,6 +78,7 @@ public class PoolingOptions {
 
     private static final int DEFAULT_IDLE_TIMEOUT_SECONDS = 120;
     private static final int DEFAULT_POOL_TIMEOUT_MILLIS = 5000;
+    private static final int DEFAULT_MAX_QUEUE_SIZE = 256;
     private static final int DEFAULT_HEARTBEAT_INTERVAL_SECONDS = 30;
 
     private static final Executor DEFAULT_INITIALIZATION_EXECUTOR = MoreExecutors.sameThreadExecutor();
@@ -95,6 +96,7 @@ public class PoolingOptions {
 
     private volatile int idleTimeoutSeconds = DEFAULT_IDLE_TIMEOUT_SECONDS;
     private volatile int poolTimeoutMillis = DEFAULT_POOL_TIMEOUT_MILLIS;
+    private volatile int maxQueueSize = DEFAULT_MAX_QUEUE_SIZE;
     private volatile int heartbeatIntervalSeconds = DEFAULT_HEARTBEAT_INTERVAL_SECONDS;
 
     private volatile Executor initializationExecutor = DEFAULT_INITIALIZATION_EXECUTOR;
@@ -360,8 +362,11 @@ public class PoolingOptions {
     /**
      * Sets the timeout when trying to acquire a connection from a host's pool.
      * <p>
-     * If no connection is available within that time, the driver will try the
-     * next host from the query plan.
+     * If no connection is available immediately, the request is put in the pool's wait
+     * queue (see {@link #setMaxQueueSize(int)}). If no connection is returned to the pool
+     * within that time, the driver will try the next host from the query plan. Note that
+     * waiting does not block the calling thread: the timeout is enforced by the driver's
+     * internal timer.
      * <p>
      * The default is 5 seconds. If this option is set to zero, the driver won't wait at all.
      *
@@ -377,6 +382,39 @@ public class PoolingOptions {
         return this;
     }
 
+    /**
+     * Returns the maximum number of requests that can wait for a connection in a host's pool.
+     *
+     * @return the maximum queue size.
+     */
+    public int getMaxQueueSize() {
+        return maxQueueSize;
+    }
+
+    /**
+     * Sets the maximum number of requests that can wait for a connection in a host's pool.
+     * <p>
+     * When all connections to a host are busy (they have reached their
+     * {@link #getMaxRequestsPerConnection(HostDistance) maximum number of requests}), new
+     * requests are put in a wait queue, and get the next connection that is returned to the
+     * pool. If the queue is full, the driver moves to the next host from the query plan
+     * immediately.
+     * <p>
+     * The default is 256. If this option is set to zero, requests never wait (this is
+     * equivalent to setting {@link #setPoolTimeoutMillis(int) the pool timeout} to zero).
+     *
+     * @param maxQueueSize the new value.
+     * @return this {@code PoolingOptions}
+     *
+     * @throws IllegalArgumentException if the value is negative.
+     */
+    public PoolingOptions setMaxQueueSize(int maxQueueSize) {
+        if (maxQueueSize < 0)
+            throw new IllegalArgumentException("Max queue size must be positive");
+        this.maxQueueSize = maxQueueSize;
+        return this;
+    }
+
     /**
      * Returns the heart beat interval, after which a message is sent on an idle connection to make sure it's still alive.
      * @return the interval.
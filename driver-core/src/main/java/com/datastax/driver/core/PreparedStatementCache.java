@@ -0,0 +1,137 @@
+/*
+ *      Copyright (C) 2012-2015 DataStax Inc.
+ *
+ *   Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ */
+package com.datastax.driver.core;
+
+import java.util.concurrent.ConcurrentMap;
+
+import com.google.common.base.Objects;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.util.concurrent.FutureCallback;
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.MoreExecutors;
+import com.google.common.util.concurrent.SettableFuture;
+
+/**
+ * A bounded cache of the statements prepared by a session, keyed by query string and logged keyspace.
+ * <p>
+ * Entries are the futures of the preparations, so that concurrent preparations of the same query share a
+ * single round trip. Failed or cancelled preparations are not cached. Each caller gets its own future, so
+ * that cancelling it does not affect the other callers.
+ */
+class PreparedStatementCache {
+
+    private final SessionManager session;
+    private final ConcurrentMap<Key, ListenableFuture<PreparedStatement>> cache;
+
+    PreparedStatementCache(SessionManager session, int maxSize) {
+        this.session = session;
+        // Guava's cache evicts entries that have not been accessed recently as it approaches the maximum size
+        this.cache = CacheBuilder.newBuilder()
+            .maximumSize(maxSize)
+            .<Key, ListenableFuture<PreparedStatement>>build()
+            .asMap();
+    }
+
+    ListenableFuture<PreparedStatement> prepareAsync(String query, String keyspace) {
+        final Key key = new Key(query, keyspace);
+
+        ListenableFuture<PreparedStatement> cached = cache.get(key);
+        if (cached == null) {
+            final SettableFuture<PreparedStatement> future = SettableFuture.create();
+            cached = cache.putIfAbsent(key, future);
+            if (cached == null) {
+                recordMiss();
+                future.addListener(new Runnable() {
+                    @Override
+                    public void run() {
+                        if (future.isCancelled())
+                            cache.remove(key, future);
+                    }
+                }, MoreExecutors.sameThreadExecutor());
+                Futures.addCallback(session.prepareUncachedAsync(query), new FutureCallback<PreparedStatement>() {
+                    @Override
+                    public void onSuccess(PreparedStatement result) {
+                        future.set(result);
+                    }
+
+                    @Override
+                    public void onFailure(Throwable t) {
+                        cache.remove(key, future);
+                        future.setException(t);
+                    }
+                });
+                return forCaller(future);
+            }
+        }
+        recordHit();
+        return forCaller(cached);
+    }
+
+    private static ListenableFuture<PreparedStatement> forCaller(ListenableFuture<PreparedStatement> shared) {
+        final SettableFuture<PreparedStatement> future = SettableFuture.create();
+        Futures.addCallback(shared, new FutureCallback<PreparedStatement>() {
+            @Override
+            public void onSuccess(PreparedStatement result) {
+                future.set(result);
+            }
+
+            @Override
+            public void onFailure(Throwable t) {
+                future.setException(t);
+            }
+        });
+        return future;
+    }
+
+    private void recordHit() {
+        if (session.configuration().getMetricsOptions() != null)
+            session.cluster.manager.metrics.getPreparedStatementCacheHits().inc();
+    }
+
+    private void recordMiss() {
+        if (session.configuration().getMetricsOptions() != null)
+            session.cluster.manager.metrics.getPreparedStatementCacheMisses().inc();
+    }
+
+    /**
+     * A query string and the keyspace that was logged when it was prepared.
+     */
+    static class Key {
+        final String query;
+        final String keyspace;
+
+        Key(String query, String keyspace) {
+            this.query = query;
+            this.keyspace = keyspace;
+        }
+
+        @Override
+        public boolean equals(Object other) {
+            if (other == this)
+                return true;
+            if (!(other instanceof Key))
+                return false;
+            Key that = (Key)other;
+            return this.query.equals(that.query) && Objects.equal(this.keyspace, that.keyspace);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hashCode(query, keyspace);
+        }
+    }
+}
@@ -100,6 +100,7 @@ public class ProtocolOptions {
     private final AuthProvider authProvider;
 
     private volatile Compression compression = Compression.NONE;
+    private volatile boolean sharedPageBuffers = false;
 
     /**
      * Creates a new {@code ProtocolOptions} instance using the {@code DEFAULT_PORT}
@@ -222,6 +223,46 @@ public class ProtocolOptions {
         return this;
     }
 
+    /**
+     * Returns whether the values of a page of rows are decoded into a single shared buffer.
+     * <p>
+     * By default, this is disabled.
+     *
+     * @return whether shared page buffers are used.
+     *
+     * @see #setSharedPageBuffers(boolean)
+     */
+    public boolean getSharedPageBuffers() {
+        return sharedPageBuffers;
+    }
+
+    /**
+     * Sets whether the values of a page of rows should be decoded into a single shared buffer.
+     * <p>
+     * By default, every value of every row is copied into its own byte array when a page of results is
+     * decoded. When this option is enabled, the row data of the page is copied once into a single array, and
+     * each value is a read-only view over a section of that array. This greatly reduces the number of
+     * allocations for large pages, which benefits wide scans in particular.
+     * <p>
+     * The tradeoffs are that:
+     * <ul>
+     *     <li>any value that the client keeps a reference to (for example a blob obtained through
+     *     {@link Row#getBytes(int)}) keeps the whole page in memory;</li>
+     *     <li>the {@code ByteBuffer}s returned for values are read-only, so they can't be modified and
+     *     {@code ByteBuffer.array()} is not available.</li>
+     * </ul>
+     * <p>
+     * Note that while this setting can be changed at any time, it will
+     * only apply to newly created connections.
+     *
+     * @param sharedPageBuffers whether to use shared page buffers.
+     * @return this {@code ProtocolOptions} object.
+     */
+    public ProtocolOptions setSharedPageBuffers(boolean sharedPageBuffers) {
+        this.sharedPageBuffers = sharedPageBuffers;
+        return this;
+    }
+
     /**
      * Returns the maximum time to wait for schema agreement before returning from a DDL query.
      *
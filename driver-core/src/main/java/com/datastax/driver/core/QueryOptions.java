@@ -37,6 +37,53 @@ public class QueryOptions {
      */
     public static final int DEFAULT_FETCH_SIZE = 5000;
 
+    /**
+     * The default prefetch threshold: 0 (prefetching is disabled).
+     */
+    public static final int DEFAULT_PREFETCH_THRESHOLD = 0;
+
+    /**
+     * The default maximum number of pages prefetched in advance: 1.
+     */
+    public static final int DEFAULT_MAX_PREFETCH_PAGES = 1;
+
+    /**
+     * The default maximum number of page bytes buffered by a result set: 0 (unlimited).
+     */
+    public static final long DEFAULT_MAX_BUFFERED_PAGE_BYTES = 0;
+
+    /**
+     * The default maximum number of page bytes buffered by all the result sets of a session: 0 (unlimited).
+     */
+    public static final long DEFAULT_MAX_SESSION_BUFFERED_PAGE_BYTES = 0;
+
+    /**
+     * The default size of the prepared statement cache of each session: 0 (disabled).
+     */
+    public static final int DEFAULT_PREPARED_STATEMENT_CACHE_SIZE = 0;
+
+    /**
+     * The default maximum number of connections used to re-prepare statements on a node that comes up: 1.
+     */
+    public static final int DEFAULT_MAX_REPREPARE_CONNECTIONS = 1;
+
+    /**
+     * The default maximum number of in-flight re-preparations per connection: 64.
+     */
+    public static final int DEFAULT_MAX_IN_FLIGHT_REPREPARES = 64;
+
+    /**
+     * The default number of executions after which a query builder statement is prepared automatically: 0
+     * (disabled).
+     */
+    public static final int DEFAULT_AUTO_PREPARE_THRESHOLD = 0;
+
+    /**
+     * The default maximum number of query builder statement shapes tracked by each session for automatic
+     * preparation: 1000.
+     */
+    public static final int DEFAULT_MAX_AUTO_PREPARE_SHAPES = 1000;
+
     /**
      * The default value for {@link #getDefaultIdempotence()}: {@code false}.
      */
@@ -45,6 +92,15 @@ public class QueryOptions {
     private volatile ConsistencyLevel consistency = DEFAULT_CONSISTENCY_LEVEL;
     private volatile ConsistencyLevel serialConsistency = DEFAULT_SERIAL_CONSISTENCY_LEVEL;
     private volatile int fetchSize = DEFAULT_FETCH_SIZE;
+    private volatile int prefetchThreshold = DEFAULT_PREFETCH_THRESHOLD;
+    private volatile int maxPrefetchPages = DEFAULT_MAX_PREFETCH_PAGES;
+    private volatile long maxBufferedPageBytes = DEFAULT_MAX_BUFFERED_PAGE_BYTES;
+    private volatile long maxSessionBufferedPageBytes = DEFAULT_MAX_SESSION_BUFFERED_PAGE_BYTES;
+    private volatile int preparedStatementCacheSize = DEFAULT_PREPARED_STATEMENT_CACHE_SIZE;
+    private volatile int maxReprepareConnections = DEFAULT_MAX_REPREPARE_CONNECTIONS;
+    private volatile int maxInFlightReprepares = DEFAULT_MAX_IN_FLIGHT_REPREPARES;
+    private volatile int autoPrepareThreshold = DEFAULT_AUTO_PREPARE_THRESHOLD;
+    private volatile int maxAutoPrepareShapes = DEFAULT_MAX_AUTO_PREPARE_SHAPES;
     private volatile boolean defaultIdempotence = DEFAULT_IDEMPOTENCE;
     private volatile Cluster.Manager manager;
 
@@ -145,6 +201,310 @@ public class QueryOptions {
         return fetchSize;
     }
 
+    /**
+     * Sets the default prefetch threshold for paged queries.
+     * <p>
+     * When iterating over a {@link ResultSet} that has more pages to fetch, the driver will fetch the next page in
+     * the background as soon as the number of rows that can be read without fetching drops below this threshold.
+     * This hides the latency of the page fetches if the client processes rows slower than Cassandra returns them.
+     * By default ({@code 0}), the next page is only fetched when the current one is exhausted, which blocks the
+     * iteration for a round trip at each page boundary (unless {@link ResultSet#fetchMoreResults()} is called
+     * manually).
+     * <p>
+     * The threshold set through this method will be used for statements that don't explicitly have one, i.e.
+     * when {@link Statement#getPrefetchThreshold} is negative.
+     *
+     * @param prefetchThreshold the new threshold, in rows, or 0 to disable prefetching.
+     * @return this {@code QueryOptions} instance.
+     *
+     * @throws IllegalArgumentException if {@code prefetchThreshold < 0}.
+     *
+     * @see #setMaxPrefetchPages(int)
+     */
+    public QueryOptions setPrefetchThreshold(int prefetchThreshold) {
+        if (prefetchThreshold < 0)
+            throw new IllegalArgumentException("Invalid prefetchThreshold, should be >= 0, got " + prefetchThreshold);
+        this.prefetchThreshold = prefetchThreshold;
+        return this;
+    }
+
+    /**
+     * The default prefetch threshold for paged queries.
+     *
+     * @return the default prefetch threshold, or 0 if prefetching is disabled.
+     */
+    public int getPrefetchThreshold() {
+        return prefetchThreshold;
+    }
+
+    /**
+     * Sets the maximum number of pages that can be prefetched in advance.
+     * <p>
+     * If the prefetch threshold (see {@link #setPrefetchThreshold(int)}) is larger than the fetch size, several
+     * pages might need to be prefetched to satisfy it; this bounds the number of pages held in memory by a
+     * {@link ResultSet} in addition to the one being iterated (so at most
+     * {@code maxPrefetchPages * fetchSize} extra rows). Only one page is ever fetched at a time.
+     *
+     * @param maxPrefetchPages the new value.
+     * @return this {@code QueryOptions} instance.
+     *
+     * @throws IllegalArgumentException if {@code maxPrefetchPages < 1}.
+     */
+    public QueryOptions setMaxPrefetchPages(int maxPrefetchPages) {
+        if (maxPrefetchPages < 1)
+            throw new IllegalArgumentException("Invalid maxPrefetchPages, should be > 0, got " + maxPrefetchPages);
+        this.maxPrefetchPages = maxPrefetchPages;
+        return this;
+    }
+
+    /**
+     * The maximum number of pages that can be prefetched in advance.
+     *
+     * @return the maximum number of pages.
+     */
+    public int getMaxPrefetchPages() {
+        return maxPrefetchPages;
+    }
+
+    /**
+     * Sets the maximum number of bytes of rows that a paged {@link ResultSet} can buffer before prefetching
+     * pauses.
+     * <p>
+     * The fetch size bounds the number of rows in a page, not their size: if rows are large, prefetched pages
+     * can take a lot of memory. When the page being iterated and the pages fetched in advance (see
+     * {@link #setPrefetchThreshold(int)}) exceed this size, no other page is prefetched until some of them have
+     * been consumed. Pages are still fetched when the result set runs out of rows, so this does not limit the
+     * size of a single page; and since the size of a page is only known once it is received, the limit can be
+     * exceeded by one page.
+     *
+     * @param maxBufferedPageBytes the new value, in bytes, or 0 for no limit.
+     * @return this {@code QueryOptions} instance.
+     *
+     * @throws IllegalArgumentException if {@code maxBufferedPageBytes < 0}.
+     *
+     * @see Metrics#getPageBytes()
+     */
+    public QueryOptions setMaxBufferedPageBytes(long maxBufferedPageBytes) {
+        if (maxBufferedPageBytes < 0)
+            throw new IllegalArgumentException("Invalid maxBufferedPageBytes, should be >= 0, got " + maxBufferedPageBytes);
+        this.maxBufferedPageBytes = maxBufferedPageBytes;
+        return this;
+    }
+
+    /**
+     * The maximum number of bytes of rows that a paged result set can buffer before prefetching pauses.
+     *
+     * @return the maximum, or 0 if there is no limit.
+     */
+    public long getMaxBufferedPageBytes() {
+        return maxBufferedPageBytes;
+    }
+
+    /**
+     * Sets the maximum number of bytes of rows that all the paged {@link ResultSet}s of a session can buffer
+     * before prefetching pauses.
+     * <p>
+     * This is the same as {@link #setMaxBufferedPageBytes(long)}, but for all the result sets of a session
+     * together. The bytes held by a result set are released as its pages are consumed; if it is abandoned
+     * before that, they are released once it has been garbage collected.
+     *
+     * @param maxSessionBufferedPageBytes the new value, in bytes, or 0 for no limit.
+     * @return this {@code QueryOptions} instance.
+     *
+     * @throws IllegalArgumentException if {@code maxSessionBufferedPageBytes < 0}.
+     *
+     * @see Metrics#getBufferedPageBytes()
+     */
+    public QueryOptions setMaxSessionBufferedPageBytes(long maxSessionBufferedPageBytes) {
+        if (maxSessionBufferedPageBytes < 0)
+            throw new IllegalArgumentException("Invalid maxSessionBufferedPageBytes, should be >= 0, got " + maxSessionBufferedPageBytes);
+        this.maxSessionBufferedPageBytes = maxSessionBufferedPageBytes;
+        return this;
+    }
+
+    /**
+     * The maximum number of bytes of rows that the paged result sets of a session can buffer before prefetching
+     * pauses.
+     *
+     * @return the maximum, or 0 if there is no limit.
+     */
+    public long getMaxSessionBufferedPageBytes() {
+        return maxSessionBufferedPageBytes;
+    }
+
+    /**
+     * Sets the size of the prepared statement cache of each session.
+     * <p>
+     * When the cache is enabled, {@link Session#prepare(String)} (and its variants) return the existing
+     * {@link PreparedStatement} if the same query string was already prepared by the session with the same logged
+     * keyspace, without any round trip to Cassandra. Concurrent preparations of the same query share a single
+     * round trip. Once the cache is full, the least recently used statements are evicted.
+     * <p>
+     * Note that cached statements are shared: options set on a {@code PreparedStatement} (like
+     * {@link PreparedStatement#setConsistencyLevel(ConsistencyLevel)}) affect every caller that gets it from the
+     * cache. Also, since preparing again returns the cached instance, its result metadata is not refreshed after
+     * a schema change (for example, after a column was added to a table queried with {@code SELECT *}).
+     * <p>
+     * This setting is read when a session is created, changing it has no effect on existing sessions.
+     *
+     * @param preparedStatementCacheSize the maximum number of statements in the cache, or 0 to disable it.
+     * @return this {@code QueryOptions} instance.
+     *
+     * @throws IllegalArgumentException if {@code preparedStatementCacheSize < 0}.
+     *
+     * @see Metrics#getPreparedStatementCacheHits()
+     * @see Metrics#getPreparedStatementCacheMisses()
+     */
+    public QueryOptions setPreparedStatementCacheSize(int preparedStatementCacheSize) {
+        if (preparedStatementCacheSize < 0)
+            throw new IllegalArgumentException("Invalid preparedStatementCacheSize, should be >= 0, got " + preparedStatementCacheSize);
+        this.preparedStatementCacheSize = preparedStatementCacheSize;
+        return this;
+    }
+
+    /**
+     * The size of the prepared statement cache of each session.
+     *
+     * @return the maximum number of statements in the cache, or 0 if it is disabled.
+     */
+    public int getPreparedStatementCacheSize() {
+        return preparedStatementCacheSize;
+    }
+
+    /**
+     * Sets the maximum number of connections used to re-prepare statements on a node that comes up (or is
+     * added to the cluster).
+     * <p>
+     * Before a node is used for queries, the driver prepares on it all the statements that are currently
+     * prepared. Additional connections are only opened when there are more statements than
+     * {@link #setMaxInFlightReprepares(int) can be in flight} on a single connection; they are closed once
+     * the statements are prepared.
+     * <p>
+     * Statements are re-prepared in order of most recent use, so that the statements used by the application
+     * are available as soon as possible.
+     *
+     * @param maxReprepareConnections the maximum number of connections.
+     * @return this {@code QueryOptions} instance.
+     *
+     * @throws IllegalArgumentException if {@code maxReprepareConnections <= 0}.
+     */
+    public QueryOptions setMaxReprepareConnections(int maxReprepareConnections) {
+        if (maxReprepareConnections <= 0)
+            throw new IllegalArgumentException("Invalid maxReprepareConnections, should be > 0, got " + maxReprepareConnections);
+        this.maxReprepareConnections = maxReprepareConnections;
+        return this;
+    }
+
+    /**
+     * The maximum number of connections used to re-prepare statements on a node that comes up.
+     *
+     * @return the maximum number of connections.
+     */
+    public int getMaxReprepareConnections() {
+        return maxReprepareConnections;
+    }
+
+    /**
+     * Sets the maximum number of re-preparations in flight on each connection when a node comes up (see
+     * {@link #setMaxReprepareConnections(int)}).
+     * <p>
+     * Note that with protocol versions 1 and 2, connections can't have more than 128 requests in flight.
+     *
+     * @param maxInFlightReprepares the maximum number of requests in flight per connection.
+     * @return this {@code QueryOptions} instance.
+     *
+     * @throws IllegalArgumentException if {@code maxInFlightReprepares <= 0}.
+     */
+    public QueryOptions setMaxInFlightReprepares(int maxInFlightReprepares) {
+        if (maxInFlightReprepares <= 0)
+            throw new IllegalArgumentException("Invalid maxInFlightReprepares, should be > 0, got " + maxInFlightReprepares);
+        this.maxInFlightReprepares = maxInFlightReprepares;
+        return this;
+    }
+
+    /**
+     * The maximum number of re-preparations in flight on each connection when a node comes up.
+     *
+     * @return the maximum number of requests in flight per connection.
+     */
+    public int getMaxInFlightReprepares() {
+        return maxInFlightReprepares;
+    }
+
+    /**
+     * Sets the number of executions after which a query builder statement is prepared automatically.
+     * <p>
+     * The {@link com.datastax.driver.core.querybuilder.QueryBuilder query builder} replaces most values with bind
+     * markers, so statements built at the same call site usually produce the same query string (with different
+     * values). When this option is enabled, each session counts the executions of each such query string; once
+     * it reaches the threshold, the query string is prepared in the background, and later executions of
+     * statements with the same query string are sent as prepared statement executions (with the same values).
+     * This is transparent for the application, and saves Cassandra from parsing the query each time.
+     * <p>
+     * Note that the query builder does not extract fixed-size numbers (like {@code int} or {@code double}
+     * values) from the query string, so statements that only differ by such values have different query
+     * strings, and each of them is counted separately.
+     * <p>
+     * Only built statements that have values are concerned: statements created with
+     * {@link com.datastax.driver.core.querybuilder.BuiltStatement#setForceNoValues(boolean) setForceNoValues(true)}
+     * or with explicit bind markers are always executed as regular queries, as are built statements added to a
+     * {@link BatchStatement}. Auto-prepared statements go through {@link Session#prepareAsync(String)}, so they
+     * are also added to the {@link #setPreparedStatementCacheSize(int) prepared statement cache} if it is enabled.
+     * <p>
+     * This setting is read when a session is created, changing it has no effect on existing sessions.
+     *
+     * @param autoPrepareThreshold the number of executions, or 0 to disable automatic preparation.
+     * @return this {@code QueryOptions} instance.
+     *
+     * @throws IllegalArgumentException if {@code autoPrepareThreshold < 0}.
+     */
+    public QueryOptions setAutoPrepareThreshold(int autoPrepareThreshold) {
+        if (autoPrepareThreshold < 0)
+            throw new IllegalArgumentException("Invalid autoPrepareThreshold, should be >= 0, got " + autoPrepareThreshold);
+        this.autoPrepareThreshold = autoPrepareThreshold;
+        return this;
+    }
+
+    /**
+     * The number of executions after which a query builder statement is prepared automatically.
+     *
+     * @return the number of executions, or 0 if automatic preparation is disabled.
+     */
+    public int getAutoPrepareThreshold() {
+        return autoPrepareThreshold;
+    }
+
+    /**
+     * Sets the maximum number of query builder statement shapes (query strings) tracked by each session for
+     * {@link #setAutoPrepareThreshold(int) automatic preparation}.
+     * <p>
+     * Once this number is reached, the least recently executed shapes are forgotten: their execution count is
+     * reset, and they are executed as regular queries until they reach the threshold again. Statements that
+     * were already prepared stay prepared on the server.
+     * <p>
+     * This setting is read when a session is created, changing it has no effect on existing sessions.
+     *
+     * @param maxAutoPrepareShapes the maximum number of shapes, must be strictly positive.
+     * @return this {@code QueryOptions} instance.
+     *
+     * @throws IllegalArgumentException if {@code maxAutoPrepareShapes <= 0}.
+     */
+    public QueryOptions setMaxAutoPrepareShapes(int maxAutoPrepareShapes) {
+        if (maxAutoPrepareShapes <= 0)
+            throw new IllegalArgumentException("Invalid maxAutoPrepareShapes, should be > 0, got " + maxAutoPrepareShapes);
+        this.maxAutoPrepareShapes = maxAutoPrepareShapes;
+        return this;
+    }
+
+    /**
+     * The maximum number of query builder statement shapes tracked by each session for automatic preparation.
+     *
+     * @return the maximum number of shapes.
+     */
+    public int getMaxAutoPrepareShapes() {
+        return maxAutoPrepareShapes;
+    }
+
     /**
      * Sets the default idempotence for queries.
      * <p>
@@ -0,0 +1,79 @@
+/*
+ *      Copyright (C) 2012-2015 DataStax Inc.
+ *
+ *   Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ */
+package com.datastax.driver.core;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+
+import com.google.common.collect.AbstractIterator;
+
+import com.datastax.driver.core.policies.LoadBalancingPolicy;
+
+/**
+ * Marks a statement so that {@link RequestHandler} tries a given list of replicas first, regardless of the
+ * {@link LoadBalancingPolicy} in use.
+ * <p>
+ * This is used by the driver's bulk utilities ({@link TableScanner}, {@link PartitionBatcher}), which already
+ * know which replicas own the data of their statements.
+ */
+class ReplicaStatement extends StatementWrapper {
+    private final List<Host> replicas;
+
+    ReplicaStatement(Statement wrapped, List<Host> replicas) {
+        super(wrapped);
+        this.replicas = replicas;
+    }
+
+    /**
+     * Returns a query plan that starts with the live local replicas, followed by the other hosts of the
+     * policy's plan.
+     */
+    Iterator<Host> newQueryPlan(final LoadBalancingPolicy policy, final String loggedKeyspace) {
+        if (replicas.isEmpty())
+            return policy.newQueryPlan(loggedKeyspace, this);
+
+        // Rotate the replicas so that consecutive statements with the same replicas don't all hit the same one
+        final List<Host> rotated = new ArrayList<Host>(replicas);
+        Collections.rotate(rotated, (int)(System.nanoTime() % rotated.size()));
+
+        return new AbstractIterator<Host>() {
+            private final Iterator<Host> replicaIterator = rotated.iterator();
+            private Iterator<Host> childIterator;
+
+            @Override
+            protected Host computeNext() {
+                while (replicaIterator.hasNext()) {
+                    Host host = replicaIterator.next();
+                    if (host.isUp() && policy.distance(host) == HostDistance.LOCAL)
+                        return host;
+                }
+
+                if (childIterator == null)
+                    childIterator = policy.newQueryPlan(loggedKeyspace, ReplicaStatement.this);
+
+                while (childIterator.hasNext()) {
+                    Host host = childIterator.next();
+                    // Skip it if it was already a local replica
+                    if (!replicas.contains(host) || policy.distance(host) != HostDistance.LOCAL)
+                        return host;
+                }
+                return endOfData();
+            }
+        };
+    }
+}
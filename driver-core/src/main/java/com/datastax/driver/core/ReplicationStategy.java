@@ -18,7 +18,6 @@ package com.datastax.driver.core;
 import java.util.*;
 
 import com.google.common.collect.ImmutableSet;
-import com.google.common.collect.Sets;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -61,8 +60,32 @@ abstract class ReplicationStrategy {
 
     abstract Map<Token, Set<Host>> computeTokenToReplicaMap(Map<Token, Host> tokenToPrimary, List<Token> ring);
 
-    private static Token getTokenWrapping(int i, List<Token> ring) {
-        return ring.get(i % ring.size());
+    /**
+     * The hosts of a ring, each identified by a small integer so that the strategies can track them in arrays.
+     */
+    static class IndexedRing {
+        final List<Host> hosts = new ArrayList<Host>();
+        // The id of the primary host of each position of the ring
+        final int[] primaries;
+
+        IndexedRing(Map<Token, Host> tokenToPrimary, List<Token> ring) {
+            Map<Host, Integer> ids = new HashMap<Host, Integer>();
+            primaries = new int[ring.size()];
+            for (int i = 0; i < ring.size(); i++) {
+                Host host = tokenToPrimary.get(ring.get(i));
+                Integer id = ids.get(host);
+                if (id == null) {
+                    id = hosts.size();
+                    ids.put(host, id);
+                    hosts.add(host);
+                }
+                primaries[i] = id;
+            }
+        }
+
+        int primary(int position) {
+            return primaries[position % primaries.length];
+        }
     }
 
     static class SimpleStrategy extends ReplicationStrategy {
@@ -76,17 +99,37 @@ abstract class ReplicationStrategy {
         Map<Token, Set<Host>> computeTokenToReplicaMap(Map<Token, Host> tokenToPrimary, List<Token> ring) {
 
             int rf = Math.min(replicationFactor, ring.size());
+            IndexedRing indexed = new IndexedRing(tokenToPrimary, ring);
+            // addedAt[h] == i + 1 iff host h is already a replica of position i, which avoids clearing a set each time
+            int[] addedAt = new int[indexed.hosts.size()];
 
             Map<Token, Set<Host>> replicaMap = new HashMap<Token, Set<Host>>(tokenToPrimary.size());
             for (int i = 0; i < ring.size(); i++) {
                 // Consecutive sections of the ring can assigned to the same host
-                Set<Host> replicas = new LinkedHashSet<Host>();
-                for (int j = 0; j < ring.size() && replicas.size() < rf; j++)
-                    replicas.add(tokenToPrimary.get(getTokenWrapping(i+j, ring)));
-                replicaMap.put(ring.get(i), ImmutableSet.copyOf(replicas));
+                ImmutableSet.Builder<Host> replicas = ImmutableSet.builder();
+                int count = 0;
+                for (int j = 0; j < ring.size() && count < rf; j++) {
+                    int h = indexed.primary(i + j);
+                    if (addedAt[h] != i + 1) {
+                        addedAt[h] = i + 1;
+                        replicas.add(indexed.hosts.get(h));
+                        count += 1;
+                    }
+                }
+                replicaMap.put(ring.get(i), replicas.build());
             }
             return replicaMap;
         }
+
+        @Override
+        public boolean equals(Object other) {
+            return other instanceof SimpleStrategy && ((SimpleStrategy)other).replicationFactor == replicationFactor;
+        }
+
+        @Override
+        public int hashCode() {
+            return replicationFactor;
+        }
     }
 
     static class NetworkTopologyStrategy extends ReplicationStrategy {
@@ -100,56 +143,95 @@ abstract class ReplicationStrategy {
 
         Map<Token, Set<Host>> computeTokenToReplicaMap(Map<Token, Host> tokenToPrimary, List<Token> ring) {
 
-             // This is essentially a copy of org.apache.cassandra.locator.NetworkTopologyStrategy
-            Map<String, Set<String>> racks = getRacksInDcs(tokenToPrimary.values());
-            Map<Token, Set<Host>> replicaMap = new HashMap<Token, Set<Host>>(tokenToPrimary.size());
+            // This is essentially a copy of org.apache.cassandra.locator.NetworkTopologyStrategy, except that
+            // hosts, datacenters and racks are tracked by index, with arrays that are reused for every position.
+            IndexedRing indexed = new IndexedRing(tokenToPrimary, ring);
+            int hostCount = indexed.hosts.size();
 
-            Set<String> warnedDcs = Sets.newHashSetWithExpectedSize(replicationFactors.size());
+            List<String> dcs = new ArrayList<String>(replicationFactors.keySet());
+            int dcCount = dcs.size();
+            int[] rfs = new int[dcCount];
+            Map<String, Integer> dcIds = new HashMap<String, Integer>(dcCount);
+            for (int d = 0; d < dcCount; d++) {
+                dcIds.put(dcs.get(d), d);
+                rfs[d] = replicationFactors.get(dcs.get(d));
+            }
 
+            // The datacenter (-1 if not replicated) and rack (-1 if unknown) of each host, and the number of
+            // distinct racks in each datacenter
+            int[] hostDcs = new int[hostCount];
+            int[] hostRacks = new int[hostCount];
+            int[] rackCounts = new int[dcCount];
+            Map<List<String>, Integer> rackIds = new HashMap<List<String>, Integer>();
+            for (int h = 0; h < hostCount; h++) {
+                Host host = indexed.hosts.get(h);
+                Integer d = host.getDatacenter() == null ? null : dcIds.get(host.getDatacenter());
+                hostDcs[h] = (d == null) ? -1 : d;
+                hostRacks[h] = -1;
+                if (d == null)
+                    continue;
+                List<String> rackKey = Arrays.asList(host.getDatacenter(), host.getRack());
+                Integer rack = rackIds.get(rackKey);
+                if (rack == null) {
+                    rack = rackIds.size();
+                    rackIds.put(rackKey, rack);
+                    rackCounts[d] += 1;
+                }
+                if (host.getRack() != null)
+                    hostRacks[h] = rack;
+            }
+
+            // Per position state. The "stamp" arrays hold i + 1 when the element was marked for position i.
+            int[] addedAt = new int[hostCount];
+            int[] skippedAt = new int[hostCount];
+            int[] rackSeenAt = new int[rackIds.size()];
+            int[] dcReplicas = new int[dcCount];
+            int[] dcSeenRacks = new int[dcCount];
+            List<List<Integer>> skipped = new ArrayList<List<Integer>>(dcCount);
+            for (int d = 0; d < dcCount; d++)
+                skipped.add(new ArrayList<Integer>()); // preserve order
+            boolean[] warnedDcs = new boolean[dcCount];
+
+            Map<Token, Set<Host>> replicaMap = new HashMap<Token, Set<Host>>(tokenToPrimary.size());
             for (int i = 0; i < ring.size(); i++) {
-                Map<String, Set<Host>> allDcReplicas = new HashMap<String, Set<Host>>();
-                Map<String, Set<String>> seenRacks = new HashMap<String, Set<String>>();
-                Map<String, Set<Host>> skippedDcEndpoints = new HashMap<String, Set<Host>>();
-                for (String dc : replicationFactors.keySet()) {
-                    allDcReplicas.put(dc, new HashSet<Host>());
-                    seenRacks.put(dc, new HashSet<String>());
-                    skippedDcEndpoints.put(dc, new LinkedHashSet<Host>()); // preserve order
+                int stamp = i + 1;
+                int dcsDone = 0;
+                for (int d = 0; d < dcCount; d++) {
+                    dcReplicas[d] = 0;
+                    dcSeenRacks[d] = 0;
+                    skipped.get(d).clear();
+                    if (rfs[d] <= 0)
+                        dcsDone += 1;
                 }
 
                 // Preserve order - primary replica will be first
-                Set<Host> replicas = new LinkedHashSet<Host>();
-                for (int j = 0; j < ring.size() && !allDone(allDcReplicas); j++) {
-                    Host h = tokenToPrimary.get(getTokenWrapping(i + j, ring));
-                    String dc = h.getDatacenter();
-                    if (dc == null || !allDcReplicas.containsKey(dc))
+                List<Host> replicas = new ArrayList<Host>();
+                for (int j = 0; j < ring.size() && dcsDone < dcCount; j++) {
+                    int h = indexed.primary(i + j);
+                    int d = hostDcs[h];
+                    if (d < 0 || dcReplicas[d] >= rfs[d])
                         continue;
 
-                    Integer rf = replicationFactors.get(dc);
-                    Set<Host> dcReplicas = allDcReplicas.get(dc);
-                    if (rf == null || dcReplicas.size() >= rf)
-                        continue;
-
-                    String rack = h.getRack();
+                    int rack = hostRacks[h];
                     // Check if we already visited all racks in dc
-                    if (rack == null || seenRacks.get(dc).size() == racks.get(dc).size()) {
-                        replicas.add(h);
-                        dcReplicas.add(h);
+                    if (rack < 0 || dcSeenRacks[d] == rackCounts[d]) {
+                        dcsDone += addReplica(h, d, stamp, indexed, replicas, addedAt, dcReplicas, rfs);
                     } else {
                         // Is this a new rack?
-                        if (seenRacks.get(dc).contains(rack)) {
-                            skippedDcEndpoints.get(dc).add(h);
+                        if (rackSeenAt[rack] == stamp) {
+                            if (skippedAt[h] != stamp) {
+                                skippedAt[h] = stamp;
+                                skipped.get(d).add(h);
+                            }
                         } else {
-                            replicas.add(h);
-                            dcReplicas.add(h);
-                            seenRacks.get(dc).add(rack);
+                            dcsDone += addReplica(h, d, stamp, indexed, replicas, addedAt, dcReplicas, rfs);
+                            rackSeenAt[rack] = stamp;
+                            dcSeenRacks[d] += 1;
                             // If we've run out of distinct racks, add the nodes skipped so far
-                            if (seenRacks.get(dc).size() == racks.get(dc).size()) {
-                                Iterator<Host> skippedIt = skippedDcEndpoints.get(dc).iterator();
-                                while (skippedIt.hasNext() && dcReplicas.size() < rf) {
-                                    Host nextSkipped = skippedIt.next();
-                                    replicas.add(nextSkipped);
-                                    dcReplicas.add(nextSkipped);
-                                }
+                            if (dcSeenRacks[d] == rackCounts[d]) {
+                                Iterator<Integer> skippedIt = skipped.get(d).iterator();
+                                while (skippedIt.hasNext() && dcReplicas[d] < rfs[d])
+                                    dcsDone += addReplica(skippedIt.next(), d, stamp, indexed, replicas, addedAt, dcReplicas, rfs);
                             }
                         }
                     }
@@ -158,18 +240,15 @@ abstract class ReplicationStrategy {
                 // If we haven't found enough replicas after a whole trip around the ring, this probably
                 // means that the replication factors are broken.
                 // Warn the user because that leads to quadratic performance of this method (JAVA-702).
-                for (Map.Entry<String, Set<Host>> entry : allDcReplicas.entrySet()) {
-                    String dcName = entry.getKey();
-                    int expectedFactor = replicationFactors.get(dcName);
-                    int achievedFactor = entry.getValue().size();
-                    if (achievedFactor < expectedFactor && !warnedDcs.contains(dcName)) {
+                for (int d = 0; d < dcCount; d++) {
+                    if (dcReplicas[d] < rfs[d] && !warnedDcs[d]) {
                         logger.warn("Error while computing token map for datacenter {}: "
                                 + "could not achieve replication factor {} (found {} replicas only), "
                                 + "check your keyspace replication settings. "
                                 + "Note that this can affect the performance of the driver.",
-                            dcName, expectedFactor, achievedFactor);
+                            dcs.get(d), rfs[d], dcReplicas[d]);
                         // only warn once per DC
-                        warnedDcs.add(dcName);
+                        warnedDcs[d] = true;
                     }
                 }
 
@@ -178,24 +257,30 @@ abstract class ReplicationStrategy {
             return replicaMap;
         }
 
-        private boolean allDone(Map<String, Set<Host>> map) {
-            for (Map.Entry<String, Set<Host>> entry : map.entrySet())
-                if (entry.getValue().size() < replicationFactors.get(entry.getKey()))
-                    return false;
-            return true;
+        /**
+         * Adds a host to the replicas of the current position, unless it is already one of them.
+         *
+         * @return 1 if this completed the replicas of the datacenter, 0 otherwise.
+         */
+        private static int addReplica(int h, int d, int stamp, IndexedRing indexed, List<Host> replicas,
+                                      int[] addedAt, int[] dcReplicas, int[] rfs) {
+            if (addedAt[h] == stamp)
+                return 0;
+            addedAt[h] = stamp;
+            replicas.add(indexed.hosts.get(h));
+            dcReplicas[d] += 1;
+            return (dcReplicas[d] == rfs[d]) ? 1 : 0;
         }
 
-        private Map<String, Set<String>> getRacksInDcs(Iterable<Host> hosts) {
-            Map<String, Set<String>> result = new HashMap<String, Set<String>>();
-            for (Host host : hosts) {
-                Set<String> racks = result.get(host.getDatacenter());
-                if (racks == null) {
-                    racks = new HashSet<String>();
-                    result.put(host.getDatacenter(), racks);
-                }
-                racks.add(host.getRack());
-            }
-            return result;
+        @Override
+        public boolean equals(Object other) {
+            return other instanceof NetworkTopologyStrategy
+                && ((NetworkTopologyStrategy)other).replicationFactors.equals(replicationFactors);
+        }
+
+        @Override
+        public int hashCode() {
+            return replicationFactors.hashCode();
         }
     }
 }
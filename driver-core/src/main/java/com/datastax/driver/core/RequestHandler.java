@@ -19,6 +19,7 @@ import java.net.InetSocketAddress;
 import java.util.*;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutionException;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.TimeoutException;
 import java.util.concurrent.atomic.AtomicBoolean;
@@ -27,6 +28,10 @@ import java.util.concurrent.atomic.AtomicReference;
 
 import com.codahale.metrics.Timer;
 import com.google.common.collect.Sets;
+import com.google.common.util.concurrent.FutureCallback;
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.Uninterruptibles;
 import io.netty.util.HashedWheelTimer;
 import io.netty.util.Timeout;
 import io.netty.util.TimerTask;
@@ -78,7 +83,9 @@ class RequestHandler {
 
         callback.register(this);
 
-        this.queryPlan = new QueryPlan(manager.loadBalancingPolicy().newQueryPlan(manager.poolsState.keyspace, statement));
+        this.queryPlan = new QueryPlan(statement instanceof ReplicaStatement
+            ? ((ReplicaStatement)statement).newQueryPlan(manager.loadBalancingPolicy(), manager.poolsState.keyspace)
+            : manager.loadBalancingPolicy().newQueryPlan(manager.poolsState.keyspace, statement));
         this.speculativeExecutionPlan = manager.speculativeRetryPolicy().newPlan(manager.poolsState.keyspace, statement);
         this.allowSpeculativeExecutions = statement != Statement.DEFAULT
             && statement.isIdempotentWithDefault(manager.configuration().getQueryOptions());
@@ -288,9 +295,39 @@ class RequestHandler {
             if (allowSpeculativeExecutions && nextExecutionScheduled.compareAndSet(false, true))
                 scheduleExecution(speculativeExecutionPlan.nextExecution(host));
 
-            Connection connection = null;
+            ListenableFuture<Connection> connectionFuture = currentPool.borrowConnectionAsync(
+                manager.configuration().getPoolingOptions().getPoolTimeoutMillis(), TimeUnit.MILLISECONDS);
+
+            if (connectionFuture.isDone()) {
+                // Common case: the connection was available right away, so proceed on the current thread
+                try {
+                    return query(host, Uninterruptibles.getUninterruptibly(connectionFuture));
+                } catch (ExecutionException e) {
+                    onBorrowFailure(host, e.getCause());
+                    return false;
+                }
+            }
+
+            // The pool is busy and we were put in its wait queue. Don't block: resume from the callback, and move on
+            // to the next host if the borrow fails.
+            Futures.addCallback(connectionFuture, new FutureCallback<Connection>() {
+                @Override
+                public void onSuccess(Connection connection) {
+                    if (!query(host, connection))
+                        sendRequest();
+                }
+
+                @Override
+                public void onFailure(Throwable t) {
+                    onBorrowFailure(host, t);
+                    sendRequest();
+                }
+            }, manager.executor());
+            return true;
+        }
+
+        private boolean query(Host host, Connection connection) {
             try {
-                connection = currentPool.borrowConnection(manager.configuration().getPoolingOptions().getPoolTimeoutMillis(), TimeUnit.MILLISECONDS);
                 if (current != null) {
                     if (triedHosts == null)
                         triedHosts = new CopyOnWriteArrayList<Host>();
@@ -303,8 +340,7 @@ class RequestHandler {
                 // If we have any problem with the connection, move to the next node.
                 if (metricsEnabled())
                     metrics().getErrorMetrics().getConnectionErrors().inc();
-                if (connection != null)
-                    connection.release();
+                connection.release();
                 logError(host.getSocketAddress(), e);
                 return false;
             } catch (BusyConnectionException e) {
@@ -312,19 +348,31 @@ class RequestHandler {
                 connection.release();
                 logError(host.getSocketAddress(), e);
                 return false;
-            } catch (TimeoutException e) {
-                // We timeout, log it but move to the next node.
-                logError(host.getSocketAddress(), new DriverException("Timeout while trying to acquire available connection (you may want to increase the driver number of per-host connections)"));
-                return false;
             } catch (RuntimeException e) {
-                if (connection != null)
-                    connection.release();
+                connection.release();
                 logger.error("Unexpected error while querying " + host.getAddress(), e);
                 logError(host.getSocketAddress(), e);
                 return false;
             }
         }
 
+        private void onBorrowFailure(Host host, Throwable t) {
+            if (t instanceof ConnectionException) {
+                // If we have any problem with the connection, move to the next node.
+                if (metricsEnabled())
+                    metrics().getErrorMetrics().getConnectionErrors().inc();
+                logError(host.getSocketAddress(), t);
+            } else if (t instanceof TimeoutException) {
+                // We timeout, log it but move to the next node.
+                logError(host.getSocketAddress(), new DriverException("Timeout while trying to acquire available connection (you may want to increase the driver number of per-host connections)"));
+            } else if (t instanceof BusyPoolException) {
+                logError(host.getSocketAddress(), new DriverException(t.getMessage() + " (you may want to increase the driver number of per-host connections)"));
+            } else {
+                logger.error("Unexpected error while querying " + host.getAddress(), t);
+                logError(host.getSocketAddress(), t);
+            }
+        }
+
         private void write(Connection connection, Connection.ResponseCallback responseCallback) throws ConnectionException, BusyConnectionException {
             // Make sure cancel() does not see a stale connectionHandler if it sees the new query state
             // before connection.write has completed
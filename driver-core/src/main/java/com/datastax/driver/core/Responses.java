@@ -200,6 +200,18 @@ class Responses {
             }
         };
 
+        /**
+         * Same as {@link #decoder}, but decodes rows with {@link Rows#pageBufferSubcodec}.
+         */
+        public static final Message.Decoder<Result> pageBufferDecoder = new Message.Decoder<Result>() {
+            public Result decode(ByteBuf body, ProtocolVersion version) {
+                Kind kind = Kind.fromId(body.readInt());
+                return kind == Kind.ROWS
+                    ? Rows.pageBufferSubcodec.decode(body, version)
+                    : kind.subDecoder.decode(body, version);
+            }
+        };
+
         public enum Kind {
             VOID         (1, Void.subcodec),
             ROWS         (2, Rows.subcodec),
@@ -383,6 +395,7 @@ class Responses {
 
                     int rowCount = body.readInt();
                     int columnCount = metadata.columnCount;
+                    int dataSize = body.readableBytes();
 
                     Queue<List<ByteBuffer>> data = new ArrayDeque<List<ByteBuffer>>(rowCount);
                     for (int i = 0; i < rowCount; i++) {
@@ -392,18 +405,59 @@ class Responses {
                         data.add(row);
                     }
 
-                    return new Rows(metadata, data, version);
+                    return new Rows(metadata, data, dataSize, version);
+                }
+            };
+
+            /**
+             * Copies all the row data of the page into a single array, and returns values as read-only
+             * views over that array (see {@link ProtocolOptions#setSharedPageBuffers(boolean)}).
+             */
+            public static final Message.Decoder<Result> pageBufferSubcodec = new Message.Decoder<Result>() {
+                public Result decode(ByteBuf body, ProtocolVersion version) {
+
+                    Metadata metadata = Metadata.decode(body);
+
+                    int rowCount = body.readInt();
+                    int columnCount = metadata.columnCount;
+
+                    // The rows are the last thing in the body, so copy everything that remains in one go
+                    byte[] page = new byte[body.readableBytes()];
+                    body.readBytes(page);
+                    ByteBuffer pageBuffer = ByteBuffer.wrap(page).asReadOnlyBuffer();
+
+                    Queue<List<ByteBuffer>> data = new ArrayDeque<List<ByteBuffer>>(rowCount);
+                    for (int i = 0; i < rowCount; i++) {
+                        List<ByteBuffer> row = new ArrayList<ByteBuffer>(columnCount);
+                        for (int j = 0; j < columnCount; j++) {
+                            int length = pageBuffer.getInt();
+                            if (length < 0) {
+                                row.add(null);
+                            } else {
+                                ByteBuffer value = pageBuffer.slice();
+                                value.limit(length);
+                                pageBuffer.position(pageBuffer.position() + length);
+                                row.add(value);
+                            }
+                        }
+                        data.add(row);
+                    }
+
+                    return new Rows(metadata, data, page.length, version);
                 }
             };
 
             public final Metadata metadata;
             public final Queue<List<ByteBuffer>> data;
+            // The size of the serialized rows, in bytes
+            public final int dataSize;
             private final ProtocolVersion version;
 
-            private Rows(Metadata metadata, Queue<List<ByteBuffer>> data, ProtocolVersion version) {
+            private Rows(Metadata metadata, Queue<List<ByteBuffer>> data, int dataSize, ProtocolVersion version) {
                 super(Kind.ROWS);
                 this.metadata = metadata;
                 this.data = data;
+                this.dataSize = dataSize;
                 this.version = version;
             }
 
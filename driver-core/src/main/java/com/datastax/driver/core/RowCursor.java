@@ -0,0 +1,116 @@
+/*
+ *      Copyright (C) 2012-2015 DataStax Inc.
+ *
+ *   Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ */
+package com.datastax.driver.core;
+
+import java.nio.ByteBuffer;
+import java.util.List;
+import java.util.Queue;
+
+/**
+ * Iterates over the rows of a result set with a single, reusable {@link Row} instance.
+ * <p>
+ * Iterating a {@link ResultSet} creates a new {@code Row} object for each row. When processing a large number
+ * of rows in a tight loop, a cursor avoids that allocation:
+ * <pre>
+ * {@code
+ * RowCursor cursor = RowCursor.of(session.execute("SELECT id, value FROM measures"));
+ * while (cursor.advance()) {
+ *     Row row = cursor.row();
+ *     process(row.getInt("id"), row.getDouble("value"));
+ * }
+ * }
+ * </pre>
+ * The row returned by {@link #row()} is a view over the current position of the cursor: its values change
+ * when {@link #advance()} is called, so it must not be kept (or passed to another thread) after that. Copy
+ * the values you need instead.
+ * <p>
+ * Like the iterator of a result set, the cursor fetches the next page when the current one is exhausted
+ * (blocking until it is available). The cursor takes ownership of the result set's rows one page at a time:
+ * once {@link #advance()} has been called, rows of the current page are no longer returned by the result
+ * set itself. This class is not thread-safe.
+ */
+public class RowCursor {
+
+    private final ArrayBackedResultSet rs;
+    private final ArrayBackedRow row;
+    private Queue<List<ByteBuffer>> page;
+    private boolean positioned;
+
+    private RowCursor(ArrayBackedResultSet rs) {
+        this.rs = rs;
+        this.row = new ArrayBackedRow(rs.metadata, rs.tokenFactory, rs.protocolVersion, null);
+    }
+
+    /**
+     * Creates a new cursor over the (remaining) rows of a result set.
+     *
+     * @param rs the result set.
+     * @return the cursor. It is positioned before the first row, call {@link #advance()} to move to it.
+     *
+     * @throws IllegalArgumentException if {@code rs} was not returned by the driver.
+     */
+    public static RowCursor of(ResultSet rs) {
+        if (!(rs instanceof ArrayBackedResultSet))
+            throw new IllegalArgumentException("Unsupported result set implementation " + rs.getClass().getName());
+        return new RowCursor((ArrayBackedResultSet)rs);
+    }
+
+    /**
+     * Moves the cursor to the next row.
+     * <p>
+     * This will fetch the next page if the current one is exhausted.
+     *
+     * @return {@code true} if the cursor is positioned on a row, {@code false} if there are no more rows.
+     */
+    public boolean advance() {
+        List<ByteBuffer> data = (page == null) ? null : page.poll();
+        if (data == null) {
+            page = rs.pollPage();
+            data = page.poll();
+        }
+        // The result set doesn't see the rows we consume from our page
+        rs.prefetchIfNeeded(page.size());
+        row.setData(data);
+        positioned = (data != null);
+        return positioned;
+    }
+
+    /**
+     * Returns the row the cursor is positioned on.
+     * <p>
+     * The same instance is returned for every row, and it is only valid until the next call to
+     * {@link #advance()}.
+     *
+     * @return the row.
+     *
+     * @throws IllegalStateException if the cursor is not positioned on a row, i.e. if {@link #advance()} has not
+     * been called yet or returned {@code false}.
+     */
+    public Row row() {
+        if (!positioned)
+            throw new IllegalStateException("The cursor is not positioned on a row, call advance() first");
+        return row;
+    }
+
+    /**
+     * Returns the metadata of the rows.
+     *
+     * @return the column definitions.
+     */
+    public ColumnDefinitions getColumnDefinitions() {
+        return rs.getColumnDefinitions();
+    }
+}
@@ -0,0 +1,290 @@
+/*
+ *      Copyright (C) 2012-2015 DataStax Inc.
+ *
+ *   Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ */
+package com.datastax.driver.core;
+
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import com.google.common.util.concurrent.FutureCallback;
+import com.google.common.util.concurrent.Futures;
+
+/**
+ * Publishes the rows of a query to a subscriber, fetching pages according to the subscriber's demand.
+ * <p>
+ * The {@link Subscriber} and {@link Subscription} interfaces follow the
+ * <a href="http://www.reactive-streams.org">Reactive Streams</a> contract (and have the same methods), so
+ * they can easily be adapted to any compliant library.
+ * <p>
+ * The query is only executed when the subscriber first requests rows. After that, the next page is
+ * fetched only when the subscriber has requested more rows than are currently buffered, so the driver
+ * never holds more pages than needed to satisfy the outstanding demand, and no thread is blocked waiting
+ * for results. {@link QueryOptions#setPrefetchThreshold(int) Threshold-based prefetching} is disabled
+ * for the statements executed by a publisher.
+ * <p>
+ * Each call to {@link #subscribe(Subscriber)} executes the statement again.
+ * <pre>
+ * {@code
+ * Statement statement = new SimpleStatement("SELECT * FROM users").setFetchSize(500);
+ * RowPublisher.create(session, statement).subscribe(new RowPublisher.Subscriber() {
+ *     Subscription subscription;
+ *
+ *     public void onSubscribe(Subscription s) { subscription = s; s.request(100); }
+ *     public void onNext(Row row) { ... }
+ *     public void onError(Throwable t) { ... }
+ *     public void onComplete() { ... }
+ * });
+ * }
+ * </pre>
+ */
+public class RowPublisher {
+
+    private final Session session;
+    private final Statement statement;
+    private final Executor executor;
+
+    private RowPublisher(Session session, Statement statement, Executor executor) {
+        this.session = session;
+        this.statement = statement;
+        this.executor = executor;
+    }
+
+    /**
+     * Creates a new publisher that will signal its subscribers on the driver's internal worker threads.
+     * <p>
+     * Subscribers should therefore not perform blocking operations in their callbacks.
+     *
+     * @param session the session to execute the statement with.
+     * @param statement the statement to execute.
+     * @return the publisher.
+     */
+    public static RowPublisher create(Session session, Statement statement) {
+        return create(session, statement, session.getCluster().manager.executor);
+    }
+
+    /**
+     * Creates a new publisher.
+     *
+     * @param session the session to execute the statement with.
+     * @param statement the statement to execute.
+     * @param executor the executor on which subscribers are signaled when a page arrives. Note that
+     * subscribers can also be signaled synchronously from {@link Subscription#request(long)}.
+     * @return the publisher.
+     */
+    public static RowPublisher create(Session session, Statement statement, Executor executor) {
+        if (statement instanceof BatchStatement)
+            throw new IllegalArgumentException("Batch statements can't be published since they are never paged");
+        return new RowPublisher(session, statement, executor);
+    }
+
+    /**
+     * Subscribes to the rows of the statement.
+     *
+     * @param subscriber the subscriber.
+     */
+    public void subscribe(Subscriber subscriber) {
+        if (subscriber == null)
+            throw new NullPointerException("subscriber can't be null");
+        RowSubscription subscription = new RowSubscription(subscriber);
+        subscriber.onSubscribe(subscription);
+    }
+
+    /**
+     * Receives the rows published by a {@link RowPublisher}.
+     * <p>
+     * Methods of a given subscriber are never called concurrently.
+     */
+    public interface Subscriber {
+        /**
+         * Called once, before any other method, when the subscriber is subscribed.
+         * <p>
+         * No rows are fetched until {@link Subscription#request(long)} is called.
+         *
+         * @param subscription the subscription.
+         */
+        public void onSubscribe(Subscription subscription);
+
+        /**
+         * Called for each row, up to the number of rows requested.
+         *
+         * @param row the row.
+         */
+        public void onNext(Row row);
+
+        /**
+         * Called if an error occurs while fetching rows. No other method will be called after this one.
+         *
+         * @param t the error.
+         */
+        public void onError(Throwable t);
+
+        /**
+         * Called once all the rows have been published. No other method will be called after this one.
+         */
+        public void onComplete();
+    }
+
+    /**
+     * The link between a {@link RowPublisher} and a {@link Subscriber}.
+     */
+    public interface Subscription {
+        /**
+         * Requests more rows. Demand is cumulative.
+         *
+         * @param n the number of additional rows requested, must be strictly positive. Passing
+         * {@code Long.MAX_VALUE} means "unbounded".
+         */
+        public void request(long n);
+
+        /**
+         * Stops publishing rows. Rows might still be signaled for a short while after this call.
+         */
+        public void cancel();
+    }
+
+    private class RowSubscription implements Subscription, FutureCallback<ResultSet> {
+        private final Subscriber subscriber;
+
+        private final AtomicLong requested = new AtomicLong();
+        // Serializes the signals to the subscriber: only the thread that increments it from 0 emits
+        private final AtomicInteger wip = new AtomicInteger();
+
+        private volatile boolean started;
+        private volatile boolean cancelled;
+        private volatile boolean fetching;
+        private volatile ResultSet rs;
+        private volatile Throwable error;
+
+        // Only accessed from drain()
+        private boolean done;
+
+        RowSubscription(Subscriber subscriber) {
+            this.subscriber = subscriber;
+        }
+
+        @Override
+        public void request(long n) {
+            if (n <= 0) {
+                error = new IllegalArgumentException("Invalid request, should be strictly positive, got " + n);
+                drain();
+                return;
+            }
+            long current, next;
+            do {
+                current = requested.get();
+                next = current + n;
+                if (next < 0)
+                    next = Long.MAX_VALUE;
+            } while (!requested.compareAndSet(current, next));
+
+            if (!started) {
+                synchronized (this) {
+                    if (!started) {
+                        started = true;
+                        Statement wrapped = new NoPrefetchStatement(statement);
+                        Futures.addCallback(session.executeAsync(wrapped), this, executor);
+                        return;
+                    }
+                }
+            }
+            drain();
+        }
+
+        @Override
+        public void cancel() {
+            cancelled = true;
+        }
+
+        // Called with the first page
+        @Override
+        public void onSuccess(ResultSet rs) {
+            this.rs = rs;
+            drain();
+        }
+
+        @Override
+        public void onFailure(Throwable t) {
+            error = t;
+            drain();
+        }
+
+        private void drain() {
+            if (wip.getAndIncrement() != 0)
+                return;
+
+            int missed = 1;
+            do {
+                if (!done && !cancelled) {
+                    if (error != null) {
+                        done = true;
+                        subscriber.onError(error);
+                    } else if (rs != null) {
+                        emit(rs);
+                    }
+                }
+                missed = wip.addAndGet(-missed);
+            } while (missed != 0);
+        }
+
+        private void emit(ResultSet rs) {
+            long r = requested.get();
+            long emitted = 0;
+            int available = rs.getAvailableWithoutFetching();
+            while (emitted < r && available > 0 && !cancelled) {
+                subscriber.onNext(rs.one());
+                emitted += 1;
+                available -= 1;
+            }
+            if (emitted > 0 && r != Long.MAX_VALUE)
+                r = requested.addAndGet(-emitted);
+
+            if (available == 0 && rs.isFullyFetched()) {
+                done = true;
+                if (!cancelled)
+                    subscriber.onComplete();
+            } else if (r > available && !fetching && !cancelled && !rs.isFullyFetched()) {
+                // More rows were requested than what we have, get the next page
+                fetching = true;
+                Futures.addCallback(rs.fetchMoreResults(), new FutureCallback<Void>() {
+                    @Override
+                    public void onSuccess(Void result) {
+                        fetching = false;
+                        drain();
+                    }
+
+                    @Override
+                    public void onFailure(Throwable t) {
+                        RowSubscription.this.onFailure(t);
+                    }
+                }, executor);
+            }
+        }
+    }
+
+    /**
+     * Disables threshold-based prefetching, paging is driven by the subscriber's demand.
+     */
+    static class NoPrefetchStatement extends StatementWrapper {
+        NoPrefetchStatement(Statement wrapped) {
+            super(wrapped);
+        }
+
+        @Override
+        public int getPrefetchThreshold() {
+            return 0;
+        }
+    }
+}
@@ -47,6 +47,11 @@ class SessionManager extends AbstractSession {
     final ConcurrentMap<Host, HostConnectionPool> pools;
     final HostConnectionPool.PoolState poolsState;
     final AtomicReference<CloseFuture> closeFuture = new AtomicReference<CloseFuture>();
+    final PageBudget pageBudget = new PageBudget();
+    // null if disabled
+    private final PreparedStatementCache preparedStatementCache;
+    // null if disabled
+    private final AutoPreparer autoPreparer;
 
     private volatile boolean isInit;
     private volatile boolean isClosing;
@@ -56,6 +61,12 @@ class SessionManager extends AbstractSession {
         this.cluster = cluster;
         this.pools = new ConcurrentHashMap<Host, HostConnectionPool>();
         this.poolsState = new HostConnectionPool.PoolState();
+        int cacheSize = cluster.manager.configuration.getQueryOptions().getPreparedStatementCacheSize();
+        this.preparedStatementCache = cacheSize > 0 ? new PreparedStatementCache(this, cacheSize) : null;
+        int autoPrepareThreshold = cluster.manager.configuration.getQueryOptions().getAutoPrepareThreshold();
+        this.autoPreparer = autoPrepareThreshold > 0
+            ? new AutoPreparer(this, autoPrepareThreshold, cluster.manager.configuration.getQueryOptions().getMaxAutoPrepareShapes())
+            : null;
     }
 
     public synchronized Session init() {
@@ -98,6 +109,12 @@ class SessionManager extends AbstractSession {
     }
 
     public ListenableFuture<PreparedStatement> prepareAsync(String query) {
+        return preparedStatementCache == null
+            ? prepareUncachedAsync(query)
+            : preparedStatementCache.prepareAsync(query, poolsState.keyspace);
+    }
+
+    ListenableFuture<PreparedStatement> prepareUncachedAsync(String query) {
         Connection.Future future = new Connection.Future(new Requests.Prepare(query));
         execute(future, Statement.DEFAULT);
         return toPreparedStatement(query, future);
@@ -512,6 +529,16 @@ class SessionManager extends AbstractSession {
             String qString = rs.getQueryString();
             Requests.QueryProtocolOptions options = new Requests.QueryProtocolOptions(consistency, values, false,
                                                                                       fetchSize, usedPagingState, serialConsistency, defaultTimestamp);
+
+            // Built statements without values either have no bind markers, or bind markers that are meant to be bound by the user
+            if (autoPreparer != null && rawValues != null && rs instanceof com.datastax.driver.core.querybuilder.BuiltStatement) {
+                PreparedStatement prepared = autoPreparer.onExecute(qString, poolsState.keyspace);
+                if (prepared != null) {
+                    if (prepared instanceof DefaultPreparedStatement)
+                        ((DefaultPreparedStatement)prepared).markUsed();
+                    return new Requests.Execute(prepared.getPreparedId().id, options, statement.isTracing());
+                }
+            }
             return new Requests.Query(qString, options, statement.isTracing());
         } else if (statement instanceof BoundStatement) {
             BoundStatement bs = (BoundStatement)statement;
@@ -520,8 +547,10 @@ class SessionManager extends AbstractSession {
                     + "You may have used a PreparedStatement that was created with another Cluster instance.", bs.statement.getPreparedId().id));
             }
             bs.ensureAllSet();
+            if (bs.statement instanceof DefaultPreparedStatement)
+                ((DefaultPreparedStatement)bs.statement).markUsed();
             boolean skipMetadata = version != ProtocolVersion.V1 && bs.statement.getPreparedId().resultSetMetadata != null;
-            Requests.QueryProtocolOptions options = new Requests.QueryProtocolOptions(consistency, Arrays.asList(bs.wrapper.values), skipMetadata,
+            Requests.QueryProtocolOptions options = new Requests.QueryProtocolOptions(consistency, bs.wrapper.valueList(), skipMetadata,
                                                                                       fetchSize, usedPagingState, serialConsistency, defaultTimestamp);
             return new Requests.Execute(bs.statement.getPreparedId().id, options, statement.isTracing());
         } else {
@@ -21,6 +21,51 @@ package com.datastax.driver.core;
  */
 public class SocketOptions {
 
+    /**
+     * How the driver coalesces the writes of outgoing requests before flushing them to the socket.
+     * <p>
+     * Flushing a socket is a system call, so flushing after each request becomes a significant overhead at high
+     * request rates. When coalescing is enabled, requests written by client threads are queued, and a task running
+     * on each Netty I/O thread periodically writes all pending requests and flushes each socket once.
+     *
+     * @see #setWriteCoalescing(WriteCoalescing)
+     */
+    public enum WriteCoalescing {
+        /**
+         * Each request is flushed as soon as it is written. This minimizes the latency of individual requests, at
+         * the cost of one system call per request.
+         */
+        DISABLED,
+        /**
+         * Pending requests are flushed at a fixed interval of {@link #getWriteCoalescingMaxDelayMicros()}.
+         */
+        FIXED,
+        /**
+         * The flushing interval adapts to the request rate: it widens (up to
+         * {@link #getWriteCoalescingMaxDelayMicros()}) when several requests are coalesced into each flush, and
+         * narrows when requests come in one at a time.
+         */
+        ADAPTIVE
+    }
+
+    /**
+     * The default write coalescing mode if none is set explicitly using {@link #setWriteCoalescing}:
+     * {@link WriteCoalescing#FIXED}.
+     */
+    public static final WriteCoalescing DEFAULT_WRITE_COALESCING = WriteCoalescing.FIXED;
+
+    /**
+     * The default maximum delay between two flushes of coalesced requests, in microseconds, if none is set
+     * explicitly using {@link #setWriteCoalescingMaxDelayMicros}: 10.
+     */
+    public static final int DEFAULT_WRITE_COALESCING_MAX_DELAY_MICROS = 10;
+
+    /**
+     * The default maximum number of requests written to a connection before it is flushed, if none is set
+     * explicitly using {@link #setWriteCoalescingMaxBatchSize}: 128.
+     */
+    public static final int DEFAULT_WRITE_COALESCING_MAX_BATCH_SIZE = 128;
+
     /**
      * The default connection timeout in milliseconds if none is set explicitly
      * using {@link #setConnectTimeoutMillis}.
@@ -42,12 +87,16 @@ public class SocketOptions {
 
     private volatile int connectTimeoutMillis = DEFAULT_CONNECT_TIMEOUT_MILLIS;
     private volatile int readTimeoutMillis = DEFAULT_READ_TIMEOUT_MILLIS;
+    private volatile int readTimeoutTickMillis = 0;
     private volatile Boolean keepAlive;
     private volatile Boolean reuseAddress;
     private volatile Integer soLinger;
     private volatile Boolean tcpNoDelay = Boolean.TRUE;
     private volatile Integer receiveBufferSize;
     private volatile Integer sendBufferSize;
+    private volatile WriteCoalescing writeCoalescing = DEFAULT_WRITE_COALESCING;
+    private volatile int writeCoalescingMaxDelayMicros = DEFAULT_WRITE_COALESCING_MAX_DELAY_MICROS;
+    private volatile int writeCoalescingMaxBatchSize = DEFAULT_WRITE_COALESCING_MAX_BATCH_SIZE;
 
     /**
      * Creates a new {@code SocketOptions} instance with default values.
@@ -131,6 +180,42 @@ public class SocketOptions {
         return this;
     }
 
+    /**
+     * Returns how read timeouts are tracked.
+     *
+     * @return the tick in milliseconds, or 0 if timeouts are tracked by a shared timer.
+     *
+     * @see #setReadTimeoutTickMillis(int)
+     */
+    public int getReadTimeoutTickMillis() {
+        return readTimeoutTickMillis;
+    }
+
+    /**
+     * Sets how read timeouts are tracked.
+     * <p>
+     * By default ({@code 0}), the driver schedules a task on a single, cluster-wide timer thread for each request.
+     * At high request rates, this thread can become a bottleneck and introduce latency jitter.
+     * <p>
+     * With a positive value, each connection instead records the deadline of its pending requests, and checks
+     * them every {@code readTimeoutTickMillis} on its I/O thread, which saves the timer task per request. The
+     * tick is the precision of the timeouts: a request may time out up to that long after
+     * {@link #getReadTimeoutMillis() the read timeout}.
+     * <p>
+     * Note that while this setting can be changed at any time, it will only apply to newly created connections.
+     *
+     * @param readTimeoutTickMillis the tick in milliseconds, or 0 to use a shared timer.
+     * @return this {@code SocketOptions}.
+     *
+     * @throws IllegalArgumentException if {@code readTimeoutTickMillis < 0}.
+     */
+    public SocketOptions setReadTimeoutTickMillis(int readTimeoutTickMillis) {
+        if (readTimeoutTickMillis < 0)
+            throw new IllegalArgumentException("readTimeoutTickMillis must be positive or 0, got " + readTimeoutTickMillis);
+        this.readTimeoutTickMillis = readTimeoutTickMillis;
+        return this;
+    }
+
     /**
      * Returns whether TCP keepalive is enabled.
      *
@@ -289,4 +374,95 @@ public class SocketOptions {
         this.sendBufferSize = sendBufferSize;
         return this;
     }
+
+    /**
+     * Returns how the writes of outgoing requests are coalesced.
+     *
+     * @return the write coalescing mode.
+     *
+     * @see #setWriteCoalescing(WriteCoalescing)
+     */
+    public WriteCoalescing getWriteCoalescing() {
+        return writeCoalescing;
+    }
+
+    /**
+     * Sets how the writes of outgoing requests are coalesced.
+     * <p>
+     * The default ({@link WriteCoalescing#FIXED}) works well in most cases. {@link WriteCoalescing#ADAPTIVE}
+     * may reduce latency for clients with bursty or low request rates, and {@link WriteCoalescing#DISABLED}
+     * is mostly useful for diagnostics. {@link Metrics#getWritesPerFlush()} can be used to check how effective
+     * coalescing is.
+     * <p>
+     * This option can be changed at runtime, and applies to all the connections of the cluster.
+     *
+     * @param writeCoalescing the new mode.
+     * @return this {@code SocketOptions}.
+     *
+     * @throws IllegalArgumentException if {@code writeCoalescing} is {@code null}.
+     */
+    public SocketOptions setWriteCoalescing(WriteCoalescing writeCoalescing) {
+        if (writeCoalescing == null)
+            throw new IllegalArgumentException("writeCoalescing must not be null");
+        this.writeCoalescing = writeCoalescing;
+        return this;
+    }
+
+    /**
+     * Returns the maximum delay between two flushes of coalesced requests, in microseconds.
+     *
+     * @return the maximum delay.
+     *
+     * @see #setWriteCoalescingMaxDelayMicros(int)
+     */
+    public int getWriteCoalescingMaxDelayMicros() {
+        return writeCoalescingMaxDelayMicros;
+    }
+
+    /**
+     * Sets the maximum delay between two flushes of coalesced requests, in microseconds.
+     * <p>
+     * This is the interval at which requests are flushed with {@link WriteCoalescing#FIXED}, and the upper
+     * bound of the interval with {@link WriteCoalescing#ADAPTIVE}. A higher value allows more requests to be
+     * flushed at once, but adds up to that delay to the latency of each request.
+     *
+     * @param writeCoalescingMaxDelayMicros the new value.
+     * @return this {@code SocketOptions}.
+     *
+     * @throws IllegalArgumentException if {@code writeCoalescingMaxDelayMicros < 1}.
+     */
+    public SocketOptions setWriteCoalescingMaxDelayMicros(int writeCoalescingMaxDelayMicros) {
+        if (writeCoalescingMaxDelayMicros < 1)
+            throw new IllegalArgumentException("writeCoalescingMaxDelayMicros must be at least 1, got " + writeCoalescingMaxDelayMicros);
+        this.writeCoalescingMaxDelayMicros = writeCoalescingMaxDelayMicros;
+        return this;
+    }
+
+    /**
+     * Returns the maximum number of coalesced requests written to a connection before it is flushed.
+     *
+     * @return the maximum batch size.
+     *
+     * @see #setWriteCoalescingMaxBatchSize(int)
+     */
+    public int getWriteCoalescingMaxBatchSize() {
+        return writeCoalescingMaxBatchSize;
+    }
+
+    /**
+     * Sets the maximum number of coalesced requests written to a connection before it is flushed.
+     * <p>
+     * This bounds the amount of data buffered for a single flush when many requests are pending.
+     *
+     * @param writeCoalescingMaxBatchSize the new value.
+     * @return this {@code SocketOptions}.
+     *
+     * @throws IllegalArgumentException if {@code writeCoalescingMaxBatchSize < 1}.
+     */
+    public SocketOptions setWriteCoalescingMaxBatchSize(int writeCoalescingMaxBatchSize) {
+        if (writeCoalescingMaxBatchSize < 1)
+            throw new IllegalArgumentException("writeCoalescingMaxBatchSize must be at least 1, got " + writeCoalescingMaxBatchSize);
+        this.writeCoalescingMaxBatchSize = writeCoalescingMaxBatchSize;
+        return this;
+    }
 }
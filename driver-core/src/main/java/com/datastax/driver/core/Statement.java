@@ -48,6 +48,7 @@ public abstract class Statement {
     private volatile ConsistencyLevel serialConsistency;
     private volatile boolean traceQuery;
     private volatile int fetchSize;
+    private volatile int prefetchThreshold = -1;
     private volatile long defaultTimestamp = Long.MIN_VALUE;
     private volatile RetryPolicy retryPolicy;
     private volatile ByteBuffer pagingState;
@@ -174,6 +175,36 @@ public abstract class Statement {
      */
     public abstract ByteBuffer getRoutingKey();
 
+    /**
+     * Returns the token of the routing key of this statement.
+     * <p>
+     * Routing uses {@link #getMurmur3RoutingToken()} instead for Murmur3 rings, which is cheaper.
+     *
+     * @return the token, or {@code null} if {@link #getRoutingKey()} returns {@code null}.
+     */
+    Token getRoutingToken(Token.Factory factory) {
+        ByteBuffer routingKey = getRoutingKey();
+        return routingKey == null ? null : factory.hash(routingKey);
+    }
+
+    /**
+     * Returned by {@link #getMurmur3RoutingToken()} when there is no routing key. Murmur3 never hashes a key to
+     * the minimum token, so this can't be mistaken for the token of an actual key.
+     */
+    static final long NO_ROUTING_TOKEN = Long.MIN_VALUE;
+
+    /**
+     * Returns the value of the Murmur3 token of the routing key of this statement, without allocating a token.
+     * <p>
+     * Statements that can tell when their routing key changes override this to cache the value.
+     *
+     * @return the value of the token, or {@link #NO_ROUTING_TOKEN} if {@link #getRoutingKey()} returns {@code null}.
+     */
+    long getMurmur3RoutingToken() {
+        ByteBuffer routingKey = getRoutingKey();
+        return routingKey == null ? NO_ROUTING_TOKEN : Token.M3PToken.hashToLong(routingKey);
+    }
+
     /**
      * Returns the keyspace this query operates on.
      * <p>
@@ -262,6 +293,32 @@ public abstract class Statement {
         return fetchSize;
     }
 
+    /**
+     * Sets the prefetch threshold for this query.
+     * <p>
+     * When iterating over the result of this query, the next page will be fetched in the background as soon as
+     * the number of rows that can be read without fetching drops below this threshold. See
+     * {@link QueryOptions#setPrefetchThreshold(int)} for more details.
+     *
+     * @param prefetchThreshold the threshold to use, in rows. If {@code prefetchThreshold == 0}, prefetching is
+     * disabled for this query. If it is negative, the default threshold will be used.
+     * @return this {@code Statement} object.
+     */
+    public Statement setPrefetchThreshold(int prefetchThreshold) {
+        this.prefetchThreshold = prefetchThreshold;
+        return this;
+    }
+
+    /**
+     * The prefetch threshold for this query.
+     *
+     * @return the prefetch threshold for this query. If that value is negative (the default unless
+     * {@link #setPrefetchThreshold} is used), the default threshold will be used.
+     */
+    public int getPrefetchThreshold() {
+        return prefetchThreshold;
+    }
+
     /**
      * Sets the default timestamp for this query (in microseconds since the epoch).
      * <p>
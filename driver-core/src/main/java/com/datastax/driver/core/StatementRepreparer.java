@@ -0,0 +1,297 @@
+/*
+ *      Copyright (C) 2012-2015 DataStax Inc.
+ *
+ *   Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ */
+package com.datastax.driver.core;
+
+import java.util.*;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutionException;
+
+import com.google.common.util.concurrent.FutureCallback;
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.MoreExecutors;
+import com.google.common.util.concurrent.SettableFuture;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Re-prepares a set of statements on the connections to a node that comes up.
+ * <p>
+ * Statements are grouped per keyspace, and the groups (and the statements in each group) are ordered by most
+ * recent use. Each connection pipelines up to {@code maxInFlight} PREPARE requests. Since the keyspace of a
+ * connection applies to all the requests it processes, a connection waits for its in-flight requests before
+ * switching to the keyspace of the next group.
+ * <p>
+ * If a connection fails, the statements that were in flight on it are given back to the other connections,
+ * including those that had already run out of statements.
+ */
+class StatementRepreparer {
+
+    private static final Logger logger = LoggerFactory.getLogger(StatementRepreparer.class);
+
+    private final List<Group> groups;
+    private final int maxInFlight;
+
+    // Guarded by this: the lanes still sending statements, and those that ran out of statements (but could
+    // take over the statements of a failed lane)
+    private int activeLanes;
+    private final List<Lane> idleLanes = new ArrayList<Lane>();
+    private final Set<Connection> failedConnections = Collections.synchronizedSet(new HashSet<Connection>());
+    private final SettableFuture<Set<Connection>> future = SettableFuture.create();
+
+    StatementRepreparer(Collection<PreparedStatement> statements, int maxInFlight) {
+        this.maxInFlight = maxInFlight;
+
+        // It's possible for a query to not have a current keyspace. But since null doesn't work well as
+        // map keys, we use the empty string instead (that is not a valid keyspace name).
+        Map<String, List<PreparedStatement>> perKeyspace = new HashMap<String, List<PreparedStatement>>();
+        for (PreparedStatement ps : statements) {
+            String keyspace = ps.getQueryKeyspace() == null ? "" : ps.getQueryKeyspace();
+            List<PreparedStatement> group = perKeyspace.get(keyspace);
+            if (group == null) {
+                group = new ArrayList<PreparedStatement>();
+                perKeyspace.put(keyspace, group);
+            }
+            group.add(ps);
+        }
+
+        this.groups = new ArrayList<Group>(perKeyspace.size());
+        for (Map.Entry<String, List<PreparedStatement>> entry : perKeyspace.entrySet())
+            groups.add(new Group(entry.getKey(), entry.getValue()));
+        Collections.sort(groups, new Comparator<Group>() {
+            @Override
+            public int compare(Group g1, Group g2) {
+                return compareLastUsed(g1.lastUsedMillis, g2.lastUsedMillis);
+            }
+        });
+    }
+
+    /**
+     * Starts re-preparing on the given connections.
+     *
+     * @return a future that completes when all the statements have been prepared, or all the connections have
+     * failed. It never fails, its value is the set of connections that failed (and should not be reused).
+     */
+    ListenableFuture<Set<Connection>> start(List<Connection> connections) {
+        synchronized (this) {
+            activeLanes = connections.size();
+        }
+        for (Connection connection : connections)
+            new Lane(connection).run();
+        return future;
+    }
+
+    private synchronized Group nextGroup() {
+        for (Group group : groups) {
+            if (!group.queries.isEmpty())
+                return group;
+        }
+        return null;
+    }
+
+    private void onLaneDone(Lane lane, boolean failed) {
+        List<Lane> toResume = null;
+        boolean complete = false;
+        synchronized (this) {
+            activeLanes -= 1;
+            if (!failed)
+                idleLanes.add(lane);
+            if (nextGroup() != null && !idleLanes.isEmpty()) {
+                // A failed lane gave back statements after the others ran out
+                toResume = new ArrayList<Lane>(idleLanes);
+                idleLanes.clear();
+                activeLanes += toResume.size();
+            } else if (activeLanes == 0) {
+                // Either all the statements were prepared, or there are no connections left to prepare them
+                complete = true;
+            }
+        }
+        if (toResume != null) {
+            for (Lane idle : toResume)
+                idle.resume();
+        }
+        if (complete)
+            future.set(failedConnections);
+    }
+
+    static long lastUsedMillis(PreparedStatement ps) {
+        return (ps instanceof DefaultPreparedStatement)
+            ? ((DefaultPreparedStatement)ps).lastUsedMillis()
+            : 0;
+    }
+
+    // Most recent first
+    private static int compareLastUsed(long lastUsed1, long lastUsed2) {
+        return lastUsed1 > lastUsed2 ? -1 : (lastUsed1 == lastUsed2 ? 0 : 1);
+    }
+
+    private static class Group {
+        final String keyspace;
+        final long lastUsedMillis;
+        final Queue<String> queries = new ConcurrentLinkedQueue<String>();
+
+        Group(String keyspace, List<PreparedStatement> statements) {
+            this.keyspace = keyspace;
+            Collections.sort(statements, new Comparator<PreparedStatement>() {
+                @Override
+                public int compare(PreparedStatement ps1, PreparedStatement ps2) {
+                    return compareLastUsed(lastUsedMillis(ps1), lastUsedMillis(ps2));
+                }
+            });
+            this.lastUsedMillis = lastUsedMillis(statements.get(0));
+            for (PreparedStatement ps : statements)
+                queries.add(ps.getQueryString());
+        }
+
+        boolean canRunOn(Connection connection) {
+            // Empty string mean no particular keyspace to set
+            return keyspace.isEmpty() || keyspace.equals(connection.keyspace());
+        }
+    }
+
+    /**
+     * Sends the statements on a given connection. All the state is guarded by the lane's monitor.
+     */
+    private class Lane {
+        private final Connection connection;
+
+        private Group group;
+        private int inFlight;
+        private boolean switchingKeyspace;
+        private boolean failed;
+        private boolean done;
+
+        Lane(Connection connection) {
+            this.connection = connection;
+        }
+
+        synchronized void resume() {
+            done = false;
+            run();
+        }
+
+        synchronized void run() {
+            while (!done && !failed && !switchingKeyspace && inFlight < maxInFlight) {
+                if (group == null || group.queries.isEmpty()) {
+                    group = nextGroup();
+                    if (group == null) {
+                        if (inFlight == 0)
+                            finish(false);
+                        return;
+                    }
+                }
+
+                if (!group.canRunOn(connection)) {
+                    // Wait for the requests of the current keyspace, they will call run() again when they complete
+                    if (inFlight == 0)
+                        switchKeyspace(group.keyspace);
+                    return;
+                }
+
+                String query = group.queries.poll();
+                if (query != null)
+                    prepare(query);
+            }
+        }
+
+        private void prepare(final String query) {
+            final Group queryGroup = group;
+            final Connection.Future prepareFuture;
+            try {
+                prepareFuture = connection.write(new Requests.Prepare(query));
+            } catch (ConnectionException e) {
+                fail(queryGroup, query, e);
+                return;
+            } catch (BusyConnectionException e) {
+                fail(queryGroup, query, e);
+                return;
+            }
+            inFlight += 1;
+            prepareFuture.addListener(new Runnable() {
+                @Override
+                public void run() {
+                    Throwable error = null;
+                    try {
+                        Message.Response response = prepareFuture.get();
+                        if (response.type == Message.Response.Type.ERROR)
+                            // This "might" happen if we drop a CF but haven't removed it's prepared queries (which we don't do
+                            // currently). It's not a big deal however as if it's a more serious problem it'll show up later when
+                            // the query is tried for execution.
+                            logger.debug("Unexpected error while preparing queries on new/newly up host: {}", response);
+                    } catch (ExecutionException e) {
+                        // The connection failed (or timed out), the query was not prepared
+                        error = e.getCause();
+                    } catch (InterruptedException e) {
+                        // Can't happen, the future is done
+                        Thread.currentThread().interrupt();
+                    }
+                    synchronized (Lane.this) {
+                        inFlight -= 1;
+                        if (error != null)
+                            fail(queryGroup, query, error);
+                        else if (failed && inFlight == 0)
+                            finish(true);
+                        else if (!failed)
+                            Lane.this.run();
+                    }
+                }
+            }, MoreExecutors.sameThreadExecutor());
+        }
+
+        private void switchKeyspace(String keyspace) {
+            switchingKeyspace = true;
+            Futures.addCallback(connection.setKeyspaceAsync(keyspace), new FutureCallback<Void>() {
+                @Override
+                public void onSuccess(Void result) {
+                    synchronized (Lane.this) {
+                        switchingKeyspace = false;
+                        Lane.this.run();
+                    }
+                }
+
+                @Override
+                public void onFailure(Throwable t) {
+                    synchronized (Lane.this) {
+                        switchingKeyspace = false;
+                        fail(null, null, t);
+                    }
+                }
+            });
+        }
+
+        // Stops sending new queries, and finishes once the queries in flight have completed
+        private void fail(Group queryGroup, String query, Throwable t) {
+            if (!failed && t != null) {
+                logger.debug(String.format("Error while preparing queries on %s, stopping to use this connection", connection), t);
+                failed = true;
+            }
+            // Give the query back to the other lanes
+            if (query != null)
+                queryGroup.queries.add(query);
+            if (inFlight == 0)
+                finish(true);
+        }
+
+        private void finish(boolean failed) {
+            if (done)
+                return;
+            done = true;
+            if (failed)
+                failedConnections.add(connection);
+            onLaneDone(this, failed);
+        }
+    }
+}
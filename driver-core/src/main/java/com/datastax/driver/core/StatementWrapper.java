@@ -115,6 +115,16 @@ public abstract class StatementWrapper extends Statement {
         return wrapped.getRoutingKey();
     }
 
+    @Override
+    Token getRoutingToken(Token.Factory factory) {
+        return wrapped.getRoutingToken(factory);
+    }
+
+    @Override
+    long getMurmur3RoutingToken() {
+        return wrapped.getMurmur3RoutingToken();
+    }
+
     @Override
     public Statement setRetryPolicy(RetryPolicy policy) {
         return wrapped.setRetryPolicy(policy);
@@ -149,4 +159,14 @@ public abstract class StatementWrapper extends Statement {
     public Statement setFetchSize(int fetchSize) {
         return wrapped.setFetchSize(fetchSize);
     }
+
+    @Override
+    public int getPrefetchThreshold() {
+        return wrapped.getPrefetchThreshold();
+    }
+
+    @Override
+    public Statement setPrefetchThreshold(int prefetchThreshold) {
+        return wrapped.setPrefetchThreshold(prefetchThreshold);
+    }
 }
@@ -28,13 +28,34 @@ import java.util.concurrent.atomic.AtomicLongArray;
  * Implementation notes: we use an atomic long array where each bit represents an id. It is set to 1 if
  * the id is available, 0 otherwise. When looking for an id, we find a long that has remaining 1's and
  * pick the rightmost one.
- * To minimize the average time to find that long, we search the array in a round-robin fashion.
+ * To avoid contention when many threads share a connection:
+ * <ul>
+ *     <li>each thread starts its search at the last word where it found an id (initially, a word derived from
+ *     its id), so that concurrent threads tend to work on different words. There is no shared state other than
+ *     the words themselves;</li>
+ *     <li>the words are striped across cache lines: consecutive words are in different lines, so threads working
+ *     on nearby words don't invalidate each other's caches. This keeps the array compact (4 KB for V3), instead of
+ *     padding each word to its own line.</li>
+ * </ul>
  */
 class StreamIdGenerator {
     static final int MAX_STREAM_PER_CONNECTION_V2 = 128;
     static final int MAX_STREAM_PER_CONNECTION_V3 = 32768;
     private static final long MAX_UNSIGNED_LONG = -1L;
 
+    // 8 longs = 64 bytes, the size of a cache line on most CPUs
+    private static final int WORDS_PER_LINE = 8;
+
+    // The index of the word where the current thread last found an id. This is shared by all the generators, it's
+    // only a hint so it's fine if it was set by another instance (with a different number of words).
+    private static final ThreadLocal<int[]> hint = new ThreadLocal<int[]>() {
+        @Override
+        protected int[] initialValue() {
+            // Spread threads over the words (Fibonacci hashing of the thread id)
+            return new int[]{ (int)(Thread.currentThread().getId() * 0x9E3779B9L) >>> 1 };
+        }
+    };
+
     static StreamIdGenerator newInstance(ProtocolVersion version) {
         return new StreamIdGenerator(streamIdSizeFor(version));
     }
@@ -52,8 +73,10 @@ class StreamIdGenerator {
     }
 
     private final AtomicLongArray bits;
+    private final int words;
+    // The number of cache lines the words are striped over
+    private final int lines;
     private final int maxIds;
-    private final AtomicInteger offset;
 
     // If a query timeout, we'll stop waiting for it. However in that case, we
     // can't release/reuse the ID because we don't know if the response is lost
@@ -70,29 +93,33 @@ class StreamIdGenerator {
         // This is true for 1 byte = 128 streams, and therefore for any higher value
         assert maxIds % 64 == 0;
 
-        // We use one bit in our array of longs to represent each stream ID.
-        bits = new AtomicLongArray(maxIds / 64);
+        // We use one bit in a word of our array of longs to represent each stream ID.
+        words = maxIds / 64;
+        lines = Math.max(1, words / WORDS_PER_LINE);
+        // So that indexOf maps the words to [0, words[
+        assert words < WORDS_PER_LINE || words % WORDS_PER_LINE == 0;
+        bits = new AtomicLongArray(words);
 
         // Initialize all bits to 1
-        for (int i = 0; i < bits.length(); i++)
+        for (int i = 0; i < words; i++)
             bits.set(i, MAX_UNSIGNED_LONG);
-
-        offset = new AtomicInteger(bits.length() - 1);
     }
 
     public int next() throws BusyConnectionException {
-        int previousOffset, myOffset;
-        do {
-            previousOffset = offset.get();
-            myOffset = (previousOffset + 1) % bits.length();
-        } while (!offset.compareAndSet(previousOffset, myOffset));
+        int[] threadHint = hint.get();
+        int start = threadHint[0] % words;
 
-        for (int i = 0; i < bits.length(); i++) {
-            int j = (i + myOffset) % bits.length();
+        for (int i = 0; i < words; i++) {
+            int j = start + i;
+            if (j >= words)
+                j -= words;
 
             int id = atomicGetAndSetFirstAvailable(j);
-            if (id >= 0)
+            if (id >= 0) {
+                if (j != start)
+                    threadHint[0] = j;
                 return id + (64 * j);
+            }
         }
         throw new BusyConnectionException();
     }
@@ -109,12 +136,25 @@ class StreamIdGenerator {
         marked.decrementAndGet();
     }
 
+    /**
+     * @return the total number of ids managed by this generator (ids are in {@code [0, maxIds()[}).
+     */
+    public int maxIds() {
+        return maxIds;
+    }
+
     public int maxAvailableStreams() {
         return maxIds - marked.get();
     }
 
+    // Word w is the (w / lines)th word of line (w % lines)
+    private int indexOf(int word) {
+        return (word % lines) * WORDS_PER_LINE + word / lines;
+    }
+
     // Returns >= 0 if found and set an id, -1 if no bits are available.
-    private int atomicGetAndSetFirstAvailable(int idx) {
+    private int atomicGetAndSetFirstAvailable(int word) {
+        int idx = indexOf(word);
         while (true) {
             long l = bits.get(idx);
             if (l == 0)
@@ -127,7 +167,8 @@ class StreamIdGenerator {
         }
     }
 
-    private void atomicClear(int idx, int toClear) {
+    private void atomicClear(int word, int toClear) {
+        int idx = indexOf(word);
         while (true) {
             long l = bits.get(idx);
             if (bits.compareAndSet(idx, l, l | mask(toClear)))
@@ -0,0 +1,168 @@
+/*
+ *      Copyright (C) 2012-2015 DataStax Inc.
+ *
+ *   Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ */
+package com.datastax.driver.core;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * A map of stream ids to the objects associated with them (the handlers of in-flight requests).
+ * <p>
+ * Stream ids are small dense integers (see {@link StreamIdGenerator}), so this is a lock-free table indexed by
+ * stream id, instead of a hash map that would box and hash the id on every request and response.
+ * <p>
+ * Implementation notes: the table is split in segments of 64 entries (which matches the words of
+ * {@code StreamIdGenerator}), that are only allocated the first time one of their ids is used. This keeps the
+ * footprint small on connections that don't use many ids, which matters with protocol v3 (32768 ids per
+ * connection).
+ */
+class StreamIdTable<V> {
+    private static final int SEGMENT_SHIFT = 6;
+    private static final int SEGMENT_SIZE = 1 << SEGMENT_SHIFT;
+    private static final int SEGMENT_MASK = SEGMENT_SIZE - 1;
+
+    /**
+     * Callback for {@link #forEach(Visitor)}.
+     */
+    interface Visitor<V> {
+        void visit(int streamId, V value);
+    }
+
+    private final int maxIds;
+    private final AtomicReferenceArray<AtomicReferenceArray<V>> segments;
+    private final AtomicInteger size = new AtomicInteger();
+
+    StreamIdTable(int maxIds) {
+        this.maxIds = maxIds;
+        this.segments = new AtomicReferenceArray<AtomicReferenceArray<V>>((maxIds + SEGMENT_SIZE - 1) >> SEGMENT_SHIFT);
+    }
+
+    /**
+     * Associates a value to a stream id.
+     *
+     * @return the value previously associated to that id, or {@code null}.
+     */
+    V put(int streamId, V value) {
+        checkRange(streamId);
+        V previous = segmentFor(streamId).getAndSet(streamId & SEGMENT_MASK, value);
+        if (previous == null)
+            size.incrementAndGet();
+        return previous;
+    }
+
+    V get(int streamId) {
+        AtomicReferenceArray<V> segment = existingSegmentFor(streamId);
+        return segment == null ? null : segment.get(streamId & SEGMENT_MASK);
+    }
+
+    /**
+     * Removes the value associated to a stream id.
+     *
+     * @return the value that was removed, or {@code null} if there was none.
+     */
+    V remove(int streamId) {
+        AtomicReferenceArray<V> segment = existingSegmentFor(streamId);
+        if (segment == null)
+            return null;
+        V previous = segment.getAndSet(streamId & SEGMENT_MASK, null);
+        if (previous != null)
+            size.decrementAndGet();
+        return previous;
+    }
+
+    /**
+     * Removes the value associated to a stream id, only if it is {@code expected}.
+     *
+     * @return whether the value was removed.
+     */
+    boolean remove(int streamId, V expected) {
+        AtomicReferenceArray<V> segment = existingSegmentFor(streamId);
+        if (segment == null || !segment.compareAndSet(streamId & SEGMENT_MASK, expected, null))
+            return false;
+        size.decrementAndGet();
+        return true;
+    }
+
+    /**
+     * Removes all the values of the table.
+     *
+     * @return the values that were removed (each value is returned by only one concurrent remove call).
+     */
+    List<V> removeAll() {
+        List<V> removed = new ArrayList<V>();
+        for (int i = 0; i < segments.length(); i++) {
+            AtomicReferenceArray<V> segment = segments.get(i);
+            if (segment == null)
+                continue;
+            for (int j = 0; j < segment.length(); j++) {
+                V value = segment.getAndSet(j, null);
+                if (value != null) {
+                    size.decrementAndGet();
+                    removed.add(value);
+                }
+            }
+        }
+        return removed;
+    }
+
+    /**
+     * Calls {@code visitor} for each value currently in the table. This is weakly consistent: values added or
+     * removed concurrently may or may not be visited.
+     */
+    void forEach(Visitor<? super V> visitor) {
+        for (int i = 0; i < segments.length(); i++) {
+            AtomicReferenceArray<V> segment = segments.get(i);
+            if (segment == null)
+                continue;
+            for (int j = 0; j < segment.length(); j++) {
+                V value = segment.get(j);
+                if (value != null)
+                    visitor.visit((i << SEGMENT_SHIFT) + j, value);
+            }
+        }
+    }
+
+    int size() {
+        return size.get();
+    }
+
+    boolean isEmpty() {
+        return size.get() == 0;
+    }
+
+    private void checkRange(int streamId) {
+        if (streamId < 0 || streamId >= maxIds)
+            throw new IllegalArgumentException(String.format("Stream id %d out of range [0, %d[", streamId, maxIds));
+    }
+
+    // Returns null if the id is out of range, or its segment was never used
+    private AtomicReferenceArray<V> existingSegmentFor(int streamId) {
+        return (streamId < 0 || streamId >= maxIds) ? null : segments.get(streamId >> SEGMENT_SHIFT);
+    }
+
+    private AtomicReferenceArray<V> segmentFor(int streamId) {
+        int index = streamId >> SEGMENT_SHIFT;
+        AtomicReferenceArray<V> segment = segments.get(index);
+        if (segment == null) {
+            segment = new AtomicReferenceArray<V>(SEGMENT_SIZE);
+            if (!segments.compareAndSet(index, null, segment))
+                segment = segments.get(index);
+        }
+        return segment;
+    }
+}
@@ -0,0 +1,579 @@
+/*
+ *      Copyright (C) 2012-2015 DataStax Inc.
+ *
+ *   Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ */
+package com.datastax.driver.core;
+
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import com.google.common.collect.AbstractIterator;
+import com.google.common.collect.ImmutableList;
+import com.google.common.util.concurrent.*;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.datastax.driver.core.exceptions.DriverException;
+import com.datastax.driver.core.exceptions.DriverInternalError;
+import com.datastax.driver.core.policies.LoadBalancingPolicy;
+
+/**
+ * Reads a whole table by running token range queries in parallel.
+ * <p>
+ * The ring is split into the ranges returned by {@link Metadata#getTokenRanges()} (optionally split further
+ * with {@link TokenRange#splitEvenly(int)}), and each range is read with a query of the form
+ * {@code SELECT ... WHERE token(pk) > ? AND token(pk) <= ?}. Range queries are sent to the replicas of their
+ * range first, regardless of the {@link LoadBalancingPolicy} in use, so that the scan is spread evenly across
+ * the cluster; if no replica is available, the regular query plan is used.
+ * <p>
+ * At most {@link Builder#withMaxConcurrentRanges(int) maxConcurrentRanges} ranges are read at the same time,
+ * each of them page by page. If a page fails, it is retried from the last successful page, up to
+ * {@link Builder#withMaxRetriesPerRange(int) maxRetriesPerRange} times in a row, before the whole scan fails.
+ * <p>
+ * Rows can be consumed either through per-range callbacks:
+ * <pre>
+ * {@code
+ * TableScanner scanner = TableScanner.builder(session, "ks", "users")
+ *                                    .withColumns("id", "name")
+ *                                    .withSplitsPerRange(4)
+ *                                    .build();
+ * ListenableFuture<Void> done = scanner.scan(new TableScanner.RangeHandler() {
+ *     public void onPage(TokenRange range, List<Row> rows) { ... }
+ *     public void onRangeComplete(TokenRange range) { ... }
+ * });
+ * }
+ * </pre>
+ * or as a single iterator merging the rows of all ranges (in no particular order):
+ * <pre>
+ * {@code
+ * Iterator<Row> rows = scanner.iterator();
+ * }
+ * </pre>
+ * A scanner can be reused; each call to {@link #scan(RangeHandler)} or {@link #iterator()} starts a new scan,
+ * based on the token ranges known by the driver at that time.
+ */
+public class TableScanner {
+
+    private static final Logger logger = LoggerFactory.getLogger(TableScanner.class);
+
+    /** The default number of ranges that are read concurrently. */
+    public static final int DEFAULT_MAX_CONCURRENT_RANGES = 8;
+
+    /** The default number of times in a row a page is retried before the scan fails. */
+    public static final int DEFAULT_MAX_RETRIES_PER_RANGE = 3;
+
+    private final Session session;
+    private final String keyspace;
+    private final String boundedQuery;
+    private final String openQuery;
+    private final int splitsPerRange;
+    private final int maxConcurrentRanges;
+    private final int maxRetriesPerRange;
+    private final int fetchSize;
+    private final ConsistencyLevel consistencyLevel;
+    private final Executor executor;
+
+    private TableScanner(Builder builder) {
+        Metadata metadata = builder.session.getCluster().getMetadata();
+        KeyspaceMetadata ksm = metadata.getKeyspace(builder.keyspace);
+        if (ksm == null)
+            throw new IllegalArgumentException(String.format("Unknown keyspace %s", builder.keyspace));
+        TableMetadata table = ksm.getTable(builder.table);
+        if (table == null)
+            throw new IllegalArgumentException(String.format("Unknown table %s.%s", builder.keyspace, builder.table));
+
+        StringBuilder token = new StringBuilder("token(");
+        List<ColumnMetadata> partitionKey = table.getPartitionKey();
+        for (int i = 0; i < partitionKey.size(); i++) {
+            if (i > 0)
+                token.append(',');
+            token.append(Metadata.quote(partitionKey.get(i).getName()));
+        }
+        token.append(')');
+
+        String columns = builder.columns.isEmpty() ? "*" : joinColumns(builder.columns);
+        this.openQuery = String.format("SELECT %s FROM %s.%s WHERE %s > ?",
+            columns, Metadata.quote(ksm.getName()), Metadata.quote(table.getName()), token);
+        this.boundedQuery = String.format("%s AND %s <= ?", openQuery, token);
+
+        this.session = builder.session;
+        this.keyspace = ksm.getName();
+        this.splitsPerRange = builder.splitsPerRange;
+        this.maxConcurrentRanges = builder.maxConcurrentRanges;
+        this.maxRetriesPerRange = builder.maxRetriesPerRange;
+        this.fetchSize = builder.fetchSize;
+        this.consistencyLevel = builder.consistencyLevel;
+        this.executor = builder.executor != null
+            ? builder.executor
+            : builder.session.getCluster().manager.executor;
+    }
+
+    private static String joinColumns(List<String> columns) {
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < columns.size(); i++) {
+            if (i > 0)
+                sb.append(',');
+            sb.append(columns.get(i));
+        }
+        return sb.toString();
+    }
+
+    /**
+     * Creates a new builder.
+     *
+     * @param session the session that will be used to execute the range queries.
+     * @param keyspace the keyspace of the table to scan.
+     * @param table the table to scan.
+     * @return the builder.
+     */
+    public static Builder builder(Session session, String keyspace, String table) {
+        return new Builder(session, keyspace, table);
+    }
+
+    /**
+     * Receives the rows of a scan started with {@link #scan(RangeHandler)}.
+     * <p>
+     * The pages of a given range are delivered sequentially and in order, but pages of different ranges
+     * can be delivered concurrently, so implementations must be thread-safe. The next page of a range is
+     * only requested once {@link #onPage(TokenRange, List)} has returned for the previous one.
+     */
+    public interface RangeHandler {
+        /**
+         * Called for each page of rows read from a range.
+         *
+         * @param range the range.
+         * @param rows the rows of the page (might be empty).
+         */
+        public void onPage(TokenRange range, List<Row> rows);
+
+        /**
+         * Called once all the pages of a range have been delivered.
+         *
+         * @param range the range.
+         */
+        public void onRangeComplete(TokenRange range);
+    }
+
+    /**
+     * Returns the ranges that a scan started now would read.
+     * <p>
+     * These are the non-wrapping ranges obtained by splitting each range of {@link Metadata#getTokenRanges()}
+     * {@code splitsPerRange} times.
+     *
+     * @return the ranges.
+     */
+    public List<TokenRange> getRanges() {
+        List<TokenRange> ranges = new ArrayList<TokenRange>();
+        for (RangeScan range : computeRanges())
+            ranges.add(range.range);
+        return ranges;
+    }
+
+    private List<RangeScan> computeRanges() {
+        Metadata metadata = session.getCluster().getMetadata();
+        List<RangeScan> ranges = new ArrayList<RangeScan>();
+        for (TokenRange range : metadata.getTokenRanges()) {
+            // Replicas are looked up on the original range: only its end is a token of the ring.
+            List<Host> replicas = ImmutableList.copyOf(metadata.getReplicas(Metadata.quote(keyspace), range));
+            List<TokenRange> splits = (splitsPerRange > 1) ? range.splitEvenly(splitsPerRange) : Collections.singletonList(range);
+            for (TokenRange split : splits) {
+                for (TokenRange unwrapped : split.unwrap()) {
+                    if (!unwrapped.isEmpty())
+                        ranges.add(new RangeScan(unwrapped, replicas, metadata.tokenFactory().minToken()));
+                }
+            }
+        }
+        return ranges;
+    }
+
+    /**
+     * Starts a scan, delivering the rows to the given handler.
+     *
+     * @param handler the handler.
+     * @return a future that completes when all the ranges have been read, or fails with the error of the first
+     * range that could not be read after {@code maxRetriesPerRange} retries. Cancelling this future stops the
+     * scan (pages that are already in flight will still be delivered).
+     */
+    public ListenableFuture<Void> scan(final RangeHandler handler) {
+        Scan scan = new Scan() {
+            @Override
+            void onPage(RangeScan range, List<Row> rows) {
+                handler.onPage(range.range, rows);
+                if (range.pagingState == null)
+                    handler.onRangeComplete(range.range);
+                advance(range);
+            }
+
+            @Override
+            void onFailure(Throwable t) {
+            }
+
+            @Override
+            void onComplete() {
+            }
+        };
+        scan.start();
+        return scan.future;
+    }
+
+    /**
+     * Starts a scan, returning the rows of all ranges as a single iterator.
+     * <p>
+     * The next page of a range is only fetched once the previous one has been consumed, so at most
+     * {@code maxConcurrentRanges} pages are buffered in memory at any time. Pages of different ranges are
+     * interleaved in the order they arrive.
+     * <p>
+     * The iterator's methods block until rows are available. If the scan fails, {@code hasNext()} throws
+     * the error of the range that could not be read.
+     *
+     * @return the iterator.
+     */
+    public Iterator<Row> iterator() {
+        final BlockingQueue<Object> pages = new LinkedBlockingQueue<Object>();
+        final Object end = new Object();
+        final Scan scan = new Scan() {
+            @Override
+            void onPage(RangeScan range, List<Row> rows) {
+                pages.add(new Page(range, rows));
+            }
+
+            @Override
+            void onFailure(Throwable t) {
+                pages.add(t);
+            }
+
+            @Override
+            void onComplete() {
+                pages.add(end);
+            }
+        };
+        scan.start();
+
+        return new AbstractIterator<Row>() {
+            private Iterator<Row> current = Collections.<Row>emptyList().iterator();
+
+            @Override
+            protected Row computeNext() {
+                while (!current.hasNext()) {
+                    Object next = Uninterruptibles.takeUninterruptibly(pages);
+                    if (next == end)
+                        return endOfData();
+                    if (next instanceof Throwable)
+                        throw propagate((Throwable)next);
+                    Page page = (Page)next;
+                    current = page.rows.iterator();
+                    // Only now that the page is consumed do we ask for the next one
+                    scan.advance(page.range);
+                }
+                return current.next();
+            }
+        };
+    }
+
+    private static RuntimeException propagate(Throwable t) {
+        if (t instanceof DriverException)
+            return ((DriverException)t).copy();
+        if (t instanceof RuntimeException)
+            return (RuntimeException)t;
+        return new DriverInternalError("Unexpected error while scanning table", t);
+    }
+
+    private static class Page {
+        final RangeScan range;
+        final List<Row> rows;
+
+        Page(RangeScan range, List<Row> rows) {
+            this.range = range;
+            this.rows = rows;
+        }
+    }
+
+    /**
+     * The state of a range within a scan.
+     */
+    private static class RangeScan {
+        final TokenRange range;
+        final List<Host> replicas;
+        final boolean hasUpperBound;
+        // Only accessed by one thread at a time: the next page is requested after the previous one was handled
+        byte[] pagingState;
+        int failures;
+
+        RangeScan(TokenRange range, List<Host> replicas, Token minToken) {
+            this.range = range;
+            this.replicas = replicas;
+            // ]x, minToken] means "everything after x"
+            this.hasUpperBound = !range.getEnd().equals(minToken);
+        }
+    }
+
+    /**
+     * A running scan. Subclasses define how pages are delivered, and must call {@link #advance(RangeScan)}
+     * once they are ready for the next page of a range.
+     */
+    private abstract class Scan {
+        final SettableFuture<Void> future = SettableFuture.create();
+        private final Queue<RangeScan> waiting = new ConcurrentLinkedQueue<RangeScan>();
+        private final AtomicInteger remaining = new AtomicInteger();
+        private volatile PreparedStatement bounded;
+        private volatile PreparedStatement open;
+
+        abstract void onPage(RangeScan range, List<Row> rows);
+
+        abstract void onFailure(Throwable t);
+
+        abstract void onComplete();
+
+        void start() {
+            final List<RangeScan> ranges = computeRanges();
+            if (ranges.isEmpty()) {
+                complete();
+                return;
+            }
+            @SuppressWarnings("unchecked")
+            ListenableFuture<List<PreparedStatement>> prepared = Futures.allAsList(
+                session.prepareAsync(boundedQuery), session.prepareAsync(openQuery));
+            Futures.addCallback(prepared, new FutureCallback<List<PreparedStatement>>() {
+                @Override
+                public void onSuccess(List<PreparedStatement> statements) {
+                    bounded = statements.get(0);
+                    open = statements.get(1);
+                    waiting.addAll(ranges);
+                    remaining.set(ranges.size());
+                    for (int i = 0; i < maxConcurrentRanges; i++)
+                        startNextRange();
+                }
+
+                @Override
+                public void onFailure(Throwable t) {
+                    fail(t);
+                }
+            }, executor);
+        }
+
+        private void startNextRange() {
+            if (future.isDone())
+                return;
+            RangeScan range = waiting.poll();
+            if (range != null)
+                fetch(range);
+        }
+
+        /**
+         * Called once the last page of a range has been handled: moves on to the next page or range.
+         */
+        void advance(RangeScan range) {
+            if (range.pagingState != null) {
+                fetch(range);
+            } else if (remaining.decrementAndGet() == 0) {
+                complete();
+            } else {
+                startNextRange();
+            }
+        }
+
+        private void fetch(final RangeScan range) {
+            if (future.isDone())
+                return;
+
+            BoundStatement statement = range.hasUpperBound
+                ? bounded.bind().setToken(0, range.range.getStart()).setToken(1, range.range.getEnd())
+                : open.bind().setToken(0, range.range.getStart());
+            if (fetchSize > 0)
+                statement.setFetchSize(fetchSize);
+            if (consistencyLevel != null)
+                statement.setConsistencyLevel(consistencyLevel);
+            // We drain each page ourselves, don't let the result set fetch ahead
+            statement.setPrefetchThreshold(0);
+            if (range.pagingState != null)
+                statement.setPagingStateUnsafe(range.pagingState);
+
+            ResultSetFuture page = session.executeAsync(new ReplicaStatement(statement, range.replicas));
+            Futures.addCallback(page, new FutureCallback<ResultSet>() {
+                @Override
+                public void onSuccess(ResultSet rs) {
+                    int available = rs.getAvailableWithoutFetching();
+                    List<Row> rows = new ArrayList<Row>(available);
+                    for (int i = 0; i < available; i++)
+                        rows.add(rs.one());
+                    range.pagingState = rs.isFullyFetched() ? null : rs.getExecutionInfo().getPagingStateUnsafe();
+                    range.failures = 0;
+                    try {
+                        Scan.this.onPage(range, rows);
+                    } catch (Throwable t) {
+                        fail(t);
+                    }
+                }
+
+                @Override
+                public void onFailure(Throwable t) {
+                    if (++range.failures > maxRetriesPerRange) {
+                        fail(t);
+                    } else {
+                        logger.debug("Error while reading range {}, retrying ({}/{})",
+                            range.range, range.failures, maxRetriesPerRange, t);
+                        fetch(range);
+                    }
+                }
+            }, executor);
+        }
+
+        private void complete() {
+            if (future.set(null))
+                onComplete();
+        }
+
+        private void fail(Throwable t) {
+            if (future.setException(t))
+                onFailure(t);
+        }
+    }
+
+    /**
+     * Helper class to build {@link TableScanner} instances.
+     */
+    public static class Builder {
+        private final Session session;
+        private final String keyspace;
+        private final String table;
+        private final List<String> columns = new ArrayList<String>();
+        private int splitsPerRange = 1;
+        private int maxConcurrentRanges = DEFAULT_MAX_CONCURRENT_RANGES;
+        private int maxRetriesPerRange = DEFAULT_MAX_RETRIES_PER_RANGE;
+        private int fetchSize;
+        private ConsistencyLevel consistencyLevel;
+        private Executor executor;
+
+        private Builder(Session session, String keyspace, String table) {
+            this.session = session;
+            this.keyspace = keyspace;
+            this.table = table;
+        }
+
+        /**
+         * Sets the columns (or selectors) to read.
+         * <p>
+         * They are inserted as-is in the query, so case-sensitive names must be quoted. If this method is not
+         * called, all columns are read.
+         *
+         * @param columns the columns.
+         * @return this builder (for method chaining).
+         */
+        public Builder withColumns(String... columns) {
+            this.columns.clear();
+            this.columns.addAll(Arrays.asList(columns));
+            return this;
+        }
+
+        /**
+         * Sets the number of sub-ranges each range of the ring is split into.
+         * <p>
+         * With virtual nodes the ring already has many ranges, so the default (1) is usually appropriate.
+         * Higher values produce smaller ranges, which make retries cheaper and the load more even.
+         *
+         * @param splitsPerRange the number of splits, must be strictly positive.
+         * @return this builder (for method chaining).
+         */
+        public Builder withSplitsPerRange(int splitsPerRange) {
+            if (splitsPerRange < 1)
+                throw new IllegalArgumentException("Invalid splitsPerRange, should be strictly positive, got " + splitsPerRange);
+            this.splitsPerRange = splitsPerRange;
+            return this;
+        }
+
+        /**
+         * Sets the maximum number of ranges that are read concurrently.
+         * <p>
+         * The default is {@value #DEFAULT_MAX_CONCURRENT_RANGES}.
+         *
+         * @param maxConcurrentRanges the maximum, must be strictly positive.
+         * @return this builder (for method chaining).
+         */
+        public Builder withMaxConcurrentRanges(int maxConcurrentRanges) {
+            if (maxConcurrentRanges < 1)
+                throw new IllegalArgumentException("Invalid maxConcurrentRanges, should be strictly positive, got " + maxConcurrentRanges);
+            this.maxConcurrentRanges = maxConcurrentRanges;
+            return this;
+        }
+
+        /**
+         * Sets how many times a page of a range is retried before the scan fails.
+         * <p>
+         * The count is reset after each successful page. The default is {@value #DEFAULT_MAX_RETRIES_PER_RANGE}.
+         *
+         * @param maxRetriesPerRange the number of retries, must be positive or 0.
+         * @return this builder (for method chaining).
+         */
+        public Builder withMaxRetriesPerRange(int maxRetriesPerRange) {
+            if (maxRetriesPerRange < 0)
+                throw new IllegalArgumentException("Invalid maxRetriesPerRange, should be positive or 0, got " + maxRetriesPerRange);
+            this.maxRetriesPerRange = maxRetriesPerRange;
+            return this;
+        }
+
+        /**
+         * Sets the fetch size of the range queries.
+         * <p>
+         * If this method is not called, {@link QueryOptions#getFetchSize()} is used.
+         *
+         * @param fetchSize the fetch size, must be strictly positive.
+         * @return this builder (for method chaining).
+         */
+        public Builder withFetchSize(int fetchSize) {
+            if (fetchSize < 1)
+                throw new IllegalArgumentException("Invalid fetchSize, should be strictly positive, got " + fetchSize);
+            this.fetchSize = fetchSize;
+            return this;
+        }
+
+        /**
+         * Sets the consistency level of the range queries.
+         * <p>
+         * If this method is not called, {@link QueryOptions#getConsistencyLevel()} is used.
+         *
+         * @param consistencyLevel the consistency level.
+         * @return this builder (for method chaining).
+         */
+        public Builder withConsistencyLevel(ConsistencyLevel consistencyLevel) {
+            this.consistencyLevel = consistencyLevel;
+            return this;
+        }
+
+        /**
+         * Sets the executor on which pages are processed and {@link RangeHandler} methods are invoked.
+         * <p>
+         * If this method is not called, the driver's internal worker threads are used; in that case handlers
+         * should not perform blocking operations.
+         *
+         * @param executor the executor.
+         * @return this builder (for method chaining).
+         */
+        public Builder withExecutor(Executor executor) {
+            this.executor = executor;
+            return this;
+        }
+
+        /**
+         * Builds the scanner.
+         *
+         * @return the scanner.
+         *
+         * @throws IllegalArgumentException if the keyspace or table don't exist in the cluster's metadata.
+         */
+        public TableScanner build() {
+            return new TableScanner(this);
+        }
+    }
+}
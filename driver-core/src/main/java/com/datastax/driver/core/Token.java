@@ -103,7 +103,7 @@ public abstract class Token implements Comparable<Token> {
             static final M3PToken MIN_TOKEN = new M3PToken(Long.MIN_VALUE);
             static final M3PToken MAX_TOKEN = new M3PToken(Long.MAX_VALUE);
 
-            private long getblock(ByteBuffer key, int offset, int index) {
+            private static long getblock(ByteBuffer key, int offset, int index) {
                 int i_8 = index << 3;
                 int blockOffset = offset + i_8;
                 return ((long) key.get(blockOffset + 0) & 0xff) + (((long) key.get(blockOffset + 1) & 0xff) << 8) +
@@ -112,11 +112,11 @@ public abstract class Token implements Comparable<Token> {
                        (((long) key.get(blockOffset + 6) & 0xff) << 48) + (((long) key.get(blockOffset + 7) & 0xff) << 56);
             }
 
-            private long rotl64(long v, int n) {
+            private static long rotl64(long v, int n) {
                 return ((v << n) | (v >>> (64 - n)));
             }
 
-            private long fmix(long k) {
+            private static long fmix(long k) {
                 k ^= k >>> 33;
                 k *= 0xff51afd7ed558ccdL;
                 k ^= k >>> 33;
@@ -129,7 +129,7 @@ public abstract class Token implements Comparable<Token> {
             // for M3P. Compared to that methods, there's a few inlining of arguments and we
             // only return the first 64-bits of the result since that's all M3P uses.
             @SuppressWarnings("fallthrough")
-            private long murmur(ByteBuffer data) {
+            private static long murmur(ByteBuffer data) {
                 int offset = data.position();
                 int length = data.remaining();
 
@@ -223,8 +223,12 @@ public abstract class Token implements Comparable<Token> {
 
             @Override
             M3PToken hash(ByteBuffer partitionKey) {
+                return new M3PToken(hashToLong(partitionKey));
+            }
+
+            static long hashToLong(ByteBuffer partitionKey) {
                 long v = murmur(partitionKey);
-                return new M3PToken(v == Long.MIN_VALUE ? Long.MAX_VALUE : v);
+                return v == Long.MIN_VALUE ? Long.MAX_VALUE : v;
             }
 
             @Override
@@ -254,6 +258,21 @@ public abstract class Token implements Comparable<Token> {
             this.value = value;
         }
 
+        /**
+         * Computes the value of the token of a partition key, without allocating a token.
+         */
+        static long hashToLong(ByteBuffer partitionKey) {
+            return M3PTokenFactory.hashToLong(partitionKey);
+        }
+
+        static M3PToken fromLong(long value) {
+            return new M3PToken(value);
+        }
+
+        long longValue() {
+            return value;
+        }
+
         @Override
         public DataType getType() {
             return FACTORY.getTokenType();
@@ -0,0 +1,342 @@
+/*
+ *      Copyright (C) 2012-2015 DataStax Inc.
+ *
+ *   Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ */
+package com.datastax.driver.core;
+
+import java.util.*;
+
+import io.netty.buffer.ByteBuf;
+
+import com.datastax.driver.core.exceptions.InvalidTypeException;
+
+/**
+ * Serializes bound values directly into the buffer of a request, instead of going through a
+ * {@code ByteBuffer} per value (and per collection element) like {@link TypeCodec}.
+ * <p>
+ * The serialized forms must be exactly the ones produced by the corresponding codecs. Only the types for
+ * which this is simple (and whose Java representation is immutable) are supported:
+ * <ul>
+ *     <li>fixed-size types ({@code int}, {@code bigint}, {@code counter}, {@code float}, {@code double},
+ *     {@code boolean} and {@code timestamp}), which are passed as the bits of a {@code long};</li>
+ *     <li>{@code text}, {@code varchar}, {@code ascii}, {@code uuid} and {@code timeuuid};</li>
+ *     <li>collections of the above (except {@code timestamp}, since {@code Date} is mutable), which are
+ *     passed as an array snapshot of their elements (keys and values alternating for maps).</li>
+ * </ul>
+ */
+final class ValueWriter {
+
+    private static final byte REPLACEMENT = (byte)'?';
+
+    private ValueWriter() {}
+
+    /**
+     * @return whether values of this type are serialized from the bits of a {@code long}.
+     */
+    static boolean isFixedSize(DataType.Name name) {
+        switch (name) {
+            case INT:
+            case BIGINT:
+            case COUNTER:
+            case FLOAT:
+            case DOUBLE:
+            case BOOLEAN:
+            case TIMESTAMP:
+                return true;
+            default:
+                return false;
+        }
+    }
+
+    /**
+     * @return whether values of this type can be serialized directly.
+     */
+    static boolean supports(DataType type) {
+        DataType.Name name = type.getName();
+        if (isFixedSize(name))
+            return true;
+        if (name.isCollection()) {
+            for (DataType argument : type.getTypeArguments()) {
+                if (argument.getName() == DataType.Name.TIMESTAMP || !isElementSupported(argument.getName()))
+                    return false;
+            }
+            return true;
+        }
+        return isElementSupported(name);
+    }
+
+    private static boolean isElementSupported(DataType.Name name) {
+        switch (name) {
+            case TEXT:
+            case VARCHAR:
+            case ASCII:
+            case UUID:
+            case TIMEUUID:
+                return true;
+            default:
+                return isFixedSize(name);
+        }
+    }
+
+    /**
+     * Converts a (validated) value of a fixed-size type to the bits written by {@link #writeBits}.
+     */
+    static long toBits(DataType.Name name, Object value) {
+        switch (name) {
+            case INT:
+                return (Integer)value;
+            case BIGINT:
+            case COUNTER:
+                return (Long)value;
+            case FLOAT:
+                return Float.floatToRawIntBits((Float)value);
+            case DOUBLE:
+                return Double.doubleToRawLongBits((Double)value);
+            case BOOLEAN:
+                return ((Boolean)value) ? 1 : 0;
+            case TIMESTAMP:
+                return ((Date)value).getTime();
+            default:
+                throw new AssertionError(name);
+        }
+    }
+
+    static int sizeOfBits(DataType.Name name) {
+        switch (name) {
+            case INT:
+            case FLOAT:
+                return 4;
+            case BIGINT:
+            case COUNTER:
+            case DOUBLE:
+            case TIMESTAMP:
+                return 8;
+            case BOOLEAN:
+                return 1;
+            default:
+                throw new AssertionError(name);
+        }
+    }
+
+    static void writeBits(DataType.Name name, long bits, ByteBuf dest) {
+        switch (name) {
+            case INT:
+            case FLOAT:
+                dest.writeInt((int)bits);
+                break;
+            case BIGINT:
+            case COUNTER:
+            case DOUBLE:
+            case TIMESTAMP:
+                dest.writeLong(bits);
+                break;
+            case BOOLEAN:
+                dest.writeByte((int)bits);
+                break;
+            default:
+                throw new AssertionError(name);
+        }
+    }
+
+    /**
+     * Returns the serialized size of a non-collection value (not including its length).
+     */
+    static int sizeOf(DataType.Name name, Object value) {
+        switch (name) {
+            case TEXT:
+            case VARCHAR:
+                return sizeOfUtf8((String)value);
+            case ASCII:
+                return sizeOfAscii((String)value);
+            case UUID:
+            case TIMEUUID:
+                return 16;
+            default:
+                return sizeOfBits(name);
+        }
+    }
+
+    static void write(DataType.Name name, Object value, ByteBuf dest) {
+        switch (name) {
+            case TEXT:
+            case VARCHAR:
+                writeUtf8((String)value, dest);
+                break;
+            case ASCII:
+                writeAscii((String)value, dest);
+                break;
+            case UUID:
+            case TIMEUUID:
+                dest.writeLong(((UUID)value).getMostSignificantBits());
+                dest.writeLong(((UUID)value).getLeastSignificantBits());
+                break;
+            default:
+                writeBits(name, toBits(name, value), dest);
+        }
+    }
+
+    /**
+     * Takes a snapshot of the elements of a (validated) collection value.
+     *
+     * @throws NullPointerException if the collection contains {@code null}.
+     * @throws InvalidTypeException if an element is not of the expected class.
+     * @throws IllegalArgumentException if the collection has too many elements for the protocol version.
+     */
+    static Object[] snapshot(DataType type, Object collection, ProtocolVersion protocolVersion) {
+        Object[] elements;
+        if (type.getName() == DataType.Name.MAP) {
+            Map<?, ?> map = (Map<?, ?>)collection;
+            elements = new Object[map.size() * 2];
+            int i = 0;
+            for (Map.Entry<?, ?> entry : map.entrySet()) {
+                elements[i++] = entry.getKey();
+                elements[i++] = entry.getValue();
+            }
+        } else {
+            elements = ((Collection<?>)collection).toArray();
+        }
+        List<DataType> arguments = type.getTypeArguments();
+        for (int i = 0; i < elements.length; i++) {
+            if (elements[i] == null)
+                throw new NullPointerException("Collection elements cannot be null");
+            // Setters only check the first element, the codecs would fail on the others
+            Class<?> expectedClass = arguments.get(i % arguments.size()).asJavaClass();
+            if (!expectedClass.isInstance(elements[i]))
+                throw new InvalidTypeException(String.format("Invalid value for CQL type %s, expecting elements of %s but got %s", type, expectedClass, elements[i].getClass()));
+        }
+        int count = type.getName() == DataType.Name.MAP ? elements.length / 2 : elements.length;
+        if (protocolVersion.compareTo(ProtocolVersion.V3) < 0 && count > 65535)
+            throw new IllegalArgumentException("Native protocol version 2 supports up to 65535 elements in any collection - but collection contains " + count + " elements");
+        return elements;
+    }
+
+    /**
+     * Returns the serialized size of a collection snapshot (not including its length).
+     */
+    static int sizeOfCollection(DataType type, Object[] elements, ProtocolVersion protocolVersion) {
+        int prefix = protocolVersion.compareTo(ProtocolVersion.V3) < 0 ? 2 : 4;
+        int size = prefix;
+        List<DataType> arguments = type.getTypeArguments();
+        for (int i = 0; i < elements.length; i++) {
+            DataType.Name name = arguments.get(i % arguments.size()).getName();
+            size += prefix + sizeOf(name, elements[i]);
+        }
+        return size;
+    }
+
+    static void writeCollection(DataType type, Object[] elements, ProtocolVersion protocolVersion, ByteBuf dest) {
+        boolean shortPrefix = protocolVersion.compareTo(ProtocolVersion.V3) < 0;
+        List<DataType> arguments = type.getTypeArguments();
+        int count = elements.length / arguments.size();
+        if (shortPrefix)
+            dest.writeShort(count);
+        else
+            dest.writeInt(count);
+        for (int i = 0; i < elements.length; i++) {
+            DataType.Name name = arguments.get(i % arguments.size()).getName();
+            int size = sizeOf(name, elements[i]);
+            if (shortPrefix)
+                dest.writeShort(size);
+            else
+                dest.writeInt(size);
+            write(name, elements[i], dest);
+        }
+    }
+
+    // Malformed surrogates are replaced by '?', like String.getBytes does
+    static int sizeOfUtf8(String s) {
+        int size = 0;
+        int length = s.length();
+        for (int i = 0; i < length; i++) {
+            char c = s.charAt(i);
+            if (c < 0x80) {
+                size += 1;
+            } else if (c < 0x800) {
+                size += 2;
+            } else if (isSurrogate(c)) {
+                if (isSurrogatePair(s, i)) {
+                    size += 4;
+                    i += 1;
+                } else {
+                    size += 1;
+                }
+            } else {
+                size += 3;
+            }
+        }
+        return size;
+    }
+
+    static void writeUtf8(String s, ByteBuf dest) {
+        int length = s.length();
+        for (int i = 0; i < length; i++) {
+            char c = s.charAt(i);
+            if (c < 0x80) {
+                dest.writeByte(c);
+            } else if (c < 0x800) {
+                dest.writeByte(0xC0 | (c >> 6));
+                dest.writeByte(0x80 | (c & 0x3F));
+            } else if (isSurrogate(c)) {
+                if (isSurrogatePair(s, i)) {
+                    int codePoint = Character.toCodePoint(c, s.charAt(i + 1));
+                    dest.writeByte(0xF0 | (codePoint >> 18));
+                    dest.writeByte(0x80 | ((codePoint >> 12) & 0x3F));
+                    dest.writeByte(0x80 | ((codePoint >> 6) & 0x3F));
+                    dest.writeByte(0x80 | (codePoint & 0x3F));
+                    i += 1;
+                } else {
+                    dest.writeByte(REPLACEMENT);
+                }
+            } else {
+                dest.writeByte(0xE0 | (c >> 12));
+                dest.writeByte(0x80 | ((c >> 6) & 0x3F));
+                dest.writeByte(0x80 | (c & 0x3F));
+            }
+        }
+    }
+
+    // Non-ASCII characters (including surrogate pairs) are replaced by a single '?', like String.getBytes does
+    static int sizeOfAscii(String s) {
+        int size = 0;
+        int length = s.length();
+        for (int i = 0; i < length; i++) {
+            if (isSurrogatePair(s, i))
+                i += 1;
+            size += 1;
+        }
+        return size;
+    }
+
+    static void writeAscii(String s, ByteBuf dest) {
+        int length = s.length();
+        for (int i = 0; i < length; i++) {
+            char c = s.charAt(i);
+            if (c < 0x80) {
+                dest.writeByte(c);
+            } else {
+                if (isSurrogatePair(s, i))
+                    i += 1;
+                dest.writeByte(REPLACEMENT);
+            }
+        }
+    }
+
+    private static boolean isSurrogate(char c) {
+        return c >= Character.MIN_SURROGATE && c <= Character.MAX_SURROGATE;
+    }
+
+    private static boolean isSurrogatePair(String s, int i) {
+        return Character.isHighSurrogate(s.charAt(i)) && i + 1 < s.length() && Character.isLowSurrogate(s.charAt(i + 1));
+    }
+}
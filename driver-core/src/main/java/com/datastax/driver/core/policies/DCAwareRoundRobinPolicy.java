@@ -28,6 +28,8 @@ import com.google.common.base.Joiner;
 import com.google.common.base.Strings;
 import com.google.common.annotations.VisibleForTesting;
 import com.google.common.collect.AbstractIterator;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -61,6 +63,7 @@ public class DCAwareRoundRobinPolicy implements LoadBalancingPolicy, CloseableLo
 
     private final ConcurrentMap<String, CopyOnWriteArrayList<Host>> perDcLiveHosts = new ConcurrentHashMap<String, CopyOnWriteArrayList<Host>>();
     private final AtomicInteger index = new AtomicInteger();
+    private volatile Snapshot snapshot = Snapshot.EMPTY;
 
     @VisibleForTesting
     volatile String localDc;
@@ -206,6 +209,7 @@ public class DCAwareRoundRobinPolicy implements LoadBalancingPolicy, CloseableLo
             else
                 prev.addIfAbsent(host);
         }
+        refreshSnapshot();
 
         if (notInLocalDC.size() > 0) {
             String nonLocalHosts = Joiner.on(",").join(notInLocalDC);
@@ -223,6 +227,47 @@ public class DCAwareRoundRobinPolicy implements LoadBalancingPolicy, CloseableLo
         return (CopyOnWriteArrayList<Host>)list.clone();
     }
 
+    /**
+     * Recomputes the snapshot from the live hosts, must be called after each change to them.
+     * <p>
+     * This is synchronized so that the last snapshot published always reflects all the changes that preceded it.
+     */
+    private synchronized void refreshSnapshot() {
+        String currentLocalDc = localDc;
+        ImmutableList<Host> localHosts = ImmutableList.of();
+        ImmutableList.Builder<List<Host>> remoteHosts = ImmutableList.builder();
+        Map<Host, HostDistance> distances = new HashMap<Host, HostDistance>();
+
+        for (Map.Entry<String, CopyOnWriteArrayList<Host>> entry : perDcLiveHosts.entrySet()) {
+            List<Host> dcHosts = cloneList(entry.getValue());
+            if (entry.getKey().equals(currentLocalDc)) {
+                localHosts = ImmutableList.copyOf(dcHosts);
+            } else if (usedHostsPerRemoteDc > 0 && !dcHosts.isEmpty()) {
+                remoteHosts.add(ImmutableList.copyOf(dcHosts.subList(0, Math.min(dcHosts.size(), usedHostsPerRemoteDc))));
+            }
+
+            for (int i = 0; i < dcHosts.size(); i++) {
+                Host host = dcHosts.get(i);
+                HostDistance distance;
+                if (isLocal(host, currentLocalDc))
+                    distance = HostDistance.LOCAL;
+                else if (i < usedHostsPerRemoteDc)
+                    distance = HostDistance.REMOTE;
+                else
+                    distance = HostDistance.IGNORED;
+                distances.put(host, distance);
+            }
+        }
+        snapshot = new Snapshot(localHosts, remoteHosts.build(), ImmutableMap.copyOf(distances));
+    }
+
+    private boolean isLocal(Host host, String currentLocalDc) {
+        String dc = host.getDatacenter();
+        if (dc == null)
+            dc = currentLocalDc;
+        return dc == UNSET || dc.equals(currentLocalDc);
+    }
+
     /**
      * Return the HostDistance for the provided host.
      * <p>
@@ -238,19 +283,12 @@ public class DCAwareRoundRobinPolicy implements LoadBalancingPolicy, CloseableLo
      */
     @Override
     public HostDistance distance(Host host) {
-        String dc = dc(host);
-        if (dc == UNSET || dc.equals(localDc))
-            return HostDistance.LOCAL;
+        HostDistance distance = snapshot.distances.get(host);
+        if (distance != null)
+            return distance;
 
-        CopyOnWriteArrayList<Host> dcHosts = perDcLiveHosts.get(dc);
-        if (dcHosts == null || usedHostsPerRemoteDc == 0)
-            return HostDistance.IGNORED;
-
-        // We need to clone, otherwise our subList call is not thread safe
-        dcHosts = cloneList(dcHosts);
-        return dcHosts.subList(0, Math.min(dcHosts.size(), usedHostsPerRemoteDc)).contains(host)
-             ? HostDistance.REMOTE
-             : HostDistance.IGNORED;
+        // Not a live host: only remote hosts that are among the first live ones of their datacenter are used
+        return isLocal(host, localDc) ? HostDistance.LOCAL : HostDistance.IGNORED;
     }
 
     /**
@@ -271,8 +309,8 @@ public class DCAwareRoundRobinPolicy implements LoadBalancingPolicy, CloseableLo
     @Override
     public Iterator<Host> newQueryPlan(String loggedKeyspace, final Statement statement) {
 
-        CopyOnWriteArrayList<Host> localLiveHosts = perDcLiveHosts.get(localDc);
-        final List<Host> hosts = localLiveHosts == null ? Collections.<Host>emptyList() : cloneList(localLiveHosts);
+        final Snapshot snapshot = this.snapshot;
+        final List<Host> hosts = snapshot.localHosts;
         final int startIdx = index.getAndIncrement();
 
         return new AbstractIterator<Host>() {
@@ -281,7 +319,7 @@ public class DCAwareRoundRobinPolicy implements LoadBalancingPolicy, CloseableLo
             private int remainingLocal = hosts.size();
 
             // For remote Dcs
-            private Iterator<String> remoteDcs;
+            private Iterator<List<Host>> remoteDcs;
             private List<Host> currentDcHosts;
             private int currentDcRemaining;
 
@@ -313,23 +351,14 @@ public class DCAwareRoundRobinPolicy implements LoadBalancingPolicy, CloseableLo
                     if (dontHopForLocalCL && cl.isDCLocal())
                         return endOfData();
 
-                    if (remoteDcs == null) {
-                        Set<String> copy = new HashSet<String>(perDcLiveHosts.keySet());
-                        copy.remove(localDc);
-                        remoteDcs = copy.iterator();
-                    }
+                    if (remoteDcs == null)
+                        remoteDcs = snapshot.remoteHosts.iterator();
 
                     if (!remoteDcs.hasNext())
                         break;
 
-                    String nextRemoteDc = remoteDcs.next();
-                    CopyOnWriteArrayList<Host> nextDcHosts = perDcLiveHosts.get(nextRemoteDc);
-                    if (nextDcHosts != null) {
-                        // Clone for thread safety
-                        List<Host> dcHosts = cloneList(nextDcHosts);
-                        currentDcHosts = dcHosts.subList(0, Math.min(dcHosts.size(), usedHostsPerRemoteDc));
-                        currentDcRemaining = currentDcHosts.size();
-                    }
+                    currentDcHosts = remoteDcs.next();
+                    currentDcRemaining = currentDcHosts.size();
                 }
                 return endOfData();
             }
@@ -351,10 +380,13 @@ public class DCAwareRoundRobinPolicy implements LoadBalancingPolicy, CloseableLo
             CopyOnWriteArrayList<Host> newMap = new CopyOnWriteArrayList<Host>(Collections.singletonList(host));
             dcHosts = perDcLiveHosts.putIfAbsent(dc, newMap);
             // If we've successfully put our new host, we're good, otherwise we've been beaten so continue
-            if (dcHosts == null)
-                return;
+            if (dcHosts != null)
+                dcHosts.addIfAbsent(host);
+        } else {
+            dcHosts.addIfAbsent(host);
         }
-        dcHosts.addIfAbsent(host);
+        // Always refresh, the local datacenter might have been discovered even if the host was already known
+        refreshSnapshot();
     }
 
     @Override
@@ -364,8 +396,8 @@ public class DCAwareRoundRobinPolicy implements LoadBalancingPolicy, CloseableLo
     @Override
     public void onDown(Host host) {
         CopyOnWriteArrayList<Host> dcHosts = perDcLiveHosts.get(dc(host));
-        if (dcHosts != null)
-            dcHosts.remove(host);
+        if (dcHosts != null && dcHosts.remove(host))
+            refreshSnapshot();
     }
 
     @Override
@@ -382,4 +414,22 @@ public class DCAwareRoundRobinPolicy implements LoadBalancingPolicy, CloseableLo
     public void close() {
         // nothing to do
     }
+
+    /**
+     * An immutable view of the live hosts, and the distance of each of them.
+     */
+    private static class Snapshot {
+        static final Snapshot EMPTY = new Snapshot(ImmutableList.<Host>of(), ImmutableList.<List<Host>>of(), ImmutableMap.<Host, HostDistance>of());
+
+        final List<Host> localHosts;
+        // The hosts used in each remote datacenter
+        final List<List<Host>> remoteHosts;
+        final Map<Host, HostDistance> distances;
+
+        Snapshot(List<Host> localHosts, List<List<Host>> remoteHosts, Map<Host, HostDistance> distances) {
+            this.localHosts = localHosts;
+            this.remoteHosts = remoteHosts;
+            this.distances = distances;
+        }
+    }
 }
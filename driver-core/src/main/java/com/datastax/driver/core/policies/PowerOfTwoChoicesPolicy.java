@@ -0,0 +1,357 @@
+/*
+ *      Copyright (C) 2012-2015 DataStax Inc.
+ *
+ *   Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ */
+package com.datastax.driver.core.policies;
+
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+import com.google.common.collect.AbstractIterator;
+import com.google.common.collect.Iterators;
+import com.google.common.collect.PeekingIterator;
+
+import com.datastax.driver.core.*;
+
+/**
+ * A wrapper load balancing policy that favors the least loaded hosts of the plans of a child policy.
+ * <p>
+ * The load of a host is the number of requests currently in flight to it (see {@link Host#getInFlightQueries()}).
+ * Each position of the query plan is filled using the "power of two choices": two hosts are sampled at random
+ * among the candidates left, and the one with the fewer in-flight requests is used. Compared to always picking
+ * the least loaded host, this avoids sending every new query to the same host until its counters catch up, while
+ * still steering queries away from hosts that are slow to respond (e.g. because of a garbage collection pause)
+ * as soon as their requests start piling up.
+ * <p>
+ * The order of the child policy is only changed among comparable hosts: the hosts returned first by the child
+ * policy that are replicas of the statement's routing key (see {@link TokenAwarePolicy}) are reordered among
+ * themselves, then the other {@link HostDistance#LOCAL LOCAL} hosts. The other hosts (e.g. remote ones) are
+ * returned in the order of the child policy.
+ * <p>
+ * Optionally, the policy can also weight the load by the recent latency of each host: when enabled, the two
+ * sampled hosts are compared by their number of in-flight requests multiplied by their average latency.
+ * See {@link Builder#withLatencyWeighting(long, TimeUnit)}.
+ */
+public class PowerOfTwoChoicesPolicy implements ChainableLoadBalancingPolicy, CloseableLoadBalancingPolicy {
+
+    private static final int REPLICAS = 0;
+    private static final int LOCAL = 1;
+    private static final int OTHERS = 2;
+
+    private static final ThreadLocal<Random> RANDOM = new ThreadLocal<Random>() {
+        @Override
+        protected Random initialValue() {
+            return new Random();
+        }
+    };
+
+    private final LoadBalancingPolicy childPolicy;
+    // null if latency weighting is disabled
+    private final Tracker latencyTracker;
+    private volatile Metadata clusterMetadata;
+
+    private PowerOfTwoChoicesPolicy(LoadBalancingPolicy childPolicy, long latencyScale) {
+        this.childPolicy = childPolicy;
+        this.latencyTracker = latencyScale > 0 ? new Tracker(latencyScale) : null;
+    }
+
+    /**
+     * Creates a new policy builder given the child policy that the resulting policy should wrap.
+     *
+     * @param childPolicy the load balancing policy to wrap.
+     * @return the created builder.
+     */
+    public static Builder builder(LoadBalancingPolicy childPolicy) {
+        return new Builder(childPolicy);
+    }
+
+    @Override
+    public LoadBalancingPolicy getChildPolicy() {
+        return childPolicy;
+    }
+
+    @Override
+    public void init(Cluster cluster, Collection<Host> hosts) {
+        clusterMetadata = cluster.getMetadata();
+        childPolicy.init(cluster, hosts);
+        if (latencyTracker != null)
+            cluster.register(latencyTracker);
+    }
+
+    /**
+     * Returns the HostDistance for the provided host.
+     *
+     * @param host the host of which to return the distance of.
+     * @return the HostDistance to {@code host} as returned by the wrapped policy.
+     */
+    @Override
+    public HostDistance distance(Host host) {
+        return childPolicy.distance(host);
+    }
+
+    /**
+     * Returns the hosts to use for a new query.
+     * <p>
+     * The returned plan contains the same hosts as the plan of the child policy, but the replicas
+     * and the local hosts it starts with are reordered according to their load.
+     *
+     * @param loggedKeyspace the currently logged keyspace.
+     * @param statement the statement for which to build the plan.
+     * @return the new query plan.
+     */
+    @Override
+    public Iterator<Host> newQueryPlan(String loggedKeyspace, Statement statement) {
+        String keyspace = statement.getKeyspace();
+        if (keyspace == null)
+            keyspace = loggedKeyspace;
+
+        Set<Host> replicas = null;
+        Metadata metadata = clusterMetadata;
+        if (keyspace != null && metadata != null)
+            replicas = metadata.getReplicas(Metadata.quote(keyspace), statement);
+
+        return new LoadBasedQueryPlan(childPolicy.newQueryPlan(loggedKeyspace, statement), replicas);
+    }
+
+    private class LoadBasedQueryPlan extends AbstractIterator<Host> {
+        private final PeekingIterator<Host> childIterator;
+        private final Set<Host> replicas;
+        // The hosts of the current group that were not returned yet
+        private final List<Host> candidates = new ArrayList<Host>();
+
+        LoadBasedQueryPlan(Iterator<Host> childIterator, Set<Host> replicas) {
+            this.childIterator = Iterators.peekingIterator(childIterator);
+            this.replicas = replicas;
+        }
+
+        @Override
+        protected Host computeNext() {
+            if (candidates.isEmpty()) {
+                if (!childIterator.hasNext())
+                    return endOfData();
+
+                Host host = childIterator.next();
+                int group = group(host);
+                if (group == OTHERS)
+                    return host;
+
+                candidates.add(host);
+                while (childIterator.hasNext() && group(childIterator.peek()) == group)
+                    candidates.add(childIterator.next());
+            }
+            return pick();
+        }
+
+        private int group(Host host) {
+            if (childPolicy.distance(host) != HostDistance.LOCAL)
+                return OTHERS;
+            return replicas != null && replicas.contains(host) ? REPLICAS : LOCAL;
+        }
+
+        private Host pick() {
+            int size = candidates.size();
+            int chosen = 0;
+            if (size > 1) {
+                Random random = RANDOM.get();
+                int i = random.nextInt(size);
+                int j = random.nextInt(size - 1);
+                if (j >= i)
+                    j++;
+                chosen = compareLoads(candidates.get(i), candidates.get(j)) <= 0 ? i : j;
+            }
+            // Order doesn't matter among the remaining candidates, so move the last one to fill the gap
+            Host host = candidates.get(chosen);
+            candidates.set(chosen, candidates.get(size - 1));
+            candidates.remove(size - 1);
+            return host;
+        }
+    }
+
+    private int compareLoads(Host host1, Host host2) {
+        // Count the request we're about to send, so that latencies still matter for idle hosts
+        long load1 = host1.getInFlightQueries() + 1;
+        long load2 = host2.getInFlightQueries() + 1;
+
+        if (latencyTracker != null) {
+            long latency1 = latencyTracker.latencyOf(host1);
+            long latency2 = latencyTracker.latencyOf(host2);
+            // Only weight if we have measurements for both hosts, otherwise the unknown one would always win
+            if (latency1 > 0 && latency2 > 0) {
+                load1 *= latency1;
+                load2 *= latency2;
+            }
+        }
+        return load1 < load2 ? -1 : (load1 == load2 ? 0 : 1);
+    }
+
+    @Override
+    public void onUp(Host host) {
+        childPolicy.onUp(host);
+    }
+
+    @Override
+    public void onSuspected(Host host) {
+        childPolicy.onSuspected(host);
+    }
+
+    @Override
+    public void onDown(Host host) {
+        childPolicy.onDown(host);
+        if (latencyTracker != null)
+            latencyTracker.resetHost(host);
+    }
+
+    @Override
+    public void onAdd(Host host) {
+        childPolicy.onAdd(host);
+    }
+
+    @Override
+    public void onRemove(Host host) {
+        childPolicy.onRemove(host);
+        if (latencyTracker != null)
+            latencyTracker.resetHost(host);
+    }
+
+    @Override
+    public void close() {
+        if (childPolicy instanceof CloseableLoadBalancingPolicy)
+            ((CloseableLoadBalancingPolicy)childPolicy).close();
+    }
+
+    /**
+     * Keeps an exponential moving average of the latencies of each host, with the same time-based weighting (and
+     * the same excluded errors) as {@link LatencyAwarePolicy}.
+     */
+    private static class Tracker implements LatencyTracker {
+
+        private final double scale;
+        private final ConcurrentMap<Host, AtomicReference<TimestampedAverage>> latencies = new ConcurrentHashMap<Host, AtomicReference<TimestampedAverage>>();
+
+        Tracker(long scale) {
+            this.scale = (double)scale;
+        }
+
+        @Override
+        public void update(Host host, Statement statement, Exception exception, long newLatencyNanos) {
+            // Filter out "fast" errors, that would make the host look faster than it is
+            if (exception != null && LatencyAwarePolicy.EXCLUDED_EXCEPTIONS.contains(exception.getClass()))
+                return;
+
+            AtomicReference<TimestampedAverage> current = latencies.get(host);
+            if (current == null) {
+                current = new AtomicReference<TimestampedAverage>();
+                AtomicReference<TimestampedAverage> old = latencies.putIfAbsent(host, current);
+                if (old != null)
+                    current = old;
+            }
+
+            TimestampedAverage previous, next;
+            do {
+                previous = current.get();
+                next = computeNextAverage(previous, newLatencyNanos);
+            } while (next != null && !current.compareAndSet(previous, next));
+        }
+
+        private TimestampedAverage computeNextAverage(TimestampedAverage previous, long newLatencyNanos) {
+            long now = System.nanoTime();
+            if (previous == null)
+                return new TimestampedAverage(now, newLatencyNanos);
+
+            long delay = now - previous.timestamp;
+            if (delay <= 0)
+                return null;
+
+            double scaledDelay = ((double)delay) / scale;
+            double prevWeight = Math.log(scaledDelay + 1) / scaledDelay;
+            return new TimestampedAverage(now, (long)((1.0 - prevWeight) * newLatencyNanos + prevWeight * previous.average));
+        }
+
+        /**
+         * @return the average latency of the host, or -1 if it is unknown.
+         */
+        long latencyOf(Host host) {
+            AtomicReference<TimestampedAverage> current = latencies.get(host);
+            TimestampedAverage average = current == null ? null : current.get();
+            return average == null ? -1 : average.average;
+        }
+
+        void resetHost(Host host) {
+            latencies.remove(host);
+        }
+    }
+
+    private static class TimestampedAverage {
+        final long timestamp;
+        final long average;
+
+        TimestampedAverage(long timestamp, long average) {
+            this.timestamp = timestamp;
+            this.average = average;
+        }
+    }
+
+    /**
+     * Helper builder object to create a {@link PowerOfTwoChoicesPolicy}.
+     */
+    public static class Builder {
+
+        private final LoadBalancingPolicy childPolicy;
+        private long latencyScale = -1;
+
+        /**
+         * Creates a new builder given the child policy that the resulting policy wraps.
+         *
+         * @param childPolicy the load balancing policy to wrap.
+         */
+        public Builder(LoadBalancingPolicy childPolicy) {
+            this.childPolicy = childPolicy;
+        }
+
+        /**
+         * Enables the weighting of the load of each host by its recent latency.
+         * <p>
+         * The latency of each host is averaged as described in {@link LatencyAwarePolicy.Builder#withScale}:
+         * the {@code scale} controls how fast older latencies lose their weight. Hosts are then compared by
+         * {@code (inFlightQueries + 1) * averageLatency}, so that a host that is fast to respond may get more
+         * requests in flight than a slower one.
+         * <p>
+         * This is disabled by default: hosts are only compared by their number of in-flight requests.
+         *
+         * @param scale the scale to use, for example 100 milliseconds.
+         * @param unit the unit of {@code scale}.
+         * @return this builder.
+         *
+         * @throws IllegalArgumentException if {@code scale &lt;= 0}.
+         */
+        public Builder withLatencyWeighting(long scale, TimeUnit unit) {
+            if (scale <= 0)
+                throw new IllegalArgumentException("Invalid scale, must be strictly positive");
+            this.latencyScale = unit.toNanos(scale);
+            return this;
+        }
+
+        /**
+         * Builds a new policy using the options set on this builder.
+         *
+         * @return the newly created {@code PowerOfTwoChoicesPolicy}.
+         */
+        public PowerOfTwoChoicesPolicy build() {
+            return new PowerOfTwoChoicesPolicy(childPolicy, latencyScale);
+        }
+    }
+}
@@ -15,12 +15,12 @@
  */
 package com.datastax.driver.core.policies;
 
-import java.nio.ByteBuffer;
 import java.util.*;
-
-import com.google.common.collect.Lists;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import com.google.common.collect.AbstractIterator;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableSet;
 
 import com.datastax.driver.core.*;
 
@@ -50,6 +50,8 @@ public class TokenAwarePolicy implements ChainableLoadBalancingPolicy, Closeable
 
     private final LoadBalancingPolicy childPolicy;
     private final boolean shuffleReplicas;
+    private final AtomicInteger index = new AtomicInteger();
+    private volatile QuotedKeyspace lastKeyspace;
     private Metadata clusterMetadata;
 
     /**
@@ -110,7 +112,12 @@ public class TokenAwarePolicy implements ChainableLoadBalancingPolicy, Closeable
      * The returned plan will first return replicas (whose {@code HostDistance}
      * for the child policy is {@code LOCAL}) for the query if it can determine
      * them (i.e. mainly if {@code statement.getRoutingKey()} is not {@code null}).
-     * Following what it will return the plan of the child policy.
+     * Following what it will return the plan of the child policy, which is only
+     * computed if none of the replicas could be used.
+     * <p>
+     * If replicas are shuffled, each plan starts at a different replica (in a
+     * round-robin fashion) rather than using a random permutation, so that the
+     * replicas don't need to be copied.
      *
      * @param statement the query for which to build the plan.
      * @return the new query plan.
@@ -118,51 +125,87 @@ public class TokenAwarePolicy implements ChainableLoadBalancingPolicy, Closeable
     @Override
     public Iterator<Host> newQueryPlan(final String loggedKeyspace, final Statement statement) {
 
-        ByteBuffer partitionKey = statement.getRoutingKey();
         String keyspace = statement.getKeyspace();
         if (keyspace == null)
             keyspace = loggedKeyspace;
 
-        if (partitionKey == null || keyspace == null)
+        if (keyspace == null)
             return childPolicy.newQueryPlan(keyspace, statement);
 
-        final Set<Host> replicas = clusterMetadata.getReplicas(Metadata.quote(keyspace), partitionKey);
+        // This uses the token cached by the statement if possible
+        Set<Host> replicas = clusterMetadata.getReplicas(quote(keyspace), statement);
+        if (replicas == null)
+            return childPolicy.newQueryPlan(keyspace, statement);
         if (replicas.isEmpty())
             return childPolicy.newQueryPlan(loggedKeyspace, statement);
 
-        final Iterator<Host> iter;
-        if (shuffleReplicas) {
-            List<Host> l = Lists.newArrayList(replicas);
-            Collections.shuffle(l);
-            iter = l.iterator();
-        } else {
-            iter = replicas.iterator();
+        // The replica sets of the cluster metadata are immutable sets, which cache their list view
+        List<Host> replicaList = (replicas instanceof ImmutableSet)
+            ? ((ImmutableSet<Host>)replicas).asList()
+            : ImmutableList.copyOf(replicas);
+        int start = shuffleReplicas ? (index.getAndIncrement() & Integer.MAX_VALUE) % replicaList.size() : 0;
+        return new ReplicaQueryPlan(replicaList, start, loggedKeyspace, statement);
+    }
+
+    // Most statements use the same few keyspaces, avoid building a quoted string for each query
+    private String quote(String keyspace) {
+        QuotedKeyspace last = lastKeyspace;
+        if (last == null || !last.keyspace.equals(keyspace)) {
+            last = new QuotedKeyspace(keyspace);
+            lastKeyspace = last;
         }
+        return last.quoted;
+    }
 
-        return new AbstractIterator<Host>() {
+    private static class QuotedKeyspace {
+        final String keyspace;
+        final String quoted;
 
-            private Iterator<Host> childIterator;
+        QuotedKeyspace(String keyspace) {
+            this.keyspace = keyspace;
+            this.quoted = Metadata.quote(keyspace);
+        }
+    }
 
-            @Override
-            protected Host computeNext() {
-                while (iter.hasNext()) {
-                    Host host = iter.next();
-                    if (host.isUp() && childPolicy.distance(host) == HostDistance.LOCAL)
-                        return host;
-                }
+    /**
+     * Returns the live local replicas, starting at a given index, then the hosts of the child policy's plan that
+     * were not already returned.
+     */
+    private class ReplicaQueryPlan extends AbstractIterator<Host> {
+        private final List<Host> replicas;
+        private final int start;
+        private final String loggedKeyspace;
+        private final Statement statement;
+        private int i;
+        private Iterator<Host> childIterator;
+
+        ReplicaQueryPlan(List<Host> replicas, int start, String loggedKeyspace, Statement statement) {
+            this.replicas = replicas;
+            this.start = start;
+            this.loggedKeyspace = loggedKeyspace;
+            this.statement = statement;
+        }
 
-                if (childIterator == null)
-                    childIterator = childPolicy.newQueryPlan(loggedKeyspace, statement);
+        @Override
+        protected Host computeNext() {
+            int size = replicas.size();
+            while (i < size) {
+                Host host = replicas.get((start + i++) % size);
+                if (host.isUp() && childPolicy.distance(host) == HostDistance.LOCAL)
+                    return host;
+            }
+
+            if (childIterator == null)
+                childIterator = childPolicy.newQueryPlan(loggedKeyspace, statement);
 
-                while (childIterator.hasNext()) {
-                    Host host = childIterator.next();
-                    // Skip it if it was already a local replica
-                    if (!replicas.contains(host) || childPolicy.distance(host) != HostDistance.LOCAL)
-                        return host;
-                }
-                return endOfData();
+            while (childIterator.hasNext()) {
+                Host host = childIterator.next();
+                // Skip it if it was already a local replica
+                if (!replicas.contains(host) || childPolicy.distance(host) != HostDistance.LOCAL)
+                    return host;
             }
-        };
+            return endOfData();
+        }
     }
 
     @Override
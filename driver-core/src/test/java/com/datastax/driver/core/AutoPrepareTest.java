@@ -0,0 +1,72 @@
+/*
+ *      Copyright (C) 2012-2015 DataStax Inc.
+ *
+ *   Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ */
+package com.datastax.driver.core;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.scassandra.http.client.PreparedStatementExecution;
+import org.scassandra.http.client.Query;
+import org.testng.annotations.Test;
+
+import com.datastax.driver.core.querybuilder.BuiltStatement;
+
+import static com.datastax.driver.core.querybuilder.QueryBuilder.*;
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class AutoPrepareTest extends ScassandraTestBase.PerClassCluster {
+
+    @Override
+    protected Cluster.Builder createClusterBuilder() {
+        return super.createClusterBuilder()
+            .withQueryOptions(new QueryOptions().setAutoPrepareThreshold(2));
+    }
+
+    @Test(groups = "short")
+    public void should_execute_built_statement_as_prepared_once_threshold_is_reached() throws InterruptedException {
+        session.execute(select("v").from("ks", "auto_prepare1").where(eq("k", "a")));
+        assertThat(cluster.manager.preparedQueries).isEmpty();
+
+        session.execute(select("v").from("ks", "auto_prepare1").where(eq("k", "b")));
+        // The preparation is asynchronous
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (cluster.manager.preparedQueries.isEmpty() && System.nanoTime() < deadline)
+            TimeUnit.MILLISECONDS.sleep(10);
+
+        session.execute(select("v").from("ks", "auto_prepare1").where(eq("k", "c")));
+
+        List<Query> queries = activityClient.retrieveQueries();
+        List<PreparedStatementExecution> executions = activityClient.retrievePreparedStatementExecutions();
+        assertThat(executions).hasSize(1);
+        assertThat(executions.get(0).getPreparedStatementText()).isEqualTo("SELECT v FROM ks.auto_prepare1 WHERE k=?;");
+        int regularExecutions = 0;
+        for (Query query : queries) {
+            if (query.getQuery().startsWith("SELECT v FROM ks.auto_prepare1"))
+                regularExecutions += 1;
+        }
+        assertThat(regularExecutions).isEqualTo(2);
+    }
+
+    @Test(groups = "short")
+    public void should_not_auto_prepare_statements_without_values() {
+        BuiltStatement statement = select("v").from("ks", "auto_prepare2").where(eq("k", "a"));
+        statement.setForceNoValues(true);
+        for (int i = 0; i < 5; i++)
+            session.execute(statement);
+
+        assertThat(activityClient.retrievePreparedStatementExecutions()).isEmpty();
+    }
+}
@@ -0,0 +1,135 @@
+/*
+ *      Copyright (C) 2012-2015 DataStax Inc.
+ *
+ *   Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ */
+package com.datastax.driver.core;
+
+import java.nio.ByteBuffer;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+import org.testng.annotations.Test;
+
+import com.datastax.driver.core.exceptions.InvalidTypeException;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.testng.Assert.fail;
+
+public class ColumnarPageTest {
+
+    private static final int ROWS = 100;
+
+    @Test(groups = "unit")
+    public void should_decode_columns_into_arrays() {
+        ResultSet rs = resultSet(ROWS);
+
+        ColumnarPage page = ColumnarPage.next(rs);
+        assertThat(page.size()).isEqualTo(ROWS);
+        assertThat(rs.isExhausted()).isTrue();
+
+        int[] ints = page.getInts("i");
+        long[] longs = page.getLongs(1);
+        long[] timestamps = page.getLongs("t");
+        double[] doubles = page.getDoubles("d");
+        float[] floats = page.getFloats("f");
+        boolean[] booleans = page.getBooleans("b");
+        ByteBuffer[] texts = page.getBytesUnsafe("s");
+        long[] nulls = page.getNulls(0);
+
+        for (int r = 0; r < ROWS; r++) {
+            boolean isNull = r % 7 == 0;
+            assertThat(page.isNull(0, r)).isEqualTo(isNull);
+            assertThat((nulls[r >>> 6] & (1L << r)) != 0).isEqualTo(isNull);
+            assertThat(ints[r]).isEqualTo(isNull ? 0 : r);
+            assertThat(longs[r]).isEqualTo(isNull ? 0L : r * 1000L);
+            assertThat(timestamps[r]).isEqualTo(isNull ? 0L : 1400000000000L + r);
+            assertThat(doubles[r]).isEqualTo(isNull ? 0.0 : r / 2.0);
+            assertThat(floats[r]).isEqualTo(isNull ? 0.0f : r / 4.0f);
+            assertThat(booleans[r]).isEqualTo(!isNull && r % 2 == 0);
+            if (isNull)
+                assertThat(texts[r]).isNull();
+            else
+                assertThat(TypeCodec.StringCodec.utf8Instance.deserialize(texts[r])).isEqualTo("value" + r);
+        }
+
+        // Arrays are cached
+        assertThat(page.getInts(0)).isSameAs(ints);
+        assertThat(ColumnarPage.next(rs)).isNull();
+    }
+
+    @Test(groups = "unit")
+    public void should_consume_remaining_rows_of_current_page() {
+        ResultSet rs = resultSet(10);
+        assertThat(rs.one().getInt("i")).isEqualTo(0);
+
+        ColumnarPage page = ColumnarPage.next(rs);
+        assertThat(page.size()).isEqualTo(9);
+        assertThat(page.getInts(0)[0]).isEqualTo(1);
+    }
+
+    @Test(groups = "unit")
+    public void should_reject_wrong_column_type() {
+        ColumnarPage page = ColumnarPage.next(resultSet(1));
+        try {
+            page.getLongs("i");
+            fail("Expected an InvalidTypeException");
+        } catch (InvalidTypeException e) {
+            // expected
+        }
+    }
+
+    /**
+     * Builds a single page result set with columns i (int), l (bigint), t (timestamp), d (double), f (float),
+     * b (boolean) and s (text). All values are null for every 7th row.
+     */
+    static ResultSet resultSet(int rowCount) {
+        ByteBuf body = Unpooled.buffer();
+        body.writeInt(2); // ROWS
+        body.writeInt(1); // GLOBAL_TABLES_SPEC
+        body.writeInt(7);
+        CBUtil.writeString("ks", body);
+        CBUtil.writeString("test", body);
+        writeColumn("i", DataType.Name.INT, body);
+        writeColumn("l", DataType.Name.BIGINT, body);
+        writeColumn("t", DataType.Name.TIMESTAMP, body);
+        writeColumn("d", DataType.Name.DOUBLE, body);
+        writeColumn("f", DataType.Name.FLOAT, body);
+        writeColumn("b", DataType.Name.BOOLEAN, body);
+        writeColumn("s", DataType.Name.VARCHAR, body);
+
+        body.writeInt(rowCount);
+        for (int r = 0; r < rowCount; r++) {
+            if (r % 7 == 0) {
+                for (int c = 0; c < 7; c++)
+                    body.writeInt(-1);
+                continue;
+            }
+            CBUtil.writeValue(TypeCodec.IntCodec.instance.serializeNoBoxing(r), body);
+            CBUtil.writeValue(TypeCodec.LongCodec.instance.serializeNoBoxing(r * 1000L), body);
+            CBUtil.writeValue(TypeCodec.LongCodec.instance.serializeNoBoxing(1400000000000L + r), body);
+            CBUtil.writeValue(TypeCodec.DoubleCodec.instance.serializeNoBoxing(r / 2.0), body);
+            CBUtil.writeValue(TypeCodec.FloatCodec.instance.serializeNoBoxing(r / 4.0f), body);
+            CBUtil.writeValue(TypeCodec.BooleanCodec.instance.serializeNoBoxing(r % 2 == 0), body);
+            CBUtil.writeValue(TypeCodec.StringCodec.utf8Instance.serialize("value" + r), body);
+        }
+
+        Responses.Result result = Responses.Result.decoder.decode(body, ProtocolVersion.V3);
+        return ArrayBackedResultSet.fromMessage(result, null, ProtocolVersion.V3, null, null);
+    }
+
+    private static void writeColumn(String name, DataType.Name type, ByteBuf body) {
+        CBUtil.writeString(name, body);
+        body.writeShort(type.protocolId);
+    }
+}
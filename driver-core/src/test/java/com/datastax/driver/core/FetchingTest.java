@@ -68,4 +68,114 @@ public class FetchingTest extends CCMBridge.PerClassSingleNodeCluster {
             throw e;
         }
     }
+
+    @Test(groups = "short")
+    public void should_prefetch_next_page_when_threshold_reached() throws Throwable {
+        if (cluster.getConfiguration().getProtocolOptions().getProtocolVersionEnum() == ProtocolVersion.V1)
+            return;
+
+        String key = "prefetch_test";
+        for (int i = 0; i < 20; i++)
+            session.execute(String.format("INSERT INTO test (k, v) VALUES ('%s', %d)", key, i));
+
+        SimpleStatement st = new SimpleStatement(String.format("SELECT v FROM test WHERE k='%s'", key));
+        st.setFetchSize(5);
+        st.setPrefetchThreshold(3);
+        ResultSet rs = session.execute(st);
+
+        for (int i = 0; i < 3; i++)
+            assertEquals(rs.one().getInt(0), i);
+
+        // Only 2 rows left in the first page, so the second one should be fetched in the background
+        long deadline = System.currentTimeMillis() + 5000;
+        while (rs.getAvailableWithoutFetching() != 7 && System.currentTimeMillis() < deadline)
+            Thread.sleep(10);
+        assertEquals(rs.getAvailableWithoutFetching(), 7);
+
+        for (int i = 3; i < 20; i++)
+            assertEquals(rs.one().getInt(0), i);
+        assertTrue(rs.isExhausted());
+    }
+
+    @Test(groups = "short")
+    public void should_iterate_all_pages_with_cursor() throws Throwable {
+        if (cluster.getConfiguration().getProtocolOptions().getProtocolVersionEnum() == ProtocolVersion.V1)
+            return;
+
+        String key = "cursor_test";
+        for (int i = 0; i < 23; i++)
+            session.execute(String.format("INSERT INTO test (k, v) VALUES ('%s', %d)", key, i));
+
+        SimpleStatement st = new SimpleStatement(String.format("SELECT v FROM test WHERE k='%s'", key));
+        st.setFetchSize(5);
+        RowCursor cursor = RowCursor.of(session.execute(st));
+
+        int i = 0;
+        while (cursor.advance())
+            assertEquals(cursor.row().getInt(0), i++);
+        assertEquals(i, 23);
+    }
+
+    @Test(groups = "short")
+    public void should_prefetch_with_cursor_when_threshold_reached() throws Throwable {
+        if (cluster.getConfiguration().getProtocolOptions().getProtocolVersionEnum() == ProtocolVersion.V1)
+            return;
+
+        String key = "cursor_prefetch_test";
+        for (int i = 0; i < 10; i++)
+            session.execute(String.format("INSERT INTO test (k, v) VALUES ('%s', %d)", key, i));
+
+        SimpleStatement st = new SimpleStatement(String.format("SELECT v FROM test WHERE k='%s'", key));
+        st.setFetchSize(5);
+        st.setPrefetchThreshold(3);
+        ResultSet rs = session.execute(st);
+        RowCursor cursor = RowCursor.of(rs);
+
+        // The cursor owns the first page, whose 4 remaining rows are above the threshold
+        assertTrue(cursor.advance());
+        Thread.sleep(200);
+        assertEquals(rs.getAvailableWithoutFetching(), 0);
+
+        for (int i = 1; i < 3; i++)
+            assertTrue(cursor.advance());
+
+        // Only 2 rows left in the cursor's page, so the second page should be fetched in the background
+        long deadline = System.currentTimeMillis() + 5000;
+        while (rs.getAvailableWithoutFetching() != 5 && System.currentTimeMillis() < deadline)
+            Thread.sleep(10);
+        assertEquals(rs.getAvailableWithoutFetching(), 5);
+    }
+
+    @Test(groups = "short")
+    public void should_not_prefetch_when_page_byte_limit_reached() throws Throwable {
+        if (cluster.getConfiguration().getProtocolOptions().getProtocolVersionEnum() == ProtocolVersion.V1)
+            return;
+
+        String key = "page_bytes_test";
+        for (int i = 0; i < 10; i++)
+            session.execute(String.format("INSERT INTO test (k, v) VALUES ('%s', %d)", key, i));
+
+        QueryOptions queryOptions = cluster.getConfiguration().getQueryOptions();
+        queryOptions.setMaxBufferedPageBytes(1);
+        try {
+            SimpleStatement st = new SimpleStatement(String.format("SELECT v FROM test WHERE k='%s'", key));
+            st.setFetchSize(5);
+            st.setPrefetchThreshold(3);
+            ResultSet rs = session.execute(st);
+
+            for (int i = 0; i < 3; i++)
+                assertEquals(rs.one().getInt(0), i);
+
+            // The current page is over the limit, so the next one is not prefetched
+            Thread.sleep(500);
+            assertEquals(rs.getAvailableWithoutFetching(), 2);
+
+            // But it's still fetched when needed
+            for (int i = 3; i < 10; i++)
+                assertEquals(rs.one().getInt(0), i);
+            assertTrue(rs.isExhausted());
+        } finally {
+            queryOptions.setMaxBufferedPageBytes(0);
+        }
+    }
 }
@@ -0,0 +1,72 @@
+/*
+ *      Copyright (C) 2012-2015 DataStax Inc.
+ *
+ *   Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ */
+package com.datastax.driver.core;
+
+import java.util.EnumSet;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufAllocator;
+import io.netty.buffer.PooledByteBufAllocator;
+import org.testng.annotations.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class FrameCompressorTest {
+
+    private static final ByteBufAllocator alloc = PooledByteBufAllocator.DEFAULT;
+
+    @Test(groups = "unit")
+    public void should_round_trip_with_snappy() throws Exception {
+        should_round_trip(FrameCompressor.SnappyCompressor.instance);
+    }
+
+    @Test(groups = "unit")
+    public void should_round_trip_with_lz4() throws Exception {
+        should_round_trip(FrameCompressor.LZ4Compressor.instance);
+    }
+
+    private void should_round_trip(FrameCompressor compressor) throws Exception {
+        assertThat(compressor).isNotNull();
+        byte[] data = sampleData();
+
+        for (boolean directIn : new boolean[]{ true, false }) {
+            ByteBuf body = directIn ? alloc.directBuffer() : alloc.heapBuffer();
+            // Make sure the compressors take the reader index into account
+            body.writeInt(42).readInt();
+            body.writeBytes(data);
+            Frame frame = Frame.create(ProtocolVersion.V3, 8, 1, EnumSet.noneOf(Frame.Header.Flag.class), body);
+
+            Frame compressed = compressor.compress(frame, alloc);
+            body.release();
+            assertThat(compressed.body.readableBytes()).isLessThan(data.length);
+
+            Frame decompressed = compressor.decompress(compressed, alloc);
+            compressed.body.release();
+            byte[] result = new byte[decompressed.body.readableBytes()];
+            decompressed.body.readBytes(result);
+            decompressed.body.release();
+
+            assertThat(result).isEqualTo(data);
+        }
+    }
+
+    private static byte[] sampleData() {
+        byte[] data = new byte[4096];
+        for (int i = 0; i < data.length; i++)
+            data[i] = (byte)(i % 17);
+        return data;
+    }
+}
@@ -0,0 +1,82 @@
+/*
+ *      Copyright (C) 2012-2015 DataStax Inc.
+ *
+ *   Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ */
+package com.datastax.driver.core;
+
+import java.util.EnumSet;
+
+import com.google.common.base.Strings;
+import io.netty.buffer.ByteBuf;
+import io.netty.channel.embedded.EmbeddedChannel;
+import org.testng.annotations.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class FrameTest {
+
+    @Test(groups = "unit")
+    public void should_encode_request_as_single_buffer() {
+        EmbeddedChannel channel = new EmbeddedChannel(new Frame.Encoder(), new Message.ProtocolEncoder(ProtocolVersion.V3));
+
+        Message.Request request = new Requests.Query("SELECT * FROM foo");
+        request.setStreamId(42);
+        channel.writeOutbound(request);
+
+        ByteBuf frame = (ByteBuf)channel.readOutbound();
+        assertThat(channel.readOutbound()).isNull();
+        try {
+            assertThat(frame.readByte()).isEqualTo((byte)3);  // version
+            assertThat(frame.readByte()).isEqualTo((byte)0);  // flags
+            assertThat(frame.readShort()).isEqualTo((short)42);
+            assertThat(frame.readByte()).isEqualTo((byte)Message.Request.Type.QUERY.opcode);
+            assertThat(frame.readInt()).isEqualTo(frame.readableBytes());
+            assertThat(CBUtil.readLongString(frame)).isEqualTo("SELECT * FROM foo");
+        } finally {
+            frame.release();
+        }
+    }
+
+    @Test(groups = "unit")
+    public void should_encode_compressed_request_as_single_buffer() throws Exception {
+        FrameCompressor compressor = FrameCompressor.LZ4Compressor.instance;
+        EmbeddedChannel channel = new EmbeddedChannel(new Frame.Encoder(), new Frame.Compressor(compressor), new Message.ProtocolEncoder(ProtocolVersion.V2));
+
+        String query = "SELECT * FROM foo WHERE k IN (" + Strings.repeat("1,", 100) + "1)";
+        Message.Request request = new Requests.Query(query);
+        request.setStreamId(42);
+        channel.writeOutbound(request);
+
+        ByteBuf frame = (ByteBuf)channel.readOutbound();
+        assertThat(channel.readOutbound()).isNull();
+        try {
+            assertThat(frame.readByte()).isEqualTo((byte)2);  // version
+            assertThat(frame.readByte()).isEqualTo((byte)Frame.Header.Flag.serialize(EnumSet.of(Frame.Header.Flag.COMPRESSED)));
+            assertThat(frame.readByte()).isEqualTo((byte)42);
+            assertThat(frame.readByte()).isEqualTo((byte)Message.Request.Type.QUERY.opcode);
+            assertThat(frame.readInt()).isEqualTo(frame.readableBytes());
+
+            Frame compressed = Frame.create(ProtocolVersion.V2, Message.Request.Type.QUERY.opcode, 42,
+                                            EnumSet.of(Frame.Header.Flag.COMPRESSED), frame);
+            Frame decompressed = compressor.decompress(compressed, frame.alloc());
+            try {
+                assertThat(CBUtil.readLongString(decompressed.body)).isEqualTo(query);
+            } finally {
+                decompressed.body.release();
+            }
+        } finally {
+            frame.release();
+        }
+    }
+}
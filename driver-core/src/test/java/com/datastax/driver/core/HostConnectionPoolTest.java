@@ -25,6 +25,7 @@ import static java.util.concurrent.TimeUnit.SECONDS;
 
 import com.codahale.metrics.Gauge;
 import com.google.common.collect.Lists;
+import com.google.common.util.concurrent.ListenableFuture;
 import org.testng.annotations.Test;
 
 import static org.assertj.core.api.Assertions.assertThat;
@@ -80,6 +81,60 @@ public class HostConnectionPoolTest extends CCMBridge.PerClassSingleNodeCluster
         assertThat(timedOut).isTrue();
     }
 
+    /**
+     * Ensures that when a pool is full, borrowConnectionAsync enqueues the borrow without blocking, and that it
+     * gets completed as soon as a connection is returned to the pool.
+     *
+     * @test_category connection:connection_pool
+     */
+    @Test(groups = "short")
+    public void should_complete_pending_borrow_when_connection_returned() throws Exception {
+        HostConnectionPool pool = createPool(1, 1);
+        Connection core = pool.connections.get(0);
+
+        for (int i = 0; i < 128; i++)
+            assertThat(pool.borrowConnection(100, MILLISECONDS)).isEqualTo(core);
+
+        ListenableFuture<Connection> pending = pool.borrowConnectionAsync(5, SECONDS);
+        assertThat(pending.isDone()).isFalse();
+        assertThat(pool.pendingBorrowCount()).isEqualTo(1);
+
+        pool.returnConnection(core);
+
+        assertThat(pending.get(100, MILLISECONDS)).isEqualTo(core);
+        assertThat(pool.pendingBorrowCount()).isEqualTo(0);
+        assertThat(core.inFlight.get()).isEqualTo(128);
+    }
+
+    /**
+     * Ensures that borrows are rejected immediately once the pool's wait queue is full.
+     *
+     * @test_category connection:connection_pool
+     */
+    @Test(groups = "short")
+    public void should_reject_borrow_when_queue_full() throws Exception {
+        cluster.getConfiguration().getPoolingOptions().setMaxQueueSize(1);
+        try {
+            HostConnectionPool pool = createPool(1, 1);
+
+            for (int i = 0; i < 128; i++)
+                pool.borrowConnection(100, MILLISECONDS);
+
+            ListenableFuture<Connection> pending = pool.borrowConnectionAsync(5, SECONDS);
+            ListenableFuture<Connection> rejected = pool.borrowConnectionAsync(5, SECONDS);
+
+            assertThat(pending.isDone()).isFalse();
+            try {
+                rejected.get();
+                fail("Expected an ExecutionException");
+            } catch (ExecutionException e) {
+                assertThat(e.getCause()).isInstanceOf(BusyPoolException.class);
+            }
+        } finally {
+            cluster.getConfiguration().getPoolingOptions().setMaxQueueSize(256);
+        }
+    }
+
     /**
      * Ensures that if a variable-sized pool has filled up to its maximum connections that borrowConnection will
      * timeout instead of creating a new connection.
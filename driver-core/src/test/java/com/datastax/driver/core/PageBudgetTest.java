@@ -0,0 +1,57 @@
+/*
+ *      Copyright (C) 2012-2015 DataStax Inc.
+ *
+ *   Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ */
+package com.datastax.driver.core;
+
+import org.testng.annotations.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class PageBudgetTest {
+
+    @Test(groups = "unit")
+    public void should_track_bytes_across_accounts() {
+        PageBudget budget = new PageBudget();
+        Object owner1 = new Object(), owner2 = new Object();
+        PageBudget.Account account1 = budget.newAccount(owner1);
+        PageBudget.Account account2 = budget.newAccount(owner2);
+
+        account1.acquire(100);
+        account2.acquire(50);
+        assertThat(budget.bufferedBytes()).isEqualTo(150);
+
+        account1.release(40);
+        assertThat(account1.heldBytes()).isEqualTo(60);
+        assertThat(budget.bufferedBytes()).isEqualTo(110);
+
+        account1.close();
+        assertThat(budget.bufferedBytes()).isEqualTo(50);
+        // Closing twice has no effect
+        account1.close();
+        assertThat(budget.bufferedBytes()).isEqualTo(50);
+    }
+
+    @Test(groups = "unit")
+    public void should_release_bytes_of_collected_owners() throws InterruptedException {
+        PageBudget budget = new PageBudget();
+        budget.newAccount(new Object()).acquire(100);
+
+        for (int i = 0; i < 50 && budget.bufferedBytes() != 0; i++) {
+            System.gc();
+            Thread.sleep(20);
+        }
+        assertThat(budget.bufferedBytes()).isEqualTo(0);
+    }
+}
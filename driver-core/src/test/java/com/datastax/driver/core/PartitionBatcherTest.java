@@ -0,0 +1,193 @@
+/*
+ *      Copyright (C) 2012-2015 DataStax Inc.
+ *
+ *   Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ */
+package com.datastax.driver.core;
+
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.util.*;
+
+import com.google.common.collect.ImmutableSet;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyString;
+import static org.mockito.Matchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+public class PartitionBatcherTest {
+
+    private static final Token.Factory factory = Token.M3PToken.FACTORY;
+
+    private Session session;
+    private Metadata metadata;
+    private final Host host1 = newHost(1);
+    private final Host host2 = newHost(2);
+
+    @BeforeMethod(groups = "unit")
+    public void setup() {
+        session = mock(Session.class);
+        metadata = mock(Metadata.class);
+        when(metadata.tokenFactory()).thenReturn(factory);
+        // Even keys are owned by host1, odd keys by host2
+        when(metadata.getReplicas(anyString(), any(Statement.class))).thenAnswer(new Answer<Set<Host>>() {
+            @Override
+            public Set<Host> answer(InvocationOnMock invocation) throws Throwable {
+                ByteBuffer key = ((Statement)invocation.getArguments()[1]).getRoutingKey();
+                if (key == null)
+                    return null;
+                return ImmutableSet.of(key.getInt(key.position()) % 2 == 0 ? host1 : host2);
+            }
+        });
+    }
+
+    @Test(groups = "unit")
+    public void should_group_statements_by_partition() {
+        PartitionBatcher batcher = PartitionBatcher.builder(session).withMaxStatementsPerBatch(2).build();
+
+        List<PartitionBatcher.Batch> batches = batcher.group(
+            Arrays.asList(insert(1), insert(2), insert(1), insert(1), insert(2), insert(1), insert(1)),
+            metadata, ProtocolVersion.V3);
+
+        assertThat(batches).hasSize(4);
+        int total = 0;
+        for (PartitionBatcher.Batch batch : batches) {
+            assertThat(batch.statement.size()).isLessThanOrEqualTo(2);
+            Set<Integer> keys = new HashSet<Integer>(keysOf(batch));
+            assertThat(keys).hasSize(1);
+            int key = keys.iterator().next();
+            assertThat(batch.replicas).containsOnly(key % 2 == 0 ? host1 : host2);
+            assertThat(batch.statement.getRoutingKey()).isEqualTo(key(key));
+            total += batch.statement.size();
+        }
+        assertThat(total).isEqualTo(7);
+    }
+
+    @Test(groups = "unit")
+    public void should_group_statements_by_replica_set() {
+        PartitionBatcher batcher = PartitionBatcher.builder(session)
+            .withGrouping(PartitionBatcher.Grouping.REPLICA_SET)
+            .build();
+
+        List<PartitionBatcher.Batch> batches = batcher.group(
+            Arrays.asList(insert(1), insert(2), insert(3), insert(4), insert(5)),
+            metadata, ProtocolVersion.V3);
+
+        assertThat(batches).hasSize(2);
+        assertThat(keysOf(batches.get(0))).containsExactly(1, 3, 5);
+        assertThat(batches.get(0).replicas).containsOnly(host2);
+        assertThat(keysOf(batches.get(1))).containsExactly(2, 4);
+        assertThat(batches.get(1).replicas).containsOnly(host1);
+    }
+
+    @Test(groups = "unit")
+    public void should_split_batches_by_serialized_size() {
+        int size = PartitionBatcher.sizeOf(insert(1), ProtocolVersion.V3);
+        PartitionBatcher batcher = PartitionBatcher.builder(session).withMaxBatchBytes(size * 3 - 1).build();
+
+        List<PartitionBatcher.Batch> batches = batcher.group(
+            Arrays.asList(insert(1), insert(1), insert(1), insert(1), insert(1)),
+            metadata, ProtocolVersion.V3);
+
+        assertThat(batches).hasSize(3);
+        assertThat(batches.get(0).statement.size()).isEqualTo(2);
+        assertThat(batches.get(0).bytes).isEqualTo(size * 2);
+        assertThat(batches.get(1).statement.size()).isEqualTo(2);
+        assertThat(batches.get(2).statement.size()).isEqualTo(1);
+    }
+
+    @Test(groups = "unit")
+    public void should_not_group_statements_without_routing_key() {
+        PartitionBatcher batcher = PartitionBatcher.builder(session).build();
+        Statement noKey1 = new SimpleStatement("INSERT INTO ks.t (k, v) VALUES (0, 0)");
+        Statement noKey2 = new SimpleStatement("INSERT INTO ks.t (k, v) VALUES (0, 0)").setKeyspace("ks");
+
+        List<PartitionBatcher.Batch> batches = batcher.group(
+            Arrays.asList(noKey1, insert(1), noKey2, insert(1)),
+            metadata, ProtocolVersion.V3);
+
+        assertThat(batches).hasSize(3);
+        assertThat(batches.get(0).statement.getStatements()).containsExactly(noKey1);
+        assertThat(batches.get(0).replicas).isEmpty();
+        assertThat(batches.get(1).statement.getStatements()).containsExactly(noKey2);
+        assertThat(batches.get(2).statement.size()).isEqualTo(2);
+    }
+
+    @Test(groups = "unit")
+    public void should_quote_case_sensitive_keyspace() {
+        Metadata metadata = mock(Metadata.class);
+        when(metadata.tokenFactory()).thenReturn(factory);
+        when(metadata.getReplicas(anyString(), any(Statement.class))).thenReturn(Collections.<Host>emptySet());
+        when(metadata.getReplicas(eq("\"MyKs\""), any(Statement.class))).thenReturn(ImmutableSet.of(host1));
+        List<Statement> statements = Arrays.asList(insert(1, "MyKs"), insert(3, "MyKs"));
+
+        for (PartitionBatcher.Grouping grouping : PartitionBatcher.Grouping.values()) {
+            PartitionBatcher batcher = PartitionBatcher.builder(session).withGrouping(grouping).build();
+            List<PartitionBatcher.Batch> batches = batcher.group(statements, metadata, ProtocolVersion.V3);
+
+            if (grouping == PartitionBatcher.Grouping.REPLICA_SET) {
+                assertThat(batches).hasSize(1);
+                assertThat(keysOf(batches.get(0))).containsExactly(1, 3);
+            } else {
+                assertThat(batches).hasSize(2);
+            }
+            for (PartitionBatcher.Batch batch : batches)
+                assertThat(batch.replicas).containsOnly(host1);
+        }
+    }
+
+    @Test(groups = "unit")
+    public void should_flatten_batch_statements() {
+        PartitionBatcher batcher = PartitionBatcher.builder(session).build();
+        BatchStatement batch = new BatchStatement().add(insert(1)).add(insert(2)).add(insert(1));
+
+        List<PartitionBatcher.Batch> grouped = batcher.group(Collections.singletonList(batch), metadata, ProtocolVersion.V3);
+        assertThat(grouped).hasSize(2);
+        assertThat(keysOf(grouped.get(0))).containsExactly(1, 1);
+        assertThat(keysOf(grouped.get(1))).containsExactly(2);
+    }
+
+    private static Statement insert(int key) {
+        return insert(key, "ks");
+    }
+
+    private static Statement insert(int key, String keyspace) {
+        return new SimpleStatement("INSERT INTO ks.t (k, v) VALUES (?, ?)", key, "value" + key)
+            .setRoutingKey(key(key))
+            .setKeyspace(keyspace);
+    }
+
+    private static ByteBuffer key(int key) {
+        return (ByteBuffer)ByteBuffer.allocate(4).putInt(0, key);
+    }
+
+    private static List<Integer> keysOf(PartitionBatcher.Batch batch) {
+        List<Integer> keys = new ArrayList<Integer>();
+        for (Statement statement : batch.statement.getStatements()) {
+            ByteBuffer key = statement.getRoutingKey();
+            keys.add(key.getInt(key.position()));
+        }
+        return keys;
+    }
+
+    private static Host newHost(int i) {
+        return new Host(new InetSocketAddress("127.0.0." + i, 9042), new ConvictionPolicy.Simple.Factory(), null);
+    }
+}
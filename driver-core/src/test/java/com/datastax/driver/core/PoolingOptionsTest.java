@@ -94,5 +94,18 @@ public class PoolingOptionsTest {
         assertThat(options.getCoreConnectionsPerHost(LOCAL)).isEqualTo(10);
         assertThat(options.getMaxConnectionsPerHost(LOCAL)).isEqualTo(15);
     }
-}
 
+    @Test(groups = "unit")
+    public void should_reject_negative_max_queue_size() {
+        PoolingOptions options = new PoolingOptions();
+        assertThat(options.getMaxQueueSize()).isEqualTo(256);
+
+        options.setMaxQueueSize(0);
+        assertThat(options.getMaxQueueSize()).isEqualTo(0);
+
+        try {
+            options.setMaxQueueSize(-1);
+            fail("Expected an IllegalArgumentException");
+        } catch (IllegalArgumentException e) {/*expected*/}
+    }
+}
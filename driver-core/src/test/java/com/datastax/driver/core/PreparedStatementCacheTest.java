@@ -0,0 +1,86 @@
+/*
+ *      Copyright (C) 2012-2015 DataStax Inc.
+ *
+ *   Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ */
+package com.datastax.driver.core;
+
+import java.util.List;
+
+import com.google.common.collect.Lists;
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.ListenableFuture;
+import org.testng.annotations.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class PreparedStatementCacheTest extends ScassandraTestBase.PerClassCluster {
+
+    @Override
+    protected Cluster.Builder createClusterBuilder() {
+        return super.createClusterBuilder()
+            .withQueryOptions(new QueryOptions().setPreparedStatementCacheSize(2));
+    }
+
+    @Test(groups = "short")
+    public void should_return_cached_statement_when_preparing_same_query() {
+        Metrics metrics = cluster.getMetrics();
+        long hits = metrics.getPreparedStatementCacheHits().getCount();
+        long misses = metrics.getPreparedStatementCacheMisses().getCount();
+
+        PreparedStatement ps1 = session.prepare("SELECT v FROM cache_test1 WHERE k = ?");
+        PreparedStatement ps2 = session.prepare("SELECT v FROM cache_test1 WHERE k = ?");
+
+        assertThat(ps2).isSameAs(ps1);
+        assertThat(metrics.getPreparedStatementCacheMisses().getCount()).isEqualTo(misses + 1);
+        assertThat(metrics.getPreparedStatementCacheHits().getCount()).isEqualTo(hits + 1);
+    }
+
+    @Test(groups = "short")
+    public void should_share_concurrent_preparations_of_same_query() throws Exception {
+        long misses = cluster.getMetrics().getPreparedStatementCacheMisses().getCount();
+
+        List<ListenableFuture<PreparedStatement>> futures = Lists.newArrayList();
+        for (int i = 0; i < 10; i++)
+            futures.add(session.prepareAsync("SELECT v FROM cache_test2 WHERE k = ?"));
+
+        List<PreparedStatement> statements = Futures.allAsList(futures).get();
+        for (PreparedStatement statement : statements)
+            assertThat(statement).isSameAs(statements.get(0));
+        assertThat(cluster.getMetrics().getPreparedStatementCacheMisses().getCount()).isEqualTo(misses + 1);
+    }
+
+    @Test(groups = "short")
+    public void should_not_share_cancellation_between_callers() throws Exception {
+        String query = "SELECT v FROM cache_test4 WHERE k = ?";
+        ListenableFuture<PreparedStatement> cancelled = session.prepareAsync(query);
+        ListenableFuture<PreparedStatement> other = session.prepareAsync(query);
+        cancelled.cancel(true);
+
+        assertThat(other.get()).isNotNull();
+        assertThat(session.prepare(query)).isSameAs(other.get());
+    }
+
+    @Test(groups = "short")
+    public void should_prepare_again_after_eviction() {
+        PreparedStatement ps = session.prepare("SELECT v FROM cache_test3 WHERE k = ?");
+        for (int i = 0; i < 10; i++)
+            session.prepare("SELECT v FROM cache_test3 WHERE k = " + i);
+
+        long misses = cluster.getMetrics().getPreparedStatementCacheMisses().getCount();
+        PreparedStatement again = session.prepare("SELECT v FROM cache_test3 WHERE k = ?");
+
+        assertThat(again).isNotSameAs(ps);
+        assertThat(cluster.getMetrics().getPreparedStatementCacheMisses().getCount()).isEqualTo(misses + 1);
+    }
+}
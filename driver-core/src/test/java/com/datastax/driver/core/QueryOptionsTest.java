@@ -0,0 +1,119 @@
+/*
+ *      Copyright (C) 2012-2015 DataStax Inc.
+ *
+ *   Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ */
+package com.datastax.driver.core;
+
+import org.testng.annotations.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.fail;
+
+public class QueryOptionsTest {
+
+    @Test(groups = "unit")
+    public void should_reject_invalid_prefetch_settings() {
+        QueryOptions options = new QueryOptions();
+        assertThat(options.getPrefetchThreshold()).isEqualTo(0);
+        assertThat(options.getMaxPrefetchPages()).isEqualTo(1);
+
+        try {
+            options.setPrefetchThreshold(-1);
+            fail("Expected an IllegalArgumentException");
+        } catch (IllegalArgumentException e) {/*expected*/}
+
+        try {
+            options.setMaxPrefetchPages(0);
+            fail("Expected an IllegalArgumentException");
+        } catch (IllegalArgumentException e) {/*expected*/}
+
+        options.setPrefetchThreshold(1000).setMaxPrefetchPages(2);
+        assertThat(options.getPrefetchThreshold()).isEqualTo(1000);
+        assertThat(options.getMaxPrefetchPages()).isEqualTo(2);
+    }
+
+    @Test(groups = "unit")
+    public void should_reject_invalid_page_byte_limits() {
+        QueryOptions options = new QueryOptions();
+        assertThat(options.getMaxBufferedPageBytes()).isEqualTo(0);
+        assertThat(options.getMaxSessionBufferedPageBytes()).isEqualTo(0);
+
+        try {
+            options.setMaxBufferedPageBytes(-1);
+            fail("Expected an IllegalArgumentException");
+        } catch (IllegalArgumentException e) {/*expected*/}
+
+        try {
+            options.setMaxSessionBufferedPageBytes(-1);
+            fail("Expected an IllegalArgumentException");
+        } catch (IllegalArgumentException e) {/*expected*/}
+
+        options.setMaxBufferedPageBytes(1024).setMaxSessionBufferedPageBytes(4096);
+        assertThat(options.getMaxBufferedPageBytes()).isEqualTo(1024);
+        assertThat(options.getMaxSessionBufferedPageBytes()).isEqualTo(4096);
+    }
+
+    @Test(groups = "unit")
+    public void should_reject_invalid_prepared_statement_cache_size() {
+        QueryOptions options = new QueryOptions();
+        assertThat(options.getPreparedStatementCacheSize()).isEqualTo(0);
+
+        try {
+            options.setPreparedStatementCacheSize(-1);
+            fail("Expected an IllegalArgumentException");
+        } catch (IllegalArgumentException e) {/*expected*/}
+
+        options.setPreparedStatementCacheSize(100);
+        assertThat(options.getPreparedStatementCacheSize()).isEqualTo(100);
+    }
+
+    @Test(groups = "unit")
+    public void should_reject_invalid_reprepare_settings() {
+        QueryOptions options = new QueryOptions();
+
+        try {
+            options.setMaxReprepareConnections(0);
+            fail("Expected an IllegalArgumentException");
+        } catch (IllegalArgumentException e) {/*expected*/}
+
+        try {
+            options.setMaxInFlightReprepares(0);
+            fail("Expected an IllegalArgumentException");
+        } catch (IllegalArgumentException e) {/*expected*/}
+
+        options.setMaxReprepareConnections(4).setMaxInFlightReprepares(100);
+        assertThat(options.getMaxReprepareConnections()).isEqualTo(4);
+        assertThat(options.getMaxInFlightReprepares()).isEqualTo(100);
+    }
+
+    @Test(groups = "unit")
+    public void should_reject_invalid_auto_prepare_settings() {
+        QueryOptions options = new QueryOptions();
+        assertThat(options.getAutoPrepareThreshold()).isEqualTo(0);
+
+        try {
+            options.setAutoPrepareThreshold(-1);
+            fail("Expected an IllegalArgumentException");
+        } catch (IllegalArgumentException e) {/*expected*/}
+
+        try {
+            options.setMaxAutoPrepareShapes(0);
+            fail("Expected an IllegalArgumentException");
+        } catch (IllegalArgumentException e) {/*expected*/}
+
+        options.setAutoPrepareThreshold(10).setMaxAutoPrepareShapes(50);
+        assertThat(options.getAutoPrepareThreshold()).isEqualTo(10);
+        assertThat(options.getMaxAutoPrepareShapes()).isEqualTo(50);
+    }
+}
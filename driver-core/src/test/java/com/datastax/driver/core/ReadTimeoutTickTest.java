@@ -0,0 +1,75 @@
+/*
+ *      Copyright (C) 2012-2015 DataStax Inc.
+ *
+ *   Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ */
+package com.datastax.driver.core;
+
+import java.util.concurrent.TimeUnit;
+
+import org.testng.annotations.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.fail;
+import static org.scassandra.http.client.PrimingRequest.queryBuilder;
+
+import com.datastax.driver.core.exceptions.NoHostAvailableException;
+
+public class ReadTimeoutTickTest extends ScassandraTestBase.PerClassCluster {
+
+    @Override
+    protected Cluster.Builder createClusterBuilder() {
+        return super.createClusterBuilder()
+            .withSocketOptions(new SocketOptions()
+                .setReadTimeoutTickMillis(10));
+    }
+
+    @Test(groups = "short")
+    public void should_time_out_request_when_tracked_on_event_loop() {
+        String query = "SELECT foo FROM bar";
+        primingClient.prime(
+            queryBuilder()
+                .withQuery(query)
+                .withFixedDelay(2000)
+                .build()
+        );
+
+        SocketOptions socketOptions = cluster.getConfiguration().getSocketOptions();
+        int readTimeoutMillis = socketOptions.getReadTimeoutMillis();
+        socketOptions.setReadTimeoutMillis(100);
+        long start = System.nanoTime();
+        try {
+            session.execute(query);
+            fail("Should have thrown NoHostAvailableException");
+        } catch (NoHostAvailableException e) {
+            assertThat(e.getErrors().get(hostAddress)).isInstanceOf(OperationTimedOutException.class);
+        } finally {
+            socketOptions.setReadTimeoutMillis(readTimeoutMillis);
+        }
+        // The response is delayed by 2 seconds, so we must have timed out on our own
+        assertThat(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start)).isLessThan(1000);
+    }
+
+    @Test(groups = "short")
+    public void should_not_time_out_fast_request_when_tracked_on_event_loop() {
+        String query = "SELECT foo FROM bar";
+        primingClient.prime(
+            queryBuilder()
+                .withQuery(query)
+                .build()
+        );
+
+        for (int i = 0; i < 10; i++)
+            session.execute(query);
+    }
+}
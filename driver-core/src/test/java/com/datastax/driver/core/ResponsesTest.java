@@ -0,0 +1,59 @@
+/*
+ *      Copyright (C) 2012-2015 DataStax Inc.
+ *
+ *   Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ */
+package com.datastax.driver.core;
+
+import java.nio.ByteBuffer;
+import java.util.List;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+import org.testng.annotations.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class ResponsesTest {
+
+    @Test(groups = "unit")
+    public void should_decode_same_rows_with_shared_page_buffer() {
+        Responses.Result.Rows regular = (Responses.Result.Rows)Responses.Result.Rows.subcodec.decode(rowsBody(), ProtocolVersion.V3);
+        Responses.Result.Rows shared = (Responses.Result.Rows)Responses.Result.Rows.pageBufferSubcodec.decode(rowsBody(), ProtocolVersion.V3);
+
+        assertThat(shared.data).hasSize(2);
+        assertThat(shared.data).containsExactlyElementsOf(regular.data);
+
+        List<ByteBuffer> firstRow = shared.data.peek();
+        assertThat(firstRow.get(0).getInt(0)).isEqualTo(42);
+        assertThat(firstRow.get(0).isReadOnly()).isTrue();
+        assertThat(firstRow.get(1)).isNull();
+    }
+
+    // A ROWS body (without the kind) with no metadata, 2 columns and 2 rows: [42, null], ['', 'abc']
+    private static ByteBuf rowsBody() {
+        ByteBuf body = Unpooled.buffer();
+        body.writeInt(1 << 2); // NO_METADATA
+        body.writeInt(2);
+        body.writeInt(2);
+
+        body.writeInt(4);
+        body.writeInt(42);
+        body.writeInt(-1);
+
+        body.writeInt(0);
+        body.writeInt(3);
+        body.writeBytes(new byte[]{ 'a', 'b', 'c' });
+        return body;
+    }
+}
@@ -0,0 +1,117 @@
+/*
+ *      Copyright (C) 2012-2015 DataStax Inc.
+ *
+ *   Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ */
+package com.datastax.driver.core;
+
+import java.nio.ByteBuffer;
+
+import org.testng.annotations.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+public class RoutingTokenTest {
+
+    private static final Token.Factory factory = Token.M3PToken.FACTORY;
+
+    @Test(groups = "unit")
+    public void should_cache_token_of_single_routing_key() {
+        BoundStatement bs = new BoundStatement(prepared(new int[]{ 0 }, DataType.cint(), DataType.text()));
+        ByteBuffer value = TypeCodec.IntCodec.instance.serializeNoBoxing(1);
+        bs.setBytesUnsafe(0, value).setString(1, "a");
+
+        long token = bs.getMurmur3RoutingToken();
+        assertThat(token).isEqualTo(Token.M3PToken.hashToLong(bs.getRoutingKey()));
+        assertThat(bs.getRoutingToken(factory)).isEqualTo(factory.hash(bs.getRoutingKey()));
+
+        // Not recomputed if the value's bytes change behind the statement's back
+        value.putInt(0, 2);
+        assertThat(bs.getMurmur3RoutingToken()).isEqualTo(token);
+
+        bs.setInt(0, 2);
+        long newToken = bs.getMurmur3RoutingToken();
+        assertThat(newToken).isEqualTo(Token.M3PToken.hashToLong(bs.getRoutingKey()));
+        assertThat(newToken).isNotEqualTo(token);
+    }
+
+    @Test(groups = "unit")
+    public void should_compute_token_of_composite_routing_key() {
+        BoundStatement bs = new BoundStatement(prepared(new int[]{ 2, 0 }, DataType.text(), DataType.cint(), DataType.bigint()));
+        bs.bind("a", 1, 2L);
+
+        Token token = bs.getRoutingToken(factory);
+        assertThat(token).isEqualTo(factory.hash(bs.getRoutingKey()));
+        assertThat(bs.getMurmur3RoutingToken()).isEqualTo(Token.M3PToken.hashToLong(bs.getRoutingKey()));
+
+        // Bigger than the initial composite buffer
+        bs.setString(0, "a very long partition key component, longer than the initial size of the buffer");
+        assertThat(bs.getRoutingToken(factory)).isEqualTo(factory.hash(bs.getRoutingKey()));
+
+        bs.setToNull(0);
+        assertThat(bs.getRoutingToken(factory)).isNull();
+        assertThat(bs.getMurmur3RoutingToken()).isEqualTo(Statement.NO_ROUTING_TOKEN);
+    }
+
+    @Test(groups = "unit")
+    public void should_not_share_composite_buffer_with_ordered_tokens() {
+        Token.Factory oppFactory = Token.OPPToken.FACTORY;
+        PreparedStatement prepared = prepared(new int[]{ 0, 1 }, DataType.text(), DataType.cint());
+        // Big enough for the reusable buffer to grow to exactly the size of the composite key
+        StringBuilder component = new StringBuilder();
+        for (int i = 0; i < 10000; i++)
+            component.append('a');
+
+        BoundStatement bs1 = new BoundStatement(prepared).bind(component.toString(), 1);
+        Token token = bs1.getRoutingToken(oppFactory);
+        assertThat(token).isEqualTo(oppFactory.hash(bs1.getRoutingKey()));
+
+        BoundStatement bs2 = new BoundStatement(prepared).bind(component.toString(), 2);
+        bs2.getRoutingToken(oppFactory);
+        assertThat(bs1.getRoutingToken(oppFactory)).isEqualTo(oppFactory.hash(bs1.getRoutingKey()));
+    }
+
+    @Test(groups = "unit")
+    public void should_not_cache_token_of_explicit_routing_key() {
+        BoundStatement bs = new BoundStatement(prepared(new int[]{ 0 }, DataType.cint()));
+        bs.setInt(0, 1);
+        ByteBuffer routingKey = TypeCodec.IntCodec.instance.serializeNoBoxing(42);
+        bs.setRoutingKey(routingKey);
+
+        assertThat(bs.getRoutingToken(factory)).isEqualTo(factory.hash(routingKey));
+    }
+
+    @Test(groups = "unit")
+    public void should_recompute_token_for_other_partitioner() {
+        BoundStatement bs = new BoundStatement(prepared(new int[]{ 0 }, DataType.cint()));
+        bs.setInt(0, 1);
+
+        assertThat(bs.getRoutingToken(factory)).isEqualTo(factory.hash(bs.getRoutingKey()));
+        Token.Factory rpFactory = Token.RPToken.FACTORY;
+        assertThat(bs.getRoutingToken(rpFactory)).isEqualTo(rpFactory.hash(bs.getRoutingKey()));
+    }
+
+    private static PreparedStatement prepared(int[] routingKeyIndexes, DataType... types) {
+        ColumnDefinitions.Definition[] definitions = new ColumnDefinitions.Definition[types.length];
+        for (int i = 0; i < types.length; i++)
+            definitions[i] = new ColumnDefinitions.Definition("ks", "table", "c" + i, types[i]);
+        ColumnDefinitions variables = new ColumnDefinitions(definitions);
+
+        PreparedStatement prepared = mock(PreparedStatement.class);
+        when(prepared.getVariables()).thenReturn(variables);
+        when(prepared.getPreparedId()).thenReturn(new PreparedId(null, variables, null, routingKeyIndexes, ProtocolVersion.V3));
+        return prepared;
+    }
+}
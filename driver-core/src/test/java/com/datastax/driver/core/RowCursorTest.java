@@ -0,0 +1,81 @@
+/*
+ *      Copyright (C) 2012-2015 DataStax Inc.
+ *
+ *   Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ */
+package com.datastax.driver.core;
+
+import org.testng.annotations.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.testng.Assert.fail;
+
+public class RowCursorTest {
+
+    @Test(groups = "unit")
+    public void should_iterate_with_a_single_row_instance() {
+        ResultSet rs = ColumnarPageTest.resultSet(20);
+        RowCursor cursor = RowCursor.of(rs);
+
+        Row first = null;
+        int count = 0;
+        while (cursor.advance()) {
+            Row row = cursor.row();
+            if (first == null)
+                first = row;
+            assertThat(row).isSameAs(first);
+
+            if (count % 7 == 0) {
+                assertThat(row.isNull("i")).isTrue();
+            } else {
+                assertThat(row.getInt("i")).isEqualTo(count);
+                assertThat(row.getLong("l")).isEqualTo(count * 1000L);
+                assertThat(row.getString("s")).isEqualTo("value" + count);
+            }
+            count += 1;
+        }
+        assertThat(count).isEqualTo(20);
+        assertThat(rs.isExhausted()).isTrue();
+        assertThat(cursor.advance()).isFalse();
+    }
+
+    @Test(groups = "unit")
+    public void should_start_from_current_position_of_result_set() {
+        ResultSet rs = ColumnarPageTest.resultSet(5);
+        rs.one();
+        rs.one();
+
+        RowCursor cursor = RowCursor.of(rs);
+        assertThat(cursor.advance()).isTrue();
+        assertThat(cursor.row().getInt("i")).isEqualTo(2);
+    }
+
+    @Test(groups = "unit")
+    public void should_fail_to_access_row_when_not_positioned() {
+        RowCursor cursor = RowCursor.of(ColumnarPageTest.resultSet(1));
+        try {
+            cursor.row();
+            fail("Expected an IllegalStateException");
+        } catch (IllegalStateException e) {
+            // expected
+        }
+        assertThat(cursor.advance()).isTrue();
+        assertThat(cursor.advance()).isFalse();
+        try {
+            cursor.row();
+            fail("Expected an IllegalStateException");
+        } catch (IllegalStateException e) {
+            // expected
+        }
+    }
+}
@@ -0,0 +1,112 @@
+/*
+ *      Copyright (C) 2012-2015 DataStax Inc.
+ *
+ *   Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ */
+package com.datastax.driver.core;
+
+import java.util.*;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import com.google.common.util.concurrent.Uninterruptibles;
+import org.testng.annotations.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class RowPublisherTest extends CCMBridge.PerClassSingleNodeCluster {
+
+    private static final int ROWS = 50;
+
+    @Override
+    protected Collection<String> getTableDefinitions() {
+        List<String> statements = new ArrayList<String>();
+        statements.add("CREATE TABLE publisher_test (k int, v int, PRIMARY KEY (k, v))");
+        for (int i = 0; i < ROWS; i++)
+            statements.add(String.format("INSERT INTO publisher_test (k, v) VALUES (1, %d)", i));
+        return statements;
+    }
+
+    @Test(groups = "short")
+    public void should_publish_rows_according_to_demand() throws Exception {
+        if (cluster.getConfiguration().getProtocolOptions().getProtocolVersionEnum() == ProtocolVersion.V1)
+            return;
+
+        Statement statement = new SimpleStatement("SELECT v FROM publisher_test WHERE k = 1").setFetchSize(10);
+        RecordingSubscriber subscriber = new RecordingSubscriber();
+        RowPublisher.create(session, statement).subscribe(subscriber);
+
+        // Nothing is fetched until rows are requested
+        Uninterruptibles.sleepUninterruptibly(200, TimeUnit.MILLISECONDS);
+        assertThat(subscriber.values).isEmpty();
+
+        subscriber.subscription.request(15);
+        waitForValues(subscriber, 15);
+        Uninterruptibles.sleepUninterruptibly(200, TimeUnit.MILLISECONDS);
+        assertThat(subscriber.values).hasSize(15);
+        assertThat(subscriber.completed.getCount()).isEqualTo(1);
+
+        subscriber.subscription.request(Long.MAX_VALUE);
+        assertThat(subscriber.completed.await(10, TimeUnit.SECONDS)).isTrue();
+        assertThat(subscriber.error).isNull();
+        assertThat(subscriber.values).hasSize(ROWS);
+        for (int i = 0; i < ROWS; i++)
+            assertThat(subscriber.values.get(i)).isEqualTo(i);
+    }
+
+    @Test(groups = "short")
+    public void should_signal_error_on_invalid_request() throws Exception {
+        RecordingSubscriber subscriber = new RecordingSubscriber();
+        RowPublisher.create(session, new SimpleStatement("SELECT v FROM publisher_test WHERE k = 1")).subscribe(subscriber);
+
+        subscriber.subscription.request(0);
+        assertThat(subscriber.completed.await(10, TimeUnit.SECONDS)).isTrue();
+        assertThat(subscriber.error).isInstanceOf(IllegalArgumentException.class);
+        assertThat(subscriber.values).isEmpty();
+    }
+
+    private static void waitForValues(RecordingSubscriber subscriber, int count) {
+        long deadline = System.currentTimeMillis() + 10000;
+        while (subscriber.values.size() < count && System.currentTimeMillis() < deadline)
+            Uninterruptibles.sleepUninterruptibly(10, TimeUnit.MILLISECONDS);
+    }
+
+    private static class RecordingSubscriber implements RowPublisher.Subscriber {
+        final List<Integer> values = new CopyOnWriteArrayList<Integer>();
+        final CountDownLatch completed = new CountDownLatch(1);
+        volatile RowPublisher.Subscription subscription;
+        volatile Throwable error;
+
+        @Override
+        public void onSubscribe(RowPublisher.Subscription subscription) {
+            this.subscription = subscription;
+        }
+
+        @Override
+        public void onNext(Row row) {
+            values.add(row.getInt("v"));
+        }
+
+        @Override
+        public void onError(Throwable t) {
+            error = t;
+            completed.countDown();
+        }
+
+        @Override
+        public void onComplete() {
+            completed.countDown();
+        }
+    }
+}
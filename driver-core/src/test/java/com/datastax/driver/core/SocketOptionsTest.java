@@ -0,0 +1,70 @@
+/*
+ *      Copyright (C) 2012-2015 DataStax Inc.
+ *
+ *   Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ */
+package com.datastax.driver.core;
+
+import org.testng.annotations.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.fail;
+
+public class SocketOptionsTest {
+
+    @Test(groups = "unit")
+    public void should_use_fixed_write_coalescing_by_default() {
+        SocketOptions options = new SocketOptions();
+
+        assertThat(options.getWriteCoalescing()).isEqualTo(SocketOptions.WriteCoalescing.FIXED);
+        assertThat(options.getWriteCoalescingMaxDelayMicros()).isEqualTo(10);
+        assertThat(options.getWriteCoalescingMaxBatchSize()).isEqualTo(128);
+    }
+
+    @Test(groups = "unit")
+    public void should_reject_invalid_write_coalescing_settings() {
+        SocketOptions options = new SocketOptions();
+
+        try {
+            options.setWriteCoalescing(null);
+            fail("Expected an IllegalArgumentException");
+        } catch (IllegalArgumentException e) {/*expected*/}
+
+        try {
+            options.setWriteCoalescingMaxDelayMicros(0);
+            fail("Expected an IllegalArgumentException");
+        } catch (IllegalArgumentException e) {/*expected*/}
+
+        try {
+            options.setWriteCoalescingMaxBatchSize(0);
+            fail("Expected an IllegalArgumentException");
+        } catch (IllegalArgumentException e) {/*expected*/}
+
+        assertThat(options.getWriteCoalescingMaxDelayMicros()).isEqualTo(10);
+        assertThat(options.getWriteCoalescingMaxBatchSize()).isEqualTo(128);
+    }
+
+    @Test(groups = "unit")
+    public void should_reject_negative_read_timeout_tick() {
+        SocketOptions options = new SocketOptions();
+        assertThat(options.getReadTimeoutTickMillis()).isEqualTo(0);
+
+        options.setReadTimeoutTickMillis(10);
+        assertThat(options.getReadTimeoutTickMillis()).isEqualTo(10);
+
+        try {
+            options.setReadTimeoutTickMillis(-1);
+            fail("Expected an IllegalArgumentException");
+        } catch (IllegalArgumentException e) {/*expected*/}
+    }
+}
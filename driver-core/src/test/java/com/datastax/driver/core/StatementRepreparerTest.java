@@ -0,0 +1,205 @@
+/*
+ *      Copyright (C) 2012-2015 DataStax Inc.
+ *
+ *   Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ */
+package com.datastax.driver.core;
+
+import java.util.*;
+
+import com.google.common.collect.Lists;
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.SettableFuture;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
+import org.testng.annotations.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyString;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+public class StatementRepreparerTest {
+
+    @Test(groups = "unit")
+    public void should_prepare_most_recently_used_first_with_bounded_in_flight_requests() {
+        MockConnection connection = new MockConnection();
+        List<PreparedStatement> statements = Lists.newArrayList(
+            statement("q1", null, 1), statement("q3", null, 3), statement("q2", null, 2), statement("q4", null, 4));
+
+        ListenableFuture<Set<Connection>> future = new StatementRepreparer(statements, 2)
+            .start(Collections.singletonList(connection.mock));
+
+        assertThat(connection.sentQueries()).containsExactly("q4", "q3");
+
+        connection.completeNext();
+        assertThat(connection.sentQueries()).containsExactly("q4", "q3", "q2");
+
+        connection.completeAll();
+        assertThat(connection.sentQueries()).containsExactly("q4", "q3", "q2", "q1");
+        assertThat(future.isDone()).isTrue();
+        assertThat(Futures.getUnchecked(future)).isEmpty();
+    }
+
+    @Test(groups = "unit")
+    public void should_switch_keyspace_only_when_no_request_is_in_flight() {
+        MockConnection connection = new MockConnection();
+        List<PreparedStatement> statements = Lists.newArrayList(
+            statement("q1", "ks1", 2), statement("q2", "ks1", 2), statement("q3", "ks2", 1));
+
+        ListenableFuture<Set<Connection>> future = new StatementRepreparer(statements, 10)
+            .start(Collections.singletonList(connection.mock));
+
+        // Most recently used keyspace first
+        assertThat(connection.keyspaceSwitches).containsExactly("ks1");
+        assertThat(connection.sentQueries()).isEmpty();
+
+        connection.completeKeyspaceSwitch();
+        assertThat(connection.sentQueries()).containsOnly("q1", "q2");
+
+        connection.completeNext();
+        assertThat(connection.keyspaceSwitches).containsExactly("ks1");
+
+        connection.completeNext();
+        assertThat(connection.keyspaceSwitches).containsExactly("ks1", "ks2");
+
+        connection.completeKeyspaceSwitch();
+        connection.completeAll();
+        assertThat(connection.sentQueries()).containsOnly("q1", "q2", "q3");
+        assertThat(future.isDone()).isTrue();
+    }
+
+    @Test(groups = "unit")
+    public void should_use_other_connections_when_one_fails() {
+        MockConnection connection1 = new MockConnection();
+        MockConnection connection2 = new MockConnection();
+        connection1.broken = true;
+        List<PreparedStatement> statements = Lists.newArrayList(
+            statement("q1", null, 1), statement("q2", null, 2), statement("q3", null, 3));
+
+        ListenableFuture<Set<Connection>> future = new StatementRepreparer(statements, 1)
+            .start(Lists.newArrayList(connection1.mock, connection2.mock));
+
+        connection2.completeAll();
+        assertThat(connection2.sentQueries()).containsOnly("q1", "q2", "q3");
+        assertThat(future.isDone()).isTrue();
+        assertThat(Futures.getUnchecked(future)).containsOnly(connection1.mock);
+    }
+
+    @Test(groups = "unit")
+    public void should_give_in_flight_queries_of_failed_connection_to_idle_connections() {
+        MockConnection connection1 = new MockConnection();
+        MockConnection connection2 = new MockConnection();
+        List<PreparedStatement> statements = Lists.newArrayList(
+            statement("q1", null, 1), statement("q2", null, 2), statement("q3", null, 3));
+
+        ListenableFuture<Set<Connection>> future = new StatementRepreparer(statements, 1)
+            .start(Lists.newArrayList(connection1.mock, connection2.mock));
+        assertThat(connection1.sentQueries()).containsExactly("q3");
+        assertThat(connection2.sentQueries()).containsExactly("q2");
+
+        // connection2 runs out of queries while q3 is still in flight on connection1
+        connection2.completeAll();
+        connection2.completeAll();
+        assertThat(connection2.sentQueries()).containsExactly("q2", "q1");
+        assertThat(future.isDone()).isFalse();
+
+        connection1.failNext();
+        assertThat(connection2.sentQueries()).containsExactly("q2", "q1", "q3");
+        assertThat(future.isDone()).isFalse();
+
+        connection2.completeAll();
+        assertThat(future.isDone()).isTrue();
+        assertThat(Futures.getUnchecked(future)).containsOnly(connection1.mock);
+    }
+
+    private static PreparedStatement statement(String query, String keyspace, long lastUsedMillis) {
+        DefaultPreparedStatement statement = mock(DefaultPreparedStatement.class);
+        when(statement.getQueryString()).thenReturn(query);
+        when(statement.getQueryKeyspace()).thenReturn(keyspace);
+        when(statement.lastUsedMillis()).thenReturn(lastUsedMillis);
+        return statement;
+    }
+
+    /**
+     * A mock connection that records the requests sent, and completes them on demand.
+     */
+    static class MockConnection {
+        final Connection mock = mock(Connection.class);
+        final List<Connection.Future> pending = new ArrayList<Connection.Future>();
+        final List<String> sent = new ArrayList<String>();
+        final List<String> keyspaceSwitches = new ArrayList<String>();
+        volatile String keyspace;
+        volatile boolean broken;
+        SettableFuture<Void> keyspaceFuture;
+
+        MockConnection() {
+            try {
+                when(mock.write(any(Message.Request.class))).thenAnswer(new Answer<Connection.Future>() {
+                    @Override
+                    public Connection.Future answer(InvocationOnMock invocation) throws Throwable {
+                        if (broken)
+                            throw new ConnectionException(null, "broken");
+                        Message.Request request = (Message.Request)invocation.getArguments()[0];
+                        Connection.Future future = new Connection.Future(request);
+                        pending.add(future);
+                        // PREPARE <query>
+                        sent.add(request.toString().substring(8));
+                        return future;
+                    }
+                });
+            } catch (Exception e) {
+                throw new AssertionError(e);
+            }
+            when(mock.keyspace()).thenAnswer(new Answer<String>() {
+                @Override
+                public String answer(InvocationOnMock invocation) {
+                    return keyspace;
+                }
+            });
+            when(mock.setKeyspaceAsync(anyString())).thenAnswer(new Answer<ListenableFuture<Void>>() {
+                @Override
+                public ListenableFuture<Void> answer(InvocationOnMock invocation) {
+                    String newKeyspace = (String)invocation.getArguments()[0];
+                    keyspaceSwitches.add(newKeyspace);
+                    keyspace = newKeyspace;
+                    keyspaceFuture = SettableFuture.create();
+                    return keyspaceFuture;
+                }
+            });
+        }
+
+        List<String> sentQueries() {
+            return sent;
+        }
+
+        void completeNext() {
+            pending.remove(0).onSet(mock, mock(Message.Response.class), 0, 0);
+        }
+
+        void failNext() {
+            pending.remove(0).onException(mock, new ConnectionException(null, "broken"), 0, 0);
+        }
+
+        void completeAll() {
+            while (!pending.isEmpty())
+                completeNext();
+        }
+
+        void completeKeyspaceSwitch() {
+            keyspaceFuture.set(null);
+        }
+    }
+}
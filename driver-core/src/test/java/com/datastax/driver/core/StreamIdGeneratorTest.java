@@ -15,8 +15,13 @@
  */
 package com.datastax.driver.core;
 
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Set;
+
 import org.testng.annotations.Test;
 import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertTrue;
 import static org.testng.Assert.fail;
 
 public class StreamIdGeneratorTest {
@@ -26,18 +31,20 @@ public class StreamIdGeneratorTest {
 
         StreamIdGenerator generator = StreamIdGenerator.newInstance(ProtocolVersion.V2);
 
-        assertEquals(generator.next(), 0);
-        assertEquals(generator.next(), 64);
-        generator.release(0);
-        assertEquals(generator.next(), 0);
-        assertEquals(generator.next(), 65);
-        assertEquals(generator.next(), 1);
-        generator.release(64);
-        assertEquals(generator.next(), 64);
-        assertEquals(generator.next(), 2);
-
-        for (int i = 5; i < 128; i++)
-            generator.next();
+        // Ids are not handed out in a particular order, but a thread keeps using the same word while it has free ids
+        int first = generator.next();
+        int second = generator.next();
+        assertEquals(second / 64, first / 64);
+        generator.release(first);
+        assertEquals(generator.next(), first);
+
+        Set<Integer> ids = new HashSet<Integer>();
+        ids.add(first);
+        ids.add(second);
+        for (int i = 2; i < 128; i++)
+            assertTrue(ids.add(generator.next()));
+        for (int id : ids)
+            assertTrue(id >= 0 && id < 128);
 
         generator.release(100);
         assertEquals(generator.next(), 100);
@@ -49,4 +56,45 @@ public class StreamIdGeneratorTest {
             // Ok, expected
         }
     }
+
+    @Test(groups = "unit")
+    public void should_not_hand_out_same_id_to_concurrent_threads() throws Exception {
+        final StreamIdGenerator generator = StreamIdGenerator.newInstance(ProtocolVersion.V3);
+        final Set<Integer> ids = Collections.synchronizedSet(new HashSet<Integer>());
+        final int threadCount = 8, idsPerThread = 1000;
+
+        Thread[] threads = new Thread[threadCount];
+        for (int i = 0; i < threadCount; i++) {
+            threads[i] = new Thread() {
+                @Override
+                public void run() {
+                    // Failures are detected by the size check below (a duplicate id wouldn't be added)
+                    try {
+                        for (int j = 0; j < idsPerThread; j++)
+                            ids.add(generator.next());
+                    } catch (BusyConnectionException e) {
+                        // ignore
+                    }
+                }
+            };
+            threads[i].start();
+        }
+        for (Thread thread : threads)
+            thread.join();
+
+        assertEquals(ids.size(), threadCount * idsPerThread);
+    }
+
+    @Test(groups = "unit")
+    public void should_account_for_marked_ids() throws Exception {
+        StreamIdGenerator generator = StreamIdGenerator.newInstance(ProtocolVersion.V3);
+        assertEquals(generator.maxAvailableStreams(), 32768);
+
+        int id = generator.next();
+        generator.mark(id);
+        assertEquals(generator.maxAvailableStreams(), 32767);
+        generator.unmark(id);
+        generator.release(id);
+        assertEquals(generator.maxAvailableStreams(), 32768);
+    }
 }
@@ -0,0 +1,82 @@
+/*
+ *      Copyright (C) 2012-2015 DataStax Inc.
+ *
+ *   Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ */
+package com.datastax.driver.core;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import org.testng.annotations.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class StreamIdTableTest {
+
+    @Test(groups = "unit")
+    public void should_put_and_remove_values() {
+        StreamIdTable<String> table = new StreamIdTable<String>(StreamIdGenerator.MAX_STREAM_PER_CONNECTION_V3);
+        assertThat(table.isEmpty()).isTrue();
+
+        assertThat(table.put(0, "a")).isNull();
+        assertThat(table.put(32767, "b")).isNull();
+        assertThat(table.size()).isEqualTo(2);
+        assertThat(table.get(0)).isEqualTo("a");
+        assertThat(table.get(1)).isNull();
+        assertThat(table.get(32767)).isEqualTo("b");
+
+        assertThat(table.remove(0)).isEqualTo("a");
+        assertThat(table.remove(0)).isNull();
+        // Never used segment, or out of range
+        assertThat(table.remove(100)).isNull();
+        assertThat(table.remove(32768)).isNull();
+        assertThat(table.size()).isEqualTo(1);
+
+        assertThat(table.remove(32767, "c")).isFalse();
+        assertThat(table.remove(32767, "b")).isTrue();
+        assertThat(table.isEmpty()).isTrue();
+    }
+
+    @Test(groups = "unit")
+    public void should_remove_all_values() {
+        StreamIdTable<Integer> table = new StreamIdTable<Integer>(StreamIdGenerator.MAX_STREAM_PER_CONNECTION_V2);
+        for (int i = 0; i < 128; i += 3)
+            table.put(i, i);
+
+        assertThat(table.removeAll()).hasSize(43).contains(0, 63, 126);
+        assertThat(table.isEmpty()).isTrue();
+        assertThat(table.get(63)).isNull();
+    }
+
+    @Test(groups = "unit", expectedExceptions = IllegalArgumentException.class)
+    public void should_reject_out_of_range_id() {
+        new StreamIdTable<String>(StreamIdGenerator.MAX_STREAM_PER_CONNECTION_V2).put(128, "a");
+    }
+
+    @Test(groups = "unit")
+    public void should_visit_all_values() {
+        StreamIdTable<String> table = new StreamIdTable<String>(StreamIdGenerator.MAX_STREAM_PER_CONNECTION_V3);
+        table.put(3, "a");
+        table.put(20000, "b");
+
+        final Map<Integer, String> visited = new HashMap<Integer, String>();
+        table.forEach(new StreamIdTable.Visitor<String>() {
+            @Override
+            public void visit(int streamId, String value) {
+                visited.put(streamId, value);
+            }
+        });
+        assertThat(visited).hasSize(2).containsEntry(3, "a").containsEntry(20000, "b");
+    }
+}
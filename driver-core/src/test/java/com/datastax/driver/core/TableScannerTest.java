@@ -0,0 +1,99 @@
+/*
+ *      Copyright (C) 2012-2015 DataStax Inc.
+ *
+ *   Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ */
+package com.datastax.driver.core;
+
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+
+import org.testng.annotations.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class TableScannerTest extends CCMBridge.PerClassSingleNodeCluster {
+
+    private static final int ROWS = 100;
+
+    @Override
+    protected Collection<String> getTableDefinitions() {
+        List<String> statements = new ArrayList<String>();
+        statements.add("CREATE TABLE scan_test (k int PRIMARY KEY, v int)");
+        for (int i = 0; i < ROWS; i++)
+            statements.add(String.format("INSERT INTO scan_test (k, v) VALUES (%d, %d)", i, i));
+        return statements;
+    }
+
+    @Test(groups = "short")
+    public void should_split_ring_into_non_wrapping_ranges() {
+        TableScanner scanner = TableScanner.builder(session, keyspace, "scan_test")
+            .withSplitsPerRange(4)
+            .build();
+
+        List<TokenRange> ranges = scanner.getRanges();
+        assertThat(ranges).hasSize(4 * cluster.getMetadata().getTokenRanges().size());
+        for (TokenRange range : ranges) {
+            assertThat(range.isEmpty()).isFalse();
+            assertThat(range.isWrappedAround()).isFalse();
+        }
+    }
+
+    @Test(groups = "short")
+    public void should_read_all_rows_with_iterator() {
+        TableScanner scanner = TableScanner.builder(session, keyspace, "scan_test")
+            .withColumns("k")
+            .withSplitsPerRange(8)
+            .withMaxConcurrentRanges(3)
+            .withFetchSize(7)
+            .build();
+
+        Set<Integer> keys = new HashSet<Integer>();
+        Iterator<Row> rows = scanner.iterator();
+        while (rows.hasNext())
+            assertThat(keys.add(rows.next().getInt("k"))).isTrue();
+
+        assertThat(keys).hasSize(ROWS);
+    }
+
+    @Test(groups = "short")
+    public void should_read_all_rows_with_range_handler() throws Exception {
+        TableScanner scanner = TableScanner.builder(session, keyspace, "scan_test")
+            .withSplitsPerRange(8)
+            .withFetchSize(7)
+            .build();
+
+        final ConcurrentMap<Integer, Integer> values = new ConcurrentHashMap<Integer, Integer>();
+        final Set<TokenRange> completed = Collections.newSetFromMap(new ConcurrentHashMap<TokenRange, Boolean>());
+        scanner.scan(new TableScanner.RangeHandler() {
+            @Override
+            public void onPage(TokenRange range, List<Row> rows) {
+                for (Row row : rows)
+                    values.put(row.getInt("k"), row.getInt("v"));
+            }
+
+            @Override
+            public void onRangeComplete(TokenRange range) {
+                completed.add(range);
+            }
+        }).get(30, TimeUnit.SECONDS);
+
+        assertThat(values).hasSize(ROWS);
+        for (Map.Entry<Integer, Integer> entry : values.entrySet())
+            assertThat(entry.getValue()).isEqualTo(entry.getKey());
+        assertThat(completed).containsOnlyElementsOf(scanner.getRanges());
+        assertThat(completed).hasSize(scanner.getRanges().size());
+    }
+}
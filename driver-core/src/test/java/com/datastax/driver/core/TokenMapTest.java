@@ -0,0 +1,229 @@
+/*
+ *      Copyright (C) 2012-2015 DataStax Inc.
+ *
+ *   Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ */
+package com.datastax.driver.core;
+
+import java.nio.ByteBuffer;
+import java.util.*;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import com.google.common.collect.ImmutableMap;
+import org.testng.annotations.Test;
+
+import com.datastax.driver.core.policies.LoadBalancingPolicy;
+import com.datastax.driver.core.policies.TokenAwarePolicy;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyString;
+import static org.mockito.Mockito.*;
+
+public class TokenMapTest extends AbstractReplicationStrategyTest {
+
+    @Test(groups = "unit")
+    public void should_find_replicas_with_murmur3_ring() {
+        checkReplicas(Token.M3PToken.FACTORY);
+    }
+
+    @Test(groups = "unit")
+    public void should_find_replicas_with_random_ring() {
+        checkReplicas(Token.RPToken.FACTORY);
+    }
+
+    @Test(groups = "unit")
+    public void should_find_replicas_with_single_token_ring() {
+        Host host = host("127.0.0.1");
+        Map<Host, Collection<String>> allTokens = new HashMap<Host, Collection<String>>();
+        allTokens.put(host, Collections.singletonList("0"));
+        Metadata.TokenMap tokenMap = Metadata.TokenMap.build(Token.M3PToken.FACTORY, allTokens,
+            Collections.singletonList(keyspace("ks", 1)));
+
+        for (int i = 0; i < 10; i++)
+            assertThat(tokenMap.getReplicas("ks", key(i))).containsOnly(host);
+    }
+
+    @Test(groups = "unit")
+    public void should_return_primary_replica_first() {
+        // With RF = number of hosts, every position has the same hosts, but each starts with its own primary
+        Host host1 = host("127.0.0.1"), host2 = host("127.0.0.2"), host3 = host("127.0.0.3");
+        Map<Host, Collection<String>> allTokens = new HashMap<Host, Collection<String>>();
+        allTokens.put(host1, Collections.singletonList("-100"));
+        allTokens.put(host2, Collections.singletonList("0"));
+        allTokens.put(host3, Collections.singletonList("100"));
+        Metadata.TokenMap tokenMap = Metadata.TokenMap.build(Token.M3PToken.FACTORY, allTokens,
+            Collections.singletonList(keyspace("ks", 3)));
+
+        for (Map.Entry<Host, Collection<String>> entry : allTokens.entrySet()) {
+            Token token = Token.M3PToken.FACTORY.fromString(entry.getValue().iterator().next());
+            Set<Host> replicas = tokenMap.getReplicas("ks", token);
+            assertThat(replicas).containsOnly(host1, host2, host3);
+            assertThat(replicas.iterator().next()).isEqualTo(entry.getKey());
+        }
+    }
+
+    @Test(groups = "unit")
+    public void should_route_statements_with_murmur3_token_values() {
+        Host host1 = host("127.0.0.1"), host2 = host("127.0.0.2"), host3 = host("127.0.0.3");
+        Map<Host, Collection<String>> allTokens = new HashMap<Host, Collection<String>>();
+        allTokens.put(host1, Collections.singletonList("-3074457345618258602"));
+        allTokens.put(host2, Collections.singletonList("3074457345618258602"));
+        allTokens.put(host3, Collections.singletonList("9223372036854775807"));
+        Metadata metadata = new Metadata(null);
+        metadata.tokenMap = Metadata.TokenMap.build(Token.M3PToken.FACTORY, allTokens,
+            Collections.singletonList(keyspace("ks", 1)));
+        for (Host host : allTokens.keySet())
+            host.setUp();
+
+        LoadBalancingPolicy childPolicy = mock(LoadBalancingPolicy.class);
+        when(childPolicy.distance(any(Host.class))).thenReturn(HostDistance.LOCAL);
+        when(childPolicy.newQueryPlan(anyString(), any(Statement.class))).thenReturn(Collections.<Host>emptyList().iterator());
+        Cluster cluster = mock(Cluster.class);
+        when(cluster.getMetadata()).thenReturn(metadata);
+        TokenAwarePolicy policy = new TokenAwarePolicy(childPolicy, false);
+        policy.init(cluster, allTokens.keySet());
+
+        for (int i = 0; i < 100; i++) {
+            ByteBuffer key = key(i);
+            Statement statement = spy(new SimpleStatement("foo").setRoutingKey(key).setKeyspace("ks"));
+            Set<Host> expected = metadata.tokenMap.getReplicas("ks", Token.M3PToken.FACTORY.hash(key));
+
+            Iterator<Host> plan = policy.newQueryPlan(null, statement);
+            assertThat(plan.next()).isEqualTo(expected.iterator().next());
+            assertThat(plan.hasNext()).isFalse();
+            // The replicas were found from the value of the token, no token was built
+            verify(statement, never()).getRoutingToken(any(Token.Factory.class));
+        }
+    }
+
+    @Test(groups = "unit")
+    public void should_share_replicas_of_keyspaces_with_same_replication() {
+        Map<Host, Collection<String>> allTokens = randomTokens(Token.M3PToken.FACTORY, new Random(42));
+        Metadata.TokenMap tokenMap = Metadata.TokenMap.build(Token.M3PToken.FACTORY, allTokens,
+            Arrays.asList(keyspace("ks1", 2), keyspace("ks2", 2), keyspace("ks3", 3)));
+
+        assertThat(tokenMap.replicas.get("ks1")).isSameAs(tokenMap.replicas.get("ks2"));
+        assertThat(tokenMap.replicas.get("ks1")).isNotSameAs(tokenMap.replicas.get("ks3"));
+    }
+
+    @Test(groups = "unit")
+    public void should_only_compute_new_strategies_if_topology_has_not_changed() {
+        Token.Factory factory = Token.M3PToken.FACTORY;
+        Map<Host, Collection<String>> allTokens = randomTokens(factory, new Random(42));
+        Metadata.TokenMap previous = Metadata.TokenMap.build(factory, allTokens,
+            Arrays.asList(keyspace("ks1", 2), keyspace("ks2", 3)));
+
+        // ks2's replication factor changed
+        Metadata.TokenMap tokenMap = Metadata.TokenMap.build(factory, allTokens,
+            Arrays.asList(keyspace("ks1", 2), keyspace("ks2", 1)), previous, null);
+        assertThat(tokenMap.replicas.get("ks1")).isSameAs(previous.replicas.get("ks1"));
+        assertThat(tokenMap.replicas.get("ks2")).isNotSameAs(previous.replicas.get("ks2"));
+        assertThat(tokenMap.getReplicas("ks2", key(1))).hasSize(1);
+
+        // A host moved
+        Map<Host, Collection<String>> newTokens = new HashMap<Host, Collection<String>>(allTokens);
+        Host host = newTokens.keySet().iterator().next();
+        newTokens.put(host, Collections.singletonList("42"));
+        Metadata.TokenMap moved = Metadata.TokenMap.build(factory, newTokens,
+            Arrays.asList(keyspace("ks1", 2), keyspace("ks2", 1)), tokenMap, null);
+        assertThat(moved.replicas.get("ks1")).isNotSameAs(tokenMap.replicas.get("ks1"));
+        assertThat(moved.getReplicas("ks1", factory.fromString("42"))).contains(host);
+    }
+
+    @Test(groups = "unit")
+    public void should_compute_strategies_in_parallel() {
+        Token.Factory factory = Token.M3PToken.FACTORY;
+        Map<Host, Collection<String>> allTokens = randomTokens(factory, new Random(42));
+        List<KeyspaceMetadata> keyspaces = Arrays.asList(keyspace("ks1", 1), keyspace("ks2", 2), keyspace("ks3", 3), keyspace("ks4", 4));
+        Metadata.TokenMap sequential = Metadata.TokenMap.build(factory, allTokens, keyspaces);
+
+        ExecutorService executor = Executors.newFixedThreadPool(2);
+        try {
+            Metadata.TokenMap parallel = Metadata.TokenMap.build(factory, allTokens, keyspaces, null, executor);
+            Random random = new Random(42);
+            for (int i = 0; i < 100; i++) {
+                ByteBuffer key = key(random.nextInt());
+                for (KeyspaceMetadata keyspace : keyspaces)
+                    assertThat(parallel.getReplicas(keyspace.getName(), key)).isEqualTo(sequential.getReplicas(keyspace.getName(), key));
+            }
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    private Map<Host, Collection<String>> randomTokens(Token.Factory factory, Random random) {
+        List<Host> hosts = Arrays.<Host>asList(host("127.0.0.1"), host("127.0.0.2"), host("127.0.0.3"), host("127.0.0.4"));
+        Map<Host, Collection<String>> allTokens = new HashMap<Host, Collection<String>>();
+        for (Host host : hosts) {
+            List<String> tokens = new ArrayList<String>();
+            for (int i = 0; i < 16; i++)
+                tokens.add(factory.hash(key(random.nextInt())).toString());
+            allTokens.put(host, tokens);
+        }
+        return allTokens;
+    }
+
+    private void checkReplicas(Token.Factory factory) {
+        Random random = new Random(42);
+        List<Host> hosts = Arrays.<Host>asList(host("127.0.0.1"), host("127.0.0.2"), host("127.0.0.3"), host("127.0.0.4"));
+        Map<Host, Collection<String>> allTokens = new HashMap<Host, Collection<String>>();
+        Map<Token, Host> tokenToPrimary = new HashMap<Token, Host>();
+        for (Host host : hosts) {
+            List<String> tokens = new ArrayList<String>();
+            for (int i = 0; i < 16; i++) {
+                Token token = factory.hash(key(random.nextInt()));
+                tokens.add(token.toString());
+                tokenToPrimary.put(token, host);
+            }
+            allTokens.put(host, tokens);
+        }
+        KeyspaceMetadata keyspace = keyspace("ks", 2);
+        Metadata.TokenMap tokenMap = Metadata.TokenMap.build(factory, allTokens, Collections.singletonList(keyspace));
+
+        // Compute the expected replicas the slow way
+        List<Token> ring = new ArrayList<Token>(new TreeSet<Token>(tokenToPrimary.keySet()));
+        Map<Token, Set<Host>> expected = keyspace.replicationStrategy().computeTokenToReplicaMap(tokenToPrimary, ring);
+
+        for (int i = 0; i < 1000; i++) {
+            ByteBuffer key = key(random.nextInt());
+            Token token = factory.hash(key);
+            Token owner = ring.get(0);
+            for (Token t : ring) {
+                if (t.compareTo(token) >= 0) {
+                    owner = t;
+                    break;
+                }
+            }
+            assertThat(tokenMap.getReplicas("ks", key)).isEqualTo(expected.get(owner));
+            assertThat(tokenMap.getReplicas("ks", token)).isEqualTo(expected.get(owner));
+            // Tokens of the ring are owned by their own position
+            assertThat(tokenMap.getReplicas("ks", owner)).isEqualTo(expected.get(owner));
+        }
+        assertThat(tokenMap.getReplicas("unknown_ks", key(1))).isEmpty();
+    }
+
+    private static KeyspaceMetadata keyspace(String name, int replicationFactor) {
+        KeyspaceMetadata keyspace = mock(KeyspaceMetadata.class);
+        when(keyspace.getName()).thenReturn(name);
+        when(keyspace.replicationStrategy()).thenReturn(ReplicationStrategy.create(ImmutableMap.of(
+            "class", "SimpleStrategy",
+            "replication_factor", String.valueOf(replicationFactor))));
+        return keyspace;
+    }
+
+    private static ByteBuffer key(int i) {
+        return (ByteBuffer)ByteBuffer.allocate(4).putInt(0, i);
+    }
+}
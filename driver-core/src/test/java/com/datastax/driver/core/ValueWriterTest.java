@@ -0,0 +1,146 @@
+/*
+ *      Copyright (C) 2012-2015 DataStax Inc.
+ *
+ *   Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ */
+package com.datastax.driver.core;
+
+import java.nio.ByteBuffer;
+import java.util.*;
+
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Sets;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+import org.testng.annotations.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import com.datastax.driver.core.exceptions.InvalidTypeException;
+import com.datastax.driver.core.utils.UUIDs;
+
+public class ValueWriterTest {
+
+    @Test(groups = "unit")
+    public void should_write_same_bytes_as_codecs() {
+        for (ProtocolVersion version : new ProtocolVersion[]{ ProtocolVersion.V2, ProtocolVersion.V3 }) {
+            checkBind(version, DataType.cint(), 42);
+            checkBind(version, DataType.cint(), Integer.MIN_VALUE);
+            checkBind(version, DataType.bigint(), Long.MAX_VALUE);
+            checkBind(version, DataType.counter(), -1L);
+            checkBind(version, DataType.cfloat(), 3.14f);
+            checkBind(version, DataType.cdouble(), Double.NaN);
+            checkBind(version, DataType.cboolean(), true);
+            checkBind(version, DataType.cboolean(), false);
+            checkBind(version, DataType.timestamp(), new Date(1234567890L));
+            checkBind(version, DataType.uuid(), UUID.randomUUID());
+            checkBind(version, DataType.timeuuid(), UUIDs.timeBased());
+            checkBind(version, DataType.text(), "");
+            checkBind(version, DataType.varchar(), "plain");
+            // 2 bytes, 3 bytes, surrogate pair, unpaired surrogates
+            checkBind(version, DataType.text(), "été € 😀 \ud83d x \ude00");
+            checkBind(version, DataType.ascii(), "ascii");
+            checkBind(version, DataType.ascii(), "café 😀 \ud83d");
+            checkBind(version, DataType.list(DataType.cint()), Arrays.asList(1, 2, 3));
+            checkBind(version, DataType.list(DataType.text()), Collections.<String>emptyList());
+            checkBind(version, DataType.set(DataType.text()), Sets.newLinkedHashSet(Arrays.asList("a", "é", "😀")));
+            checkBind(version, DataType.set(DataType.uuid()), Collections.singleton(UUID.randomUUID()));
+            checkBind(version, DataType.map(DataType.text(), DataType.bigint()), ImmutableMap.of("a", 1L, "b", 2L));
+            checkBind(version, DataType.map(DataType.cint(), DataType.cboolean()), ImmutableMap.of(1, true, 2, false));
+        }
+    }
+
+    @Test(groups = "unit")
+    public void should_write_values_set_with_typed_setters() {
+        BoundStatement bs = new BoundStatement(prepared(ProtocolVersion.V3,
+            DataType.cint(), DataType.bigint(), DataType.cfloat(), DataType.cdouble(), DataType.cboolean(), DataType.text(), DataType.blob()));
+        bs.setInt(0, 1).setLong(1, 2L).setFloat(2, 3f).setDouble(3, 4d).setBool(4, true).setString(5, "six")
+          .setBytes(6, ByteBuffer.wrap(new byte[]{ 7 }));
+
+        List<ByteBuffer> expected = Arrays.asList(
+            TypeCodec.IntCodec.instance.serializeNoBoxing(1),
+            TypeCodec.LongCodec.instance.serializeNoBoxing(2L),
+            TypeCodec.FloatCodec.instance.serializeNoBoxing(3f),
+            TypeCodec.DoubleCodec.instance.serializeNoBoxing(4d),
+            TypeCodec.BooleanCodec.instance.serializeNoBoxing(true),
+            TypeCodec.StringCodec.utf8Instance.serialize("six"),
+            ByteBuffer.wrap(new byte[]{ 7 }));
+        assertThat(encode(bs.wrapper.valueList())).isEqualTo(encode(expected));
+
+        // Getters serialize the values on demand, which must not change what is written
+        assertThat(bs.getInt(0)).isEqualTo(1);
+        assertThat(bs.getString(5)).isEqualTo("six");
+        assertThat(encode(bs.wrapper.valueList())).isEqualTo(encode(expected));
+    }
+
+    @Test(groups = "unit")
+    public void should_take_snapshot_of_collections() {
+        BoundStatement bs = new BoundStatement(prepared(ProtocolVersion.V3, DataType.list(DataType.cint())));
+        List<Integer> list = Lists.newArrayList(1, 2);
+        bs.setList(0, list);
+        list.add(3);
+
+        assertThat(bs.getList(0, Integer.class)).containsExactly(1, 2);
+    }
+
+    @Test(groups = "unit", expectedExceptions = InvalidTypeException.class)
+    @SuppressWarnings("unchecked")
+    public void should_reject_collection_elements_of_wrong_class() {
+        BoundStatement bs = new BoundStatement(prepared(ProtocolVersion.V3, DataType.list(DataType.cint())));
+        List list = Lists.newArrayList(1, "2");
+        bs.setList(0, list);
+    }
+
+    @Test(groups = "unit", expectedExceptions = NullPointerException.class)
+    public void should_reject_null_collection_elements() {
+        BoundStatement bs = new BoundStatement(prepared(ProtocolVersion.V3, DataType.list(DataType.cint())));
+        bs.setList(0, Arrays.asList(1, null));
+    }
+
+    private static void checkBind(ProtocolVersion version, DataType type, Object value) {
+        ByteBuffer expected = type.codec(version).serialize(value);
+
+        BoundStatement bs = new BoundStatement(prepared(version, type)).bind(value);
+        assertThat(encode(bs.wrapper.valueList()))
+            .as("%s %s (%s)", type, value, version)
+            .isEqualTo(encode(Collections.singletonList(expected)));
+
+        // Serialized on demand
+        bs = new BoundStatement(prepared(version, type)).bind(value);
+        assertThat(bs.getBytesUnsafe(0)).as("%s %s (%s)", type, value, version).isEqualTo(expected);
+    }
+
+    private static byte[] encode(List<ByteBuffer> values) {
+        ByteBuf buf = Unpooled.buffer(CBUtil.sizeOfValueList(values));
+        CBUtil.writeValueList(values, buf);
+        assertThat(buf.readableBytes()).isEqualTo(CBUtil.sizeOfValueList(values));
+        byte[] bytes = new byte[buf.readableBytes()];
+        buf.readBytes(bytes);
+        return bytes;
+    }
+
+    private static PreparedStatement prepared(ProtocolVersion version, DataType... types) {
+        ColumnDefinitions.Definition[] definitions = new ColumnDefinitions.Definition[types.length];
+        for (int i = 0; i < types.length; i++)
+            definitions[i] = new ColumnDefinitions.Definition("ks", "table", "c" + i, types[i]);
+        ColumnDefinitions variables = new ColumnDefinitions(definitions);
+
+        PreparedStatement prepared = mock(PreparedStatement.class);
+        when(prepared.getVariables()).thenReturn(variables);
+        when(prepared.getPreparedId()).thenReturn(new PreparedId(null, variables, null, null, version));
+        return prepared;
+    }
+}
@@ -15,6 +15,7 @@
  */
 package com.datastax.driver.core.policies;
 
+import java.util.Arrays;
 import java.util.Collection;
 import java.util.Set;
 import java.util.concurrent.CopyOnWriteArraySet;
@@ -24,8 +25,12 @@ import org.apache.log4j.Logger;
 import org.testng.annotations.*;
 
 import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
 import static org.testng.Assert.assertEquals;
 
+import com.google.common.collect.Lists;
+
 import com.datastax.driver.core.*;
 
 public class DCAwareRoundRobinPolicyTest {
@@ -172,6 +177,41 @@ public class DCAwareRoundRobinPolicyTest {
         }
     }
 
+    @Test(groups = "unit")
+    public void should_update_distances_and_query_plans_when_hosts_change() {
+        Host local1 = host("dc1"), local2 = host("dc1"), remote1 = host("dc2"), remote2 = host("dc2");
+        DCAwareRoundRobinPolicy policy = new DCAwareRoundRobinPolicy("dc1", 1);
+        policy.init(mock(Cluster.class), Arrays.asList(local1, local2, remote1, remote2));
+        Statement statement = new SimpleStatement("foo").setConsistencyLevel(ConsistencyLevel.ONE);
+
+        assertThat(policy.distance(local1)).isEqualTo(HostDistance.LOCAL);
+        assertThat(policy.distance(local2)).isEqualTo(HostDistance.LOCAL);
+        assertThat(policy.distance(remote1)).isEqualTo(HostDistance.REMOTE);
+        assertThat(policy.distance(remote2)).isEqualTo(HostDistance.IGNORED);
+        assertThat(Lists.newArrayList(policy.newQueryPlan(null, statement)))
+            .hasSize(3).startsWith(local1).contains(local2).endsWith(remote1);
+        assertThat(Lists.newArrayList(policy.newQueryPlan(null, statement)))
+            .hasSize(3).startsWith(local2).contains(local1).endsWith(remote1);
+
+        policy.onDown(local1);
+        policy.onDown(remote1);
+
+        // Local hosts stay local even when down, the next remote host replaces the one that went down
+        assertThat(policy.distance(local1)).isEqualTo(HostDistance.LOCAL);
+        assertThat(policy.distance(remote1)).isEqualTo(HostDistance.IGNORED);
+        assertThat(policy.distance(remote2)).isEqualTo(HostDistance.REMOTE);
+        assertThat(Lists.newArrayList(policy.newQueryPlan(null, statement))).containsExactly(local2, remote2);
+
+        policy.onUp(local1);
+        assertThat(Lists.newArrayList(policy.newQueryPlan(null, statement))).hasSize(3).contains(local1, local2, remote2);
+    }
+
+    private static Host host(String dc) {
+        Host host = mock(Host.class);
+        when(host.getDatacenter()).thenReturn(dc);
+        return host;
+    }
+
     /**
      * Wraps the policy under test to spy the calls to init.
      */
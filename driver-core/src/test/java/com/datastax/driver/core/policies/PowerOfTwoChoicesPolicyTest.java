@@ -0,0 +1,143 @@
+/*
+ *      Copyright (C) 2012-2015 DataStax Inc.
+ *
+ *   Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ */
+package com.datastax.driver.core.policies;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import com.google.common.collect.ImmutableSet;
+import com.google.common.collect.Lists;
+import org.mockito.ArgumentCaptor;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyString;
+import static org.mockito.Mockito.*;
+
+import com.datastax.driver.core.*;
+import com.datastax.driver.core.exceptions.UnavailableException;
+
+public class PowerOfTwoChoicesPolicyTest {
+
+    private Host host1, host2, host3, remote;
+    private LoadBalancingPolicy childPolicy;
+    private Metadata metadata;
+    private Cluster cluster;
+    private Statement statement = new SimpleStatement("foo").setKeyspace("ks");
+
+    @BeforeMethod(groups = "unit")
+    public void setup() {
+        host1 = mock(Host.class);
+        host2 = mock(Host.class);
+        host3 = mock(Host.class);
+        remote = mock(Host.class);
+
+        childPolicy = mock(LoadBalancingPolicy.class);
+        when(childPolicy.distance(any(Host.class))).thenReturn(HostDistance.LOCAL);
+        when(childPolicy.distance(remote)).thenReturn(HostDistance.REMOTE);
+
+        metadata = mock(Metadata.class);
+        when(metadata.getReplicas(anyString(), any(Statement.class))).thenReturn(Collections.<Host>emptySet());
+        cluster = mock(Cluster.class);
+        when(cluster.getMetadata()).thenReturn(metadata);
+    }
+
+    @Test(groups = "unit")
+    public void should_prefer_hosts_with_fewer_in_flight_requests() {
+        when(host1.getInFlightQueries()).thenReturn(100);
+        PowerOfTwoChoicesPolicy policy = PowerOfTwoChoicesPolicy.builder(childPolicy).build();
+        policy.init(cluster, Arrays.asList(host1, host2, host3, remote));
+
+        for (int i = 0; i < 100; i++) {
+            List<Host> plan = queryPlan(policy, host1, host2, host3, remote);
+            // host1 loses every comparison, so it is only used once the other local hosts are exhausted
+            assertThat(plan).hasSize(4);
+            assertThat(plan.subList(0, 2)).containsOnly(host2, host3);
+            assertThat(plan.subList(2, 4)).containsExactly(host1, remote);
+        }
+    }
+
+    @Test(groups = "unit")
+    public void should_only_reorder_replicas_among_themselves() {
+        when(metadata.getReplicas(anyString(), any(Statement.class))).thenReturn(ImmutableSet.of(host1, host2));
+        when(host1.getInFlightQueries()).thenReturn(100);
+        when(host2.getInFlightQueries()).thenReturn(50);
+        PowerOfTwoChoicesPolicy policy = PowerOfTwoChoicesPolicy.builder(childPolicy).build();
+        policy.init(cluster, Arrays.asList(host1, host2, host3, remote));
+
+        for (int i = 0; i < 100; i++) {
+            List<Host> plan = queryPlan(policy, host1, host2, host3, remote);
+            assertThat(plan).containsExactly(host2, host1, host3, remote);
+        }
+    }
+
+    @Test(groups = "unit")
+    public void should_weight_in_flight_requests_by_latency_when_enabled() {
+        when(host1.getInFlightQueries()).thenReturn(1);
+        PowerOfTwoChoicesPolicy policy = PowerOfTwoChoicesPolicy.builder(childPolicy)
+            .withLatencyWeighting(100, TimeUnit.MILLISECONDS)
+            .build();
+        policy.init(cluster, Arrays.asList(host1, host2));
+
+        ArgumentCaptor<LatencyTracker> tracker = ArgumentCaptor.forClass(LatencyTracker.class);
+        verify(cluster).register(tracker.capture());
+        tracker.getValue().update(host1, statement, null, TimeUnit.MILLISECONDS.toNanos(1));
+        tracker.getValue().update(host2, statement, null, TimeUnit.MILLISECONDS.toNanos(10));
+
+        // (1 + 1) * 1ms < (0 + 1) * 10ms
+        for (int i = 0; i < 100; i++)
+            assertThat(queryPlan(policy, host1, host2)).containsExactly(host1, host2);
+
+        // Without measurements for host2, only in-flight requests are compared
+        policy.onDown(host2);
+        for (int i = 0; i < 100; i++)
+            assertThat(queryPlan(policy, host1, host2)).containsExactly(host2, host1);
+    }
+
+    @Test(groups = "unit")
+    public void should_not_measure_latency_of_fast_errors() {
+        when(host2.getInFlightQueries()).thenReturn(1);
+        PowerOfTwoChoicesPolicy policy = PowerOfTwoChoicesPolicy.builder(childPolicy)
+            .withLatencyWeighting(100, TimeUnit.MILLISECONDS)
+            .build();
+        policy.init(cluster, Arrays.asList(host1, host2));
+
+        ArgumentCaptor<LatencyTracker> tracker = ArgumentCaptor.forClass(LatencyTracker.class);
+        verify(cluster).register(tracker.capture());
+        tracker.getValue().update(host1, statement, null, TimeUnit.MILLISECONDS.toNanos(10));
+        // If it was measured, host2 would win with (1 + 1) * 1ns < (0 + 1) * 10ms
+        tracker.getValue().update(host2, statement, new UnavailableException(ConsistencyLevel.ONE, 1, 0), 1);
+
+        for (int i = 0; i < 100; i++)
+            assertThat(queryPlan(policy, host1, host2)).containsExactly(host1, host2);
+    }
+
+    @Test(groups = "unit", expectedExceptions = IllegalArgumentException.class)
+    public void should_reject_invalid_latency_scale() {
+        PowerOfTwoChoicesPolicy.builder(childPolicy).withLatencyWeighting(0, TimeUnit.MILLISECONDS);
+    }
+
+    private List<Host> queryPlan(LoadBalancingPolicy policy, Host... childPlan) {
+        Iterator<Host> childIterator = Arrays.asList(childPlan).iterator();
+        when(childPolicy.newQueryPlan(anyString(), any(Statement.class))).thenReturn(childIterator);
+        return Lists.newArrayList(policy.newQueryPlan(null, statement));
+    }
+}
@@ -16,9 +16,13 @@
 package com.datastax.driver.core.policies;
 
 import java.nio.ByteBuffer;
-import java.util.List;
+import java.util.*;
 
 import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyString;
+import static org.mockito.Mockito.*;
+import com.google.common.collect.ImmutableSet;
 import com.google.common.collect.Lists;
 import org.testng.annotations.Test;
 
@@ -26,6 +30,48 @@ import com.datastax.driver.core.*;
 import com.datastax.driver.core.utils.Bytes;
 
 public class TokenAwarePolicyTest {
+    @Test(groups = "unit")
+    public void should_rotate_replicas_and_compute_child_plan_lazily() {
+        Host host1 = mockHost(), host2 = mockHost(), host3 = mockHost(), host4 = mockHost();
+        LoadBalancingPolicy childPolicy = mock(LoadBalancingPolicy.class);
+        when(childPolicy.distance(any(Host.class))).thenReturn(HostDistance.LOCAL);
+
+        Metadata metadata = mock(Metadata.class);
+        when(metadata.getReplicas(anyString(), any(Statement.class)))
+            .thenReturn(ImmutableSet.of(host1, host2, host3));
+        Cluster cluster = mock(Cluster.class);
+        when(cluster.getMetadata()).thenReturn(metadata);
+
+        TokenAwarePolicy policy = new TokenAwarePolicy(childPolicy, true);
+        policy.init(cluster, Arrays.asList(host1, host2, host3, host4));
+        Statement statement = new SimpleStatement("foo").setKeyspace("ks");
+
+        Set<Host> firstHosts = new HashSet<Host>();
+        for (int i = 0; i < 3; i++) {
+            when(childPolicy.newQueryPlan(anyString(), any(Statement.class)))
+                .thenReturn(Arrays.asList(host4, host3, host2, host1).iterator());
+
+            Iterator<Host> plan = policy.newQueryPlan(null, statement);
+            List<Host> replicas = Lists.newArrayList(plan.next(), plan.next(), plan.next());
+            assertThat(replicas).containsOnly(host1, host2, host3);
+            firstHosts.add(replicas.get(0));
+            // The child plan is only computed once the replicas are exhausted
+            verify(childPolicy, times(i)).newQueryPlan(anyString(), any(Statement.class));
+
+            // Replicas are not returned twice
+            assertThat(plan.next()).isEqualTo(host4);
+            assertThat(plan.hasNext()).isFalse();
+        }
+        // Each plan starts with a different replica
+        assertThat(firstHosts).containsOnly(host1, host2, host3);
+    }
+
+    private static Host mockHost() {
+        Host host = mock(Host.class);
+        when(host.isUp()).thenReturn(true);
+        return host;
+    }
+
     @Test(groups = "long")
     public void should_shuffle_replicas_when_requested() {
         testShuffleReplicas(new TokenAwarePolicy(new RoundRobinPolicy(), true),